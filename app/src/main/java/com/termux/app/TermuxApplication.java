@@ -46,6 +46,9 @@ public class TermuxApplication extends Application {
         // Set NightMode.APP_NIGHT_MODE
         TermuxThemeUtils.setAppNightMode(properties.getNightMode());
 
+        // Delete files like session transcripts shared before the app was last stopped
+        TermuxOpenReceiver.ContentProvider.deleteSharedFiles(context);
+
         // Check and create termux files directory. If failed to access it like in case of secondary
         // user or external sd card installation, then don't run files directory related code
         Error error = TermuxFileUtils.isTermuxFilesDirectoryAccessible(this, true, true);
@@ -5,17 +5,22 @@ import android.content.BroadcastReceiver;
 import android.content.ContentValues;
 import android.content.Context;
 import android.content.Intent;
+import android.content.pm.PackageManager;
 import android.database.Cursor;
 import android.database.MatrixCursor;
 import android.net.Uri;
+import android.os.Binder;
 import android.os.Environment;
 import android.os.ParcelFileDescriptor;
+import android.os.Process;
 import android.provider.MediaStore;
 import android.webkit.MimeTypeMap;
 
 import com.termux.shared.termux.plugins.TermuxPluginUtils;
 import com.termux.shared.data.DataUtils;
 import com.termux.shared.data.IntentUtils;
+import com.termux.shared.errors.Error;
+import com.termux.shared.file.FileUtils;
 import com.termux.shared.net.uri.UriUtils;
 import com.termux.shared.logger.Logger;
 import com.termux.shared.net.uri.UriScheme;
@@ -128,6 +133,30 @@ public class TermuxOpenReceiver extends BroadcastReceiver {
 
         private static final String LOG_TAG = "TermuxContentProvider";
 
+        /**
+         * The basename of the directory in the app cache directory for files shared by the app
+         * itself, like session transcripts. These can only be read through this provider by the app
+         * itself and by the apps which have been granted read permission for their uri when they
+         * were shared, regardless of the provider permission and allow-external-apps.
+         */
+        public static final String SHARED_FILES_CACHE_DIR_BASENAME = "shared";
+
+        /** Get the directory path for files shared by the app itself, see {@link #SHARED_FILES_CACHE_DIR_BASENAME}. */
+        public static String getSharedFilesDirPath(@NonNull Context context) {
+            return FileUtils.getCanonicalPath(context.getCacheDir().getAbsolutePath(), null) + "/" + SHARED_FILES_CACHE_DIR_BASENAME;
+        }
+
+        /**
+         * Delete the files shared by the app itself, see {@link #SHARED_FILES_CACHE_DIR_BASENAME}.
+         * There is no callback for when the apps they were shared with are done reading them, so
+         * this should be called on app start, after which they are not needed anymore.
+         */
+        public static void deleteSharedFiles(@NonNull Context context) {
+            Error error = FileUtils.deleteDirectoryFile("shared files directory", getSharedFilesDirPath(context), true);
+            if (error != null)
+                Logger.logErrorExtended(LOG_TAG, error.toString());
+        }
+
         @Override
         public boolean onCreate() {
             return true;
@@ -204,6 +233,15 @@ public class TermuxOpenReceiver extends BroadcastReceiver {
                 String path = file.getCanonicalPath();
                 String callingPackageName = getCallingPackage();
                 Logger.logDebug(LOG_TAG, "Open file request received from " + callingPackageName + " for \"" + path + "\" with mode \"" + mode + "\"");
+                if (getContext() != null && FileUtils.isPathInDirPath(path, getSharedFilesDirPath(getContext()), true)) {
+                    // Shared by the app itself, so only allow the apps it was shared with to read it.
+                    // The provider permission alone must not give access to it.
+                    if (Binder.getCallingUid() != Process.myUid() &&
+                        getContext().checkCallingUriPermission(uri, Intent.FLAG_GRANT_READ_URI_PERMISSION) != PackageManager.PERMISSION_GRANTED) {
+                        throw new IllegalArgumentException("Read permission not granted for uri: " + uri);
+                    }
+                    return ParcelFileDescriptor.open(file, ParcelFileDescriptor.MODE_READ_ONLY);
+                }
                 String storagePath = Environment.getExternalStorageDirectory().getCanonicalPath();
                 // See https://support.google.com/faqs/answer/7496913:
                 if (!(path.startsWith(TermuxConstants.TERMUX_FILES_DIR_PATH) || path.startsWith(storagePath))) {
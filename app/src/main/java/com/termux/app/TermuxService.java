@@ -26,9 +26,12 @@ import com.termux.shared.termux.plugins.TermuxPluginUtils;
 import com.termux.shared.data.IntentUtils;
 import com.termux.shared.net.uri.UriUtils;
 import com.termux.shared.errors.Errno;
+import com.termux.shared.errors.Error;
+import com.termux.shared.file.FileUtils;
 import com.termux.shared.shell.ShellUtils;
 import com.termux.shared.shell.command.runner.app.AppShell;
 import com.termux.shared.termux.settings.properties.TermuxAppSharedProperties;
+import com.termux.shared.termux.settings.properties.TermuxPropertyConstants;
 import com.termux.shared.termux.shell.command.environment.TermuxShellEnvironment;
 import com.termux.shared.termux.shell.TermuxShellUtils;
 import com.termux.shared.termux.TermuxConstants;
@@ -45,12 +48,15 @@ import com.termux.shared.data.DataUtils;
 import com.termux.shared.shell.command.ExecutionCommand;
 import com.termux.shared.shell.command.ExecutionCommand.Runner;
 import com.termux.shared.shell.command.ExecutionCommand.ShellCreateMode;
+import com.termux.terminal.ProcessReaper;
 import com.termux.terminal.TerminalEmulator;
 import com.termux.terminal.TerminalSession;
 import com.termux.terminal.TerminalSessionClient;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
 
 /**
  * A service holding a list of {@link TermuxSession} in {@link TermuxShellManager#mTermuxSessions} and background {@link AppShell}
@@ -107,6 +113,12 @@ public final class TermuxService extends Service implements AppShell.AppShellCli
 
     private static final String LOG_TAG = "TermuxService";
 
+    /**
+     * The directory under the app cache directory that sessions spill terminal transcript rows to,
+     * see {@link TermuxPropertyConstants#KEY_TERMINAL_TRANSCRIPT_SPILL_ROWS}.
+     */
+    private static final String TERMINAL_TRANSCRIPT_SPILL_DIRECTORY_NAME = "terminal-transcript-spill";
+
     @Override
     public void onCreate() {
         Logger.logVerbose(LOG_TAG, "onCreate");
@@ -117,6 +129,12 @@ public final class TermuxService extends Service implements AppShell.AppShellCli
 
         mShellManager = TermuxShellManager.getShellManager();
 
+        // Rows spilled by the sessions of a previous app process can not be shown anymore
+        Error error = FileUtils.deleteDirectoryFile("terminal transcript spill",
+            getTerminalTranscriptSpillDirectory().getAbsolutePath(), true);
+        if (error != null)
+            Logger.logErrorExtended(LOG_TAG, "Failed to delete terminal transcript spill directory\n" + error);
+
         runStartForeground();
 
         SystemEventReceiver.registerPackageUpdateEvents(this);
@@ -386,6 +404,7 @@ public final class TermuxService extends Service implements AppShell.AppShellCli
             if (Runner.APP_SHELL.equalsRunner(executionCommand.runner))
                 executionCommand.stdin = IntentUtils.getStringExtraIfSet(intent, TERMUX_SERVICE.EXTRA_STDIN, null);
             executionCommand.backgroundCustomLogLevel = IntentUtils.getIntegerExtraIfSet(intent, TERMUX_SERVICE.EXTRA_BACKGROUND_CUSTOM_LOG_LEVEL, null);
+            executionCommand.backgroundOutputLimit = IntentUtils.getIntegerExtraIfSet(intent, TERMUX_SERVICE.EXTRA_BACKGROUND_OUTPUT_LIMIT, null);
         }
 
         executionCommand.workingDirectory = IntentUtils.getStringExtraIfSet(intent, TERMUX_SERVICE.EXTRA_WORKDIR, null);
@@ -605,6 +624,17 @@ public final class TermuxService extends Service implements AppShell.AppShellCli
             return null;
         }
 
+        // The process is only started once the emulator is initialized with the terminal size, so
+        // the output reader can still be configured
+        TerminalSession newTerminalSession = newTermuxSession.getTerminalSession();
+        newTerminalSession.setPtyReaderMode(mProperties.getTerminalOutputReader());
+        newTerminalSession.setPtyReadBufferSizes(mProperties.getTerminalOutputBufferSize(), mProperties.getTerminalOutputMaxBufferSize());
+        newTerminalSession.setMaxInputDrainTime(mProperties.getTerminalOutputDrainTime());
+        newTerminalSession.setEmulatorThreadEnabled(mProperties.shouldUseTerminalEmulatorThread());
+        int transcriptSpillRows = mProperties.getTerminalTranscriptSpillRows();
+        if (transcriptSpillRows > 0)
+            newTerminalSession.setTranscriptSpill(new File(getTerminalTranscriptSpillDirectory(), newTerminalSession.mHandle), transcriptSpillRows);
+
         mShellManager.mTermuxSessions.add(newTermuxSession);
 
         // Remove the execution command from the pending plugin execution commands list since it has
@@ -648,6 +678,7 @@ public final class TermuxService extends Service implements AppShell.AppShellCli
                 TermuxPluginUtils.processPluginExecutionCommandResult(this, LOG_TAG, executionCommand);
 
             mShellManager.mTermuxSessions.remove(termuxSession);
+            termuxSession.getTerminalSession().disableTranscriptSpill();
 
             // Notify {@link TermuxSessionsListViewController} that sessions list has been updated if
             // activity in is foreground
@@ -662,6 +693,10 @@ public final class TermuxService extends Service implements AppShell.AppShellCli
 
 
 
+    private File getTerminalTranscriptSpillDirectory() {
+        return new File(getCacheDir(), TERMINAL_TRANSCRIPT_SPILL_DIRECTORY_NAME);
+    }
+
     private ShellCreateMode processShellCreateMode(@NonNull ExecutionCommand executionCommand) {
         if (ShellCreateMode.ALWAYS.equalsMode(executionCommand.shellCreateMode))
             return ShellCreateMode.ALWAYS; // Default
@@ -824,6 +859,15 @@ public final class TermuxService extends Service implements AppShell.AppShellCli
         // TermuxSessions are always ongoing
         builder.setOngoing(true);
 
+        // Show how many threads wait for the session processes to exit, and how long sessions take to handle their exits
+        ProcessReaper.Stats reaperStats = ProcessReaper.getStats();
+        if (reaperStats != null && reaperStats.watched > 0) {
+            builder.setSubText(String.format(Locale.US, "%d process%s on %d thread%s, exit latency %.1f ms",
+                reaperStats.watched, reaperStats.watched == 1 ? "" : "es",
+                reaperStats.threads, reaperStats.threads == 1 ? "" : "s",
+                reaperStats.getAverageExitLatencyNanos() / 1_000_000f));
+        }
+
 
         // Set Exit button action
         Intent exitIntent = new Intent(this, TermuxService.class).setAction(TERMUX_SERVICE.ACTION_STOP_SERVICE);
@@ -2,6 +2,8 @@ package com.termux.app.activities;
 
 import android.annotation.SuppressLint;
 import android.os.Bundle;
+import android.os.SystemClock;
+import android.text.TextUtils;
 import android.view.KeyEvent;
 import android.view.MenuItem;
 import android.view.View;
@@ -18,6 +20,7 @@ import androidx.appcompat.app.AppCompatActivity;
 
 import com.termux.R;
 import com.termux.app.utils.CodeServerManager;
+import com.termux.app.utils.CodeServerProbe;
 import com.termux.shared.logger.Logger;
 
 /**
@@ -26,16 +29,25 @@ import com.termux.shared.logger.Logger;
 public class CodeServerActivity extends AppCompatActivity {
 
     private static final String LOG_TAG = "CodeServerActivity";
+    /** The number of times to retry loading code-server after an error before giving up. */
+    private static final int MAX_RETRY_COUNT = 5;
+    /** The delay before the first retry, which is doubled for each retry. */
+    private static final long INITIAL_RETRY_DELAY_MS = 1000;
     
     private WebView mWebView;
     private ProgressBar mProgressBar;
     private CodeServerManager mCodeServerManager;
-    private String mCodeServerUrl = "http://127.0.0.1:8080";
+    private String mCodeServerUrl;
+    private CodeServerProbe mCodeServerProbe;
+    /** The time the activity was created, to measure the time until the editor has loaded. */
+    private long mCreateTime;
+    private boolean mEditorLoaded = false;
     
     @SuppressLint("SetJavaScriptEnabled")
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        mCreateTime = SystemClock.elapsedRealtime();
         
         // Make fullscreen - hide system UI
         enableFullscreen();
@@ -53,6 +65,7 @@ public class CodeServerActivity extends AppCompatActivity {
         
         // Initialize code-server manager
         mCodeServerManager = new CodeServerManager(this);
+        mCodeServerUrl = mCodeServerManager.getCodeServerUrl();
         
         // Setup WebView
         setupWebView();
@@ -92,11 +105,10 @@ public class CodeServerActivity extends AppCompatActivity {
         decorView.setSystemUiVisibility(uiOptions);
     }
     
-    // Retry logic variables
-    private static final int MAX_RETRY_COUNT = 10;
-    private static final int RETRY_DELAY_MS = 5000;
-    private int mRetryCount = 0;
     private boolean mIsLoading = false;
+    private boolean mLoadFailed = false;
+    private int mRetryCount = 0;
+    private final Runnable mRetryRunnable = this::waitForCodeServer;
 
     @SuppressLint("SetJavaScriptEnabled")
     private void setupWebView() {
@@ -122,18 +134,24 @@ public class CodeServerActivity extends AppCompatActivity {
             public void onPageFinished(WebView view, String url) {
                 super.onPageFinished(view, url);
                 mProgressBar.setVisibility(View.GONE);
+                if (mIsLoading && !mLoadFailed) {
+                    mRetryCount = 0;
+                    if (!mEditorLoaded) {
+                        mEditorLoaded = true;
+                        Logger.logInfo(LOG_TAG, "Time to editor: " + (SystemClock.elapsedRealtime() - mCreateTime) + " ms");
+                    }
+                }
                 mIsLoading = false;
-                mRetryCount = 0; // Reset retry count on success
             }
 
             @Override
             public void onReceivedError(WebView view, int errorCode, String description, String failingUrl) {
                 super.onReceivedError(view, errorCode, description, failingUrl);
                 Logger.logError(LOG_TAG, "WebView error: " + description);
-                Toast.makeText(CodeServerActivity.this,
-                        "Error loading code-server: " + description,
-                        Toast.LENGTH_LONG).show();
-                attemptRetry();
+                // The server may have gone away, so load again once it is ready
+                mIsLoading = false;
+                mLoadFailed = true;
+                attemptRetry("Error loading code-server: " + description);
             }
         });
 
@@ -150,35 +168,69 @@ public class CodeServerActivity extends AppCompatActivity {
             }
         });
 
-        // Initial load
-        loadCodeServerUrl();
+        // Load once code-server is ready
+        waitForCodeServer();
+    }
+
+    /**
+     * Probe code-server until it accepts connections and load it in the WebView as soon as it does
+     */
+    private void waitForCodeServer() {
+        if (mCodeServerProbe != null) mCodeServerProbe.cancel();
+        mProgressBar.setVisibility(View.VISIBLE);
+        mCodeServerProbe = mCodeServerManager.waitForCodeServer(CodeServerProbe.DEFAULT_PROBE_TIMEOUT_MS, new CodeServerProbe.Callback() {
+            @Override
+            public void onCodeServerReady(long elapsedMillis, int attempts) {
+                Logger.logInfo(LOG_TAG, "code-server ready after " + elapsedMillis + " ms (" + attempts + " attempts)");
+                mCodeServerProbe = null;
+                loadCodeServerUrl();
+            }
+
+            @Override
+            public void onCodeServerProbeTimedOut(long elapsedMillis, int attempts) {
+                Logger.logError(LOG_TAG, "code-server not ready after " + elapsedMillis + " ms (" + attempts + " attempts)");
+                mCodeServerProbe = null;
+                showError("Failed to connect to code-server after " + (elapsedMillis / 1000) + " seconds.");
+            }
+        });
     }
 
     private void loadCodeServerUrl() {
         if (!mIsLoading) {
             mIsLoading = true;
+            mLoadFailed = false;
             mWebView.loadUrl(mCodeServerUrl);
         }
     }
 
-    private void attemptRetry() {
+    /**
+     * Wait for code-server again after a load error with exponential backoff, or show the error
+     * once {@link #MAX_RETRY_COUNT} retries have failed
+     */
+    private void attemptRetry(String error) {
+        mWebView.removeCallbacks(mRetryRunnable);
         if (mRetryCount < MAX_RETRY_COUNT) {
+            long delay = INITIAL_RETRY_DELAY_MS << mRetryCount;
             mRetryCount++;
             mProgressBar.setVisibility(View.VISIBLE);
-            mWebView.postDelayed(new Runnable() {
-                @Override
-                public void run() {
-                    Logger.logInfo(LOG_TAG, "Retrying to load code-server (attempt " + mRetryCount + "/" + MAX_RETRY_COUNT + ")");
-                    loadCodeServerUrl();
-                }
-            }, RETRY_DELAY_MS);
+            Logger.logInfo(LOG_TAG, "Retrying to load code-server in " + delay + " ms (attempt " + mRetryCount + "/" + MAX_RETRY_COUNT + ")");
+            mWebView.postDelayed(mRetryRunnable, delay);
         } else {
-            Toast.makeText(CodeServerActivity.this,
-                    "Failed to connect to code-server after " + MAX_RETRY_COUNT + " attempts.",
-                    Toast.LENGTH_LONG).show();
-            mProgressBar.setVisibility(View.GONE);
+            showError(error + "\nGave up after " + MAX_RETRY_COUNT + " retries.");
         }
     }
+
+    /**
+     * Show the error in the WebView instead of the blank page of the failed load
+     */
+    private void showError(String error) {
+        Logger.logError(LOG_TAG, error);
+        mProgressBar.setVisibility(View.GONE);
+        Toast.makeText(CodeServerActivity.this, error, Toast.LENGTH_LONG).show();
+        mWebView.loadDataWithBaseURL(null,
+                "<html><body><pre style=\"white-space: pre-wrap\">" + TextUtils.htmlEncode(error) + "</pre></body></html>",
+                "text/html", "UTF-8", null);
+    }
     
 
     
@@ -220,7 +272,12 @@ public class CodeServerActivity extends AppCompatActivity {
     
     @Override
     protected void onDestroy() {
+        if (mCodeServerProbe != null) {
+            mCodeServerProbe.cancel();
+            mCodeServerProbe = null;
+        }
         if (mWebView != null) {
+            mWebView.removeCallbacks(mRetryRunnable);
             mWebView.destroy();
         }
         super.onDestroy();
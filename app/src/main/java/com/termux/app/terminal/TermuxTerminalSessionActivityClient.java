@@ -74,6 +74,10 @@ public class TermuxTerminalSessionActivityClient extends TermuxTerminalSessionCl
             termuxSessionListNotifyUpdated();
         }
 
+        // The output of the current terminal session was appended in the background while away
+        TerminalSession currentSession = mActivity.getCurrentSession();
+        if (currentSession != null) currentSession.setBackground(false);
+
         // The current terminal session may have changed while being away, force
         // a refresh of the displayed terminal.
         mActivity.getTerminalView().onScreenUpdated();
@@ -97,6 +101,11 @@ public class TermuxTerminalSessionActivityClient extends TermuxTerminalSessionCl
         // {@link #onStart} if needed.
         setCurrentStoredSession();
 
+        // Append the output of the current terminal session in the background while away, so it
+        // does not compete for the main thread with whatever is shown instead
+        TerminalSession currentSession = mActivity.getCurrentSession();
+        if (currentSession != null) currentSession.setBackground(true);
+
         // Release mBellSoundPool resources, specially to prevent exceptions like the following to be thrown
         // java.util.concurrent.TimeoutException: android.media.SoundPool.finalize() timed out after 10 seconds
         // Bell is not played in background anyways
@@ -192,8 +201,9 @@ public class TermuxTerminalSessionActivityClient extends TermuxTerminalSessionCl
         if (!mActivity.isVisible()) return;
 
         String text = ShareUtils.getTextStringFromClipboardIfSet(mActivity, true);
-        if (text != null)
-            mActivity.getTerminalView().mEmulator.paste(text);
+        TerminalSession currentSession = mActivity.getTerminalView().getCurrentSession();
+        if (text != null && currentSession != null)
+            currentSession.paste(text);
     }
 
     @Override
@@ -506,7 +516,7 @@ public class TermuxTerminalSessionActivityClient extends TermuxTerminalSessionCl
             TerminalColors.COLOR_SCHEME.updateWith(props);
             TerminalSession session = mActivity.getCurrentSession();
             if (session != null && session.getEmulator() != null) {
-                session.getEmulator().mColors.reset();
+                session.resetColors();
             }
             updateBackgroundColor();
 
@@ -19,6 +19,8 @@ import android.widget.Toast;
 
 import com.termux.R;
 import com.termux.app.TermuxActivity;
+import com.termux.app.TermuxOpenReceiver;
+import com.termux.shared.errors.Error;
 import com.termux.shared.file.FileUtils;
 import com.termux.shared.interact.MessageDialogUtils;
 import com.termux.shared.interact.ShareUtils;
@@ -36,6 +38,7 @@ import com.termux.shared.termux.settings.properties.TermuxPropertyConstants;
 import com.termux.shared.data.DataUtils;
 import com.termux.shared.logger.Logger;
 import com.termux.shared.markdown.MarkdownUtils;
+import com.termux.shared.net.uri.UriUtils;
 import com.termux.shared.termux.TermuxUtils;
 import com.termux.shared.termux.data.TermuxUrlUtils;
 import com.termux.shared.view.KeyboardUtils;
@@ -44,6 +47,9 @@ import com.termux.terminal.KeyHandler;
 import com.termux.terminal.TerminalEmulator;
 import com.termux.terminal.TerminalSession;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -73,6 +79,9 @@ public class TermuxTerminalViewClient extends TermuxTerminalViewClientBase {
 
     private static final String LOG_TAG = "TermuxTerminalViewClient";
 
+    /** The basename of the file in the shared files directory a session transcript is written to for sharing. */
+    private static final String TRANSCRIPT_FILE_BASENAME = TermuxConstants.TERMUX_APP_NAME + "-transcript.txt";
+
     public TermuxTerminalViewClient(TermuxActivity activity, TermuxTerminalSessionActivityClient termuxTerminalSessionActivityClient) {
         this.mActivity = activity;
         this.mTermuxTerminalSessionActivityClient = termuxTerminalSessionActivityClient;
@@ -184,11 +193,16 @@ public class TermuxTerminalViewClient extends TermuxTerminalViewClientBase {
 
     @Override
     public void onSingleTapUp(MotionEvent e) {
-        TerminalEmulator term = mActivity.getCurrentSession().getEmulator();
+        TerminalSession session = mActivity.getCurrentSession();
+        TerminalEmulator term = session.getEmulator();
 
         if (mActivity.getProperties().shouldOpenTerminalTranscriptURLOnClick()) {
             int[] columnAndRow = mActivity.getTerminalView().getColumnAndRow(e, true);
-            String wordAtTap = term.getScreen().getWordAtLocation(columnAndRow[0], columnAndRow[1]);
+            String wordAtTap;
+            // Output may be appended on another thread, see TerminalSession#getEmulatorLock()
+            synchronized (session.getEmulatorLock()) {
+                wordAtTap = term.getScreen().getWordAtLocation(columnAndRow[0], columnAndRow[1]);
+            }
             LinkedHashSet<CharSequence> urlSet = TermuxUrlUtils.extractUrls(wordAtTap);
 
             if (!urlSet.isEmpty()) {
@@ -675,13 +689,26 @@ public class TermuxTerminalViewClient extends TermuxTerminalViewClientBase {
         TerminalSession session = mActivity.getCurrentSession();
         if (session == null) return;
 
-        String transcriptText = ShellUtils.getTerminalSessionTranscriptText(session, false, true);
-        if (transcriptText == null) return;
+        // The transcript is streamed to a file shared by uri instead of being shared as text, since
+        // it would need to be truncated to fit in the intent, see https://github.com/termux/termux-app/issues/1166.
+        String sharedFilesDirPath = TermuxOpenReceiver.ContentProvider.getSharedFilesDirPath(mActivity);
+        Error error = FileUtils.createDirectoryFile(sharedFilesDirPath);
+        if (error != null) {
+            Logger.logErrorExtended(LOG_TAG, error.toString());
+            return;
+        }
+
+        File transcriptFile = new File(sharedFilesDirPath, TRANSCRIPT_FILE_BASENAME);
+        try (FileOutputStream outputStream = new FileOutputStream(transcriptFile)) {
+            if (!ShellUtils.writeTerminalSessionTranscriptText(session, false, outputStream.getChannel())) return;
+        } catch (IOException e) {
+            Logger.logStackTraceWithMessage(LOG_TAG, "Failed to write transcript to \"" + transcriptFile.getAbsolutePath() + "\"", e);
+            return;
+        }
 
-        // See https://github.com/termux/termux-app/issues/1166.
-        transcriptText = DataUtils.getTruncatedCommandOutput(transcriptText, DataUtils.TRANSACTION_SIZE_LIMIT_IN_BYTES, false, true, false).trim();
-        ShareUtils.shareText(mActivity, mActivity.getString(R.string.title_share_transcript),
-            transcriptText, mActivity.getString(R.string.title_share_transcript_with));
+        ShareUtils.shareStream(mActivity, mActivity.getString(R.string.title_share_transcript),
+            UriUtils.getContentUri(TermuxConstants.TERMUX_FILE_SHARE_URI_AUTHORITY, transcriptFile.getAbsolutePath()),
+            "text/plain", mActivity.getString(R.string.title_share_transcript_with));
     }
 
     public void shareSelectedText() {
@@ -796,7 +823,7 @@ public class TermuxTerminalViewClient extends TermuxTerminalViewClientBase {
 
         String text = ShareUtils.getTextStringFromClipboardIfSet(mActivity, true);
         if (text != null)
-            session.getEmulator().paste(text);
+            session.paste(text);
     }
 
 }
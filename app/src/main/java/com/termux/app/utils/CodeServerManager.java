@@ -2,7 +2,10 @@ package com.termux.app.utils;
 
 import android.content.Context;
 
+import androidx.annotation.NonNull;
+
 import com.termux.shared.logger.Logger;
+import com.termux.shared.termux.TermuxConstants;
 
 import java.io.BufferedReader;
 import java.io.File;
@@ -14,6 +17,7 @@ import java.io.InputStreamReader;
 public class CodeServerManager {
 
     private static final String LOG_TAG = "CodeServerManager";
+    private static final String CODE_SERVER_HOST = "127.0.0.1";
     private static final int CODE_SERVER_PORT = 8080;
     
     private final Context mContext;
@@ -26,38 +30,32 @@ public class CodeServerManager {
      * Check if code-server is installed
      */
     public boolean isCodeServerInstalled() {
-        try {
-            Process process = Runtime.getRuntime().exec("which code-server");
-            BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
-            String line = reader.readLine();
-            process.waitFor();
-            
-            boolean installed = line != null && !line.isEmpty();
-            Logger.logInfo(LOG_TAG, "code-server installed: " + installed);
-            return installed;
-        } catch (Exception e) {
-            Logger.logStackTraceWithMessage(LOG_TAG, "Error checking code-server installation", e);
-            return false;
-        }
+        File codeServerFile = new File(TermuxConstants.TERMUX_BIN_PREFIX_DIR_PATH, "code-server");
+        boolean installed = codeServerFile.isFile() && codeServerFile.canExecute();
+        Logger.logInfo(LOG_TAG, "code-server installed: " + installed);
+        return installed;
     }
 
     /**
-     * Check if code-server is currently running
+     * Check if code-server is currently running, that is if it accepts connections on its port
      */
     public boolean isCodeServerRunning() {
-        try {
-            Process process = Runtime.getRuntime().exec("pgrep -f code-server");
-            BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
-            String line = reader.readLine();
-            process.waitFor();
-            
-            boolean running = line != null && !line.isEmpty();
-            Logger.logInfo(LOG_TAG, "code-server running: " + running);
-            return running;
-        } catch (Exception e) {
-            Logger.logStackTraceWithMessage(LOG_TAG, "Error checking code-server status", e);
-            return false;
-        }
+        boolean running = CodeServerProbe.isReady(CODE_SERVER_HOST, CODE_SERVER_PORT, false);
+        Logger.logInfo(LOG_TAG, "code-server running: " + running);
+        return running;
+    }
+
+    /**
+     * Wait in the background for code-server to accept connections and be healthy
+     *
+     * @param timeoutMillis The time after which to give up.
+     * @param callback The callback notified on the main thread.
+     * @return Returns the started probe, which should be cancelled if the result is no longer needed.
+     */
+    public CodeServerProbe waitForCodeServer(long timeoutMillis, @NonNull CodeServerProbe.Callback callback) {
+        CodeServerProbe probe = new CodeServerProbe(CODE_SERVER_HOST, CODE_SERVER_PORT);
+        probe.start(timeoutMillis, callback);
+        return probe;
     }
 
     /**
@@ -94,92 +92,11 @@ public class CodeServerManager {
         }
     }
 
-    /**
-     * Start code-server in the background
-     */
-    public boolean startCodeServer() {
-        try {
-            Logger.logInfo(LOG_TAG, "Starting code-server on port " + CODE_SERVER_PORT);
-            
-            // Create code-server config directory if it doesn't exist
-            String configDir = getCodeServerConfigDir();
-            File configDirFile = new File(configDir);
-            if (!configDirFile.exists()) {
-                configDirFile.mkdirs();
-            }
-            
-            // Create a simple config file
-            createCodeServerConfig(configDir);
-            
-            // Start code-server in background
-            String startCmd = "nohup code-server --bind-addr 127.0.0.1:" + CODE_SERVER_PORT + 
-                             " --auth none --disable-telemetry > /dev/null 2>&1 &";
-            
-            Process process = Runtime.getRuntime().exec(new String[]{"sh", "-c", startCmd});
-            
-            // Give it a moment to start
-            Thread.sleep(1000);
-            
-            boolean started = isCodeServerRunning();
-            Logger.logInfo(LOG_TAG, "code-server started: " + started);
-            return started;
-        } catch (Exception e) {
-            Logger.logStackTraceWithMessage(LOG_TAG, "Error starting code-server", e);
-            return false;
-        }
-    }
-
-    /**
-     * Stop code-server
-     */
-    public boolean stopCodeServer() {
-        try {
-            Logger.logInfo(LOG_TAG, "Stopping code-server...");
-            Process process = Runtime.getRuntime().exec("pkill -f code-server");
-            int exitCode = process.waitFor();
-            
-            boolean stopped = !isCodeServerRunning();
-            Logger.logInfo(LOG_TAG, "code-server stopped: " + stopped);
-            return stopped;
-        } catch (Exception e) {
-            Logger.logStackTraceWithMessage(LOG_TAG, "Error stopping code-server", e);
-            return false;
-        }
-    }
-
     /**
      * Get the code-server URL
      */
     public String getCodeServerUrl() {
-        return "http://127.0.0.1:" + CODE_SERVER_PORT;
-    }
-
-    /**
-     * Get code-server config directory
-     */
-    private String getCodeServerConfigDir() {
-        return "/data/data/com.termux/files/home/.config/code-server";
-    }
-
-    /**
-     * Create code-server configuration file
-     */
-    private void createCodeServerConfig(String configDir) {
-        try {
-            String configContent = "bind-addr: 127.0.0.1:" + CODE_SERVER_PORT + "\n" +
-                                  "auth: none\n" +
-                                  "cert: false\n";
-            
-            String configPath = configDir + "/config.yaml";
-            Process process = Runtime.getRuntime().exec(new String[]{
-                "sh", "-c", "echo '" + configContent + "' > " + configPath
-            });
-            process.waitFor();
-            
-            Logger.logInfo(LOG_TAG, "Created config file at: " + configPath);
-        } catch (Exception e) {
-            Logger.logStackTraceWithMessage(LOG_TAG, "Error creating config file", e);
-        }
+        return "http://" + CODE_SERVER_HOST + ":" + CODE_SERVER_PORT;
     }
 
     /**
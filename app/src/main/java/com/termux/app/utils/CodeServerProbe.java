@@ -0,0 +1,146 @@
+package com.termux.app.utils;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+
+import com.termux.shared.logger.Logger;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * In-process readiness probe for code-server.
+ *
+ * Each attempt does a non-blocking TCP connect to the port followed by a `GET /healthz` on the same
+ * connection, and the probe is retried with exponential backoff until code-server answers with a
+ * 2xx status or the probe times out. The result is delivered once on the main thread.
+ */
+public class CodeServerProbe {
+
+    private static final String LOG_TAG = "CodeServerProbe";
+
+    /** The delay before the first retry, which is doubled for each retry up to {@link #MAX_RETRY_DELAY_MS}. */
+    private static final long INITIAL_RETRY_DELAY_MS = 50;
+    private static final long MAX_RETRY_DELAY_MS = 1000;
+    /** The time a single connect or http request may take. */
+    private static final int ATTEMPT_TIMEOUT_MS = 1000;
+    /** The time after which the probe gives up. */
+    public static final long DEFAULT_PROBE_TIMEOUT_MS = 60000;
+
+    private static final String HEALTHZ_PATH = "/healthz";
+
+    public interface Callback {
+        /** Called on the main thread once code-server accepts connections and is healthy. */
+        void onCodeServerReady(long elapsedMillis, int attempts);
+
+        /** Called on the main thread if code-server did not become ready before the probe timed out. */
+        void onCodeServerProbeTimedOut(long elapsedMillis, int attempts);
+    }
+
+    private final String mHost;
+    private final int mPort;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private volatile boolean mCancelled;
+    private Thread mThread;
+
+    public CodeServerProbe(@NonNull String host, int port) {
+        mHost = host;
+        mPort = port;
+    }
+
+    /**
+     * Start probing in a background thread. The probe can only be started once.
+     *
+     * @param timeoutMillis The time after which to give up.
+     * @param callback The callback notified on the main thread unless the probe is cancelled first.
+     */
+    public synchronized void start(long timeoutMillis, @NonNull Callback callback) {
+        if (mThread != null) throw new IllegalStateException("Probe already started");
+        mThread = new Thread(() -> run(timeoutMillis, callback), LOG_TAG);
+        mThread.setDaemon(true);
+        mThread.start();
+    }
+
+    /** Stop probing without notifying the callback. */
+    public synchronized void cancel() {
+        mCancelled = true;
+        if (mThread != null) mThread.interrupt();
+    }
+
+    private void run(long timeoutMillis, Callback callback) {
+        final long startTime = SystemClock.elapsedRealtime();
+        long retryDelay = INITIAL_RETRY_DELAY_MS;
+        int attempts = 0;
+
+        while (!mCancelled) {
+            attempts++;
+            final boolean ready = isReady(mHost, mPort, true);
+            final long elapsed = SystemClock.elapsedRealtime() - startTime;
+            if (ready || elapsed + retryDelay > timeoutMillis) {
+                final int finalAttempts = attempts;
+                Logger.logDebug(LOG_TAG, "code-server " + (ready ? "ready" : "not ready") + " after " + elapsed + " ms and " + attempts + " attempts");
+                mMainHandler.post(() -> {
+                    if (mCancelled) return;
+                    if (ready)
+                        callback.onCodeServerReady(elapsed, finalAttempts);
+                    else
+                        callback.onCodeServerProbeTimedOut(elapsed, finalAttempts);
+                });
+                return;
+            }
+
+            try {
+                Thread.sleep(retryDelay);
+            } catch (InterruptedException e) {
+                return;
+            }
+            retryDelay = Math.min(2 * retryDelay, MAX_RETRY_DELAY_MS);
+        }
+    }
+
+    /**
+     * Check once if code-server accepts connections on the specified port, and if {@code checkHealth}
+     * is {@code true}, also if it answers {@link #HEALTHZ_PATH} with a 2xx status.
+     */
+    public static boolean isReady(@NonNull String host, int port, boolean checkHealth) {
+        try (Selector selector = Selector.open(); SocketChannel channel = SocketChannel.open()) {
+            channel.configureBlocking(false);
+            if (!channel.connect(new InetSocketAddress(host, port))) {
+                channel.register(selector, SelectionKey.OP_CONNECT);
+                if (selector.select(ATTEMPT_TIMEOUT_MS) == 0 || !channel.finishConnect()) return false;
+            }
+            if (!checkHealth) return true;
+
+            final ByteBuffer request = ByteBuffer.wrap(("GET " + HEALTHZ_PATH + " HTTP/1.0\r\nHost: " + host + ":" + port +
+                "\r\nConnection: close\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+            final SelectionKey key = channel.register(selector, SelectionKey.OP_WRITE);
+            while (request.hasRemaining()) {
+                if (selector.select(ATTEMPT_TIMEOUT_MS) == 0) return false;
+                selector.selectedKeys().clear();
+                channel.write(request);
+            }
+
+            // Only the status line is needed, e.g. "HTTP/1.1 200 OK":
+            final ByteBuffer response = ByteBuffer.allocate(64);
+            key.interestOps(SelectionKey.OP_READ);
+            while (response.position() < 12) {
+                if (selector.select(ATTEMPT_TIMEOUT_MS) == 0) return false;
+                selector.selectedKeys().clear();
+                if (channel.read(response) < 0) break;
+            }
+            final String statusLine = new String(response.array(), 0, response.position(), StandardCharsets.US_ASCII);
+            return statusLine.startsWith("HTTP/") && statusLine.length() >= 12 && statusLine.charAt(9) == '2';
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+}
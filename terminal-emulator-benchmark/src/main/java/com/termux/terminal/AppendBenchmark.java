@@ -0,0 +1,53 @@
+package com.termux.terminal;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The time taken by {@link TerminalEmulator#append(byte[], int)} to process a {@link Corpus} of output, which divided
+ * into {@link Corpus#SIZE} gives the throughput of the emulator for output like it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class AppendBenchmark {
+
+    @Param({Corpus.ASCII_LOG, Corpus.SGR_COLORS, Corpus.CJK, Corpus.VIM_REDRAW, Corpus.HTOP})
+    public String corpus;
+
+    private Corpus mCorpus;
+    private TerminalEmulator mEmulator;
+
+    @Setup(Level.Trial)
+    public void generateCorpus() {
+        mCorpus = Corpus.generate(corpus, BenchmarkTerminal.COLUMNS, BenchmarkTerminal.ROWS);
+        mEmulator = BenchmarkTerminal.create(BenchmarkTerminal.COLUMNS, BenchmarkTerminal.ROWS,
+            TerminalEmulator.DEFAULT_TERMINAL_TRANSCRIPT_ROWS);
+        // Fill the transcript, so that rows are recycled as they are for a session which has been used for a while:
+        final TerminalBuffer screen = mEmulator.getScreen();
+        while (screen.getActiveRows() < screen.mTotalRows && !mEmulator.isAlternateBufferActive())
+            mCorpus.appendTo(mEmulator);
+    }
+
+    @Benchmark
+    public TerminalEmulator append() {
+        mCorpus.appendTo(mEmulator);
+        return mEmulator;
+    }
+
+}
@@ -0,0 +1,66 @@
+package com.termux.terminal;
+
+/**
+ * Creates terminal emulators for benchmarks, which discard what they write back to the process and what they log, so
+ * that no Android framework classes are needed.
+ */
+final class BenchmarkTerminal {
+
+    static final int COLUMNS = 80;
+    static final int ROWS = 24;
+
+    private static final int CELL_WIDTH_PIXELS = 12;
+    private static final int CELL_HEIGHT_PIXELS = 24;
+
+    private BenchmarkTerminal() {
+    }
+
+    static TerminalEmulator create(int columns, int rows, int transcriptRows) {
+        return new TerminalEmulator(new NoOpOutput(), columns, rows, CELL_WIDTH_PIXELS, CELL_HEIGHT_PIXELS,
+            transcriptRows, new NoOpClient());
+    }
+
+    /** Create an emulator of the default size with its transcript filled with a corpus. */
+    static TerminalEmulator createWithFullTranscript(String corpus) {
+        TerminalEmulator emulator = create(COLUMNS, ROWS, TerminalEmulator.DEFAULT_TERMINAL_TRANSCRIPT_ROWS);
+        Corpus output = Corpus.generate(corpus, COLUMNS, ROWS);
+        final TerminalBuffer screen = emulator.getScreen();
+        while (screen.getActiveRows() < screen.mTotalRows) output.appendTo(emulator);
+        return emulator;
+    }
+
+    static void resize(TerminalEmulator emulator, int columns, int rows) {
+        emulator.resize(columns, rows, CELL_WIDTH_PIXELS, CELL_HEIGHT_PIXELS);
+    }
+
+    private static final class NoOpOutput extends TerminalOutput {
+        @Override public void write(byte[] data, int offset, int count) { }
+        @Override public void titleChanged(String oldTitle, String newTitle) { }
+        @Override public void onCopyTextToClipboard(String text) { }
+        @Override public void onPasteTextFromClipboard() { }
+        @Override public void onBell() { }
+        @Override public void onColorsChanged() { }
+        @Override public void onTerminalCursorStateChange(boolean state) { }
+    }
+
+    private static final class NoOpClient implements TerminalSessionClient {
+        @Override public void onTextChanged(TerminalSession changedSession) { }
+        @Override public void onTitleChanged(TerminalSession changedSession) { }
+        @Override public void onSessionFinished(TerminalSession finishedSession) { }
+        @Override public void onCopyTextToClipboard(TerminalSession session, String text) { }
+        @Override public void onPasteTextFromClipboard(TerminalSession session) { }
+        @Override public void onBell(TerminalSession session) { }
+        @Override public void onColorsChanged(TerminalSession session) { }
+        @Override public void onTerminalCursorStateChange(boolean state) { }
+        @Override public void setTerminalShellPid(TerminalSession session, int pid) { }
+        @Override public Integer getTerminalCursorStyle() { return null; }
+        @Override public void logError(String tag, String message) { }
+        @Override public void logWarn(String tag, String message) { }
+        @Override public void logInfo(String tag, String message) { }
+        @Override public void logDebug(String tag, String message) { }
+        @Override public void logVerbose(String tag, String message) { }
+        @Override public void logStackTraceWithMessage(String tag, String message, Exception e) { }
+        @Override public void logStackTrace(String tag, Exception e) { }
+    }
+
+}
@@ -0,0 +1,224 @@
+package com.termux.terminal;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Generated process output resembling that of common programs, split into chunks of the size output is read from the
+ * terminal in. The output is generated from a fixed seed, so it is the same for every run.
+ */
+final class Corpus {
+
+    /** Plain ASCII log lines, some of which wrap. */
+    static final String ASCII_LOG = "ascii-log";
+    /** Colored compiler and ls output, using basic, 256 and true color SGR sequences. */
+    static final String SGR_COLORS = "sgr-colors";
+    /** Chinese and Japanese text of wide characters mixed with some ASCII. */
+    static final String CJK = "cjk";
+    /** Full-screen redraws and scrolling of a syntax highlighted file in vim on the alternate screen. */
+    static final String VIM_REDRAW = "vim-redraw";
+    /** The meters and process list of htop, updated with cursor addressing on the alternate screen. */
+    static final String HTOP = "htop";
+
+    /** The approximate size in bytes of each corpus. */
+    static final int SIZE = 256 * 1024;
+    private static final int CHUNK_SIZE = TerminalSession.DEFAULT_PTY_READ_BUFFER_SIZE;
+
+    private static final String ESC = "\033";
+    private static final String[] WORDS = {"buffer", "session", "terminal", "render", "process", "request", "worker",
+        "config", "socket", "module", "update", "result", "return", "static", "final", "value", "index", "cursor"};
+    private static final String[] KEYWORDS = {"if", "for", "while", "return", "static", "int", "char", "void", "struct"};
+
+    private final byte[][] mChunks;
+    private final int mSize;
+
+    private Corpus(byte[] output) {
+        mSize = output.length;
+        mChunks = new byte[(output.length + CHUNK_SIZE - 1) / CHUNK_SIZE][];
+        for (int i = 0; i < mChunks.length; i++)
+            mChunks[i] = Arrays.copyOfRange(output, i * CHUNK_SIZE, Math.min(output.length, (i + 1) * CHUNK_SIZE));
+    }
+
+    /** The size of the corpus in bytes. */
+    int getSize() {
+        return mSize;
+    }
+
+    /** Append the whole corpus to an emulator a chunk at a time, as a session does. */
+    void appendTo(TerminalEmulator emulator) {
+        for (byte[] chunk : mChunks) emulator.append(chunk, chunk.length);
+    }
+
+    static Corpus generate(String name, int columns, int rows) {
+        final Random random = new Random(42);
+        final StringBuilder output = new StringBuilder();
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(SIZE + CHUNK_SIZE);
+        for (int frame = 0; bytes.size() < SIZE; frame++) {
+            output.setLength(0);
+            switch (name) {
+                case ASCII_LOG: appendLogLine(output, random); break;
+                case SGR_COLORS: appendColoredLine(output, random); break;
+                case CJK: appendCjkLine(output, random); break;
+                case VIM_REDRAW: appendVimFrame(output, random, frame, columns, rows); break;
+                case HTOP: appendHtopFrame(output, random, frame, columns, rows); break;
+                default: throw new IllegalArgumentException("Unknown corpus: " + name);
+            }
+            byte[] encoded = output.toString().getBytes(StandardCharsets.UTF_8);
+            bytes.write(encoded, 0, encoded.length);
+        }
+        return new Corpus(bytes.toByteArray());
+    }
+
+    private static String word(Random random) {
+        return WORDS[random.nextInt(WORDS.length)];
+    }
+
+    private static void appendLogLine(StringBuilder output, Random random) {
+        final String[] levels = {"DEBUG", "INFO ", "INFO ", "INFO ", "WARN ", "ERROR"};
+        output.append(String.format(Locale.ROOT, "2026-10-18 %02d:%02d:%02d.%03d %s [worker-%d] com.termux.%s.%s: ",
+            random.nextInt(24), random.nextInt(60), random.nextInt(60), random.nextInt(1000),
+            levels[random.nextInt(levels.length)], random.nextInt(8), word(random), word(random)));
+        for (int i = 0, words = 2 + random.nextInt(10); i < words; i++) output.append(word(random)).append(' ');
+        output.append("id=").append(random.nextInt(1000000)).append(" in ").append(random.nextInt(500)).append(" ms\r\n");
+    }
+
+    private static void appendSgr(StringBuilder output, Random random) {
+        switch (random.nextInt(5)) {
+            case 0: output.append(ESC).append('[').append(30 + random.nextInt(8)).append('m'); break;
+            case 1: output.append(ESC).append("[1;").append(90 + random.nextInt(8)).append('m'); break;
+            case 2: output.append(ESC).append("[38;5;").append(random.nextInt(256)).append('m'); break;
+            case 3: output.append(ESC).append("[38;2;").append(random.nextInt(256)).append(';')
+                .append(random.nextInt(256)).append(';').append(random.nextInt(256)).append('m'); break;
+            default: output.append(ESC).append("[4;").append(40 + random.nextInt(8)).append('m'); break;
+        }
+    }
+
+    private static void appendColoredLine(StringBuilder output, Random random) {
+        if (random.nextBoolean()) {
+            // Like a compiler diagnostic:
+            output.append(ESC).append("[1msrc/").append(word(random)).append(".c:").append(random.nextInt(999))
+                .append(':').append(random.nextInt(80)).append(": ").append(ESC).append("[1;35mwarning: ")
+                .append(ESC).append("[0m").append(ESC).append("[1m");
+            for (int i = 0, words = 3 + random.nextInt(6); i < words; i++) output.append(word(random)).append(' ');
+            output.append(ESC).append("[0m\r\n");
+        } else {
+            // Like colored ls output:
+            for (int i = 0, files = 3 + random.nextInt(4); i < files; i++) {
+                appendSgr(output, random);
+                output.append(word(random)).append('.').append(word(random), 0, 3).append(ESC).append("[0m  ");
+            }
+            output.append("\r\n");
+        }
+    }
+
+    private static void appendCjkLine(StringBuilder output, Random random) {
+        for (int i = 0, length = 10 + random.nextInt(40); i < length; i++) {
+            int kind = random.nextInt(10);
+            if (kind < 6) {
+                output.appendCodePoint(0x4E00 + random.nextInt(0x9FFF - 0x4E00));
+            } else if (kind < 8) {
+                output.appendCodePoint(0x3041 + random.nextInt(0x3096 - 0x3041));
+            } else if (kind < 9) {
+                output.append(word(random)).append(' ');
+            } else {
+                output.append('。');
+            }
+        }
+        output.append("\r\n");
+    }
+
+    /** Append a line of syntax highlighted code of at most the specified number of columns. */
+    private static void appendCodeLine(StringBuilder output, Random random, int columns) {
+        int column = 0;
+        for (int indent = random.nextInt(4); indent > 0; indent--, column += 4) output.append("    ");
+        while (column < columns - 12 && random.nextInt(8) != 0) {
+            final String token;
+            final int kind = random.nextInt(4);
+            if (kind == 0) {
+                token = KEYWORDS[random.nextInt(KEYWORDS.length)];
+                output.append(ESC).append("[38;5;170m").append(token).append(ESC).append("[m ");
+            } else if (kind == 1) {
+                token = "\"" + word(random) + "\"";
+                output.append(ESC).append("[32m").append(token).append(ESC).append("[m ");
+            } else {
+                token = word(random) + (random.nextBoolean() ? "();" : ",");
+                output.append(token).append(' ');
+            }
+            column += token.length() + 1;
+        }
+        output.append(ESC).append("[K");
+    }
+
+    private static void appendVimFrame(StringBuilder output, Random random, int frame, int columns, int rows) {
+        if (frame == 0) output.append(ESC).append("[?1049h");
+        output.append(ESC).append("[?25l");
+        final int textRows = rows - 2;
+        if (frame % 10 == 0) {
+            // Redraw the whole screen, like after a jump:
+            output.append(ESC).append("[H").append(ESC).append("[2J");
+            for (int row = 1; row <= textRows; row++) {
+                output.append(ESC).append('[').append(row).append(";1H").append(ESC).append("[33m")
+                    .append(String.format(Locale.ROOT, "%4d ", frame * textRows + row)).append(ESC).append("[m");
+                appendCodeLine(output, random, columns - 5);
+            }
+        } else {
+            // Scroll the text up a line in the scroll region and draw the new last line, like for ctrl-e:
+            output.append(ESC).append("[1;").append(textRows).append('r').append(ESC).append('[').append(textRows)
+                .append(";1H\n").append(ESC).append("[r").append(ESC).append('[').append(textRows).append(";1H")
+                .append(ESC).append("[33m").append(String.format(Locale.ROOT, "%4d ", frame)).append(ESC).append("[m");
+            appendCodeLine(output, random, columns - 5);
+        }
+        output.append(ESC).append('[').append(rows - 1).append(";1H").append(ESC).append("[7m src/")
+            .append(word(random)).append(".c [+]");
+        for (int i = 15; i < columns - 20; i++) output.append(' ');
+        output.append(String.format(Locale.ROOT, "%5d,%-3d %3d%% ", frame, random.nextInt(80), random.nextInt(100)))
+            .append(ESC).append("[m").append(ESC).append("[K");
+        output.append(ESC).append('[').append(1 + random.nextInt(textRows)).append(';').append(6 + random.nextInt(40))
+            .append('H').append(ESC).append("[?25h");
+    }
+
+    private static void appendHtopFrame(StringBuilder output, Random random, int frame, int columns, int rows) {
+        if (frame == 0) output.append(ESC).append("[?1049h").append(ESC).append("[H").append(ESC).append("[2J");
+        final int meterWidth = columns / 2 - 12;
+        // The CPU and memory meters:
+        for (int cpu = 0; cpu < 4; cpu++) {
+            int used = random.nextInt(meterWidth);
+            int kernel = random.nextInt(meterWidth - used + 1);
+            output.append(ESC).append('[').append(cpu + 1).append(";3H").append(ESC).append("[36m").append(cpu)
+                .append(ESC).append("[1;39m[").append(ESC).append("[32m");
+            for (int i = 0; i < used; i++) output.append('|');
+            output.append(ESC).append("[31m");
+            for (int i = 0; i < kernel; i++) output.append('|');
+            for (int i = used + kernel; i < meterWidth; i++) output.append(' ');
+            output.append(ESC).append("[90m").append(String.format(Locale.ROOT, "%5.1f%%", random.nextFloat() * 100))
+                .append(ESC).append("[1;39m]").append(ESC).append("[m");
+        }
+        output.append(ESC).append("[6;1H").append(ESC).append("[30;42m    PID USER      PRI  NI  VIRT   RES S CPU% MEM%   TIME+  Command")
+            .append(ESC).append("[K").append(ESC).append("[m");
+        // The rows of the process list that changed:
+        final int selectedRow = 7 + frame % (rows - 8);
+        for (int row = 7; row < rows; row++) {
+            if (row != selectedRow && random.nextInt(3) != 0) continue;
+            output.append(ESC).append('[').append(row).append(";1H");
+            if (row == selectedRow) output.append(ESC).append("[30;46m");
+            output.append(String.format(Locale.ROOT, "%7d u0_a123   20   0 %5dM %5dM S %4.1f %4.1f %2d:%05.2f ",
+                1000 + row * 37, random.nextInt(9000), random.nextInt(900), random.nextFloat() * 100,
+                random.nextFloat() * 10, random.nextInt(60), random.nextFloat() * 60));
+            if (row != selectedRow) output.append(ESC).append("[32m");
+            output.append(word(random)).append(ESC).append("[m ").append(ESC).append("[37m--").append(word(random))
+                .append(ESC).append("[K").append(ESC).append("[m");
+        }
+        // The function key bar:
+        output.append(ESC).append('[').append(rows).append(";1H");
+        final String[] keys = {"F1", "F2", "F3", "F5", "F9", "F10"};
+        final String[] labels = {"Help", "Setup", "Search", "Tree", "Kill", "Quit"};
+        for (int i = 0; i < keys.length; i++)
+            output.append(ESC).append("[30;46m").append(keys[i]).append(ESC).append("[39;49m").append(labels[i])
+                .append("  ");
+        output.append(ESC).append("[K");
+    }
+
+}
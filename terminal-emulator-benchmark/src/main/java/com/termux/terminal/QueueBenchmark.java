@@ -0,0 +1,116 @@
+package com.termux.terminal;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The time taken to hand over {@link #TRANSFER_SIZE} bytes of process output from the thread reading it from the
+ * terminal to the thread appending it to the emulator, through a {@link ByteQueue} of a fixed size, one which may grow
+ * and a {@link PtyChunkQueue}. The producer writes in chunks of {@link TerminalSession#DEFAULT_PTY_READ_BUFFER_SIZE}
+ * bytes like the thread reading from the terminal does.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class QueueBenchmark {
+
+    static final int TRANSFER_SIZE = 4 * 1024 * 1024;
+    private static final int CHUNK_SIZE = TerminalSession.DEFAULT_PTY_READ_BUFFER_SIZE;
+
+    @Param({"byte-queue", "byte-queue-adaptive", "chunk-queue"})
+    public String queue;
+
+    private ByteQueue mByteQueue;
+    private PtyChunkQueue mChunkQueue;
+    private final byte[] mReadBuffer = new byte[CHUNK_SIZE];
+
+    /** Released once per benchmark invocation to let the producer write another {@link #TRANSFER_SIZE} bytes. */
+    private final Semaphore mTransfers = new Semaphore(0);
+    private volatile boolean mClosed;
+    private Thread mProducer;
+
+    @Setup
+    public void startProducer() {
+        switch (queue) {
+            case "byte-queue": mByteQueue = new ByteQueue(TerminalSession.DEFAULT_PTY_READ_BUFFER_MAX_SIZE); break;
+            case "byte-queue-adaptive": mByteQueue = new ByteQueue(CHUNK_SIZE, TerminalSession.DEFAULT_PTY_READ_BUFFER_MAX_SIZE); break;
+            case "chunk-queue":
+                mChunkQueue = new PtyChunkQueue(TerminalSession.DEFAULT_PTY_READ_BUFFER_MAX_SIZE / CHUNK_SIZE, CHUNK_SIZE, false);
+                break;
+            default: throw new IllegalArgumentException("Unknown queue: " + queue);
+        }
+        mProducer = new Thread(this::produce, "QueueBenchmarkProducer");
+        mProducer.setDaemon(true);
+        mProducer.start();
+    }
+
+    @TearDown
+    public void stopProducer() throws InterruptedException {
+        mClosed = true;
+        if (mByteQueue != null) mByteQueue.close();
+        if (mChunkQueue != null) mChunkQueue.close();
+        mProducer.interrupt();
+        mProducer.join();
+    }
+
+    private void produce() {
+        final byte[] output = new byte[CHUNK_SIZE];
+        try {
+            while (!mClosed) {
+                mTransfers.acquire();
+                for (int written = 0; written < TRANSFER_SIZE; written += CHUNK_SIZE) {
+                    if (mByteQueue != null) {
+                        if (!mByteQueue.write(output, 0, CHUNK_SIZE)) return;
+                    } else {
+                        ByteBuffer chunk = mChunkQueue.takeFree();
+                        if (chunk == null) return;
+                        chunk.put(output).flip();
+                        mChunkQueue.submit(chunk);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            // Closed.
+        }
+    }
+
+    @Benchmark
+    public int transfer() {
+        mTransfers.release();
+        int read = 0;
+        if (mByteQueue != null) {
+            while (read < TRANSFER_SIZE) read += mByteQueue.read(mReadBuffer, true);
+        } else {
+            // A session is notified of new chunks by the reader thread, which is left out here by polling instead. The
+            // output is appended straight from the array of a chunk, so it is not copied out:
+            while (read < TRANSFER_SIZE) {
+                ByteBuffer chunk = mChunkQueue.poll();
+                if (chunk == null) {
+                    Thread.yield();
+                    continue;
+                }
+                read += chunk.remaining();
+                mChunkQueue.release(chunk);
+            }
+        }
+        return read;
+    }
+
+}
@@ -0,0 +1,56 @@
+package com.termux.terminal;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The time taken by {@link TerminalBuffer#resize(int, int, int, int[], long, boolean)} to reflow a full transcript,
+ * as when the soft keyboard is shown and hidden or the device rotated. Each operation resizes to a larger size and back,
+ * so the transcript is the same before every operation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class ResizeBenchmark {
+
+    @Param({Corpus.ASCII_LOG, Corpus.CJK})
+    public String corpus;
+
+    private TerminalEmulator mEmulator;
+
+    @Setup
+    public void fillTranscript() {
+        mEmulator = BenchmarkTerminal.createWithFullTranscript(corpus);
+    }
+
+    /** Change the number of columns, which reflows every row. */
+    @Benchmark
+    public TerminalEmulator reflowColumns() {
+        BenchmarkTerminal.resize(mEmulator, 100, BenchmarkTerminal.ROWS);
+        BenchmarkTerminal.resize(mEmulator, BenchmarkTerminal.COLUMNS, BenchmarkTerminal.ROWS);
+        return mEmulator;
+    }
+
+    /** Only change the number of rows, which is done without reflowing. */
+    @Benchmark
+    public TerminalEmulator changeRows() {
+        BenchmarkTerminal.resize(mEmulator, BenchmarkTerminal.COLUMNS, 12);
+        BenchmarkTerminal.resize(mEmulator, BenchmarkTerminal.COLUMNS, BenchmarkTerminal.ROWS);
+        return mEmulator;
+    }
+
+}
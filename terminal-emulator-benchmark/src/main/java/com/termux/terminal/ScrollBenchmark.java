@@ -0,0 +1,47 @@
+package com.termux.terminal;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The time taken by {@link TerminalBuffer#scrollDownOneLine(int, int, long)} to scroll a line into a full transcript,
+ * which is done for every line of output once the screen is full, and within a scroll region which is not.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class ScrollBenchmark {
+
+    private TerminalBuffer mScreen;
+
+    @Setup
+    public void fillTranscript() {
+        mScreen = BenchmarkTerminal.createWithFullTranscript(Corpus.ASCII_LOG).getScreen();
+    }
+
+    @Benchmark
+    public TerminalBuffer scrollScreen() {
+        mScreen.scrollDownOneLine(0, BenchmarkTerminal.ROWS, TextStyle.NORMAL);
+        return mScreen;
+    }
+
+    @Benchmark
+    public TerminalBuffer scrollRegion() {
+        mScreen.scrollDownOneLine(1, BenchmarkTerminal.ROWS - 2, TextStyle.NORMAL);
+        return mScreen;
+    }
+
+}
@@ -0,0 +1,57 @@
+package com.termux.terminal;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The time taken to get the text of a full transcript, as when sharing or copying it, and to search it with a
+ * {@link TranscriptSearch}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class TranscriptBenchmark {
+
+    private TerminalBuffer mScreen;
+    private TranscriptSearch mPlainSearch;
+    private TranscriptSearch mRegexSearch;
+
+    @Setup
+    public void fillTranscript() {
+        mScreen = BenchmarkTerminal.createWithFullTranscript(Corpus.ASCII_LOG).getScreen();
+        mPlainSearch = new TranscriptSearch(mScreen);
+        mPlainSearch.setQuery("ERROR", false, false);
+        mRegexSearch = new TranscriptSearch(mScreen);
+        mRegexSearch.setQuery("id=9\\d+", true, true);
+    }
+
+    @Benchmark
+    public String getTranscriptText() {
+        return mScreen.getTranscriptText();
+    }
+
+    @Benchmark
+    public List<TranscriptSearch.Match> findMatchesPlain() {
+        return mPlainSearch.findMatches(-mScreen.getActiveTranscriptRows(), BenchmarkTerminal.ROWS - 1);
+    }
+
+    @Benchmark
+    public List<TranscriptSearch.Match> findMatchesRegex() {
+        return mRegexSearch.findMatches(-mScreen.getActiveTranscriptRows(), BenchmarkTerminal.ROWS - 1);
+    }
+
+}
@@ -0,0 +1,68 @@
+package com.termux.terminal;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The time taken by {@link WcWidth#width(int)} for a code point, compared to looking it up in the interval tables
+ * with {@link WcWidth#widthFromTables(int)}, for code points of different kinds.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class WcWidthBenchmark {
+
+    private static final int CODE_POINTS = 1024;
+
+    @Param({"ascii", "cjk", "emoji", "combining"})
+    public String codePoints;
+
+    private final int[] mCodePoints = new int[CODE_POINTS];
+
+    @Setup
+    public void generateCodePoints() {
+        final Random random = new Random(42);
+        for (int i = 0; i < CODE_POINTS; i++) {
+            switch (codePoints) {
+                case "ascii": mCodePoints[i] = 0x20 + random.nextInt(0x7F - 0x20); break;
+                case "cjk": mCodePoints[i] = 0x4E00 + random.nextInt(0x9FFF - 0x4E00); break;
+                case "emoji": mCodePoints[i] = 0x1F300 + random.nextInt(0x1F650 - 0x1F300); break;
+                case "combining": mCodePoints[i] = 0x0300 + random.nextInt(0x0370 - 0x0300); break;
+                default: throw new IllegalArgumentException("Unknown code points: " + codePoints);
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CODE_POINTS)
+    public int width() {
+        int sum = 0;
+        for (int codePoint : mCodePoints) sum += WcWidth.width(codePoint);
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CODE_POINTS)
+    public int widthFromTables() {
+        int sum = 0;
+        for (int codePoint : mCodePoints) sum += WcWidth.widthFromTables(codePoint);
+        return sum;
+    }
+
+}
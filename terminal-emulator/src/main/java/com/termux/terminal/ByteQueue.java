@@ -1,53 +1,106 @@
 package com.termux.terminal;
 
-/** A circular byte buffer allowing one producer and one consumer thread. */
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A circular byte buffer allowing one producer and one consumer thread.
+ * <p>
+ * The queue is lock-free: the consumer only ever advances {@link #mHead} and the producer only ever advances
+ * {@link #mTail}, so each index has a single writer and publishing it through a volatile store is enough to hand the
+ * bytes over to the other side. A thread only parks when it has to wait for the other side, which then unparks it.
+ * <p>
+ * The queue may be created with a maximum size larger than its initial size, in which case it grows by doubling up to
+ * the maximum size when the producer repeatedly has to wait for free space, and shrinks back to the initial size after
+ * not having been full for {@link #SHRINK_AFTER_NOT_FULL_NANOS}. The buffer is only replaced by the producer while the
+ * queue is empty, so the consumer never reads from a buffer which is being replaced.
+ */
 final class ByteQueue {
 
-    private final byte[] mBuffer;
-    private int mHead;
-    private int mStoredBytes;
-    private boolean mOpen = true;
+    /** The number of writes in a row which have to wait for free space before the queue grows. */
+    static final int GROW_AFTER_FULL_WRITES = 4;
+    /** The time the queue must not have been full before shrinking back to its initial size. */
+    static final long SHRINK_AFTER_NOT_FULL_NANOS = 5_000_000_000L;
+
+    /** The buffer, which is only replaced by the producer while the queue is empty. */
+    private volatile byte[] mBuffer;
+    private final int mInitialSize;
+    private final int mMaxSize;
+    /** The total number of bytes read from the queue. Only written by the consumer thread. */
+    private volatile long mHead;
+    /** The total number of bytes written to the queue. Only written by the producer thread. */
+    private volatile long mTail;
+    private volatile boolean mOpen = true;
+
+    /** The consumer thread if it is parked waiting for data, or about to park. */
+    private volatile Thread mWaitingReader;
+    /** The producer thread if it is parked waiting for free space, or about to park. */
+    private volatile Thread mWaitingWriter;
+
+    /** The number of writes in a row which had to wait for free space. Only accessed by the producer thread. */
+    private int mFullWrites;
+    /** The {@link System#nanoTime()} a write last had to wait for free space. Only accessed by the producer thread. */
+    private long mLastFullTime;
 
     public ByteQueue(int size) {
-        mBuffer = new byte[size];
+        this(size, size);
+    }
+
+    /**
+     * @param initialSize The initial number of bytes the queue can hold.
+     * @param maxSize The number of bytes the queue may grow to hold.
+     */
+    public ByteQueue(int initialSize, int maxSize) {
+        if (initialSize <= 0) throw new IllegalArgumentException("size <= 0");
+        if (maxSize < initialSize) throw new IllegalArgumentException("maxSize < initialSize");
+        mBuffer = new byte[initialSize];
+        mInitialSize = initialSize;
+        mMaxSize = maxSize;
     }
 
-    public synchronized void close() {
+    /** The number of bytes the queue can hold. */
+    public int getCapacity() {
+        return mBuffer.length;
+    }
+
+    /** The number of bytes the queue may grow to hold. */
+    public int getMaxCapacity() {
+        return mMaxSize;
+    }
+
+    /** The number of bytes currently stored in the queue. */
+    public int getStoredBytes() {
+        return (int) (mTail - mHead);
+    }
+
+    public void close() {
         mOpen = false;
-        notify();
+        unpark(mWaitingReader);
+        unpark(mWaitingWriter);
     }
 
-    public synchronized int read(byte[] buffer, boolean block) {
-        while (mStoredBytes == 0 && mOpen) {
-            if (block) {
-                try {
-                    wait();
-                } catch (InterruptedException e) {
-                    // Ignore.
-                }
-            } else {
-                return 0;
-            }
+    public int read(byte[] buffer, boolean block) {
+        final long head = mHead;
+        long tail;
+        while ((tail = mTail) == head && mOpen) {
+            if (!block) return 0;
+            mWaitingReader = Thread.currentThread();
+            // Check again after announcing that we are waiting, so a write in between is not missed:
+            if (mTail == head && mOpen) LockSupport.park(this);
+            mWaitingReader = null;
         }
         if (!mOpen) return -1;
 
-        int totalRead = 0;
-        int bufferLength = mBuffer.length;
-        boolean wasFull = bufferLength == mStoredBytes;
-        int length = buffer.length;
-        int offset = 0;
-        while (length > 0 && mStoredBytes > 0) {
-            int oneRun = Math.min(bufferLength - mHead, mStoredBytes);
-            int bytesToCopy = Math.min(length, oneRun);
-            System.arraycopy(mBuffer, mHead, buffer, offset, bytesToCopy);
-            mHead += bytesToCopy;
-            if (mHead >= bufferLength) mHead = 0;
-            mStoredBytes -= bytesToCopy;
-            length -= bytesToCopy;
-            offset += bytesToCopy;
-            totalRead += bytesToCopy;
-        }
-        if (wasFull) notify();
+        // Read after the tail, so that a buffer replaced before the bytes were written is seen:
+        final byte[] queueBuffer = mBuffer;
+        final int bufferLength = queueBuffer.length;
+        final int totalRead = (int) Math.min(buffer.length, tail - head);
+        final int start = (int) (head % bufferLength);
+        final int firstRun = Math.min(totalRead, bufferLength - start);
+        System.arraycopy(queueBuffer, start, buffer, 0, firstRun);
+        if (firstRun < totalRead) System.arraycopy(queueBuffer, 0, buffer, firstRun, totalRead - firstRun);
+
+        mHead = head + totalRead;
+        unpark(mWaitingWriter);
         return totalRead;
     }
 
@@ -63,46 +116,74 @@ final class ByteQueue {
             throw new IllegalArgumentException("length <= 0");
         }
 
-        final int bufferLength = mBuffer.length;
-
-        synchronized (this) {
-            while (lengthToWrite > 0) {
-                while (bufferLength == mStoredBytes && mOpen) {
-                    try {
-                        wait();
-                    } catch (InterruptedException e) {
-                        // Ignore.
-                    }
-                }
-                if (!mOpen) return false;
-                final boolean wasEmpty = mStoredBytes == 0;
-                int bytesToWriteBeforeWaiting = Math.min(lengthToWrite, bufferLength - mStoredBytes);
-                lengthToWrite -= bytesToWriteBeforeWaiting;
-
-                while (bytesToWriteBeforeWaiting > 0) {
-                    int tail = mHead + mStoredBytes;
-                    int oneRun;
-                    if (tail >= bufferLength) {
-                        // Buffer: [.............]
-                        // ________________H_______T
-                        // =>
-                        // Buffer: [.............]
-                        // ___________T____H
-                        // onRun= _____----_
-                        tail = tail - bufferLength;
-                        oneRun = mHead - tail;
-                    } else {
-                        oneRun = bufferLength - tail;
-                    }
-                    int bytesToCopy = Math.min(oneRun, bytesToWriteBeforeWaiting);
-                    System.arraycopy(buffer, offset, mBuffer, tail, bytesToCopy);
-                    offset += bytesToCopy;
-                    bytesToWriteBeforeWaiting -= bytesToCopy;
-                    mStoredBytes += bytesToCopy;
-                }
-                if (wasEmpty) notify();
+        long tail = mTail;
+        if (mInitialSize != mMaxSize && !resizeIfNeeded(tail)) return false;
+        final byte[] queueBuffer = mBuffer;
+        final int bufferLength = queueBuffer.length;
+        boolean waited = false;
+
+        while (lengthToWrite > 0) {
+            long head;
+            while ((head = mHead) + bufferLength == tail && mOpen) {
+                waited = true;
+                mWaitingWriter = Thread.currentThread();
+                // Check again after announcing that we are waiting, so a read in between is not missed:
+                if (mHead + bufferLength == tail && mOpen) LockSupport.park(this);
+                mWaitingWriter = null;
             }
+            if (!mOpen) return false;
+
+            final int bytesToWriteBeforeWaiting = (int) Math.min(lengthToWrite, bufferLength - (tail - head));
+            final int start = (int) (tail % bufferLength);
+            final int firstRun = Math.min(bytesToWriteBeforeWaiting, bufferLength - start);
+            System.arraycopy(buffer, offset, queueBuffer, start, firstRun);
+            if (firstRun < bytesToWriteBeforeWaiting)
+                System.arraycopy(buffer, offset + firstRun, queueBuffer, 0, bytesToWriteBeforeWaiting - firstRun);
+
+            offset += bytesToWriteBeforeWaiting;
+            lengthToWrite -= bytesToWriteBeforeWaiting;
+            tail += bytesToWriteBeforeWaiting;
+            mTail = tail;
+            unpark(mWaitingReader);
+        }
+
+        if (waited) {
+            mFullWrites++;
+            mLastFullTime = System.nanoTime();
+        } else {
+            mFullWrites = 0;
         }
         return true;
     }
+
+    /**
+     * Called by the producer before writing, to grow the queue if writes repeatedly had to wait for free space, or to
+     * shrink it back to its initial size if it has not been full for a while. Either is only done when the queue is
+     * empty, and growing waits for the consumer to empty the queue first.
+     *
+     * @return Returns {@code false} if the queue was closed while waiting.
+     */
+    private boolean resizeIfNeeded(long tail) {
+        final int size = mBuffer.length;
+        int newSize = size;
+        if (mFullWrites >= GROW_AFTER_FULL_WRITES && size < mMaxSize) {
+            newSize = (int) Math.min(2L * size, mMaxSize);
+            while (mHead != tail && mOpen) {
+                mWaitingWriter = Thread.currentThread();
+                if (mHead != tail && mOpen) LockSupport.park(this);
+                mWaitingWriter = null;
+            }
+            if (!mOpen) return false;
+            mFullWrites = 0;
+        } else if (size > mInitialSize && mHead == tail && System.nanoTime() - mLastFullTime > SHRINK_AFTER_NOT_FULL_NANOS) {
+            newSize = mInitialSize;
+        }
+        // Published by the volatile write of the tail after the next bytes are written:
+        if (newSize != size) mBuffer = new byte[newSize];
+        return true;
+    }
+
+    private static void unpark(Thread thread) {
+        if (thread != null) LockSupport.unpark(thread);
+    }
 }
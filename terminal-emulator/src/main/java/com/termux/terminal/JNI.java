@@ -35,7 +35,55 @@ final class JNI {
      */
     public static native int waitFor(int processId);
 
+    /** Returned by {@link #tryWaitFor(int)} if the process has not exited. */
+    public static final int PROCESS_RUNNING = Integer.MIN_VALUE;
+
+    /**
+     * Reap the process if it has exited, without waiting for it to.
+     *
+     * @return the exit status like {@link #waitFor(int)}, 0 if it was already reaped by someone else, or
+     * {@link #PROCESS_RUNNING} if it has not exited.
+     */
+    public static native int tryWaitFor(int processId);
+
+    /**
+     * Causes the calling thread to wait for any child process to exit, without reaping it.
+     *
+     * @return the process ID of an exited child process, which stays exited until reaped, or 0 if there are no child
+     * processes.
+     */
+    public static native int waitForAnyChild();
+
     /** Close a file descriptor through the close(2) system call. */
     public static native void close(int fileDescriptor);
 
+    /** Duplicate a file descriptor through the fcntl(2) system call, with the close-on-exec flag set. */
+    public static native int dup(int fileDescriptor);
+
+    /** Create an epoll(7) instance to poll file descriptors with. Returns its file descriptor. */
+    public static native int createPoller();
+
+    /**
+     * Make a file descriptor non-blocking and add it to a poller, to be reported once with the token when one of the
+     * events happens, or it hangs up or errors. It is then not reported again until re-armed with
+     * {@link #armInPoller(int, int, int, int)}.
+     *
+     * @param events The epoll(7) events to poll for, like {@link TerminalIOPoller#POLL_IN}, or 0 for none.
+     */
+    public static native void addToPoller(int pollerFileDescriptor, int fileDescriptor, int token, int events);
+
+    /** Re-arm a file descriptor added to a poller after it has been reported. */
+    public static native void armInPoller(int pollerFileDescriptor, int fileDescriptor, int token, int events);
+
+    /** Remove a file descriptor from a poller. */
+    public static native void removeFromPoller(int pollerFileDescriptor, int fileDescriptor);
+
+    /**
+     * Causes the calling thread to wait for file descriptors added to a poller to be reported.
+     *
+     * @param tokens An array to which the tokens of the reported file descriptors will be written.
+     * @return the number of tokens written.
+     */
+    public static native int waitForPoller(int pollerFileDescriptor, int[] tokens);
+
 }
@@ -0,0 +1,287 @@
+package com.termux.terminal;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A compact, immutable copy of a {@link TerminalRow} used for rows that have scrolled into the transcript.
+ * <p>
+ * A full row keeps a char[] with spare capacity and one style per cell, which adds up quickly with a large transcript.
+ * A packed row instead stores the text up to the last non-space java char as Latin-1 bytes, or as UTF-8 bytes if any
+ * char does not fit in Latin-1, and run-length encodes the styles since most rows have only one or two style runs.
+ * <p>
+ * Unpaired surrogates are encoded as if they were code points, so that unpacking always gives back the exact chars.
+ * <p>
+ * Each packed row also keeps a 256 bit bloom filter of the pairs of adjacent java chars in the row, ignoring case, which
+ * lets {@link TranscriptSearch} skip rows which cannot contain the searched text without looking at the text.
+ */
+final class PackedTerminalRow {
+
+    /** The text up to the last non-space java char of the row, see {@link #mUtf8}. */
+    private final byte[] mText;
+    /** If {@link #mText} is UTF-8 encoded, or else Latin-1 encoded with one byte per java char. */
+    private final boolean mUtf8;
+    /** The number of java chars used by the row, the ones after the packed text being spaces. */
+    private final short mSpaceUsed;
+    /** The style of each run of cells with the same style. */
+    private final long[] mRunStyles;
+    /** The column after the last cell of each run in {@link #mRunStyles}. */
+    private final short[] mRunEnds;
+    private final boolean mLineWrap;
+    private final boolean mHasNonOneWidthOrSurrogateChars;
+    /** The bloom filter bits of the char pairs in the row, see {@link #bigramBit(char, char)}. */
+    private final long mBloom0, mBloom1, mBloom2, mBloom3;
+
+    private PackedTerminalRow(byte[] text, boolean utf8, short spaceUsed, long[] runStyles, short[] runEnds, boolean lineWrap,
+                              boolean hasNonOneWidthOrSurrogateChars, long[] bloom) {
+        mText = text;
+        mUtf8 = utf8;
+        mSpaceUsed = spaceUsed;
+        mRunStyles = runStyles;
+        mRunEnds = runEnds;
+        mLineWrap = lineWrap;
+        mHasNonOneWidthOrSurrogateChars = hasNonOneWidthOrSurrogateChars;
+        mBloom0 = bloom[0];
+        mBloom1 = bloom[1];
+        mBloom2 = bloom[2];
+        mBloom3 = bloom[3];
+    }
+
+    /** Create a packed copy of the specified row. */
+    static PackedTerminalRow pack(TerminalRow row) {
+        final char[] text = row.mText;
+        int textLength = row.getSpaceUsed();
+        while (textLength > 0 && text[textLength - 1] == ' ') textLength--;
+
+        boolean latin1 = true;
+        for (int i = 0; i < textLength; i++) {
+            if (text[i] > 0xFF) {
+                latin1 = false;
+                break;
+            }
+        }
+
+        final byte[] packedText;
+        if (latin1) {
+            packedText = new byte[textLength];
+            for (int i = 0; i < textLength; i++)
+                packedText[i] = (byte) text[i];
+        } else {
+            packedText = encodeUtf8(text, textLength);
+        }
+
+        final int runs = row.getStyleRunCount();
+        final long[] runStyles = new long[runs];
+        final short[] runEnds = new short[runs];
+        for (int run = 0; run < runs; run++) {
+            runStyles[run] = row.getStyleRunStyle(run);
+            runEnds[run] = (short) row.getStyleRunEnd(run);
+        }
+
+        final long[] bloom = new long[4];
+        for (int i = 1, spaceUsed = row.getSpaceUsed(); i < spaceUsed; i++) {
+            final int bit = bigramBit(text[i - 1], text[i]);
+            bloom[bit >>> 6] |= 1L << bit;
+        }
+
+        return new PackedTerminalRow(packedText, !latin1, (short) row.getSpaceUsed(), runStyles, runEnds, row.mLineWrap,
+            row.mHasNonOneWidthOrSurrogateChars, bloom);
+    }
+
+    /** The bit in the bloom filter of a row for a pair of adjacent java chars, ignoring case. */
+    static int bigramBit(char first, char second) {
+        // The finalizer of MurmurHash3, since chars of similar text differ in few bits:
+        int hash = (toLowerCase(first) << 16) | toLowerCase(second);
+        hash ^= hash >>> 16;
+        hash *= 0x85EBCA6B;
+        hash ^= hash >>> 13;
+        hash *= 0xC2B2AE35;
+        hash ^= hash >>> 16;
+        return hash & 0xFF;
+    }
+
+    private static char toLowerCase(char c) {
+        if (c < 0x80) return (c >= 'A' && c <= 'Z') ? (char) (c + ('a' - 'A')) : c;
+        return Character.toLowerCase(c);
+    }
+
+    /** Add the bloom filter bits of this row to the specified bits. */
+    void addBloomBits(long[] bits) {
+        bits[0] |= mBloom0;
+        bits[1] |= mBloom1;
+        bits[2] |= mBloom2;
+        bits[3] |= mBloom3;
+    }
+
+    /** The first java char of the row. */
+    char getFirstChar() {
+        if (mText.length == 0) return ' ';
+        if (!mUtf8) return (char) (mText[0] & 0xFF);
+        final int codePoint = decodeUtf8CodePoint(mText, 0);
+        return Character.isBmpCodePoint(codePoint) ? (char) codePoint : Character.highSurrogate(codePoint);
+    }
+
+    /** The last java char of the row, including trailing spaces. */
+    char getLastChar() {
+        if (mText.length == 0 || getTrimmedLength() < mSpaceUsed) return ' ';
+        if (!mUtf8) return (char) (mText[mText.length - 1] & 0xFF);
+        int start = mText.length - 1;
+        while ((mText[start] & 0xC0) == 0x80) start--;
+        final int codePoint = decodeUtf8CodePoint(mText, start);
+        return Character.isBmpCodePoint(codePoint) ? (char) codePoint : Character.lowSurrogate(codePoint);
+    }
+
+    /** Restore the packed contents into the specified row, which must have the same number of columns. */
+    void unpack(TerminalRow row) {
+        char[] text = row.mText;
+        if (text.length < mSpaceUsed) row.mText = text = new char[mSpaceUsed];
+
+        final int textLength;
+        if (mUtf8) {
+            textLength = decodeUtf8(mText, text);
+        } else {
+            textLength = mText.length;
+            for (int i = 0; i < textLength; i++)
+                text[i] = (char) (mText[i] & 0xFF);
+        }
+        for (int i = textLength; i < mSpaceUsed; i++)
+            text[i] = ' ';
+        row.mSpaceUsed = mSpaceUsed;
+
+        row.setStyleRuns(mRunStyles, mRunEnds);
+
+        row.mLineWrap = mLineWrap;
+        row.mHasNonOneWidthOrSurrogateChars = mHasNonOneWidthOrSurrogateChars;
+        row.mModificationCount++;
+    }
+
+    boolean getLineWrap() {
+        return mLineWrap;
+    }
+
+    boolean hasNonOneWidthOrSurrogateChars() {
+        return mHasNonOneWidthOrSurrogateChars;
+    }
+
+    /** If the row only contains spaces, as {@link TerminalRow#isBlank()}. */
+    boolean isBlank() {
+        return mText.length == 0;
+    }
+
+    /** The number of java chars used by the row, as {@link TerminalRow#getSpaceUsed()}. */
+    int getSpaceUsed() {
+        return mSpaceUsed;
+    }
+
+    /** The number of java chars up to and including the last non-space java char of the row. */
+    int getTrimmedLength() {
+        if (!mUtf8) return mText.length;
+        int length = 0;
+        for (byte b : mText) {
+            // Count lead bytes, where a four byte sequence is a surrogate pair:
+            if ((b & 0xC0) != 0x80) length += ((b & 0xF8) == 0xF0) ? 2 : 1;
+        }
+        return length;
+    }
+
+    /** The number of columns of the row which was packed. */
+    int getColumns() {
+        return mRunEnds[mRunEnds.length - 1];
+    }
+
+    /** The number of bytes written by {@link #writeTo(ByteBuffer)}. */
+    int getSerializedSize() {
+        return 1 + 4 * 8 + 2 + 4 + mText.length + 2 + mRunStyles.length * (8 + 2);
+    }
+
+    /** Write this row to the buffer in a form which {@link #readFrom(ByteBuffer)} reads back. */
+    void writeTo(ByteBuffer buffer) {
+        buffer.put((byte) ((mUtf8 ? 1 : 0) | (mLineWrap ? 2 : 0) | (mHasNonOneWidthOrSurrogateChars ? 4 : 0)));
+        buffer.putLong(mBloom0);
+        buffer.putLong(mBloom1);
+        buffer.putLong(mBloom2);
+        buffer.putLong(mBloom3);
+        buffer.putShort(mSpaceUsed);
+        buffer.putInt(mText.length);
+        buffer.put(mText);
+        buffer.putShort((short) mRunStyles.length);
+        for (int run = 0; run < mRunStyles.length; run++) {
+            buffer.putLong(mRunStyles[run]);
+            buffer.putShort(mRunEnds[run]);
+        }
+    }
+
+    /** Read a row written by {@link #writeTo(ByteBuffer)} from the current position of the buffer. */
+    static PackedTerminalRow readFrom(ByteBuffer buffer) {
+        final byte flags = buffer.get();
+        final long[] bloom = {buffer.getLong(), buffer.getLong(), buffer.getLong(), buffer.getLong()};
+        final short spaceUsed = buffer.getShort();
+        final byte[] text = new byte[buffer.getInt()];
+        buffer.get(text);
+        final int runs = buffer.getShort();
+        final long[] runStyles = new long[runs];
+        final short[] runEnds = new short[runs];
+        for (int run = 0; run < runs; run++) {
+            runStyles[run] = buffer.getLong();
+            runEnds[run] = buffer.getShort();
+        }
+        return new PackedTerminalRow(text, (flags & 1) != 0, spaceUsed, runStyles, runEnds, (flags & 2) != 0, (flags & 4) != 0, bloom);
+    }
+
+    private static byte[] encodeUtf8(char[] text, int length) {
+        int byteCount = 0;
+        for (int i = 0; i < length; ) {
+            final int codePoint = Character.codePointAt(text, i, length);
+            i += Character.charCount(codePoint);
+            byteCount += (codePoint < 0x80) ? 1 : (codePoint < 0x800) ? 2 : (codePoint < 0x10000) ? 3 : 4;
+        }
+
+        final byte[] bytes = new byte[byteCount];
+        int byteIndex = 0;
+        for (int i = 0; i < length; ) {
+            final int codePoint = Character.codePointAt(text, i, length);
+            i += Character.charCount(codePoint);
+            if (codePoint < 0x80) {
+                bytes[byteIndex++] = (byte) codePoint;
+            } else if (codePoint < 0x800) {
+                bytes[byteIndex++] = (byte) (0xC0 | (codePoint >> 6));
+                bytes[byteIndex++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else if (codePoint < 0x10000) {
+                bytes[byteIndex++] = (byte) (0xE0 | (codePoint >> 12));
+                bytes[byteIndex++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                bytes[byteIndex++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else {
+                bytes[byteIndex++] = (byte) (0xF0 | (codePoint >> 18));
+                bytes[byteIndex++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                bytes[byteIndex++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                bytes[byteIndex++] = (byte) (0x80 | (codePoint & 0x3F));
+            }
+        }
+        return bytes;
+    }
+
+    /** Decode bytes written by {@link #encodeUtf8(char[], int)} into chars, returning the number of chars. */
+    private static int decodeUtf8(byte[] bytes, char[] text) {
+        int charIndex = 0;
+        for (int i = 0; i < bytes.length; ) {
+            final int b = bytes[i] & 0xFF;
+            charIndex += Character.toChars(decodeUtf8CodePoint(bytes, i), text, charIndex);
+            i += (b < 0x80) ? 1 : (b < 0xE0) ? 2 : (b < 0xF0) ? 3 : 4;
+        }
+        return charIndex;
+    }
+
+    /** Decode the code point whose first byte is at the specified index of bytes written by {@link #encodeUtf8(char[], int)}. */
+    private static int decodeUtf8CodePoint(byte[] bytes, int i) {
+        final int b = bytes[i] & 0xFF;
+        if (b < 0x80) {
+            return b;
+        } else if (b < 0xE0) {
+            return ((b & 0x1F) << 6) | (bytes[i + 1] & 0x3F);
+        } else if (b < 0xF0) {
+            return ((b & 0x0F) << 12) | ((bytes[i + 1] & 0x3F) << 6) | (bytes[i + 2] & 0x3F);
+        } else {
+            return ((b & 0x07) << 18) | ((bytes[i + 1] & 0x3F) << 12) | ((bytes[i + 2] & 0x3F) << 6) | (bytes[i + 3] & 0x3F);
+        }
+    }
+
+}
@@ -0,0 +1,169 @@
+package com.termux.terminal;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A single thread reaping the processes of all sessions, instead of each session blocking a thread of its own in
+ * waitpid(2) until its process exits.
+ * <p>
+ * The thread waits for any child process to exit without reaping it, since children started by others, like with
+ * {@link ProcessBuilder}, are reaped by whoever started them. If the exited child is watched it is reaped and its
+ * listener notified. Otherwise waiting would keep returning that child until it is reaped, so the watched processes are
+ * checked without waiting every {@link #OTHER_CHILD_POLL_MILLIS} instead until then.
+ */
+public final class ProcessReaper {
+
+    /** Notified on the reaper thread once a watched process has exited and been reaped. */
+    public interface ExitListener {
+        /**
+         * @param exitStatus The exit status as returned by {@link JNI#waitFor(int)}.
+         * @param exitedTimeNanos The {@link System#nanoTime()} at which the reaper noticed the exit, to pass to
+         *                        {@link #onExitHandled(long)} once the exit has been handled.
+         */
+        void onProcessExited(int pid, int exitStatus, long exitedTimeNanos);
+    }
+
+    /** The interval to check the watched processes at while a child which is not watched has exited. */
+    static final long OTHER_CHILD_POLL_MILLIS = 5;
+
+    private static ProcessReaper sInstance;
+
+    private static final String LOG_TAG = "ProcessReaper";
+
+    private final Map<Integer, ExitListener> mWatched = new ConcurrentHashMap<>();
+
+    /** The number of processes reaped. Only written by the reaper thread. */
+    private volatile long mReaped;
+    private final Object mStatsLock = new Object();
+    /** The number of exits handled, see {@link #onExitHandled(long)}. */
+    private long mExitsHandled;
+    /** The total and max time between the reaper noticing a watched process exited and the exit being handled. */
+    private long mTotalExitLatencyNanos, mMaxExitLatencyNanos;
+
+    private ProcessReaper() {
+        Thread reaperThread = new Thread("TermSessionReaper") {
+            @Override
+            public void run() {
+                reap();
+            }
+        };
+        reaperThread.setDaemon(true);
+        reaperThread.start();
+    }
+
+    /** Get the reaper shared by all sessions, starting it if not already started. */
+    public static synchronized ProcessReaper getInstance() {
+        if (sInstance == null) sInstance = new ProcessReaper();
+        return sInstance;
+    }
+
+    /** Get the current state of the reaper, or {@code null} if it has not been started. */
+    public static Stats getStats() {
+        final ProcessReaper reaper;
+        synchronized (ProcessReaper.class) {
+            reaper = sInstance;
+        }
+        if (reaper == null) return null;
+
+        Stats stats = new Stats();
+        stats.watched = reaper.mWatched.size();
+        stats.threads = 1;
+        stats.reaped = reaper.mReaped;
+        synchronized (reaper.mStatsLock) {
+            stats.exitsHandled = reaper.mExitsHandled;
+            stats.totalExitLatencyNanos = reaper.mTotalExitLatencyNanos;
+            stats.maxExitLatencyNanos = reaper.mMaxExitLatencyNanos;
+        }
+        return stats;
+    }
+
+    /**
+     * Reap a child process once it exits and notify the listener. The process must be a child of this process which
+     * is not waited for by anyone else.
+     */
+    public void watch(int pid, ExitListener listener) {
+        mWatched.put(pid, listener);
+        synchronized (this) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Record that the exit of a watched process has been handled, like by its session on the main thread, to measure
+     * the exit latency from the reaper noticing the exit until then.
+     *
+     * @param exitedTimeNanos The time passed to {@link ExitListener#onProcessExited(int, int, long)}.
+     */
+    public void onExitHandled(long exitedTimeNanos) {
+        final long latency = System.nanoTime() - exitedTimeNanos;
+        synchronized (mStatsLock) {
+            mExitsHandled++;
+            mTotalExitLatencyNanos += latency;
+            if (latency > mMaxExitLatencyNanos) mMaxExitLatencyNanos = latency;
+        }
+    }
+
+    private void reap() {
+        try {
+            while (true) {
+                synchronized (this) {
+                    while (mWatched.isEmpty()) wait();
+                }
+
+                int pid = JNI.waitForAnyChild();
+                long exitedTime = System.nanoTime();
+                ExitListener listener = (pid == 0) ? null : mWatched.remove(pid);
+                if (listener != null) {
+                    notifyExited(pid, JNI.waitFor(pid), listener, exitedTime);
+                    continue;
+                }
+
+                // Another child exited which is left for whoever started it to reap, or there are no children left:
+                for (int watchedPid : mWatched.keySet()) {
+                    int exitStatus = JNI.tryWaitFor(watchedPid);
+                    if (exitStatus == JNI.PROCESS_RUNNING) continue;
+                    listener = mWatched.remove(watchedPid);
+                    if (listener != null) notifyExited(watchedPid, exitStatus, listener, exitedTime);
+                }
+                if (pid != 0) Thread.sleep(OTHER_CHILD_POLL_MILLIS);
+            }
+        } catch (InterruptedException | RuntimeException e) {
+            // Should never happen, but with reaping stopped sessions will no longer be notified when they exit.
+            Logger.logStackTraceWithMessage(null, LOG_TAG, "Reaping failed", e);
+        }
+    }
+
+    private void notifyExited(int pid, int exitStatus, ExitListener listener, long exitedTime) {
+        mReaped++;
+        listener.onProcessExited(pid, exitStatus, exitedTime);
+    }
+
+    /** The state of the reaper. */
+    public static final class Stats {
+
+        /** The number of processes waiting to be reaped. */
+        public int watched;
+        /** The number of threads used to wait for all of them. */
+        public int threads;
+        /** The number of processes reaped since the reaper was started. */
+        public long reaped;
+        /** The number of exits handled since the reaper was started. */
+        public long exitsHandled;
+        /** The total and max time between the reaper noticing a process exited and the exit being handled. */
+        public long totalExitLatencyNanos, maxExitLatencyNanos;
+
+        /** The average time between the reaper noticing a process exited and the exit being handled. */
+        public long getAverageExitLatencyNanos() {
+            return (exitsHandled == 0) ? 0 : totalExitLatencyNanos / exitsHandled;
+        }
+
+        @Override
+        public String toString() {
+            return "Stats[watched=" + watched + ", threads=" + threads + ", reaped=" + reaped + ", exitsHandled=" + exitsHandled +
+                ", averageExitLatencyNanos=" + getAverageExitLatencyNanos() + ", maxExitLatencyNanos=" + maxExitLatencyNanos + "]";
+        }
+
+    }
+
+}
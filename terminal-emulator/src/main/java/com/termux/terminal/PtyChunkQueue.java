@@ -0,0 +1,96 @@
+package com.termux.terminal;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Process output read into pooled {@link ByteBuffer} chunks, allowing one producer and one consumer thread.
+ * <p>
+ * Unlike a {@link ByteQueue}, which the output is copied into and then out of again, the producer reads the output
+ * straight into a free chunk from {@link #takeFree()} and hands the chunk itself over with {@link #submit(ByteBuffer)}.
+ * The consumer appends the output from the chunk it gets from {@link #poll()} and then returns it to the pool with
+ * {@link #release(ByteBuffer)}.
+ * <p>
+ * The chunks are used in a fixed circular order, so as for a {@link ByteQueue} the queue is lock-free with the consumer
+ * only advancing {@link #mHead} and the producer only advancing {@link #mTail}. The producer parks when every chunk is
+ * in use until the consumer releases one.
+ */
+final class PtyChunkQueue {
+
+    private final ByteBuffer[] mChunks;
+    /** The total number of chunks released by the consumer. Only written by the consumer thread. */
+    private volatile long mHead;
+    /** The total number of chunks submitted by the producer. Only written by the producer thread. */
+    private volatile long mTail;
+    private volatile boolean mOpen = true;
+
+    /** The producer thread if it is parked waiting for a free chunk, or about to park. */
+    private volatile Thread mWaitingWriter;
+
+    /**
+     * @param chunks The number of chunks in the pool.
+     * @param chunkSize The size of each chunk in bytes.
+     * @param direct If the chunks should be direct buffers, which a {@link java.nio.channels.FileChannel} reads into
+     *               without going through a temporary buffer, instead of buffers backed by an array which the output
+     *               can be appended from without copying it.
+     */
+    PtyChunkQueue(int chunks, int chunkSize, boolean direct) {
+        if (chunks <= 0 || chunkSize <= 0) throw new IllegalArgumentException("chunks=" + chunks + ", chunkSize=" + chunkSize);
+        mChunks = new ByteBuffer[chunks];
+        for (int i = 0; i < chunks; i++)
+            mChunks[i] = direct ? ByteBuffer.allocateDirect(chunkSize) : ByteBuffer.allocate(chunkSize);
+    }
+
+    /** The size of each chunk in bytes. */
+    int getChunkSize() {
+        return mChunks[0].capacity();
+    }
+
+    /**
+     * Get a cleared chunk to read into, waiting for the consumer to release one if all are in use. Returns null if the
+     * queue is closed. Must be passed to {@link #submit(ByteBuffer)} before taking the next one.
+     */
+    ByteBuffer takeFree() {
+        final long tail = mTail;
+        final int chunks = mChunks.length;
+        while (tail - mHead == chunks && mOpen) {
+            mWaitingWriter = Thread.currentThread();
+            // Check again after announcing that we are waiting, so a release in between is not missed:
+            if (tail - mHead == chunks && mOpen) LockSupport.park(this);
+            mWaitingWriter = null;
+        }
+        if (!mOpen) return null;
+
+        final ByteBuffer chunk = mChunks[(int) (tail % chunks)];
+        chunk.clear();
+        return chunk;
+    }
+
+    /** Hand over the chunk from {@link #takeFree()} to the consumer, with the output between its position and limit. */
+    void submit(ByteBuffer chunk) {
+        mTail = mTail + 1;
+    }
+
+    /**
+     * Get the oldest chunk submitted and not yet released, or null if there is none. Polling again before the chunk is
+     * released returns the same chunk.
+     */
+    ByteBuffer poll() {
+        final long head = mHead;
+        return (head == mTail) ? null : mChunks[(int) (head % mChunks.length)];
+    }
+
+    /** Return the chunk from {@link #poll()} to the pool once its output has been appended. */
+    void release(ByteBuffer chunk) {
+        mHead = mHead + 1;
+        final Thread waitingWriter = mWaitingWriter;
+        if (waitingWriter != null) LockSupport.unpark(waitingWriter);
+    }
+
+    void close() {
+        mOpen = false;
+        final Thread waitingWriter = mWaitingWriter;
+        if (waitingWriter != null) LockSupport.unpark(waitingWriter);
+    }
+
+}
@@ -0,0 +1,165 @@
+package com.termux.terminal;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Transcript rows of a {@link TerminalBuffer} which have not yet been reflowed to the number of columns set by the last
+ * resize.
+ * <p>
+ * Instead of reflowing the whole transcript when the number of columns changes, the rows above the screen are split into
+ * chunks of whole lines which keep the packed rows they are reflowed from. Counting the rows a chunk reflows into is
+ * cheap and done up front so that the rows can be addressed, while the rows themselves are only created by
+ * {@link #reflow()} once one of them is accessed.
+ */
+final class ReflowChunk {
+
+    /** The rows to reflow, oldest first, where null is a blank row. */
+    final PackedTerminalRow[] mSourceRows;
+    /** The number of columns to reflow the source rows into. */
+    final int mColumns;
+    /** The style of the cells not covered by reflowed text. */
+    final long mStyle;
+    /** The number of rows the source rows reflow into. */
+    final int mRows;
+
+    /** The index in the buffer of the first row of this chunk which was kept, see {@link #mDroppedRows}. */
+    int mFirstSlot;
+    /** The number of leading rows of this chunk which did not fit into the transcript and were dropped. */
+    int mDroppedRows;
+    /** The number of rows of this chunk which are still waiting in the buffer to be reflowed. */
+    int mPendingRows;
+
+    ReflowChunk(PackedTerminalRow[] sourceRows, int columns, long style, int rows) {
+        mSourceRows = sourceRows;
+        mColumns = columns;
+        mStyle = style;
+        mRows = rows;
+        mPendingRows = rows;
+    }
+
+    /** If every row of this chunk is still waiting in the buffer, so that the source rows still describe them. */
+    boolean isIntact() {
+        return mDroppedRows == 0 && mPendingRows == mRows;
+    }
+
+    /** Reflow the source rows into {@link #mRows} packed rows. */
+    PackedTerminalRow[] reflow() {
+        Reflower reflower = new Reflower(mColumns, mStyle, true);
+        for (PackedTerminalRow sourceRow : mSourceRows)
+            reflower.add(sourceRow);
+        return reflower.mOutput.toArray(new PackedTerminalRow[0]);
+    }
+
+    /**
+     * Reflows rows without a cursor on them into rows with a different number of columns, in the same way as the resize
+     * in {@link TerminalBuffer#resize(int, int, int, int[], long, boolean)}, either creating the new rows or only
+     * counting them.
+     */
+    static final class Reflower {
+
+        private final int mColumns;
+        private final long mStyle;
+        /** The reflowed rows, or null if only counting. */
+        final List<PackedTerminalRow> mOutput;
+        /** The row being reflowed into, or null if only counting. */
+        private final TerminalRow mRow;
+        private TerminalRow mScratchRow;
+
+        /** The number of finished rows, which is also the index of the row being reflowed into. */
+        private int mRows;
+        private int mColumn;
+        /** Blank rows are only kept if followed by a non-blank row, as done by the resize. */
+        private int mSkippedBlankLines;
+        private boolean mAtLineStart = true;
+
+        Reflower(int columns, long style, boolean output) {
+            mColumns = columns;
+            mStyle = style;
+            mOutput = output ? new ArrayList<PackedTerminalRow>() : null;
+            mRow = output ? new TerminalRow(columns, style) : null;
+        }
+
+        /** The number of finished rows. */
+        int getRows() {
+            return mRows;
+        }
+
+        /** If the last row added ended a line, so that the next row starts at the beginning of a new row. */
+        boolean isAtLineStart() {
+            return mAtLineStart;
+        }
+
+        void add(PackedTerminalRow sourceRow) {
+            if (sourceRow == null || sourceRow.isBlank()) {
+                mSkippedBlankLines++;
+                mAtLineStart = false;
+                return;
+            }
+            for (; mSkippedBlankLines > 0; mSkippedBlankLines--)
+                nextRow(false);
+
+            if (mOutput == null && !sourceRow.hasNonOneWidthOrSurrogateChars()) {
+                // Every java char takes up one column, so wrapping can be computed instead of done char by char:
+                final int chars = sourceRow.getLineWrap() ? sourceRow.getSpaceUsed() : sourceRow.getTrimmedLength();
+                if (chars > 0) {
+                    final int end = mColumn + chars;
+                    final int wraps = (end - 1) / mColumns;
+                    mRows += wraps;
+                    mColumn = end - wraps * mColumns;
+                }
+            } else {
+                if (mScratchRow == null || mScratchRow.mColumns != sourceRow.getColumns())
+                    mScratchRow = new TerminalRow(sourceRow.getColumns(), TextStyle.NORMAL);
+                final TerminalRow row = mScratchRow;
+                sourceRow.unpack(row);
+
+                final char[] text = row.mText;
+                final int lastNonSpaceIndex = row.mLineWrap ? row.getSpaceUsed() : sourceRow.getTrimmedLength();
+                int currentOldCol = 0;
+                long styleAtCol = 0;
+                int styleRun = 0;
+                for (int i = 0; i < lastNonSpaceIndex; i++) {
+                    // Note that looping over java character, not cells.
+                    char c = text[i];
+                    int codePoint = (Character.isHighSurrogate(c)) ? Character.toCodePoint(c, text[++i]) : c;
+                    int displayWidth = WcWidth.width(codePoint);
+                    // Use the last style if this is a zero-width character:
+                    if (displayWidth > 0) {
+                        while (currentOldCol >= row.getStyleRunEnd(styleRun)) styleRun++;
+                        styleAtCol = row.getStyleRunStyle(styleRun);
+                    }
+
+                    // Line wrap as necessary:
+                    if (mColumn + displayWidth > mColumns) nextRow(true);
+
+                    if (mRow != null) {
+                        int offsetDueToCombiningChar = ((displayWidth <= 0 && mColumn > 0) ? 1 : 0);
+                        mRow.setChar(mColumn - offsetDueToCombiningChar, codePoint, styleAtCol);
+                    }
+
+                    if (displayWidth > 0) {
+                        currentOldCol += displayWidth;
+                        mColumn += displayWidth;
+                    }
+                }
+            }
+
+            // Insert newline if the row was not wrapping:
+            mAtLineStart = !sourceRow.getLineWrap();
+            if (mAtLineStart) nextRow(false);
+        }
+
+        private void nextRow(boolean lineWrap) {
+            if (mRow != null) {
+                mRow.mLineWrap = lineWrap;
+                mOutput.add(PackedTerminalRow.pack(mRow));
+                mRow.clear(mStyle);
+                mRow.mLineWrap = false;
+            }
+            mRows++;
+            mColumn = 0;
+        }
+    }
+
+}
@@ -1,16 +1,46 @@
 package com.termux.terminal;
 
+import java.io.CharArrayWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * A circular buffer of {@link TerminalRow}:s which keeps notes about what is visible on a logical screen and the scroll
  * history.
  * <p>
  * See {@link #externalToInternalRow(int)} for how to map from logical screen rows to array indices.
+ * <p>
+ * Rows which scroll off the screen into the transcript are stored as {@link PackedTerminalRow}:s in {@link #mPackedLines}
+ * to keep the memory used by a large transcript low, and are unpacked again by {@link #allocateFullLineIfNecessary(int)}
+ * when needed. Rows on the screen are never packed.
+ * <p>
+ * Optionally, rows evicted from the transcript when it is full are spilled to disk by a {@link TranscriptSpill}, see
+ * {@link #enableTranscriptSpill(File, long)}. Spilled rows come before the in-memory transcript rows in the external
+ * coordinate system and are included in {@link #getActiveTranscriptRows()}.
+ * <p>
+ * When the number of columns changes only the rows at the bottom are reflowed right away, while the transcript rows
+ * above them are reflowed in chunks when first accessed, see {@link ReflowChunk}.
  */
 public final class TerminalBuffer {
 
     TerminalRow[] mLines;
+    /** The packed transcript rows, where an index is non-null only if the same index in {@link #mLines} is null. */
+    PackedTerminalRow[] mPackedLines;
+    /**
+     * The chunk of rows not yet reflowed after a resize which each index belongs to, where an index is non-null only if
+     * the same index in both {@link #mLines} and {@link #mPackedLines} is null.
+     */
+    ReflowChunk[] mReflowChunks;
+    /** If transcript rows are reflowed when first accessed after a resize, or else all at once. */
+    boolean mReflowLazily = true;
     /** The length of {@link #mLines}. */
     int mTotalRows;
     /** The number of rows and columns visible on the screen. */
@@ -19,6 +49,13 @@ public final class TerminalBuffer {
     private int mActiveTranscriptRows = 0;
     /** The index in the circular buffer where the visible screen starts. */
     private int mScreenFirstRow = 0;
+    /** The rows evicted from the transcript which have been spilled to disk, if enabled. */
+    private TranscriptSpill mTranscriptSpill;
+
+    /** The minimum number of rows in a chunk of transcript rows reflowed lazily after a resize. */
+    private static final int REFLOW_CHUNK_ROWS = 64;
+    /** The size in bytes of the chunks the transcript is encoded in when writing it to a channel. */
+    private static final int TRANSCRIPT_WRITE_BUFFER_SIZE = 8192;
 
     /**
      * Create a transcript screen.
@@ -33,6 +70,8 @@ public final class TerminalBuffer {
         mTotalRows = totalRows;
         mScreenRows = screenRows;
         mLines = new TerminalRow[totalRows];
+        mPackedLines = new PackedTerminalRow[totalRows];
+        mReflowChunks = new ReflowChunk[totalRows];
 
         blockSet(0, 0, columns, screenRows, ' ', TextStyle.NORMAL);
     }
@@ -58,8 +97,41 @@ public final class TerminalBuffer {
     }
 
     public String getSelectedText(int selX1, int selY1, int selX2, int selY2, boolean joinBackLines, boolean joinFullLines) {
-        final StringBuilder builder = new StringBuilder();
+        final CharArrayWriter writer = new CharArrayWriter();
+        try {
+            writeSelectedText(writer, selX1, selY1, selX2, selY2, joinBackLines, joinFullLines);
+        } catch (IOException e) {
+            // A CharArrayWriter does not throw.
+            throw new AssertionError(e);
+        }
+        return writer.toString();
+    }
+
+    /**
+     * Write the transcript text to a writer row by row, without building it in memory. The text written is the same as
+     * the one returned by {@link #getTranscriptText()} if joinBackLines is true and joinFullLines false, by
+     * {@link #getTranscriptTextWithoutJoinedLines()} if both are false and by
+     * {@link #getTranscriptTextWithFullLinesJoined()} if both are true. The writer is flushed but not closed.
+     */
+    public void writeTranscriptText(Writer writer, boolean joinBackLines, boolean joinFullLines) throws IOException {
+        final TrimmingWriter trimmingWriter = new TrimmingWriter(writer);
+        writeSelectedText(trimmingWriter, 0, -getActiveTranscriptRows(), mColumns, mScreenRows, joinBackLines, joinFullLines);
+        trimmingWriter.flush();
+    }
+
+    /**
+     * Write the transcript text to a channel encoded as UTF-8, which is done in chunks of
+     * {@link #TRANSCRIPT_WRITE_BUFFER_SIZE} bytes. See {@link #writeTranscriptText(Writer, boolean, boolean)}. The
+     * channel is not closed.
+     */
+    public void writeTranscriptText(WritableByteChannel channel, boolean joinBackLines, boolean joinFullLines) throws IOException {
+        writeTranscriptText(Channels.newWriter(channel, StandardCharsets.UTF_8.newEncoder(), TRANSCRIPT_WRITE_BUFFER_SIZE),
+            joinBackLines, joinFullLines);
+    }
+
+    private void writeSelectedText(Writer writer, int selX1, int selY1, int selX2, int selY2, boolean joinBackLines, boolean joinFullLines) throws IOException {
         final int columns = mColumns;
+        final TerminalRow scratchRow = new TerminalRow(columns, TextStyle.NORMAL);
 
         if (selY1 < -getActiveTranscriptRows()) selY1 = -getActiveTranscriptRows();
         if (selY2 >= mScreenRows) selY2 = mScreenRows - 1;
@@ -73,7 +145,7 @@ public final class TerminalBuffer {
             } else {
                 x2 = columns;
             }
-            TerminalRow lineObject = mLines[externalToInternalRow(row)];
+            TerminalRow lineObject = getLineForReading(row, scratchRow);
             int x1Index = lineObject.findStartOfColumn(x1);
             int x2Index = (x2 < mColumns) ? lineObject.findStartOfColumn(x2) : lineObject.getSpaceUsed();
             if (x2Index == x1Index) {
@@ -96,13 +168,71 @@ public final class TerminalBuffer {
 
             int len = lastPrintingCharIndex - x1Index + 1;
             if (lastPrintingCharIndex != -1 && len > 0)
-                builder.append(line, x1Index, len);
+                writer.write(line, x1Index, len);
 
             boolean lineFillsWidth = lastPrintingCharIndex == x2Index - 1;
             if ((!joinBackLines || !rowLineWrap) && (!joinFullLines || !lineFillsWidth)
-                && row < selY2 && row < mScreenRows - 1) builder.append('\n');
+                && row < selY2 && row < mScreenRows - 1) writer.write('\n');
+        }
+    }
+
+    /**
+     * A writer dropping the leading and trailing whitespace of the text written to it, in the same way as
+     * {@link String#trim()}. Trailing whitespace is held back until followed by other text, so it is only known to be
+     * trailing once nothing more is written.
+     */
+    private static final class TrimmingWriter extends Writer {
+
+        private final Writer mWriter;
+        private final StringBuilder mPendingWhitespace = new StringBuilder();
+        private boolean mStarted;
+
+        TrimmingWriter(Writer writer) {
+            mWriter = writer;
+        }
+
+        @Override
+        public void write(char[] buffer, int offset, int length) throws IOException {
+            final int end = offset + length;
+            int lastTextIndex = end - 1;
+            while (lastTextIndex >= offset && buffer[lastTextIndex] <= ' ') lastTextIndex--;
+            if (lastTextIndex < offset) {
+                if (mStarted) mPendingWhitespace.append(buffer, offset, length);
+                return;
+            }
+
+            int start = offset;
+            if (mStarted) {
+                if (mPendingWhitespace.length() > 0) {
+                    mWriter.append(mPendingWhitespace);
+                    mPendingWhitespace.setLength(0);
+                }
+            } else {
+                while (buffer[start] <= ' ') start++;
+                mStarted = true;
+            }
+            mWriter.write(buffer, start, lastTextIndex + 1 - start);
+            mPendingWhitespace.append(buffer, lastTextIndex + 1, end - lastTextIndex - 1);
+        }
+
+        @Override
+        public void write(int c) throws IOException {
+            if (c <= ' ') {
+                if (mStarted) mPendingWhitespace.append((char) c);
+            } else {
+                write(new char[]{(char) c}, 0, 1);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            mWriter.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            mWriter.close();
         }
-        return builder.toString();
     }
 
     public String getWordAtLocation(int x, int y) {
@@ -145,11 +275,40 @@ public final class TerminalBuffer {
     }
 
     public int getActiveTranscriptRows() {
-        return mActiveTranscriptRows;
+        return mActiveTranscriptRows + getSpilledTranscriptRows();
     }
 
     public int getActiveRows() {
-        return mActiveTranscriptRows + mScreenRows;
+        return getActiveTranscriptRows() + mScreenRows;
+    }
+
+    /** The number of rows at the start of the transcript which have been spilled to disk. */
+    public int getSpilledTranscriptRows() {
+        return (mTranscriptSpill == null) ? 0 : mTranscriptSpill.getRows();
+    }
+
+    /**
+     * Spill rows evicted from the transcript when it is full to segment files in the specified directory, instead of
+     * dropping them. Any segment files already in the directory are deleted.
+     *
+     * @param directory      the directory to write the segment files to, which should not be shared with another buffer.
+     * @param maxSpilledRows the maximum number of rows to keep on disk, where the oldest rows are deleted to stay within it.
+     */
+    public void enableTranscriptSpill(File directory, long maxSpilledRows) throws IOException {
+        disableTranscriptSpill();
+        mTranscriptSpill = new TranscriptSpill(directory, maxSpilledRows);
+    }
+
+    /** Stop spilling rows evicted from the transcript to disk, deleting the rows already spilled. */
+    public void disableTranscriptSpill() {
+        if (mTranscriptSpill != null) {
+            mTranscriptSpill.clear();
+            mTranscriptSpill = null;
+        }
+    }
+
+    public boolean isTranscriptSpillEnabled() {
+        return mTranscriptSpill != null;
     }
 
     /**
@@ -181,11 +340,15 @@ public final class TerminalBuffer {
     }
 
     public void setLineWrap(int row) {
-        mLines[externalToInternalRow(row)].mLineWrap = true;
+        allocateFullLineIfNecessary(externalToInternalRow(row)).mLineWrap = true;
     }
 
     public boolean getLineWrap(int row) {
-        return mLines[externalToInternalRow(row)].mLineWrap;
+        if (row < -mActiveTranscriptRows) return getLine(row).mLineWrap;
+        final int internalRow = externalToInternalRow(row);
+        if (mReflowChunks[internalRow] != null) reflowChunk(mReflowChunks[internalRow]);
+        final PackedTerminalRow packedLine = mPackedLines[internalRow];
+        return (packedLine != null) ? packedLine.getLineWrap() : allocateFullLineIfNecessary(internalRow).mLineWrap;
     }
 
     public void clearLineWrap(int row) {
@@ -230,17 +393,81 @@ public final class TerminalBuffer {
             mActiveTranscriptRows = altScreen ? 0 : Math.max(0, mActiveTranscriptRows + shiftDownOfTopRow);
             cursor[1] -= shiftDownOfTopRow;
             mScreenRows = newRows;
+            // Rows moved from the transcript to the screen should not be packed:
+            for (int i = 0; i < mScreenRows; i++)
+                allocateFullLineIfNecessary(externalToInternalRow(i));
         } else {
+            final int oldScreenRows = mScreenRows;
+            final int oldCursorRow = cursor[1];
+            final int oldCursorColumn = cursor[0];
+
+            // Collect the rows to reflow, oldest first. A chunk of rows still waiting to be reflowed after an earlier
+            // resize is replaced by the rows it would have been reflowed from:
+            final List<PackedTerminalRow> sourceRowList = new ArrayList<>(mActiveTranscriptRows + oldScreenRows);
+            for (int externalOldRow = -mActiveTranscriptRows; externalOldRow < oldScreenRows; ) {
+                int internalOldRow = externalToInternalRow(externalOldRow);
+                ReflowChunk chunk = mReflowChunks[internalOldRow];
+                if (chunk != null) {
+                    if (chunk.isIntact() && chunk.mFirstSlot == internalOldRow) {
+                        Collections.addAll(sourceRowList, chunk.mSourceRows);
+                        externalOldRow += chunk.mRows;
+                        continue;
+                    }
+                    reflowChunk(chunk);
+                }
+                TerminalRow oldLine = mLines[internalOldRow];
+                sourceRowList.add((oldLine != null) ? PackedTerminalRow.pack(oldLine) : mPackedLines[internalOldRow]);
+                externalOldRow++;
+            }
+            final PackedTerminalRow[] sourceRows = sourceRowList.toArray(new PackedTerminalRow[0]);
+            final int screenSourceRow = sourceRows.length - oldScreenRows;
+            final int cursorSourceRow = screenSourceRow + oldCursorRow;
+
+            // Split the transcript rows which will end up at least a screen above the bottom into chunks to reflow
+            // lazily, where each chunk ends with a whole line:
+            final List<ReflowChunk> chunks = new ArrayList<>();
+            int firstEagerSourceRow = 0;
+            if (mReflowLazily) {
+                ReflowChunk.Reflower counter = new ReflowChunk.Reflower(newColumns, currentStyle, false);
+                int[] chunkStarts = new int[16];
+                int[] chunkStartRows = new int[16];
+                int chunkStartCount = 1;
+                for (int i = 0; i < screenSourceRow; i++) {
+                    counter.add(sourceRows[i]);
+                    if (counter.isAtLineStart() && counter.getRows() - chunkStartRows[chunkStartCount - 1] >= REFLOW_CHUNK_ROWS) {
+                        if (chunkStartCount == chunkStarts.length) {
+                            chunkStarts = Arrays.copyOf(chunkStarts, 2 * chunkStartCount);
+                            chunkStartRows = Arrays.copyOf(chunkStartRows, 2 * chunkStartCount);
+                        }
+                        chunkStarts[chunkStartCount] = i + 1;
+                        chunkStartRows[chunkStartCount++] = counter.getRows();
+                    }
+                }
+
+                int chunkCount = chunkStartCount - 1;
+                while (chunkCount > 0 && chunkStartRows[chunkCount] > counter.getRows() - newRows) chunkCount--;
+                if (chunkCount > 0) {
+                    // Reflow everything right away if the rest could evict rows from the transcript, since rows are
+                    // evicted (and possibly spilled) oldest first:
+                    ReflowChunk.Reflower eagerCounter = new ReflowChunk.Reflower(newColumns, currentStyle, false);
+                    for (int i = chunkStarts[chunkCount]; i < sourceRows.length; i++)
+                        eagerCounter.add(sourceRows[i]);
+                    if (eagerCounter.getRows() + 1 + oldScreenRows > newTotalRows) chunkCount = 0;
+                }
+                for (int i = 0; i < chunkCount; i++) {
+                    PackedTerminalRow[] chunkSourceRows = Arrays.copyOfRange(sourceRows, chunkStarts[i], chunkStarts[i + 1]);
+                    chunks.add(new ReflowChunk(chunkSourceRows, newColumns, currentStyle, chunkStartRows[i + 1] - chunkStartRows[i]));
+                }
+                firstEagerSourceRow = chunkStarts[chunkCount];
+            }
+
             // Copy away old state and update new:
-            TerminalRow[] oldLines = mLines;
             mLines = new TerminalRow[newTotalRows];
-            for (int i = 0; i < newTotalRows; i++)
+            mPackedLines = new PackedTerminalRow[newTotalRows];
+            mReflowChunks = new ReflowChunk[newTotalRows];
+            for (int i = 0; i < newRows; i++)
                 mLines[i] = new TerminalRow(newColumns, currentStyle);
 
-            final int oldActiveTranscriptRows = mActiveTranscriptRows;
-            final int oldScreenFirstRow = mScreenFirstRow;
-            final int oldScreenRows = mScreenRows;
-            final int oldTotalRows = mTotalRows;
             mTotalRows = newTotalRows;
             mScreenRows = newRows;
             mActiveTranscriptRows = mScreenFirstRow = 0;
@@ -248,26 +475,26 @@ public final class TerminalBuffer {
 
             int newCursorRow = -1;
             int newCursorColumn = -1;
-            int oldCursorRow = cursor[1];
-            int oldCursorColumn = cursor[0];
             boolean newCursorPlaced = false;
 
             int currentOutputExternalRow = 0;
             int currentOutputExternalColumn = 0;
 
-            // Loop over every character in the initial state.
+            // Loop over every character in the rows not reflowed lazily.
             // Blank lines should be skipped only if at end of transcript (just as is done in the "fast" resize), so we
             // keep track how many blank lines we have skipped if we later on find a non-blank line.
             int skippedBlankLines = 0;
-            for (int externalOldRow = -oldActiveTranscriptRows; externalOldRow < oldScreenRows; externalOldRow++) {
-                // Do what externalToInternalRow() does but for the old state:
-                int internalOldRow = oldScreenFirstRow + externalOldRow;
-                internalOldRow = (internalOldRow < 0) ? (oldTotalRows + internalOldRow) : (internalOldRow % oldTotalRows);
-
-                TerminalRow oldLine = oldLines[internalOldRow];
-                boolean cursorAtThisRow = externalOldRow == oldCursorRow;
+            TerminalRow oldLine = null;
+            for (int sourceRow = firstEagerSourceRow; sourceRow < sourceRows.length; sourceRow++) {
+                PackedTerminalRow packedOldLine = sourceRows[sourceRow];
+                if (packedOldLine != null) {
+                    if (oldLine == null || oldLine.mColumns != packedOldLine.getColumns())
+                        oldLine = new TerminalRow(packedOldLine.getColumns(), 0);
+                    packedOldLine.unpack(oldLine);
+                }
+                boolean cursorAtThisRow = sourceRow == cursorSourceRow;
                 // The cursor may only be on a non-null line, which we should not skip:
-                if (oldLine == null || (!(!newCursorPlaced && cursorAtThisRow)) && oldLine.isBlank()) {
+                if (packedOldLine == null || (!(!newCursorPlaced && cursorAtThisRow)) && oldLine.isBlank()) {
                     skippedBlankLines++;
                     continue;
                 } else if (skippedBlankLines > 0) {
@@ -291,20 +518,24 @@ public final class TerminalBuffer {
                     if (cursorAtThisRow) justToCursor = true;
                 } else {
                     for (int i = 0; i < oldLine.getSpaceUsed(); i++)
-                        // NEWLY INTRODUCED BUG! Should not index oldLine.mStyle with char indices
-                        if (oldLine.mText[i] != ' '/* || oldLine.mStyle[i] != currentStyle */)
+                        // NEWLY INTRODUCED BUG! Should not index oldLine styles with char indices
+                        if (oldLine.mText[i] != ' '/* || oldLine.getStyle(i) != currentStyle */)
                             lastNonSpaceIndex = i + 1;
                 }
 
                 int currentOldCol = 0;
                 long styleAtCol = 0;
+                int styleRun = 0;
                 for (int i = 0; i < lastNonSpaceIndex; i++) {
                     // Note that looping over java character, not cells.
                     char c = oldLine.mText[i];
                     int codePoint = (Character.isHighSurrogate(c)) ? Character.toCodePoint(c, oldLine.mText[++i]) : c;
                     int displayWidth = WcWidth.width(codePoint);
                     // Use the last style if this is a zero-width character:
-                    if (displayWidth > 0) styleAtCol = oldLine.getStyle(currentOldCol);
+                    if (displayWidth > 0) {
+                        while (currentOldCol >= oldLine.getStyleRunEnd(styleRun)) styleRun++;
+                        styleAtCol = oldLine.getStyleRunStyle(styleRun);
+                    }
 
                     // Line wrap as necessary:
                     if (currentOutputExternalColumn + displayWidth > mColumns) {
@@ -323,7 +554,7 @@ public final class TerminalBuffer {
                     setChar(outputColumn, currentOutputExternalRow, codePoint, styleAtCol);
 
                     if (displayWidth > 0) {
-                        if (oldCursorRow == externalOldRow && oldCursorColumn == currentOldCol) {
+                        if (cursorAtThisRow && oldCursorColumn == currentOldCol) {
                             newCursorColumn = currentOutputExternalColumn;
                             newCursorRow = currentOutputExternalRow;
                             newCursorPlaced = true;
@@ -334,7 +565,7 @@ public final class TerminalBuffer {
                     }
                 }
                 // Old row has been copied. Check if we need to insert newline if old line was not wrapping:
-                if (externalOldRow != (oldScreenRows - 1) && !oldLine.mLineWrap) {
+                if (sourceRow != (sourceRows.length - 1) && !oldLine.mLineWrap) {
                     if (currentOutputExternalRow == mScreenRows - 1) {
                         if (newCursorPlaced) newCursorRow--;
                         scrollDownOneLine(0, mScreenRows, currentStyle);
@@ -345,6 +576,8 @@ public final class TerminalBuffer {
                 }
             }
 
+            insertReflowChunks(chunks);
+
             cursor[0] = newCursorColumn;
             cursor[1] = newCursorRow;
         }
@@ -365,13 +598,17 @@ public final class TerminalBuffer {
         int totalRows = mTotalRows;
 
         int start = len - 1;
-        // Save away line to be overwritten:
+        // Save away line to be overwritten, which may be a packed transcript line:
         TerminalRow lineToBeOverWritten = mLines[(srcInternal + start + 1) % totalRows];
-        // Do the copy from bottom to top.
-        for (int i = start; i >= 0; --i)
+        PackedTerminalRow packedLineToBeOverWritten = mPackedLines[(srcInternal + start + 1) % totalRows];
+        // Do the copy from bottom to top. Lines within the screen are never packed.
+        for (int i = start; i >= 0; --i) {
             mLines[(srcInternal + i + 1) % totalRows] = mLines[(srcInternal + i) % totalRows];
+            mPackedLines[(srcInternal + i + 1) % totalRows] = null;
+        }
         // Put back overwritten line, now above the block:
         mLines[(srcInternal) % totalRows] = lineToBeOverWritten;
+        mPackedLines[(srcInternal) % totalRows] = packedLineToBeOverWritten;
     }
 
     /**
@@ -385,6 +622,16 @@ public final class TerminalBuffer {
         if (topMargin > bottomMargin - 1 || topMargin < 0 || bottomMargin > mScreenRows)
             throw new IllegalArgumentException("topMargin=" + topMargin + ", bottomMargin=" + bottomMargin + ", mScreenRows=" + mScreenRows);
 
+        // The oldest transcript row is about to be evicted if the transcript is full:
+        int oldestRow = (mScreenFirstRow + mScreenRows) % mTotalRows;
+        if (mReflowChunks[oldestRow] != null) {
+            if (mTranscriptSpill != null) {
+                reflowChunk(mReflowChunks[oldestRow]);
+            } else {
+                dropReflowChunkRow(oldestRow);
+            }
+        }
+
         // Copy the fixed topMargin lines one line down so that they remain on screen in same position:
         blockCopyLinesDown(mScreenFirstRow, topMargin);
         // Copy the fixed mScreenRows-bottomMargin lines one line down so that they remain on screen in same
@@ -394,14 +641,33 @@ public final class TerminalBuffer {
         // Update the screen location in the ring buffer:
         mScreenFirstRow = (mScreenFirstRow + 1) % mTotalRows;
         // Note that the history has grown if not already full:
-        if (mActiveTranscriptRows < mTotalRows - mScreenRows) mActiveTranscriptRows++;
+        final boolean transcriptFull = mActiveTranscriptRows == mTotalRows - mScreenRows;
+        if (!transcriptFull) mActiveTranscriptRows++;
+
+        // Pack the line which scrolled into the transcript, keeping its row object for reuse below:
+        TerminalRow unusedRow = null;
+        if (mTotalRows > mScreenRows) {
+            int transcriptRow = externalToInternalRow(-1);
+            unusedRow = mLines[transcriptRow];
+            if (unusedRow != null) {
+                mPackedLines[transcriptRow] = PackedTerminalRow.pack(unusedRow);
+                mLines[transcriptRow] = null;
+            }
+        }
 
-        // Blank the newly revealed line above the bottom margin:
+        // Blank the newly revealed line above the bottom margin, which held the oldest transcript row if it was full:
         int blankRow = externalToInternalRow(bottomMargin - 1);
-        if (mLines[blankRow] == null) {
-            mLines[blankRow] = new TerminalRow(mColumns, style);
-        } else {
+        if (transcriptFull && mTranscriptSpill != null) spillTranscriptRow(blankRow);
+        mPackedLines[blankRow] = null;
+        dropReflowChunkRow(blankRow);
+        if (mLines[blankRow] != null) {
             mLines[blankRow].clear(style);
+        } else if (unusedRow != null) {
+            unusedRow.clear(style);
+            unusedRow.mLineWrap = false;
+            mLines[blankRow] = unusedRow;
+        } else {
+            mLines[blankRow] = new TerminalRow(mColumns, style);
         }
     }
 
@@ -445,7 +711,133 @@ public final class TerminalBuffer {
     }
 
     public TerminalRow allocateFullLineIfNecessary(int row) {
-        return (mLines[row] == null) ? (mLines[row] = new TerminalRow(mColumns, 0)) : mLines[row];
+        if (mLines[row] == null) {
+            if (mReflowChunks[row] != null) reflowChunk(mReflowChunks[row]);
+            mLines[row] = new TerminalRow(mColumns, 0);
+            if (mPackedLines[row] != null) {
+                mPackedLines[row].unpack(mLines[row]);
+                mPackedLines[row] = null;
+            }
+        }
+        return mLines[row];
+    }
+
+    /**
+     * Get the row at the specified row in the external coordinate system, which may be a row spilled to disk. A packed
+     * transcript row is unpacked in place.
+     */
+    public TerminalRow getLine(int externalRow) {
+        if (externalRow < -mActiveTranscriptRows && mTranscriptSpill != null) {
+            int spilledRows = mTranscriptSpill.getRows();
+            int spilledRow = spilledRows + mActiveTranscriptRows + externalRow;
+            if (spilledRow < 0)
+                throw new IllegalArgumentException("extRow=" + externalRow + ", mActiveTranscriptRows=" + mActiveTranscriptRows + ", spilledRows=" + spilledRows);
+            try {
+                return mTranscriptSpill.getRow(spilledRow, mColumns);
+            } catch (IOException e) {
+                return new TerminalRow(mColumns, TextStyle.NORMAL);
+            }
+        }
+        return allocateFullLineIfNecessary(externalToInternalRow(externalRow));
+    }
+
+    /**
+     * Get the row at the specified row in the external coordinate system for reading only. A packed transcript row is
+     * unpacked into the scratch row instead of being unpacked in place, so that reading the whole transcript does not
+     * unpack it all.
+     */
+    TerminalRow getLineForReading(int externalRow, TerminalRow scratchRow) {
+        if (externalRow < -mActiveTranscriptRows) return getLine(externalRow);
+        int row = externalToInternalRow(externalRow);
+        if (mReflowChunks[row] != null) reflowChunk(mReflowChunks[row]);
+        if (mLines[row] == null && mPackedLines[row] != null) {
+            mPackedLines[row].unpack(scratchRow);
+            return scratchRow;
+        }
+        return allocateFullLineIfNecessary(row);
+    }
+
+    /**
+     * Insert chunks of rows to be reflowed lazily at the start of the transcript, oldest first. The oldest rows which do
+     * not fit in the transcript are dropped, or spilled to disk if enabled.
+     */
+    private void insertReflowChunks(List<ReflowChunk> chunks) {
+        int rows = 0;
+        for (ReflowChunk chunk : chunks)
+            rows += chunk.mRows;
+        final int keptRows = Math.min(rows, mTotalRows - mScreenRows - mActiveTranscriptRows);
+        final int firstKeptRow = rows - keptRows;
+        mActiveTranscriptRows += keptRows;
+
+        int chunkFirstRow = 0;
+        for (ReflowChunk chunk : chunks) {
+            final int droppedRows = Math.min(chunk.mRows, Math.max(0, firstKeptRow - chunkFirstRow));
+            chunk.mDroppedRows = droppedRows;
+            chunk.mPendingRows = chunk.mRows - droppedRows;
+            if (chunk.mPendingRows > 0) {
+                chunk.mFirstSlot = externalToInternalRow(chunkFirstRow + droppedRows - firstKeptRow - mActiveTranscriptRows);
+                for (int i = 0; i < chunk.mPendingRows; i++)
+                    mReflowChunks[(chunk.mFirstSlot + i) % mTotalRows] = chunk;
+            }
+            if (droppedRows > 0 && mTranscriptSpill != null) {
+                PackedTerminalRow[] reflowedRows = reflowChunk(chunk);
+                for (int i = 0; i < droppedRows && mTranscriptSpill != null; i++)
+                    spillRow(reflowedRows[i]);
+            }
+            chunkFirstRow += chunk.mRows;
+        }
+    }
+
+    /** Reflow the rows of a chunk which are still waiting in the buffer, returning all rows of the chunk. */
+    private PackedTerminalRow[] reflowChunk(ReflowChunk chunk) {
+        PackedTerminalRow[] reflowedRows = chunk.reflow();
+        for (int i = chunk.mDroppedRows; i < chunk.mRows; i++) {
+            int row = (chunk.mFirstSlot + i - chunk.mDroppedRows) % mTotalRows;
+            if (mReflowChunks[row] == chunk) {
+                mReflowChunks[row] = null;
+                mPackedLines[row] = reflowedRows[i];
+            }
+        }
+        chunk.mPendingRows = 0;
+        return reflowedRows;
+    }
+
+    /** Drop the row at the specified internal index from the chunk of rows waiting to be reflowed it belongs to, if any. */
+    private void dropReflowChunkRow(int row) {
+        ReflowChunk chunk = mReflowChunks[row];
+        if (chunk != null) {
+            mReflowChunks[row] = null;
+            chunk.mPendingRows--;
+        }
+    }
+
+    /**
+     * Get the packed row at the specified row in the external coordinate system, or null if the row is not a packed
+     * transcript row held in memory.
+     */
+    PackedTerminalRow getPackedLine(int externalRow) {
+        if (externalRow < -mActiveTranscriptRows) return null;
+        int row = externalToInternalRow(externalRow);
+        return (mLines[row] == null) ? mPackedLines[row] : null;
+    }
+
+    /** Spill the transcript row at the specified internal index, which is about to be evicted, to disk. */
+    private void spillTranscriptRow(int row) {
+        PackedTerminalRow packedLine = mPackedLines[row];
+        if (packedLine == null) {
+            if (mLines[row] == null) return;
+            packedLine = PackedTerminalRow.pack(mLines[row]);
+        }
+        spillRow(packedLine);
+    }
+
+    private void spillRow(PackedTerminalRow packedLine) {
+        try {
+            mTranscriptSpill.append(packedLine);
+        } catch (IOException e) {
+            // Give up on spilling, and drop evicted rows as when spilling is not enabled.
+            disableTranscriptSpill();
+        }
     }
 
     public void setChar(int column, int row, int codePoint, long style) {
@@ -455,8 +847,19 @@ public final class TerminalBuffer {
         allocateFullLineIfNecessary(row).setChar(column, codePoint, style);
     }
 
+    /**
+     * Set a run of printable ASCII characters, all with the same style, starting at the specified column. The run
+     * must fit on the row.
+     */
+    public void setChars(int column, int row, byte[] ascii, int offset, int count, long style) {
+        if (row < 0 || row >= mScreenRows || column < 0 || column + count > mColumns)
+            throw new IllegalArgumentException("TerminalBuffer.setChars(): row=" + row + ", column=" + column + ", count=" + count + ", mScreenRows=" + mScreenRows + ", mColumns=" + mColumns);
+        row = externalToInternalRow(row);
+        allocateFullLineIfNecessary(row).setChars(column, ascii, offset, count, style);
+    }
+
     public long getStyleAt(int externalRow, int column) {
-        return allocateFullLineIfNecessary(externalToInternalRow(externalRow)).getStyle(column);
+        return getLine(externalRow).getStyle(column);
     }
 
     /** Support for http://vt100.net/docs/vt510-rm/DECCARA and http://vt100.net/docs/vt510-rm/DECCARA */
@@ -464,10 +867,14 @@ public final class TerminalBuffer {
                                  int bottom, int right) {
         for (int y = top; y < bottom; y++) {
             TerminalRow line = mLines[externalToInternalRow(y)];
+            line.mModificationCount++;
             int startOfLine = (rectangular || y == top) ? left : leftMargin;
             int endOfLine = (rectangular || y + 1 == bottom) ? right : rightMargin;
-            for (int x = startOfLine; x < endOfLine; x++) {
-                long currentStyle = line.getStyle(x);
+            // Change the style of each style run in the area at once:
+            for (int x = startOfLine; x < endOfLine; ) {
+                int run = line.findStyleRun(x);
+                int runEnd = Math.min(line.getStyleRunEnd(run), endOfLine);
+                long currentStyle = line.getStyleRunStyle(run);
                 int foreColor = TextStyle.decodeForeColor(currentStyle);
                 int backColor = TextStyle.decodeBackColor(currentStyle);
                 int effect = TextStyle.decodeEffect(currentStyle);
@@ -479,7 +886,8 @@ public final class TerminalBuffer {
                 } else {
                     effect &= ~bits;
                 }
-                line.mStyle[x] = TextStyle.encode(foreColor, backColor, effect);
+                line.setStyle(x, runEnd, TextStyle.encode(foreColor, backColor, effect));
+                x = runEnd;
             }
         }
     }
@@ -488,9 +896,16 @@ public final class TerminalBuffer {
         if (mScreenFirstRow < mActiveTranscriptRows) {
             Arrays.fill(mLines, mTotalRows + mScreenFirstRow - mActiveTranscriptRows, mTotalRows, null);
             Arrays.fill(mLines, 0, mScreenFirstRow, null);
+            Arrays.fill(mPackedLines, mTotalRows + mScreenFirstRow - mActiveTranscriptRows, mTotalRows, null);
+            Arrays.fill(mPackedLines, 0, mScreenFirstRow, null);
+            Arrays.fill(mReflowChunks, mTotalRows + mScreenFirstRow - mActiveTranscriptRows, mTotalRows, null);
+            Arrays.fill(mReflowChunks, 0, mScreenFirstRow, null);
         } else {
             Arrays.fill(mLines, mScreenFirstRow - mActiveTranscriptRows, mScreenFirstRow, null);
+            Arrays.fill(mPackedLines, mScreenFirstRow - mActiveTranscriptRows, mScreenFirstRow, null);
+            Arrays.fill(mReflowChunks, mScreenFirstRow - mActiveTranscriptRows, mScreenFirstRow, null);
         }
+        if (mTranscriptSpill != null) mTranscriptSpill.clear();
         mActiveTranscriptRows = 0;
     }
 
@@ -162,7 +162,7 @@ public final class TerminalEmulator {
 
 
     /** The normal screen buffer. Stores the characters that appear on the screen of the emulated terminal. */
-    private final TerminalBuffer mMainBuffer;
+    final TerminalBuffer mMainBuffer;
     /**
      * The alternate screen buffer, exactly as large as the display and contains no additional saved lines (so that when
      * the alternate screen buffer is active, you cannot scroll back to view saved lines).
@@ -481,6 +481,11 @@ public final class TerminalEmulator {
         return isDecsetInternalBitSet(DECSET_BIT_APPLICATION_CURSOR_KEYS);
     }
 
+    /** If pasted text is to be prefixed with "\033[200~" and suffixed with "\033[201~", set by DECSET 2004. */
+    public boolean isBracketedPasteModeActive() {
+        return isDecsetInternalBitSet(DECSET_BIT_BRACKETED_PASTE_MODE);
+    }
+
     /** If mouse events are being sent as escape codes to the terminal. */
     public boolean isMouseTrackingActive() {
         return isDecsetInternalBitSet(DECSET_BIT_MOUSE_TRACKING_PRESS_RELEASE) || isDecsetInternalBitSet(DECSET_BIT_MOUSE_TRACKING_BUTTON_EVENT);
@@ -498,8 +503,82 @@ public final class TerminalEmulator {
      * @param length the number of bytes in the array to process
      */
     public void append(byte[] buffer, int length) {
-        for (int i = 0; i < length; i++)
-            processByte(buffer[i]);
+        for (int i = 0; i < length; i++) {
+            byte b = buffer[i];
+            if (isPrintableAscii(b) && mUtf8ToFollow == 0 && canEmitAsciiRun()) {
+                // Fast path: find the longest run of printable ASCII and write it in bulk.
+                int runEnd = i + 1;
+                while (runEnd < length && isPrintableAscii(buffer[runEnd])) runEnd++;
+                emitAsciiRun(buffer, i, runEnd);
+                i = runEnd - 1;
+            } else {
+                processByte(b);
+            }
+        }
+    }
+
+    private static boolean isPrintableAscii(byte b) {
+        return b >= 32 && b < 127;
+    }
+
+    /**
+     * If printable ASCII may be written through {@link #emitAsciiRun(byte[], int, int)} instead of one code point at a
+     * time through {@link #emitCodePoint(int)}, which is the case when not inside an escape sequence, not in insert mode
+     * not using the line drawing character set and the cursor
+     * is inside the screen and not to the right of the right margin.
+     */
+    private boolean canEmitAsciiRun() {
+        return mEscapeState == ESC_NONE && !mInsertMode && mCursorCol >= 0 && mCursorCol < mRightMargin
+            && !(mUseLineDrawingUsesG0 ? mUseLineDrawingG0 : mUseLineDrawingG1);
+    }
+
+    /**
+     * Send a run of printable ASCII to the screen. This has the same effect as calling {@link #emitCodePoint(int)}
+     * for each byte, but writes as many characters as fit on the current row at once.
+     *
+     * @param buffer the buffer containing only printable ASCII between start and end
+     * @param start  the index of the first byte to emit
+     * @param end    the index after the last byte to emit
+     */
+    private void emitAsciiRun(byte[] buffer, int start, int end) {
+        final boolean autoWrap = isDecsetInternalBitSet(DECSET_BIT_AUTOWRAP);
+        final long style = getStyle();
+        mContinueSequence = false;
+        mLastEmittedCodePoint = buffer[end - 1];
+
+        while (start < end) {
+            final boolean cursorInLastColumn = mCursorCol == mRightMargin - 1;
+            if (autoWrap && cursorInLastColumn && mAboutToAutoWrap) {
+                mScreen.setLineWrap(mCursorRow);
+                mCursorCol = mLeftMargin;
+                if (mCursorRow + 1 < mBottomMargin) {
+                    mCursorRow++;
+                } else {
+                    scrollDownOneLine();
+                }
+            }
+
+            final int columnsLeft = mRightMargin - mCursorCol;
+            int count = end - start;
+            if (count > columnsLeft) {
+                if (!autoWrap) {
+                    // Without autowrap every character past the right margin overwrites the last column, so only the
+                    // last one of them is visible.
+                    mScreen.setChars(mCursorCol, mCursorRow, buffer, start, columnsLeft - 1, style);
+                    mScreen.setChar(mCursorCol + columnsLeft - 1, mCursorRow, buffer[end - 1], style);
+                    mCursorCol = mRightMargin - 1;
+                    return;
+                }
+                count = columnsLeft;
+            }
+
+            mScreen.setChars(mCursorCol, mCursorRow, buffer, start, count, style);
+            start += count;
+
+            final int lastColumnWritten = mCursorCol + count - 1;
+            if (autoWrap) mAboutToAutoWrap = (lastColumnWritten == mRightMargin - 1);
+            mCursorCol = Math.min(lastColumnWritten + 1, mRightMargin - 1);
+        }
     }
 
     private void processByte(byte byteToProcess) {
@@ -1217,8 +1296,7 @@ public final class TerminalEmulator {
             case 9: // X10 mouse reporting - outdated. Do not implement.
             case 12: // Control cursor blinking - ignore.
             case 25: // Hide/show cursor - no action needed, renderer will check with shouldCursorBeVisible().
-                if (mClient != null)
-                    mClient.onTerminalCursorStateChange(setting);
+                mSession.onTerminalCursorStateChange(setting);
                 break;
             case 40: // Allow 80 => 132 Mode, ignore.
             case 45: // TODO: Reverse wrap-around. Implement???
@@ -2587,13 +2665,20 @@ public final class TerminalEmulator {
 
     /** If DECSET 2004 is set, prefix paste with "\033[200~" and suffix with "\033[201~". */
     public void paste(String text) {
+        paste(text, isBracketedPasteModeActive());
+    }
+
+    /**
+     * Paste with bracketed paste mode as read by the caller, like while holding {@link TerminalSession#getEmulatorLock()},
+     * see {@link TerminalSession#paste(String)}.
+     */
+    public void paste(String text, boolean bracketed) {
         // First: Always remove escape key and C1 control characters [0x80,0x9F]:
         text = text.replaceAll("(\u001B|[\u0080-\u009F])", "");
         // Second: Replace all newlines (\n) or CRLF (\r\n) with carriage returns (\r).
         text = text.replaceAll("\r?\n", "\r");
 
         // Then: Implement bracketed paste mode if enabled:
-        boolean bracketed = isDecsetInternalBitSet(DECSET_BIT_BRACKETED_PASTE_MODE);
         if (bracketed) mSession.write("\033[200~");
         mSession.write(text);
         if (bracketed) mSession.write("\033[201~");
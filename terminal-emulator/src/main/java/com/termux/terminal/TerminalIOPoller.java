@@ -0,0 +1,296 @@
+package com.termux.terminal;
+
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.OsConstants;
+
+import java.io.FileDescriptor;
+import java.io.InterruptedIOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A single thread polling the pseudoterminals of all sessions using {@link TerminalSession#PTY_READER_MODE_SHARED_POLLER}
+ * with epoll(7), instead of each session blocking a reader and a writer thread of its own. When a pseudoterminal has
+ * output to read, or room for queued input once a write would have blocked, the I/O is handed over to a small shared
+ * executor, so the number of threads stays the same however many sessions are open.
+ * <p>
+ * The file descriptors are non-blocking and polled one-shot: once reported, a file descriptor is not polled again until
+ * the I/O for it has been done and it is re-armed, so only one executor thread handles a session's reads or writes at
+ * a time. Output is only read while there is free space in the session's {@link ByteQueue}, and reading is resumed by
+ * {@link Registration#resumeReadIfPaused()} once the main thread has drained it.
+ */
+public final class TerminalIOPoller {
+
+    /** The epoll(7) event for a file descriptor being readable. */
+    static final int POLL_IN = 0x001;
+    /** The epoll(7) event for a file descriptor being writable. */
+    static final int POLL_OUT = 0x004;
+
+    /** The number of threads the I/O of all sessions is handed over to. */
+    static final int EXECUTOR_THREADS = 2;
+    /** The max number of file descriptors reported by one poll. */
+    private static final int MAX_EVENTS = 64;
+    /** The size of the buffer input is written to the process from. */
+    private static final int WRITE_BUFFER_SIZE = 4096;
+
+    private static TerminalIOPoller sInstance;
+
+    private static final String LOG_TAG = "TerminalIOPoller";
+
+    private final int mPollerFileDescriptor;
+    private final ExecutorService mExecutor;
+    private final Map<Integer, Registration> mRegistrations = new ConcurrentHashMap<>();
+    private final AtomicInteger mNextId = new AtomicInteger();
+    /** The number of events dispatched to the executor. Only written by the poller thread. */
+    private volatile long mDispatches;
+
+    private TerminalIOPoller() {
+        mPollerFileDescriptor = JNI.createPoller();
+        final AtomicInteger threads = new AtomicInteger();
+        mExecutor = Executors.newFixedThreadPool(EXECUTOR_THREADS, runnable -> {
+            Thread thread = new Thread(runnable, "TermSessionIO-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        Thread pollerThread = new Thread("TermSessionPoller") {
+            @Override
+            public void run() {
+                poll();
+            }
+        };
+        pollerThread.setDaemon(true);
+        pollerThread.start();
+    }
+
+    /** Get the poller shared by all sessions, starting it if not already started. */
+    public static synchronized TerminalIOPoller getInstance() {
+        if (sInstance == null) sInstance = new TerminalIOPoller();
+        return sInstance;
+    }
+
+    /**
+     * Start polling a pseudoterminal.
+     *
+     * @param fileDescriptor The file descriptor of the pseudoterminal, which will be made non-blocking.
+     * @param fileDescriptorWrapped The same file descriptor wrapped to read and write through {@link Os}.
+     * @param outputQueue The queue to write process output to, from an executor thread.
+     * @param inputQueue The queue to read input to the process from, from an executor thread.
+     * @param outputListener Called on an executor thread after process output has been written to the queue.
+     * @return The registration to schedule writes and resume reads with, and to close once the process has exited.
+     */
+    Registration register(int fileDescriptor, FileDescriptor fileDescriptorWrapped, ByteQueue outputQueue,
+                          ByteQueue inputQueue, Runnable outputListener) {
+        Registration registration = new Registration(mNextId.getAndIncrement(), fileDescriptor, fileDescriptorWrapped,
+            outputQueue, inputQueue, outputListener);
+        mRegistrations.put(registration.mId, registration);
+        JNI.addToPoller(mPollerFileDescriptor, fileDescriptor, registration.readToken(), POLL_IN);
+        // Writes are polled through a duplicate, so they can be armed separately from reads:
+        JNI.addToPoller(mPollerFileDescriptor, registration.mWriteFileDescriptor, registration.writeToken(), 0);
+        return registration;
+    }
+
+    private void poll() {
+        final int[] tokens = new int[MAX_EVENTS];
+        try {
+            while (true) {
+                int count = JNI.waitForPoller(mPollerFileDescriptor, tokens);
+                for (int i = 0; i < count; i++) {
+                    Registration registration = mRegistrations.get(tokens[i] >>> 1);
+                    if (registration == null) continue;
+                    if ((tokens[i] & 1) == 0) {
+                        mExecutor.execute(registration.mReadTask);
+                    } else if (registration.mWriteScheduled.get()) {
+                        // Only writes which would have blocked are polled for, otherwise this is a hang up:
+                        mExecutor.execute(registration.mWriteTask);
+                    }
+                }
+                mDispatches += count;
+            }
+        } catch (RuntimeException e) {
+            // Should never happen, but with polling stopped sessions using it will no longer get any output.
+            Logger.logStackTraceWithMessage(null, LOG_TAG, "Polling failed", e);
+        }
+    }
+
+    /** Get the current state of the poller and the queues of the sessions using it. */
+    public Stats getStats() {
+        Stats stats = new Stats();
+        stats.threads = 1 + EXECUTOR_THREADS;
+        stats.dispatches = mDispatches;
+        for (Registration registration : mRegistrations.values()) {
+            stats.sessions++;
+            int queuedOutputBytes = registration.mOutputQueue.getStoredBytes();
+            stats.queuedOutputBytes += queuedOutputBytes;
+            stats.maxQueuedOutputBytes = Math.max(stats.maxQueuedOutputBytes, queuedOutputBytes);
+            stats.queuedInputBytes += registration.mInputQueue.getStoredBytes();
+            if (registration.mReadPaused.get()) stats.pausedSessions++;
+        }
+        return stats;
+    }
+
+    /** The state of the poller and the queues of the sessions using it. */
+    public static final class Stats {
+
+        /** The number of sessions polled. */
+        public int sessions;
+        /** The number of threads used for all sessions. */
+        public int threads;
+        /** The number of events dispatched to the executor since the poller was started. */
+        public long dispatches;
+        /** The number of process output bytes queued for the main thread, in total and for the session with the most. */
+        public int queuedOutputBytes, maxQueuedOutputBytes;
+        /** The number of input bytes queued to be written to the processes. */
+        public int queuedInputBytes;
+        /** The number of sessions not being read from until the main thread drains their full output queue. */
+        public int pausedSessions;
+
+        @Override
+        public String toString() {
+            return "Stats[sessions=" + sessions + ", threads=" + threads + ", dispatches=" + dispatches +
+                ", queuedOutputBytes=" + queuedOutputBytes + ", maxQueuedOutputBytes=" + maxQueuedOutputBytes +
+                ", queuedInputBytes=" + queuedInputBytes + ", pausedSessions=" + pausedSessions + "]";
+        }
+
+    }
+
+    /** The I/O state of a pseudoterminal polled by the poller. The I/O itself is done while holding its lock. */
+    final class Registration {
+
+        final int mId;
+        private final int mFileDescriptor;
+        private final FileDescriptor mFileDescriptorWrapped;
+        /** A duplicate of {@link #mFileDescriptor} polled for writes. */
+        final int mWriteFileDescriptor;
+        final ByteQueue mOutputQueue;
+        final ByteQueue mInputQueue;
+        private final Runnable mOutputListener;
+
+        private byte[] mReadBuffer;
+        private final byte[] mWriteBuffer = new byte[WRITE_BUFFER_SIZE];
+        /** The part of {@link #mWriteBuffer} read from {@link #mInputQueue} and not yet written. */
+        private int mWriteOffset, mWriteLength;
+
+        /** If the read task has stopped because {@link #mOutputQueue} is full. */
+        final AtomicBoolean mReadPaused = new AtomicBoolean();
+        /** If the write task has been submitted or is polled for, until it finds {@link #mInputQueue} empty. */
+        final AtomicBoolean mWriteScheduled = new AtomicBoolean();
+        private boolean mClosed;
+
+        final Runnable mReadTask = this::read;
+        final Runnable mWriteTask = this::write;
+
+        Registration(int id, int fileDescriptor, FileDescriptor fileDescriptorWrapped, ByteQueue outputQueue,
+                     ByteQueue inputQueue, Runnable outputListener) {
+            mId = id;
+            mFileDescriptor = fileDescriptor;
+            mFileDescriptorWrapped = fileDescriptorWrapped;
+            mWriteFileDescriptor = JNI.dup(fileDescriptor);
+            mOutputQueue = outputQueue;
+            mInputQueue = inputQueue;
+            mOutputListener = outputListener;
+            mReadBuffer = new byte[outputQueue.getCapacity()];
+        }
+
+        int readToken() {
+            return mId << 1;
+        }
+
+        int writeToken() {
+            return (mId << 1) | 1;
+        }
+
+        /** Called on an executor thread when the pseudoterminal is readable or has hung up. */
+        private synchronized void read() {
+            if (mClosed) return;
+            while (true) {
+                int free = mOutputQueue.getCapacity() - mOutputQueue.getStoredBytes();
+                if (free == 0) {
+                    mReadPaused.set(true);
+                    // The main thread may have drained the queue before seeing the read paused:
+                    if (mOutputQueue.getStoredBytes() == mOutputQueue.getCapacity() || !mReadPaused.compareAndSet(true, false))
+                        return;
+                    continue;
+                }
+                if (mReadBuffer.length != mOutputQueue.getCapacity()) mReadBuffer = new byte[mOutputQueue.getCapacity()];
+
+                int read;
+                try {
+                    read = Os.read(mFileDescriptorWrapped, mReadBuffer, 0, Math.min(free, mReadBuffer.length));
+                } catch (ErrnoException e) {
+                    if (e.errno == OsConstants.EINTR) continue;
+                    if (e.errno == OsConstants.EAGAIN) JNI.armInPoller(mPollerFileDescriptor, mFileDescriptor, readToken(), POLL_IN);
+                    // Otherwise an EIO after the process has exited, which stops reading.
+                    return;
+                } catch (InterruptedIOException e) {
+                    return;
+                }
+                if (read <= 0) return;
+                if (!mOutputQueue.write(mReadBuffer, 0, read)) return;
+                mOutputListener.run();
+                // Let other sessions be read from before reading more:
+                JNI.armInPoller(mPollerFileDescriptor, mFileDescriptor, readToken(), POLL_IN);
+                return;
+            }
+        }
+
+        /** Called on an executor thread when there is input queued, or the pseudoterminal is writable again. */
+        private synchronized void write() {
+            if (mClosed) return;
+            while (true) {
+                if (mWriteLength == 0) {
+                    int read = mInputQueue.read(mWriteBuffer, false);
+                    if (read <= 0) {
+                        mWriteScheduled.set(false);
+                        // Input may have been queued after the read above, without scheduling the write task again:
+                        if (read == 0 && mInputQueue.getStoredBytes() > 0 && mWriteScheduled.compareAndSet(false, true))
+                            continue;
+                        return;
+                    }
+                    mWriteOffset = 0;
+                    mWriteLength = read;
+                }
+
+                try {
+                    int written = Os.write(mFileDescriptorWrapped, mWriteBuffer, mWriteOffset, mWriteLength);
+                    mWriteOffset += written;
+                    mWriteLength -= written;
+                } catch (ErrnoException e) {
+                    if (e.errno == OsConstants.EINTR) continue;
+                    if (e.errno == OsConstants.EAGAIN)
+                        JNI.armInPoller(mPollerFileDescriptor, mWriteFileDescriptor, writeToken(), POLL_OUT);
+                    return;
+                } catch (InterruptedIOException e) {
+                    return;
+                }
+            }
+        }
+
+        /** Called after input has been written to {@link #mInputQueue}, to write it to the process. */
+        void scheduleWrite() {
+            if (mWriteScheduled.compareAndSet(false, true)) mExecutor.execute(mWriteTask);
+        }
+
+        /** Called on the main thread after draining {@link #mOutputQueue}, to continue reading if it was full. */
+        void resumeReadIfPaused() {
+            if (mReadPaused.get() && mReadPaused.compareAndSet(true, false)) mExecutor.execute(mReadTask);
+        }
+
+        /** Stop polling the pseudoterminal, before its file descriptor is closed. */
+        synchronized void close() {
+            if (mClosed) return;
+            mClosed = true;
+            mRegistrations.remove(mId);
+            JNI.removeFromPoller(mPollerFileDescriptor, mFileDescriptor);
+            JNI.removeFromPoller(mPollerFileDescriptor, mWriteFileDescriptor);
+            JNI.close(mWriteFileDescriptor);
+        }
+
+    }
+
+}
@@ -5,7 +5,9 @@ import java.util.Arrays;
 /**
  * A row in a terminal, composed of a fixed number of cells.
  * <p>
- * The text in the row is stored in a char[] array, {@link #mText}, for quick access during rendering.
+ * The text in the row is stored in a char[] array, {@link #mText}, for quick access during rendering. The styles of
+ * the cells are stored as runs of cells with the same style, which can be iterated over with
+ * {@link #getStyleRunCount()}, {@link #getStyleRunEnd(int)} and {@link #getStyleRunStyle(int)}.
  */
 public final class TerminalRow {
 
@@ -37,27 +39,51 @@ public final class TerminalRow {
      */
     private static final int MAX_COMBINING_CHARACTERS_PER_COLUMN = 15;
 
+    /** The initial capacity of the style run arrays, which is enough for most rows. */
+    private static final int INITIAL_STYLE_RUNS_CAPACITY = 4;
+
     /** The number of columns in this terminal row. */
-    private final int mColumns;
+    final int mColumns;
     /** The text filling this terminal row. */
     public char[] mText;
     /** The number of java chars used in {@link #mText}. */
-    private short mSpaceUsed;
+    short mSpaceUsed;
     /** If this row has been line wrapped due to text output at the end of line. */
     boolean mLineWrap;
-    /** The style bits of each cell in the row. See {@link TextStyle}. */
-    final long[] mStyle;
+    /**
+     * The first column of each run of cells with the same style, in increasing order and starting with column 0. A run
+     * ends where the next one starts, and adjacent runs have different styles.
+     */
+    private int[] mStyleRunStarts = new int[INITIAL_STYLE_RUNS_CAPACITY];
+    /** The style bits of the cells of each run. See {@link TextStyle}. */
+    private long[] mStyleRunStyles = new long[INITIAL_STYLE_RUNS_CAPACITY];
+    /** The number of style runs used in {@link #mStyleRunStarts} and {@link #mStyleRunStyles}. */
+    private int mStyleRuns;
     /** If this row might contain chars with width != 1, used for deactivating fast path */
     boolean mHasNonOneWidthOrSurrogateChars;
+    /** Incremented each time the text or style of this row changes, see {@link #getModificationCount()}. */
+    int mModificationCount;
 
     /** Construct a blank row (containing only whitespace, ' ') with a specified style. */
     public TerminalRow(int columns, long style) {
         mColumns = columns;
         mText = new char[(int) (SPARE_CAPACITY_FACTOR * columns)];
-        mStyle = new long[columns];
         clear(style);
     }
 
+    /** Construct a copy of a row, with the same text, styles and {@link #getModificationCount()}. */
+    TerminalRow(TerminalRow row) {
+        mColumns = row.mColumns;
+        mText = Arrays.copyOf(row.mText, row.mSpaceUsed);
+        mSpaceUsed = row.mSpaceUsed;
+        mLineWrap = row.mLineWrap;
+        mStyleRunStarts = Arrays.copyOf(row.mStyleRunStarts, row.mStyleRuns);
+        mStyleRunStyles = Arrays.copyOf(row.mStyleRunStyles, row.mStyleRuns);
+        mStyleRuns = row.mStyleRuns;
+        mHasNonOneWidthOrSurrogateChars = row.mHasNonOneWidthOrSurrogateChars;
+        mModificationCount = row.mModificationCount;
+    }
+
     /** NOTE: The sourceX2 is exclusive. */
     public void copyInterval(TerminalRow line, int sourceX1, int sourceX2, int destinationX) {
         mHasNonOneWidthOrSurrogateChars |= line.mHasNonOneWidthOrSurrogateChars;
@@ -88,6 +114,14 @@ public final class TerminalRow {
         return mSpaceUsed;
     }
 
+    /**
+     * Get a counter which changes each time the text or style of this row changes, so that a renderer can skip drawing
+     * a row which has not changed since it was last drawn.
+     */
+    public int getModificationCount() {
+        return mModificationCount;
+    }
+
     /** Note that the column may end of second half of wide character. */
     public int findStartOfColumn(int column) {
         if (column == mColumns) return getSpaceUsed();
@@ -142,18 +176,22 @@ public final class TerminalRow {
     }
 
     public void clear(long style) {
+        mModificationCount++;
         Arrays.fill(mText, ' ');
-        Arrays.fill(mStyle, style);
+        mStyleRuns = 1;
+        mStyleRunStarts[0] = 0;
+        mStyleRunStyles[0] = style;
         mSpaceUsed = (short) mColumns;
         mHasNonOneWidthOrSurrogateChars = false;
     }
 
     // https://github.com/steven676/Android-Terminal-Emulator/commit/9a47042620bec87617f0b4f5d50568535668fe26
     public void setChar(int columnToSet, int codePoint, long style) {
-        if (columnToSet  < 0 || columnToSet >= mStyle.length)
+        if (columnToSet  < 0 || columnToSet >= mColumns)
             throw new IllegalArgumentException("TerminalRow.setChar(): columnToSet=" + columnToSet + ", codePoint=" + codePoint + ", style=" + style);
 
-        mStyle[columnToSet] = style;
+        mModificationCount++;
+        setStyle(columnToSet, columnToSet + 1, style);
 
         final int newCodePointDisplayWidth = WcWidth.width(codePoint);
 
@@ -270,6 +308,29 @@ public final class TerminalRow {
         }
     }
 
+    /**
+     * Set a run of printable ASCII characters (all of display width 1), all with the same style, starting at
+     * columnToSet. The whole run must fit on the row.
+     */
+    public void setChars(int columnToSet, byte[] ascii, int offset, int count, long style) {
+        if (columnToSet < 0 || columnToSet + count > mColumns)
+            throw new IllegalArgumentException("TerminalRow.setChars(): columnToSet=" + columnToSet + ", count=" + count + ", style=" + style);
+
+        if (mHasNonOneWidthOrSurrogateChars) {
+            // Column and char indices may differ, so let setChar() shift the text as needed.
+            for (int i = 0; i < count; i++)
+                setChar(columnToSet + i, ascii[offset + i], style);
+            return;
+        }
+
+        // Fast path when we don't have any chars with width != 1, where column index == char index:
+        mModificationCount++;
+        final char[] text = mText;
+        for (int i = 0; i < count; i++)
+            text[columnToSet + i] = (char) ascii[offset + i];
+        if (count > 0) setStyle(columnToSet, columnToSet + count, style);
+    }
+
     boolean isBlank() {
         for (int charIndex = 0, charLen = getSpaceUsed(); charIndex < charLen; charIndex++)
             if (mText[charIndex] != ' ') return false;
@@ -277,7 +338,89 @@ public final class TerminalRow {
     }
 
     public final long getStyle(int column) {
-        return mStyle[column];
+        return mStyleRunStyles[findStyleRun(column)];
+    }
+
+    /** The number of runs of cells with the same style, which cover the whole row. */
+    public int getStyleRunCount() {
+        return mStyleRuns;
+    }
+
+    /** The index of the style run containing the specified column. */
+    public int findStyleRun(int column) {
+        int low = 0;
+        int high = mStyleRuns - 1;
+        while (low < high) {
+            final int middle = (low + high + 1) >>> 1;
+            if (mStyleRunStarts[middle] <= column) low = middle;
+            else high = middle - 1;
+        }
+        return low;
+    }
+
+    /** The first column of a style run. */
+    public int getStyleRunStart(int run) {
+        return mStyleRunStarts[run];
+    }
+
+    /** The column after the last column of a style run. */
+    public int getStyleRunEnd(int run) {
+        return (run + 1 < mStyleRuns) ? mStyleRunStarts[run + 1] : mColumns;
+    }
+
+    /** The style of the cells of a style run. */
+    public long getStyleRunStyle(int run) {
+        return mStyleRunStyles[run];
+    }
+
+    /** Set the style of the cells from startColumn up to, but not including, endColumn, without changing their text. */
+    void setStyle(int startColumn, int endColumn, long style) {
+        final int first = findStyleRun(startColumn);
+        if (mStyleRunStyles[first] == style && getStyleRunEnd(first) >= endColumn) return;
+
+        // The run containing endColumn, if any, is split so that its part from endColumn keeps its style:
+        final boolean hasRunAfter = endColumn < mColumns;
+        final int last = hasRunAfter ? findStyleRun(endColumn) : mStyleRuns - 1;
+        final long styleAfter = mStyleRunStyles[last];
+        // The runs before the first run, and the first run if starting before startColumn, are kept as they are:
+        final int keptRuns = (mStyleRunStarts[first] < startColumn) ? first + 1 : first;
+        final boolean addRun = keptRuns == 0 || mStyleRunStyles[keptRuns - 1] != style;
+        final boolean addRunAfter = hasRunAfter && styleAfter != style;
+        final int runsAfter = hasRunAfter ? mStyleRuns - last - 1 : 0;
+        final int afterIndex = keptRuns + (addRun ? 1 : 0) + (addRunAfter ? 1 : 0);
+
+        final int newRuns = afterIndex + runsAfter;
+        if (newRuns > mStyleRunStarts.length) {
+            final int capacity = Math.min(Math.max(newRuns, 2 * mStyleRunStarts.length), mColumns);
+            mStyleRunStarts = Arrays.copyOf(mStyleRunStarts, capacity);
+            mStyleRunStyles = Arrays.copyOf(mStyleRunStyles, capacity);
+        }
+        System.arraycopy(mStyleRunStarts, last + 1, mStyleRunStarts, afterIndex, runsAfter);
+        System.arraycopy(mStyleRunStyles, last + 1, mStyleRunStyles, afterIndex, runsAfter);
+        int run = keptRuns;
+        if (addRun) {
+            mStyleRunStarts[run] = startColumn;
+            mStyleRunStyles[run++] = style;
+        }
+        if (addRunAfter) {
+            mStyleRunStarts[run] = endColumn;
+            mStyleRunStyles[run] = styleAfter;
+        }
+        mStyleRuns = newRuns;
+    }
+
+    /** Replace the styles of the row with style runs ending at the specified columns, see {@link PackedTerminalRow}. */
+    void setStyleRuns(long[] runStyles, short[] runEnds) {
+        final int runs = runStyles.length;
+        if (runs > mStyleRunStarts.length) {
+            mStyleRunStarts = new int[runs];
+            mStyleRunStyles = new long[runs];
+        }
+        for (int run = 0; run < runs; run++) {
+            mStyleRunStarts[run] = (run == 0) ? 0 : runEnds[run - 1];
+            mStyleRunStyles[run] = runStyles[run];
+        }
+        mStyleRuns = runs;
     }
 
 }
@@ -0,0 +1,136 @@
+package com.termux.terminal;
+
+import java.util.Arrays;
+
+/**
+ * An immutable copy of the rows of a {@link TerminalEmulator} shown on screen, together with the cursor and colors,
+ * which can be rendered on one thread while the emulator keeps changing on another.
+ * <p>
+ * Snapshots are copy-on-write: a row which has not changed since the previous snapshot was taken is shared with that
+ * snapshot instead of being copied again, so a new snapshot after some output only copies the rows the output changed,
+ * also when the screen has scrolled. The rows returned by {@link #getLine(int)} must therefore not be modified.
+ */
+public final class TerminalScreenSnapshot {
+
+    private final int mTopRow;
+    private final int mRows;
+    private final int mColumns;
+    /** The copied rows, indexed by the row minus {@link #mTopRow}. */
+    private final TerminalRow[] mLines;
+    /** The rows of the emulator the rows in {@link #mLines} were copied from, to share them with the next snapshot. */
+    private final TerminalRow[] mSourceLines;
+
+    private final int mCursorRow;
+    private final int mCursorCol;
+    private final boolean mCursorVisible;
+    private final int mCursorStyle;
+    private final boolean mReverseVideo;
+    private final int[] mPalette;
+
+    private TerminalScreenSnapshot(TerminalEmulator emulator, int topRow, TerminalScreenSnapshot previous) {
+        mTopRow = topRow;
+        mRows = emulator.mRows;
+        mColumns = emulator.mColumns;
+        mLines = new TerminalRow[mRows];
+        mSourceLines = new TerminalRow[mRows];
+        mCursorRow = emulator.getCursorRow();
+        mCursorCol = emulator.getCursorCol();
+        mCursorVisible = emulator.shouldCursorBeVisible();
+        mCursorStyle = emulator.getCursorStyle();
+        mReverseVideo = emulator.isReverseVideo();
+
+        final int[] palette = emulator.mColors.mCurrentColors;
+        mPalette = (previous != null && Arrays.equals(previous.mPalette, palette)) ? previous.mPalette : palette.clone();
+
+        final TerminalBuffer screen = emulator.getScreen();
+        final boolean shareRows = previous != null && previous.mColumns == mColumns;
+        // The offset from a row to the row in the previous snapshot with the same source row, which stays the same for
+        // most rows when the screen has scrolled:
+        int previousOffset = 0;
+        for (int i = 0; i < mRows; i++) {
+            final TerminalRow source = screen.getLine(topRow + i);
+            mSourceLines[i] = source;
+            if (shareRows) {
+                int previousIndex = i + previousOffset;
+                if (previousIndex < 0 || previousIndex >= previous.mRows || previous.mSourceLines[previousIndex] != source) {
+                    previousIndex = previous.indexOfSourceLine(source);
+                    if (previousIndex >= 0) previousOffset = previousIndex - i;
+                }
+                if (previousIndex >= 0) {
+                    final TerminalRow copy = previous.mLines[previousIndex];
+                    if (copy.mModificationCount == source.mModificationCount && copy.mLineWrap == source.mLineWrap) {
+                        mLines[i] = copy;
+                        continue;
+                    }
+                }
+            }
+            mLines[i] = new TerminalRow(source);
+        }
+    }
+
+    /**
+     * Take a snapshot of the rows from topRow on of an emulator. Must be called on the thread the emulator is changed
+     * on, or while holding {@link TerminalSession#getEmulatorLock()}.
+     *
+     * @param topRow The first row to include, which is negative for rows in the transcript.
+     * @param previous A previous snapshot of the same emulator to share the rows which have not changed with, or null.
+     */
+    public static TerminalScreenSnapshot take(TerminalEmulator emulator, int topRow, TerminalScreenSnapshot previous) {
+        return new TerminalScreenSnapshot(emulator, topRow, previous);
+    }
+
+    private int indexOfSourceLine(TerminalRow source) {
+        for (int i = 0; i < mRows; i++)
+            if (mSourceLines[i] == source) return i;
+        return -1;
+    }
+
+    /** The first row included, which is negative for rows in the transcript. */
+    public int getTopRow() {
+        return mTopRow;
+    }
+
+    /** The number of rows included, which is the number of rows of the screen. */
+    public int getRows() {
+        return mRows;
+    }
+
+    public int getColumns() {
+        return mColumns;
+    }
+
+    /** Get a row between {@link #getTopRow()} and {@link #getTopRow()} + {@link #getRows()}, which must not be modified. */
+    public TerminalRow getLine(int row) {
+        if (row < mTopRow || row >= mTopRow + mRows)
+            throw new IllegalArgumentException("row=" + row + ", topRow=" + mTopRow + ", rows=" + mRows);
+        return mLines[row - mTopRow];
+    }
+
+    public int getCursorRow() {
+        return mCursorRow;
+    }
+
+    public int getCursorCol() {
+        return mCursorCol;
+    }
+
+    /** If the cursor was visible, see {@link TerminalEmulator#shouldCursorBeVisible()}. */
+    public boolean isCursorVisible() {
+        return mCursorVisible;
+    }
+
+    /** The cursor style, see {@link TerminalEmulator#getCursorStyle()}. */
+    public int getCursorStyle() {
+        return mCursorStyle;
+    }
+
+    public boolean isReverseVideo() {
+        return mReverseVideo;
+    }
+
+    /** The colors as in {@link TerminalColors#mCurrentColors}, which must not be modified. */
+    public int[] getPalette() {
+        return mPalette;
+    }
+
+}
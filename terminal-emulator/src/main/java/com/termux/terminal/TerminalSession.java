@@ -3,9 +3,11 @@ package com.termux.terminal;
 import android.annotation.SuppressLint;
 import android.os.Handler;
 import android.os.Message;
+import android.os.SystemClock;
 import android.system.ErrnoException;
 import android.system.Os;
 import android.system.OsConstants;
+import android.view.Choreographer;
 
 import java.io.File;
 import java.io.FileDescriptor;
@@ -14,15 +16,30 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * A terminal session, consisting of a process coupled to a terminal interface.
  * <p>
  * The subprocess will be executed by the constructor, and when the size is made known by a call to
  * {@link #updateSize(int, int, int, int)} terminal emulation will begin and threads will be spawned to handle the subprocess I/O.
- * All terminal emulation and callback methods will be performed on the main thread.
+ * All terminal emulation and callback methods will be performed on the main thread. Process output is coalesced so that
+ * at most one {@link #MSG_NEW_INPUT} message is pending at a time, and screen updates are notified at most once per frame.
+ * <p>
+ * While a session is not shown it may be moved to the background with {@link #setBackground(boolean)}, in which case its
+ * process output is instead appended to the emulator on a background thread shared by all sessions.
+ * <p>
+ * With {@link #setEmulatorThreadEnabled(boolean)}, process output is always appended on a thread of the session's own
+ * instead, which publishes snapshots of the screen for rendering, see {@link #getScreenSnapshot(int)}.
  * <p>
  * The child process may be exited forcefully by using the {@link #finishIfRunning()} method.
  * <p>
@@ -33,6 +50,44 @@ public final class TerminalSession extends TerminalOutput {
     private static final int MSG_NEW_INPUT = 1;
     private static final int MSG_PROCESS_EXITED = 4;
 
+    /**
+     * The default max time in milliseconds to spend appending process output to the emulator for a single
+     * {@link #MSG_NEW_INPUT} message, before yielding the main thread to other messages and continuing in a new message.
+     */
+    public static final int DEFAULT_MAX_INPUT_DRAIN_TIME_MILLIS = 8;
+
+    /**
+     * Read process output with a {@link FileInputStream} into a buffer and copy it through
+     * {@link #mProcessToTerminalIOQueue} into a buffer on the main thread, which the emulator appends it from. This is
+     * the default.
+     */
+    public static final int PTY_READER_MODE_STREAM = 0;
+    /**
+     * Read process output with a {@link FileChannel} into pooled heap buffers, which are handed over to the main thread
+     * and appended to the emulator from without copying the output again.
+     */
+    public static final int PTY_READER_MODE_CHANNEL = 1;
+    /**
+     * Read process output with a {@link FileChannel} into pooled direct buffers, which avoids the temporary direct
+     * buffer a channel reads heap buffers through, but requires a copy into a heap buffer on the main thread since the
+     * emulator appends output from a byte array.
+     */
+    public static final int PTY_READER_MODE_DIRECT_CHANNEL = 2;
+    /**
+     * Read process output and write input to the process from the threads of the {@link TerminalIOPoller} shared by
+     * all sessions, instead of a reader and a writer thread for each session.
+     */
+    public static final int PTY_READER_MODE_SHARED_POLLER = 3;
+
+    /** The default initial size of the buffers process output is read and queued into. */
+    public static final int DEFAULT_PTY_READ_BUFFER_SIZE = 4096;
+    /** The default size the buffers process output is read and queued into may grow to, see {@link ByteQueue}. */
+    public static final int DEFAULT_PTY_READ_BUFFER_MAX_SIZE = 64 * 1024;
+    /** The min number of pooled buffers for {@link #PTY_READER_MODE_CHANNEL} and {@link #PTY_READER_MODE_DIRECT_CHANNEL}. */
+    private static final int MIN_PTY_READ_BUFFERS = 4;
+    /** The time the emulator thread of a session without new output is kept before it exits. */
+    private static final int EMULATOR_THREAD_KEEP_ALIVE_SECONDS = 10;
+
     public final String mHandle = UUID.randomUUID().toString();
 
     TerminalEmulator mEmulator;
@@ -41,7 +96,21 @@ public final class TerminalSession extends TerminalOutput {
      * A queue written to from a separate thread when the process outputs, and read by main thread to process by
      * terminal emulator.
      */
-    final ByteQueue mProcessToTerminalIOQueue = new ByteQueue(4096);
+    ByteQueue mProcessToTerminalIOQueue = new ByteQueue(DEFAULT_PTY_READ_BUFFER_SIZE, DEFAULT_PTY_READ_BUFFER_MAX_SIZE);
+    /**
+     * The chunks the process output is read into by a separate thread and appended from by the main thread, instead of
+     * going through {@link #mProcessToTerminalIOQueue}, if not using {@link #PTY_READER_MODE_STREAM}.
+     */
+    private PtyChunkQueue mProcessToTerminalChunkQueue;
+    /** The registration with the {@link TerminalIOPoller} if using {@link #PTY_READER_MODE_SHARED_POLLER}. */
+    private TerminalIOPoller.Registration mPollerRegistration;
+    /** One of the PTY_READER_MODE_* constants, see {@link #setPtyReaderMode(int)}. */
+    private int mPtyReaderMode = PTY_READER_MODE_STREAM;
+    /** See {@link #setMaxInputDrainTime(int)}. */
+    private int mMaxInputDrainTimeMillis = DEFAULT_MAX_INPUT_DRAIN_TIME_MILLIS;
+    /** See {@link #setTranscriptSpill(File, long)}. */
+    private File mTranscriptSpillDirectory;
+    private long mMaxSpilledTranscriptRows;
     /**
      * A queue written to from the main thread due to user interaction, and read by another thread which forwards by
      * writing to the {@link #mTerminalFileDescriptor}.
@@ -70,6 +139,68 @@ public final class TerminalSession extends TerminalOutput {
 
     final Handler mMainThreadHandler = new MainThreadHandler();
 
+    /** If a {@link #MSG_NEW_INPUT} message has been sent and not yet handled. Set by the reader thread. */
+    final AtomicBoolean mNewInputPending = new AtomicBoolean();
+    /**
+     * If process output is appended to the emulator on the background thread instead of the main thread, see
+     * {@link #setBackground(boolean)}. Only changed on the main thread while holding {@link #mEmulatorLock}.
+     */
+    private volatile boolean mBackground;
+    /**
+     * Held by the background or emulator thread while appending to the emulator, and by the main thread to access the
+     * emulator while {@link #mBackground} or with {@link #mEmulatorThreadEnabled}, see {@link #getEmulatorLock()}.
+     */
+    private final Object mEmulatorLock = new Object();
+    /** If {@link #mBackgroundAppendTask} has been submitted and not yet started. */
+    private final AtomicBoolean mBackgroundAppendPending = new AtomicBoolean();
+    private final Runnable mBackgroundAppendTask = this::appendInputInBackground;
+    /**
+     * If the background or emulator thread is currently appending to the emulator. Only written by that thread while
+     * holding {@link #mEmulatorLock}.
+     */
+    private boolean mAppendingInBackground;
+
+    /** See {@link #setEmulatorThreadEnabled(boolean)}. */
+    private boolean mEmulatorThreadEnabled;
+    /**
+     * The thread of this session which process output is appended to the emulator on if {@link #mEmulatorThreadEnabled},
+     * created when first needed. The thread exits after being idle for {@link #EMULATOR_THREAD_KEEP_ALIVE_SECONDS} and
+     * is started again on new output.
+     */
+    private ExecutorService mEmulatorExecutor;
+    /**
+     * The last snapshot of the screen taken, see {@link #getScreenSnapshot(int)}. Only written while holding
+     * {@link #mEmulatorLock}, and set to null when the emulator is changed on the main thread.
+     */
+    private volatile TerminalScreenSnapshot mScreenSnapshot;
+    /** If {@link #mScreenUpdateTask} has been posted to the main thread and not yet run. */
+    private final AtomicBoolean mScreenUpdatePending = new AtomicBoolean();
+    private final Runnable mScreenUpdateTask = () -> {
+        mScreenUpdatePending.set(false);
+        scheduleScreenUpdate();
+    };
+
+    /** The thread output of sessions in the background is appended on, created when first needed. */
+    private static ExecutorService sBackgroundExecutor;
+
+    /** The buffer process output is drained into on the main thread before appending it to the emulator. */
+    private byte[] mReceiveBuffer = new byte[DEFAULT_PTY_READ_BUFFER_SIZE];
+    /** The buffer process output is drained into on the background thread before appending it to the emulator. */
+    private byte[] mBackgroundReceiveBuffer = new byte[DEFAULT_PTY_READ_BUFFER_SIZE];
+
+    /** If {@link #mScreenUpdateFrameCallback} has been posted for the next frame. Only accessed on the main thread. */
+    private boolean mScreenUpdateScheduled;
+    private final Choreographer.FrameCallback mScreenUpdateFrameCallback = frameTimeNanos -> {
+        mScreenUpdateScheduled = false;
+        notifyScreenUpdate();
+        finishFrameStats();
+    };
+
+    /** The output handled on the main thread since the last frame. Only accessed on the main thread. */
+    private final FrameStats mCurrentFrameStats = new FrameStats();
+    /** The output handled on the main thread for the last frame. Only accessed on the main thread. */
+    private final FrameStats mLastFrameStats = new FrameStats();
+
     private final String mShellPath;
     private final String mCwd;
     private final String[] mArgs;
@@ -95,8 +226,11 @@ public final class TerminalSession extends TerminalOutput {
     public void updateTerminalSessionClient(TerminalSessionClient client) {
         mClient = client;
 
-        if (mEmulator != null)
-            mEmulator.updateTerminalSessionClient(client);
+        if (mEmulator != null) {
+            synchronized (mEmulatorLock) {
+                mEmulator.updateTerminalSessionClient(client);
+            }
+        }
     }
 
     /** Inform the attached pty of the new size and reflow or initialize the emulator. */
@@ -105,7 +239,159 @@ public final class TerminalSession extends TerminalOutput {
             initializeEmulator(columns, rows, cellWidthPixels, cellHeightPixels);
         } else {
             JNI.setPtyWindowSize(mTerminalFileDescriptor, rows, columns, cellWidthPixels, cellHeightPixels);
+            resizeEmulator(columns, rows, cellWidthPixels, cellHeightPixels);
+        }
+    }
+
+    /** Reflow the emulator to a new size, waiting for output being appended on another thread to be done first. */
+    void resizeEmulator(int columns, int rows, int cellWidthPixels, int cellHeightPixels) {
+        synchronized (mEmulatorLock) {
             mEmulator.resize(columns, rows, cellWidthPixels, cellHeightPixels);
+            mScreenSnapshot = null;
+        }
+    }
+
+    /**
+     * Move the session to the background when it is no longer shown, or back to the foreground before it is shown
+     * again. While in the background, process output is appended to the emulator on a background thread shared by all
+     * sessions instead of on the main thread, so that sessions not shown do not compete with the one shown or the rest
+     * of the app for the main thread. The emulator must then not be accessed from the main thread, and client
+     * callbacks caused by the output are posted to the main thread. The output backlog is bounded by the output queue,
+     * which stops the process from writing more when full as for a session in the foreground.
+     * <p>
+     * Must be called on the main thread.
+     */
+    public void setBackground(boolean background) {
+        if (background == mBackground) return;
+        // Wait for output being appended in the background to be done before the main thread continues appending:
+        synchronized (mEmulatorLock) {
+            mBackground = background;
+            // Snapshots are not taken while in the background:
+            mScreenSnapshot = null;
+        }
+        notifyNewInput();
+    }
+
+    /** If the session is in the background, see {@link #setBackground(boolean)}. */
+    public boolean isBackground() {
+        return mBackground;
+    }
+
+    /**
+     * Set if process output should be appended to the emulator on a thread of this session's own instead of on the
+     * main thread, so that heavy output does not delay input events and drawing. The emulator thread publishes a
+     * snapshot of the screen after each batch of output it appends, which can be rendered without waiting for it, see
+     * {@link #getScreenSnapshot(int)}. Other access to the emulator from the main thread must hold
+     * {@link #getEmulatorLock()}, and client callbacks caused by the output are posted to the main thread. Must be
+     * called before the emulator is initialized to have an effect.
+     */
+    public void setEmulatorThreadEnabled(boolean enabled) {
+        mEmulatorThreadEnabled = enabled;
+    }
+
+    /** If process output is appended on a thread of this session's own, see {@link #setEmulatorThreadEnabled(boolean)}. */
+    public boolean isEmulatorThreadEnabled() {
+        return mEmulatorThreadEnabled;
+    }
+
+    /**
+     * The lock held while the emulator is changed on a thread other than the main thread. The main thread must hold it
+     * to access the emulator if {@link #isEmulatorThreadEnabled()}, or while the session {@link #isBackground()}.
+     */
+    public Object getEmulatorLock() {
+        return mEmulatorLock;
+    }
+
+    /**
+     * Paste text to the process like {@link TerminalEmulator#paste(String)}. The paste mode is read while holding
+     * {@link #getEmulatorLock()}, but the text is written without holding it, since writing blocks while the process
+     * is not reading its input and the emulator thread must keep appending its output meanwhile.
+     */
+    public void paste(String text) {
+        final TerminalEmulator emulator = mEmulator;
+        if (emulator == null) return;
+        final boolean bracketed;
+        synchronized (mEmulatorLock) {
+            bracketed = emulator.isBracketedPasteModeActive();
+        }
+        emulator.paste(text, bracketed);
+    }
+
+    /**
+     * Get a snapshot of the screen with the rows from topRow on, for rendering without holding
+     * {@link #getEmulatorLock()}. The lock is only held briefly to return the snapshot last published by the emulator
+     * thread if it is for the same rows and cursor visibility, otherwise a new one is taken. Must be called on the main
+     * thread.
+     *
+     * @param topRow The first row to include, which is negative for rows in the transcript.
+     */
+    public TerminalScreenSnapshot getScreenSnapshot(int topRow) {
+        synchronized (mEmulatorLock) {
+            TerminalScreenSnapshot snapshot = mScreenSnapshot;
+            // The cursor blink state is changed on the main thread without taking a new snapshot, and the cursor
+            // visibility is also changed by output appended on the background thread, so check it while holding the lock:
+            if (snapshot == null || snapshot.getTopRow() != topRow || snapshot.isCursorVisible() != mEmulator.shouldCursorBeVisible()) {
+                snapshot = TerminalScreenSnapshot.take(mEmulator, topRow, snapshot);
+                mScreenSnapshot = snapshot;
+            }
+            return snapshot;
+        }
+    }
+
+    /** Publish a snapshot of the screen after appending output. Must be called while holding {@link #mEmulatorLock}. */
+    private void publishScreenSnapshot() {
+        final TerminalScreenSnapshot previous = mScreenSnapshot;
+        // Keep the rows the main thread last asked for, as long as they are still in the transcript:
+        int topRow = (previous == null) ? 0 : Math.max(previous.getTopRow(), -mEmulator.getScreen().getActiveTranscriptRows());
+        mScreenSnapshot = TerminalScreenSnapshot.take(mEmulator, topRow, previous);
+    }
+
+    /**
+     * Set how process output is read, as one of {@link #PTY_READER_MODE_STREAM}, {@link #PTY_READER_MODE_CHANNEL},
+     * {@link #PTY_READER_MODE_DIRECT_CHANNEL} or {@link #PTY_READER_MODE_SHARED_POLLER}. Must be called before the
+     * emulator is initialized to have an effect.
+     */
+    public void setPtyReaderMode(int ptyReaderMode) {
+        if (ptyReaderMode < PTY_READER_MODE_STREAM || ptyReaderMode > PTY_READER_MODE_SHARED_POLLER)
+            throw new IllegalArgumentException("Invalid pty reader mode: " + ptyReaderMode);
+        mPtyReaderMode = ptyReaderMode;
+    }
+
+    /**
+     * Set the initial size of the buffer process output is queued in, and the size it may grow to when process output
+     * arrives faster than the main thread appends it to the emulator. The buffer shrinks back to its initial size once
+     * the output slows down. For {@link #PTY_READER_MODE_CHANNEL} and {@link #PTY_READER_MODE_DIRECT_CHANNEL}, output is
+     * read into pooled buffers of the initial size taking up to the max size in total instead. Must be called before
+     * the emulator is initialized to have an effect.
+     */
+    public void setPtyReadBufferSizes(int initialSize, int maxSize) {
+        mProcessToTerminalIOQueue = new ByteQueue(initialSize, Math.max(initialSize, maxSize));
+    }
+
+    /**
+     * Set the max time in milliseconds to spend appending process output to the emulator in one go on the main thread,
+     * before letting other messages like input events be handled.
+     */
+    public void setMaxInputDrainTime(int maxInputDrainTimeMillis) {
+        if (maxInputDrainTimeMillis <= 0)
+            throw new IllegalArgumentException("Invalid max input drain time: " + maxInputDrainTimeMillis);
+        mMaxInputDrainTimeMillis = maxInputDrainTimeMillis;
+    }
+
+    /**
+     * Set the directory to spill rows evicted from the full transcript to and the max number of rows to keep there,
+     * see {@link TerminalBuffer#enableTranscriptSpill(File, long)}. Must be called before the emulator is initialized
+     * to have an effect.
+     */
+    public void setTranscriptSpill(File directory, long maxSpilledRows) {
+        mTranscriptSpillDirectory = directory;
+        mMaxSpilledTranscriptRows = maxSpilledRows;
+    }
+
+    /** Stop spilling transcript rows to disk and delete the rows already spilled, like once the session is removed. */
+    public void disableTranscriptSpill() {
+        synchronized (mEmulatorLock) {
+            if (mEmulator != null) mEmulator.mMainBuffer.disableTranscriptSpill();
         }
     }
 
@@ -122,6 +408,13 @@ public final class TerminalSession extends TerminalOutput {
      */
     public void initializeEmulator(int columns, int rows, int cellWidthPixels, int cellHeightPixels) {
         mEmulator = new TerminalEmulator(this, columns, rows, cellWidthPixels, cellHeightPixels, mTranscriptRows, mClient);
+        if (mTranscriptSpillDirectory != null) {
+            try {
+                mEmulator.mMainBuffer.enableTranscriptSpill(mTranscriptSpillDirectory, mMaxSpilledTranscriptRows);
+            } catch (IOException e) {
+                Logger.logStackTraceWithMessage(mClient, LOG_TAG, "Failed to enable transcript spill to " + mTranscriptSpillDirectory, e);
+            }
+        }
 
         int[] processId = new int[1];
         mTerminalFileDescriptor = JNI.createSubprocess(mShellPath, mCwd, mArgs, mEnv, processId, rows, columns, cellWidthPixels, cellHeightPixels);
@@ -130,53 +423,172 @@ public final class TerminalSession extends TerminalOutput {
 
         final FileDescriptor terminalFileDescriptorWrapped = wrapFileDescriptor(mTerminalFileDescriptor, mClient);
 
-        new Thread("TermSessionInputReader[pid=" + mShellPid + "]") {
-            @Override
-            public void run() {
-                try (InputStream termIn = new FileInputStream(terminalFileDescriptorWrapped)) {
-                    final byte[] buffer = new byte[4096];
-                    while (true) {
-                        int read = termIn.read(buffer);
-                        if (read == -1) return;
-                        if (!mProcessToTerminalIOQueue.write(buffer, 0, read)) return;
-                        mMainThreadHandler.sendEmptyMessage(MSG_NEW_INPUT);
+        if (mPtyReaderMode == PTY_READER_MODE_SHARED_POLLER) {
+            mPollerRegistration = TerminalIOPoller.getInstance().register(mTerminalFileDescriptor,
+                terminalFileDescriptorWrapped, mProcessToTerminalIOQueue, mTerminalToProcessIOQueue, this::notifyNewInput);
+        } else if (mPtyReaderMode == PTY_READER_MODE_STREAM) {
+            new Thread("TermSessionInputReader[pid=" + mShellPid + "]") {
+                @Override
+                public void run() {
+                    final ByteQueue queue = mProcessToTerminalIOQueue;
+                    try (InputStream termIn = new FileInputStream(terminalFileDescriptorWrapped)) {
+                        byte[] buffer = new byte[queue.getCapacity()];
+                        while (true) {
+                            int read = termIn.read(buffer);
+                            if (read == -1) return;
+                            if (!queue.write(buffer, 0, read)) return;
+                            notifyNewInput();
+                            // Read as much as the queue holds, which changes as the queue grows or shrinks:
+                            if (buffer.length != queue.getCapacity()) buffer = new byte[queue.getCapacity()];
+                        }
+                    } catch (Exception e) {
+                        // Ignore, just shutting down.
                     }
-                } catch (Exception e) {
-                    // Ignore, just shutting down.
                 }
-            }
-        }.start();
-
-        new Thread("TermSessionOutputWriter[pid=" + mShellPid + "]") {
-            @Override
-            public void run() {
-                final byte[] buffer = new byte[4096];
-                try (FileOutputStream termOut = new FileOutputStream(terminalFileDescriptorWrapped)) {
-                    while (true) {
-                        int bytesToWrite = mTerminalToProcessIOQueue.read(buffer, true);
-                        if (bytesToWrite == -1) return;
-                        termOut.write(buffer, 0, bytesToWrite);
+            }.start();
+        } else {
+            final int chunkSize = mProcessToTerminalIOQueue.getCapacity();
+            final int chunks = Math.max(MIN_PTY_READ_BUFFERS, mProcessToTerminalIOQueue.getMaxCapacity() / chunkSize);
+            final PtyChunkQueue chunkQueue = new PtyChunkQueue(chunks, chunkSize, mPtyReaderMode == PTY_READER_MODE_DIRECT_CHANNEL);
+            mProcessToTerminalChunkQueue = chunkQueue;
+            new Thread("TermSessionInputReader[pid=" + mShellPid + "]") {
+                @Override
+                public void run() {
+                    try (FileInputStream termIn = new FileInputStream(terminalFileDescriptorWrapped);
+                         FileChannel channel = termIn.getChannel()) {
+                        while (true) {
+                            ByteBuffer chunk = chunkQueue.takeFree();
+                            if (chunk == null) return;
+                            if (channel.read(chunk) == -1) return;
+                            chunk.flip();
+                            chunkQueue.submit(chunk);
+                            notifyNewInput();
+                        }
+                    } catch (Exception e) {
+                        // Ignore, just shutting down.
                     }
-                } catch (IOException e) {
-                    // Ignore.
                 }
-            }
-        }.start();
+            }.start();
+        }
+
+        if (mPollerRegistration == null) {
+            new Thread("TermSessionOutputWriter[pid=" + mShellPid + "]") {
+                @Override
+                public void run() {
+                    final byte[] buffer = new byte[4096];
+                    try (FileOutputStream termOut = new FileOutputStream(terminalFileDescriptorWrapped)) {
+                        while (true) {
+                            int bytesToWrite = mTerminalToProcessIOQueue.read(buffer, true);
+                            if (bytesToWrite == -1) return;
+                            termOut.write(buffer, 0, bytesToWrite);
+                        }
+                    } catch (IOException e) {
+                        // Ignore.
+                    }
+                }
+            }.start();
+        }
+
+        ProcessReaper.getInstance().watch(mShellPid, (pid, processExitCode, exitedTimeNanos) ->
+            mMainThreadHandler.sendMessage(mMainThreadHandler.obtainMessage(MSG_PROCESS_EXITED, processExitCode, 0, exitedTimeNanos)));
+
+    }
 
-        new Thread("TermSessionWaiter[pid=" + mShellPid + "]") {
-            @Override
-            public void run() {
-                int processExitCode = JNI.waitFor(mShellPid);
-                mMainThreadHandler.sendMessage(mMainThreadHandler.obtainMessage(MSG_PROCESS_EXITED, processExitCode));
+    /** Called by the reader thread after process output has been queued. */
+    void notifyNewInput() {
+        if (mBackground || mEmulatorThreadEnabled) {
+            scheduleBackgroundAppend();
+        } else if (mNewInputPending.compareAndSet(false, true)) {
+            // The main thread drains the whole queue per message, so only one needs to be pending:
+            mMainThreadHandler.sendEmptyMessage(MSG_NEW_INPUT);
+        }
+    }
+
+    private void scheduleBackgroundAppend() {
+        if (mBackgroundAppendPending.compareAndSet(false, true))
+            (mEmulatorThreadEnabled ? getEmulatorExecutor() : getBackgroundExecutor()).execute(mBackgroundAppendTask);
+    }
+
+    /**
+     * Append process output to the emulator on the background thread while the session is in the background, or on
+     * the emulator thread of the session if {@link #mEmulatorThreadEnabled}.
+     */
+    private void appendInputInBackground() {
+        mBackgroundAppendPending.set(false);
+        final boolean drained;
+        final boolean shown;
+        synchronized (mEmulatorLock) {
+            // Moved to the foreground since being scheduled, in which case the main thread appends the output:
+            if (!mBackground && !mEmulatorThreadEnabled) return;
+
+            mAppendingInBackground = true;
+            try {
+                drained = drainInput(SystemClock.uptimeMillis() + mMaxInputDrainTimeMillis, true);
+            } finally {
+                mAppendingInBackground = false;
             }
-        }.start();
+            shown = !mBackground;
+            if (shown) publishScreenSnapshot();
+        }
+
+        if (shown && mScreenUpdatePending.compareAndSet(false, true)) mMainThreadHandler.post(mScreenUpdateTask);
+        // Out of time, continue after other sessions in the background have appended their output, or after the main
+        // thread has had a chance to access the emulator:
+        if (!drained) scheduleBackgroundAppend();
+    }
 
+    synchronized ExecutorService getEmulatorExecutor() {
+        if (mEmulatorExecutor == null) {
+            final String threadName = "TermSessionEmulator[pid=" + mShellPid + "]";
+            // At most one thread, since tasks are only queued after the first while a thread is running:
+            mEmulatorExecutor = new ThreadPoolExecutor(0, 1, EMULATOR_THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, threadName);
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        }
+        return mEmulatorExecutor;
+    }
+
+    static synchronized ExecutorService getBackgroundExecutor() {
+        if (sBackgroundExecutor == null) {
+            sBackgroundExecutor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "TermSessionBackground");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return sBackgroundExecutor;
+    }
+
+    /** Run a client callback caused by process output on the main thread, posting it if appending in the background. */
+    private void runOnMainThread(Runnable callback) {
+        if (mAppendingInBackground)
+            mMainThreadHandler.post(callback);
+        else
+            callback.run();
+    }
+
+    /** The number of bytes of process output queued for the main thread to append to the emulator. */
+    public int getQueuedOutputBytes() {
+        return mProcessToTerminalIOQueue.getStoredBytes();
+    }
+
+    /** The number of bytes of input queued to be written to the process. */
+    public int getQueuedInputBytes() {
+        return mTerminalToProcessIOQueue.getStoredBytes();
     }
 
     /** Write data to the shell process. */
     @Override
     public void write(byte[] data, int offset, int count) {
-        if (mShellPid > 0) mTerminalToProcessIOQueue.write(data, offset, count);
+        if (mShellPid <= 0) return;
+        // Replies from the emulator may be written from the background thread at the same time as input on the main thread:
+        synchronized (mTerminalToProcessIOQueue) {
+            if (!mTerminalToProcessIOQueue.write(data, offset, count)) return;
+        }
+        if (mPollerRegistration != null) mPollerRegistration.scheduleWrite();
     }
 
     /** Write the Unicode code point to the terminal encoded in UTF-8. */
@@ -222,15 +634,59 @@ public final class TerminalSession extends TerminalOutput {
 
     /** Notify the {@link #mClient} that the screen has changed. */
     protected void notifyScreenUpdate() {
+        mCurrentFrameStats.screenUpdates++;
         mClient.onTextChanged(this);
     }
 
+    /** Notify the {@link #mClient} that the screen has changed when the next frame is drawn, if not already scheduled. */
+    private void scheduleScreenUpdate() {
+        if (mScreenUpdateScheduled) return;
+        mScreenUpdateScheduled = true;
+        Choreographer.getInstance().postFrameCallback(mScreenUpdateFrameCallback);
+    }
+
+    /** Cancel any update scheduled with {@link #scheduleScreenUpdate()} and notify the {@link #mClient} right away. */
+    private void flushScreenUpdate() {
+        if (mScreenUpdateScheduled) {
+            mScreenUpdateScheduled = false;
+            Choreographer.getInstance().removeFrameCallback(mScreenUpdateFrameCallback);
+        }
+        notifyScreenUpdate();
+        finishFrameStats();
+    }
+
+    private void finishFrameStats() {
+        mLastFrameStats.set(mCurrentFrameStats);
+        mCurrentFrameStats.clear();
+    }
+
+    /**
+     * Get the process output handled on the main thread for the last frame in which the screen was updated. Must be
+     * called on the main thread.
+     */
+    public FrameStats getLastFrameStats() {
+        FrameStats stats = new FrameStats();
+        stats.set(mLastFrameStats);
+        return stats;
+    }
+
     /** Reset state for terminal emulator state. */
     public void reset() {
-        mEmulator.reset();
+        synchronized (mEmulatorLock) {
+            mEmulator.reset();
+            mScreenSnapshot = null;
+        }
         notifyScreenUpdate();
     }
 
+    /** Reset the colors of the emulator to the current {@link TerminalColors#COLOR_SCHEME}. */
+    public void resetColors() {
+        synchronized (mEmulatorLock) {
+            mEmulator.mColors.reset();
+            mScreenSnapshot = null;
+        }
+    }
+
     /** Finish this terminal session by sending SIGKILL to the shell. */
     public void finishIfRunning() {
         if (isRunning()) {
@@ -252,12 +708,14 @@ public final class TerminalSession extends TerminalOutput {
         // Stop the reader and writer threads, and close the I/O streams
         mTerminalToProcessIOQueue.close();
         mProcessToTerminalIOQueue.close();
+        if (mProcessToTerminalChunkQueue != null) mProcessToTerminalChunkQueue.close();
+        if (mPollerRegistration != null) mPollerRegistration.close();
         JNI.close(mTerminalFileDescriptor);
     }
 
     @Override
     public void titleChanged(String oldTitle, String newTitle) {
-        mClient.onTitleChanged(this);
+        runOnMainThread(() -> mClient.onTitleChanged(this));
     }
 
     public synchronized boolean isRunning() {
@@ -271,22 +729,29 @@ public final class TerminalSession extends TerminalOutput {
 
     @Override
     public void onCopyTextToClipboard(String text) {
-        mClient.onCopyTextToClipboard(this, text);
+        runOnMainThread(() -> mClient.onCopyTextToClipboard(this, text));
     }
 
     @Override
     public void onPasteTextFromClipboard() {
-        mClient.onPasteTextFromClipboard(this);
+        runOnMainThread(() -> mClient.onPasteTextFromClipboard(this));
     }
 
     @Override
     public void onBell() {
-        mClient.onBell(this);
+        runOnMainThread(() -> mClient.onBell(this));
     }
 
     @Override
     public void onColorsChanged() {
-        mClient.onColorsChanged(this);
+        runOnMainThread(() -> mClient.onColorsChanged(this));
+    }
+
+    @Override
+    public void onTerminalCursorStateChange(boolean state) {
+        runOnMainThread(() -> {
+            if (mClient != null) mClient.onTerminalCursorStateChange(state);
+        });
     }
 
     public int getPid() {
@@ -333,23 +798,106 @@ public final class TerminalSession extends TerminalOutput {
         return result;
     }
 
-    @SuppressLint("HandlerLeak")
-    class MainThreadHandler extends Handler {
+    /** Counters for the process output handled on the main thread during a frame. */
+    public static final class FrameStats {
+
+        /** The number of bytes appended to the emulator. */
+        public int bytes;
+        /** The number of {@link #MSG_NEW_INPUT} messages handled. */
+        public int messages;
+        /** The number of times the client was notified that the screen changed. */
+        public int screenUpdates;
 
-        final byte[] mReceiveBuffer = new byte[4 * 1024];
+        void set(FrameStats other) {
+            bytes = other.bytes;
+            messages = other.messages;
+            screenUpdates = other.screenUpdates;
+        }
+
+        void clear() {
+            bytes = messages = screenUpdates = 0;
+        }
 
         @Override
-        public void handleMessage(Message msg) {
-            int bytesRead = mProcessToTerminalIOQueue.read(mReceiveBuffer, false);
-            if (bytesRead > 0) {
-                mEmulator.append(mReceiveBuffer, bytesRead);
-                notifyScreenUpdate();
+        public String toString() {
+            return "FrameStats[bytes=" + bytes + ", messages=" + messages + ", screenUpdates=" + screenUpdates + "]";
+        }
+
+    }
+
+    /**
+     * Append process output from {@link #mProcessToTerminalIOQueue} or {@link #mProcessToTerminalChunkQueue} to
+     * the emulator until the queue is empty or the deadline has passed.
+     *
+     * @param deadline The {@link SystemClock#uptimeMillis()} after which to stop draining.
+     * @param inBackground If called on the background thread instead of the main thread.
+     * @return Returns {@code true} if the queue was drained, otherwise {@code false}.
+     */
+    private boolean drainInput(long deadline, boolean inBackground) {
+        final PtyChunkQueue chunkQueue = mProcessToTerminalChunkQueue;
+        final int bufferSize = (chunkQueue != null) ? chunkQueue.getChunkSize() : mProcessToTerminalIOQueue.getCapacity();
+        // Drain as much as the queue holds at a time, which changes as the queue grows or shrinks:
+        byte[] receiveBuffer = inBackground ? mBackgroundReceiveBuffer : mReceiveBuffer;
+        if (receiveBuffer.length != bufferSize) {
+            receiveBuffer = new byte[bufferSize];
+            if (inBackground) mBackgroundReceiveBuffer = receiveBuffer; else mReceiveBuffer = receiveBuffer;
+        }
+        // Frame stats are only kept for output appended on the main thread:
+        final FrameStats frameStats = inBackground ? null : mCurrentFrameStats;
+
+        if (chunkQueue != null) {
+            while (true) {
+                ByteBuffer chunk = chunkQueue.poll();
+                if (chunk == null) return true;
+                int bytesRead = chunk.remaining();
+                if (chunk.hasArray()) {
+                    // The chunk was read into from its start, so append straight from its array:
+                    mEmulator.append(chunk.array(), bytesRead);
+                } else {
+                    chunk.get(receiveBuffer, 0, bytesRead);
+                    mEmulator.append(receiveBuffer, bytesRead);
+                }
+                chunkQueue.release(chunk);
+                if (frameStats != null) frameStats.bytes += bytesRead;
+                if (SystemClock.uptimeMillis() >= deadline) return false;
             }
+        }
 
-            if (msg.what == MSG_PROCESS_EXITED) {
-                int exitCode = (Integer) msg.obj;
-                cleanupResources(exitCode);
+        while (true) {
+            int bytesRead = mProcessToTerminalIOQueue.read(receiveBuffer, false);
+            if (bytesRead <= 0) {
+                if (mPollerRegistration != null) mPollerRegistration.resumeReadIfPaused();
+                return true;
+            }
+            mEmulator.append(receiveBuffer, bytesRead);
+            if (frameStats != null) frameStats.bytes += bytesRead;
+            if (SystemClock.uptimeMillis() >= deadline) return false;
+        }
+    }
 
+    @SuppressLint("HandlerLeak")
+    class MainThreadHandler extends Handler {
+
+        @Override
+        public void handleMessage(Message msg) {
+            if (msg.what == MSG_NEW_INPUT) {
+                // Clear before draining, so output written after this point will send a new message:
+                mNewInputPending.set(false);
+                if (mBackground || mEmulatorThreadEnabled) {
+                    // Sent before the session was moved to the background, output is appended on another thread:
+                    scheduleBackgroundAppend();
+                    return;
+                }
+                mCurrentFrameStats.messages++;
+                boolean drained = drainInput(SystemClock.uptimeMillis() + mMaxInputDrainTimeMillis, false);
+                if (!drained && mNewInputPending.compareAndSet(false, true)) {
+                    // Out of time, continue after other pending messages like input events have been handled.
+                    sendEmptyMessage(MSG_NEW_INPUT);
+                }
+                if (mCurrentFrameStats.bytes > 0) scheduleScreenUpdate();
+            } else if (msg.what == MSG_PROCESS_EXITED) {
+                ProcessReaper.getInstance().onExitHandled((Long) msg.obj);
+                int exitCode = msg.arg1;
                 String exitDescription = "\r\n[Process completed";
                 if (exitCode > 0) {
                     // Non-zero process exit.
@@ -359,10 +907,15 @@ public final class TerminalSession extends TerminalOutput {
                     exitDescription += " (signal " + (-exitCode) + ")";
                 }
                 exitDescription += " - press Enter]";
-
                 byte[] bytesToWrite = exitDescription.getBytes(StandardCharsets.UTF_8);
-                mEmulator.append(bytesToWrite, bytesToWrite.length);
-                notifyScreenUpdate();
+
+                synchronized (mEmulatorLock) {
+                    drainInput(Long.MAX_VALUE, false);
+                    cleanupResources(exitCode);
+                    mEmulator.append(bytesToWrite, bytesToWrite.length);
+                    mScreenSnapshot = null;
+                }
+                flushScreenUpdate();
 
                 mClient.onSessionFinished(TerminalSession.this);
             }
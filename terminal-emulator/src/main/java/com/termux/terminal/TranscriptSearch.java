@@ -0,0 +1,404 @@
+package com.termux.terminal;
+
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Search for text in a {@link TerminalBuffer}, including its transcript, without building the text of the whole
+ * transcript.
+ * <p>
+ * Text is searched one line at a time, where a line is a run of rows joined by line wraps, so that matches may continue
+ * on the next row. Packed transcript rows keep a bloom filter of the pairs of adjacent chars in them, see
+ * {@link PackedTerminalRow#bigramBit(char, char)}, which is used to skip lines which cannot contain the pairs of chars
+ * that every match contains without looking at their text.
+ * <p>
+ * Matches are reported as spans of columns and rows in the external coordinate system of the buffer, and are only valid
+ * until the buffer scrolls or is resized.
+ */
+public final class TranscriptSearch {
+
+    /** A match starting at a column of a row and ending just before a column of the same or a later row. */
+    public static final class Match {
+        public final int mStartRow, mStartColumn, mEndRow, mEndColumn;
+
+        public Match(int startRow, int startColumn, int endRow, int endColumn) {
+            mStartRow = startRow;
+            mStartColumn = startColumn;
+            mEndRow = endRow;
+            mEndColumn = endColumn;
+        }
+
+        /** If the match covers the specified column of the specified row. */
+        public boolean contains(int row, int column) {
+            if (row < mStartRow || row > mEndRow) return false;
+            return (row > mStartRow || column >= mStartColumn) && (row < mEndRow || column < mEndColumn);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Match)) return false;
+            Match other = (Match) o;
+            return mStartRow == other.mStartRow && mStartColumn == other.mStartColumn && mEndRow == other.mEndRow
+                && mEndColumn == other.mEndColumn;
+        }
+
+        @Override
+        public int hashCode() {
+            return ((mStartRow * 31 + mStartColumn) * 31 + mEndRow) * 31 + mEndColumn;
+        }
+
+        @Override
+        public String toString() {
+            return "Match[" + mStartRow + ":" + mStartColumn + " - " + mEndRow + ":" + mEndColumn + "]";
+        }
+    }
+
+    private final TerminalBuffer mBuffer;
+
+    private Pattern mPattern;
+    /** The bloom filter bits of the pairs of chars which every match contains, if {@link #mHasRequiredBits}. */
+    private final long[] mRequiredBits = new long[4];
+    private boolean mHasRequiredBits;
+    /** The bloom filter bits of the line being checked by {@link #mayMatch(int, int)}. */
+    private final long[] mLineBits = new long[4];
+
+    /** The text of the line loaded by {@link #loadLine(int, int)}, and the row and columns of each java char of it. */
+    private char[] mLineText = new char[256];
+    private int[] mCharRows = new int[256];
+    private int[] mCharColumns = new int[256];
+    private int[] mCharEndColumns = new int[256];
+    private int mLineLength;
+    private TerminalRow mScratchRow;
+
+    public TranscriptSearch(TerminalBuffer buffer) {
+        mBuffer = buffer;
+    }
+
+    /**
+     * Set what to search for.
+     *
+     * @param query      the text, or regular expression, to search for. Nothing matches an empty query.
+     * @param regex      if the query is a regular expression.
+     * @param ignoreCase if case should be ignored.
+     * @throws java.util.regex.PatternSyntaxException if the query is not a valid regular expression.
+     */
+    public void setQuery(String query, boolean regex, boolean ignoreCase) {
+        Arrays.fill(mRequiredBits, 0);
+        mHasRequiredBits = false;
+        if (query == null || query.isEmpty()) {
+            mPattern = null;
+            return;
+        }
+
+        int flags = regex ? 0 : Pattern.LITERAL;
+        if (ignoreCase) flags |= Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE;
+        mPattern = Pattern.compile(query, flags);
+
+        // Inline flags in a regular expression may turn on ignoring case:
+        final boolean mayIgnoreCase = ignoreCase || (regex && query.contains("(?"));
+        if (regex) {
+            if (query.indexOf('|') < 0) addRegexRequiredBits(query, mayIgnoreCase);
+        } else {
+            for (int i = 1; i < query.length(); i++)
+                addRequiredBit(query.charAt(i - 1), query.charAt(i), mayIgnoreCase);
+        }
+    }
+
+    /** Find the first match starting after the specified column of the specified row, or null if none. */
+    public Match findNext(int row, int column) {
+        final int bottomRow = mBuffer.mScreenRows - 1;
+        if (mPattern == null || row > bottomRow) return null;
+        for (int start = getLineStart(Math.max(row, -mBuffer.getActiveTranscriptRows())); start <= bottomRow; ) {
+            final int end = getLineEnd(start);
+            if (mayMatch(start, end)) {
+                loadLine(start, end);
+                Matcher matcher = mPattern.matcher(CharBuffer.wrap(mLineText, 0, mLineLength));
+                while (matcher.find()) {
+                    if (matcher.end() == matcher.start()) continue;
+                    Match match = toMatch(matcher.start(), matcher.end());
+                    if (match.mStartRow > row || (match.mStartRow == row && match.mStartColumn > column)) return match;
+                }
+            }
+            start = end + 1;
+        }
+        return null;
+    }
+
+    /** Find the last match starting before the specified column of the specified row, or null if none. */
+    public Match findPrevious(int row, int column) {
+        final int topRow = -mBuffer.getActiveTranscriptRows();
+        if (mPattern == null || row < topRow) return null;
+        for (int end = getLineEnd(getLineStart(Math.min(row, mBuffer.mScreenRows - 1))); end >= topRow; ) {
+            final int start = getLineStart(end);
+            if (mayMatch(start, end)) {
+                loadLine(start, end);
+                Matcher matcher = mPattern.matcher(CharBuffer.wrap(mLineText, 0, mLineLength));
+                Match lastMatch = null;
+                while (matcher.find()) {
+                    if (matcher.end() == matcher.start()) continue;
+                    Match match = toMatch(matcher.start(), matcher.end());
+                    if (match.mStartRow > row || (match.mStartRow == row && match.mStartColumn >= column)) break;
+                    lastMatch = match;
+                }
+                if (lastMatch != null) return lastMatch;
+            }
+            end = start - 1;
+        }
+        return null;
+    }
+
+    /** Find all matches covering any of the rows from the first to the last row, such as the rows being displayed. */
+    public List<Match> findMatches(int firstRow, int lastRow) {
+        final List<Match> matches = new ArrayList<>();
+        lastRow = Math.min(lastRow, mBuffer.mScreenRows - 1);
+        if (mPattern == null || firstRow > lastRow) return matches;
+        for (int start = getLineStart(Math.max(firstRow, -mBuffer.getActiveTranscriptRows())); start <= lastRow; ) {
+            final int end = getLineEnd(start);
+            if (mayMatch(start, end)) {
+                loadLine(start, end);
+                Matcher matcher = mPattern.matcher(CharBuffer.wrap(mLineText, 0, mLineLength));
+                while (matcher.find()) {
+                    if (matcher.end() == matcher.start()) continue;
+                    Match match = toMatch(matcher.start(), matcher.end());
+                    if (match.mStartRow > lastRow) break;
+                    if (match.mEndRow >= firstRow) matches.add(match);
+                }
+            }
+            start = end + 1;
+        }
+        return matches;
+    }
+
+    /** The first row of the line the specified row is part of. */
+    private int getLineStart(int row) {
+        final int topRow = -mBuffer.getActiveTranscriptRows();
+        while (row > topRow && mBuffer.getLineWrap(row - 1)) row--;
+        return row;
+    }
+
+    /** The last row of the line starting at the specified row. */
+    private int getLineEnd(int row) {
+        final int bottomRow = mBuffer.mScreenRows - 1;
+        while (row < bottomRow && mBuffer.getLineWrap(row)) row++;
+        return row;
+    }
+
+    /** Check the bloom filters of the rows of a line for the pairs of chars that every match contains. */
+    private boolean mayMatch(int startRow, int endRow) {
+        if (!mHasRequiredBits) return true;
+        final long[] lineBits = mLineBits;
+        Arrays.fill(lineBits, 0);
+        PackedTerminalRow previousRow = null;
+        for (int row = startRow; row <= endRow; row++) {
+            PackedTerminalRow packedRow = mBuffer.getPackedLine(row);
+            if (packedRow == null) return true;
+            packedRow.addBloomBits(lineBits);
+            if (previousRow != null) {
+                // The pair of chars continuing on the next row:
+                final int bit = PackedTerminalRow.bigramBit(previousRow.getLastChar(), packedRow.getFirstChar());
+                lineBits[bit >>> 6] |= 1L << bit;
+            }
+            previousRow = packedRow;
+        }
+        for (int i = 0; i < lineBits.length; i++)
+            if ((mRequiredBits[i] & ~lineBits[i]) != 0) return false;
+        return true;
+    }
+
+    /** Load the text of the rows of a line, with trailing spaces of the last row removed. */
+    private void loadLine(int startRow, int endRow) {
+        final int columns = mBuffer.mColumns;
+        if (mScratchRow == null || mScratchRow.mColumns != columns) mScratchRow = new TerminalRow(columns, TextStyle.NORMAL);
+
+        int length = 0;
+        for (int row = startRow; row <= endRow; row++) {
+            final TerminalRow line = mBuffer.getLineForReading(row, mScratchRow);
+            final char[] text = line.mText;
+            int charsUsed = line.getSpaceUsed();
+            if (row == endRow) while (charsUsed > 0 && text[charsUsed - 1] == ' ') charsUsed--;
+            if (length + charsUsed > mLineText.length) growLine(length + charsUsed);
+
+            int column = 0;
+            for (int i = 0; i < charsUsed; ) {
+                final char c = text[i];
+                final int charCount = (Character.isHighSurrogate(c) && i + 1 < charsUsed) ? 2 : 1;
+                final int codePoint = (charCount == 2) ? Character.toCodePoint(c, text[i + 1]) : c;
+                final int width = WcWidth.width(codePoint);
+                final int startColumn, endColumn;
+                if (width > 0) {
+                    startColumn = column;
+                    endColumn = column + width;
+                    column += width;
+                } else {
+                    // A combining char is part of the previous column:
+                    startColumn = Math.max(column - 1, 0);
+                    endColumn = startColumn + 1;
+                }
+                for (int j = 0; j < charCount; j++, i++, length++) {
+                    mLineText[length] = text[i];
+                    mCharRows[length] = row;
+                    mCharColumns[length] = startColumn;
+                    mCharEndColumns[length] = endColumn;
+                }
+            }
+        }
+        mLineLength = length;
+    }
+
+    private void growLine(int minLength) {
+        final int newLength = Math.max(minLength, 2 * mLineText.length);
+        mLineText = Arrays.copyOf(mLineText, newLength);
+        mCharRows = Arrays.copyOf(mCharRows, newLength);
+        mCharColumns = Arrays.copyOf(mCharColumns, newLength);
+        mCharEndColumns = Arrays.copyOf(mCharEndColumns, newLength);
+    }
+
+    /** The match of the java chars from start (inclusive) to end (exclusive) of the loaded line. */
+    private Match toMatch(int start, int end) {
+        return new Match(mCharRows[start], mCharColumns[start], mCharRows[end - 1], mCharEndColumns[end - 1]);
+    }
+
+    private void addRequiredBit(char first, char second, boolean ignoreCase) {
+        // Case folding of non-ascii chars by the pattern does not always agree with the lower casing by the filter:
+        if (ignoreCase && (first >= 0x80 || second >= 0x80)) return;
+        final int bit = PackedTerminalRow.bigramBit(first, second);
+        mRequiredBits[bit >>> 6] |= 1L << bit;
+        mHasRequiredBits = true;
+    }
+
+    /**
+     * Add the pairs of adjacent literal chars which every match of a regular expression without alternatives contains.
+     * Only chars outside of groups and character classes which are not made optional by a quantifier are considered.
+     */
+    private void addRegexRequiredBits(String regex, boolean ignoreCase) {
+        final int length = regex.length();
+        int depth = 0;
+        int classDepth = 0;
+        boolean hasPrevious = false;
+        char previous = 0;
+        for (int i = 0; i < length; i++) {
+            char c = regex.charAt(i);
+            if (classDepth > 0) {
+                if (c == '\\') {
+                    if (i + 1 < length && regex.charAt(i + 1) == 'Q') {
+                        i = regex.indexOf("\\E", i + 2);
+                        if (i < 0) return;
+                    }
+                    i++;
+                } else if (c == '[') {
+                    classDepth++;
+                    i = skipClassStart(regex, i);
+                } else if (c == ']') {
+                    classDepth--;
+                }
+                continue;
+            }
+
+            boolean literal = false;
+            switch (c) {
+                case '\\':
+                    if (i + 1 >= length) return;
+                    c = regex.charAt(++i);
+                    if (c == 'Q') return;
+                    // Escaped letters and digits are character classes, back references or escaped chars like
+                    // \x41, and their arguments must not be taken as literal chars:
+                    if (Character.isLetterOrDigit(c)) i = skipEscapeArguments(regex, i);
+                    else literal = true;
+                    break;
+                case '[':
+                    classDepth = 1;
+                    i = skipClassStart(regex, i);
+                    break;
+                case '(':
+                    // With the COMMENTS flag, whitespace and comments are not part of the pattern:
+                    if (i + 1 < length && regex.charAt(i + 1) == '?') {
+                        for (int j = i + 2; j < length; j++) {
+                            final char flag = regex.charAt(j);
+                            if (flag == 'x') return;
+                            if (!Character.isLetter(flag) && flag != '-') break;
+                        }
+                    }
+                    depth++;
+                    break;
+                case ')':
+                    depth--;
+                    break;
+                case '+':
+                    // The previous char occurs at least once, so it still continues on the next one:
+                    continue;
+                case '{':
+                    while (i + 1 < length && regex.charAt(i) != '}') i++;
+                    break;
+                case '.':
+                case '^':
+                case '$':
+                case '*':
+                case '?':
+                    break;
+                default:
+                    literal = true;
+            }
+
+            if (literal && depth == 0 && i + 1 < length) {
+                // A char followed by a quantifier which allows zero occurrences is optional:
+                final char next = regex.charAt(i + 1);
+                if (next == '?' || next == '*' || next == '{') literal = false;
+            }
+            if (!literal || depth != 0) {
+                hasPrevious = false;
+                continue;
+            }
+            if (hasPrevious) addRequiredBit(previous, c, ignoreCase);
+            previous = c;
+            hasPrevious = true;
+        }
+    }
+
+    /** Skip the '[', an optional '^' and a ']' right after them, which is a literal char of the class, at the index. */
+    private static int skipClassStart(String regex, int i) {
+        if (i + 1 < regex.length() && regex.charAt(i + 1) == '^') i++;
+        if (i + 1 < regex.length() && regex.charAt(i + 1) == ']') i++;
+        return i;
+    }
+
+    /** Skip the arguments of the escape with the letter or digit at the index, returning the index of its last char. */
+    private static int skipEscapeArguments(String regex, int i) {
+        final int length = regex.length();
+        switch (regex.charAt(i)) {
+            case 'x':
+                if (i + 1 < length && regex.charAt(i + 1) == '{') return skipPast(regex, i, '}');
+                return Math.min(i + 2, length - 1);
+            case 'u':
+                return Math.min(i + 4, length - 1);
+            case '0':
+                for (int j = 0; j < 3 && i + 1 < length && regex.charAt(i + 1) >= '0' && regex.charAt(i + 1) <= '7'; j++) i++;
+                return i;
+            case 'c':
+                return Math.min(i + 1, length - 1);
+            case 'k':
+                return skipPast(regex, i, '>');
+            case 'p':
+            case 'P':
+            case 'N':
+                if (i + 1 < length && regex.charAt(i + 1) == '{') return skipPast(regex, i, '}');
+                return Math.min(i + 1, length - 1);
+            default:
+                // A back reference may take as many digits as there are groups:
+                if (Character.isDigit(regex.charAt(i))) {
+                    while (i + 1 < length && Character.isDigit(regex.charAt(i + 1))) i++;
+                }
+                return i;
+        }
+    }
+
+    /** The index of the first occurrence of the char after the index, or of the last char if there is none. */
+    private static int skipPast(String regex, int i, char c) {
+        final int index = regex.indexOf(c, i + 1);
+        return index < 0 ? regex.length() - 1 : index;
+    }
+
+}
@@ -0,0 +1,272 @@
+package com.termux.terminal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Transcript rows evicted from the in-memory ring buffer of a {@link TerminalBuffer}, spilled to append-only segment
+ * files in a directory.
+ * <p>
+ * Each segment file holds up to {@link #SEGMENT_ROWS} rows serialized by {@link PackedTerminalRow#writeTo(ByteBuffer)},
+ * followed by the offsets of the rows and the row count once the segment is full. Segments are read back through a
+ * {@link MappedByteBuffer}, so only the rows currently being looked at take up heap, which are kept in a small cache
+ * so that the same row object is returned while it is being displayed.
+ */
+final class TranscriptSpill {
+
+    /** The number of rows in each segment file. */
+    static final int SEGMENT_ROWS = 4096;
+    /** The number of rows read back from the segments which are cached. */
+    private static final int ROW_CACHE_SIZE = 256;
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+    private static final String SEGMENT_FILE_PREFIX = "transcript-";
+    private static final String SEGMENT_FILE_SUFFIX = ".segment";
+
+    private static final class Segment {
+        final File mFile;
+        /** The index of the first row of this segment among all rows ever spilled. */
+        final long mFirstRow;
+        int mRows;
+        /** The offset of each row in the file. Only kept for the segment being written to. */
+        int[] mRowOffsets = new int[SEGMENT_ROWS];
+        MappedByteBuffer mMappedBuffer;
+
+        Segment(File file, long firstRow) {
+            mFile = file;
+            mFirstRow = firstRow;
+        }
+    }
+
+    private final File mDirectory;
+    /** The maximum number of rows to keep, where whole segments of the oldest rows are deleted to stay below it. */
+    private final long mMaxRows;
+
+    private final ArrayDeque<Segment> mSegments = new ArrayDeque<>();
+    private RandomAccessFile mWriteFile;
+    private FileChannel mWriteChannel;
+    /** The size of the segment being written to, including bytes not yet flushed from {@link #mWriteBuffer}. */
+    private int mWriteSize;
+    private final ByteBuffer mWriteBuffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE);
+
+    /** The number of rows ever spilled, including the ones in deleted segments. */
+    private long mTotalRows;
+
+    private final Map<Long, TerminalRow> mRowCache = new LinkedHashMap<Long, TerminalRow>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, TerminalRow> eldest) {
+            return size() > ROW_CACHE_SIZE;
+        }
+    };
+    /** The number of columns of the rows in {@link #mRowCache}. */
+    private int mRowCacheColumns;
+
+    /**
+     * Create a spill writing segments to the specified directory, which is created if necessary. Segment files from an
+     * earlier spill in the directory are deleted.
+     */
+    TranscriptSpill(File directory, long maxRows) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new IOException("Failed to create transcript spill directory \"" + directory + "\"");
+        mDirectory = directory;
+        mMaxRows = Math.max(maxRows, SEGMENT_ROWS);
+        deleteSegmentFiles();
+    }
+
+    /** The number of spilled rows that can be read back. */
+    int getRows() {
+        return (int) (mSegments.isEmpty() ? 0 : mTotalRows - mSegments.peekFirst().mFirstRow);
+    }
+
+    /** Append a row evicted from the transcript, which becomes the newest spilled row. */
+    void append(PackedTerminalRow row) throws IOException {
+        Segment segment = mSegments.peekLast();
+        if (segment == null || segment.mRows == SEGMENT_ROWS) {
+            if (segment != null) sealSegment(segment);
+            segment = new Segment(new File(mDirectory, SEGMENT_FILE_PREFIX + mTotalRows + SEGMENT_FILE_SUFFIX), mTotalRows);
+            mWriteFile = new RandomAccessFile(segment.mFile, "rw");
+            mWriteFile.setLength(0);
+            mWriteChannel = mWriteFile.getChannel();
+            mWriteSize = 0;
+            mSegments.addLast(segment);
+
+            // Delete the oldest segments so that the rows stay within the limit when the new segment is full:
+            while (mSegments.size() > 1 && getRows() + SEGMENT_ROWS > mMaxRows) {
+                Segment oldest = mSegments.removeFirst();
+                //noinspection ResultOfMethodCallIgnored
+                oldest.mFile.delete();
+            }
+        }
+
+        final int size = row.getSerializedSize();
+        if (size > mWriteBuffer.remaining()) flush();
+        if (size > mWriteBuffer.capacity()) {
+            ByteBuffer buffer = ByteBuffer.allocate(size);
+            row.writeTo(buffer);
+            buffer.flip();
+            writeFully(buffer);
+        } else {
+            row.writeTo(mWriteBuffer);
+        }
+
+        segment.mRowOffsets[segment.mRows++] = mWriteSize;
+        mWriteSize += size;
+        mTotalRows++;
+    }
+
+    /**
+     * Get a spilled row, where index 0 is the oldest one, with the specified number of columns. Rows spilled with a
+     * different number of columns are truncated or padded with spaces.
+     */
+    TerminalRow getRow(int index, int columns) throws IOException {
+        if (index < 0 || index >= getRows())
+            throw new IllegalArgumentException("index=" + index + ", rows=" + getRows());
+        if (columns != mRowCacheColumns) {
+            mRowCache.clear();
+            mRowCacheColumns = columns;
+        }
+
+        final long row = mSegments.peekFirst().mFirstRow + index;
+        TerminalRow cachedRow = mRowCache.get(row);
+        if (cachedRow != null) return cachedRow;
+
+        PackedTerminalRow packedRow = null;
+        for (Iterator<Segment> it = mSegments.descendingIterator(); it.hasNext(); ) {
+            Segment segment = it.next();
+            if (row >= segment.mFirstRow) {
+                packedRow = readRow(segment, (int) (row - segment.mFirstRow));
+                break;
+            }
+        }
+
+        TerminalRow terminalRow = new TerminalRow(columns, TextStyle.NORMAL);
+        //noinspection ConstantConditions - a segment always contains the row as checked above.
+        if (packedRow.getColumns() == columns) {
+            packedRow.unpack(terminalRow);
+        } else {
+            TerminalRow spilledRow = new TerminalRow(packedRow.getColumns(), TextStyle.NORMAL);
+            packedRow.unpack(spilledRow);
+            copyColumns(spilledRow, terminalRow);
+        }
+        mRowCache.put(row, terminalRow);
+        return terminalRow;
+    }
+
+    /** Delete all spilled rows and their segment files. New rows may still be appended afterwards. */
+    void clear() {
+        closeWriteFile();
+        mRowCache.clear();
+        for (Segment segment : mSegments)
+            //noinspection ResultOfMethodCallIgnored
+            segment.mFile.delete();
+        mSegments.clear();
+    }
+
+    private PackedTerminalRow readRow(Segment segment, int rowInSegment) throws IOException {
+        final int offset;
+        if (segment.mRowOffsets != null) {
+            // The segment being written to, whose row offsets are in memory:
+            flush();
+            offset = segment.mRowOffsets[rowInSegment];
+            if (segment.mMappedBuffer == null || segment.mMappedBuffer.capacity() < mWriteSize)
+                segment.mMappedBuffer = mWriteChannel.map(FileChannel.MapMode.READ_ONLY, 0, mWriteSize);
+        } else {
+            if (segment.mMappedBuffer == null) {
+                try (RandomAccessFile file = new RandomAccessFile(segment.mFile, "r")) {
+                    segment.mMappedBuffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+                }
+            }
+            // The row offsets followed by the row count are at the end of a sealed segment:
+            final int offsetsStart = segment.mMappedBuffer.capacity() - 4 - 4 * segment.mRows;
+            offset = segment.mMappedBuffer.getInt(offsetsStart + 4 * rowInSegment);
+        }
+
+        ByteBuffer buffer = segment.mMappedBuffer.duplicate();
+        buffer.position(offset);
+        return PackedTerminalRow.readFrom(buffer);
+    }
+
+    /** Write the row offsets and row count at the end of a full segment and stop writing to it. */
+    private void sealSegment(Segment segment) throws IOException {
+        final ByteBuffer index = ByteBuffer.allocate(4 * segment.mRows + 4);
+        for (int i = 0; i < segment.mRows; i++)
+            index.putInt(segment.mRowOffsets[i]);
+        index.putInt(segment.mRows);
+        index.flip();
+        flush();
+        writeFully(index);
+        closeWriteFile();
+        segment.mRowOffsets = null;
+        // The mapping of the segment being written to does not cover the index:
+        segment.mMappedBuffer = null;
+    }
+
+    private void flush() throws IOException {
+        mWriteBuffer.flip();
+        writeFully(mWriteBuffer);
+        mWriteBuffer.clear();
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining())
+            mWriteChannel.write(buffer);
+    }
+
+    private void closeWriteFile() {
+        mWriteBuffer.clear();
+        if (mWriteFile != null) {
+            try {
+                mWriteFile.close();
+            } catch (IOException e) {
+                // Ignore, nothing more will be written to the file.
+            }
+            mWriteFile = null;
+            mWriteChannel = null;
+        }
+    }
+
+    private void deleteSegmentFiles() {
+        File[] files = mDirectory.listFiles();
+        if (files == null) return;
+        for (File file : files) {
+            String name = file.getName();
+            if (name.startsWith(SEGMENT_FILE_PREFIX) && name.endsWith(SEGMENT_FILE_SUFFIX))
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+        }
+    }
+
+    /**
+     * Copy the columns of a row into a blank row with a different number of columns. The line wrap is not copied, since
+     * the row would not continue on the next row at the new width.
+     */
+    private static void copyColumns(TerminalRow source, TerminalRow destination) {
+        final char[] text = source.mText;
+        final int columns = destination.mColumns;
+        int column = 0;
+        long style = TextStyle.NORMAL;
+        for (int i = 0, spaceUsed = source.getSpaceUsed(); i < spaceUsed; ) {
+            final int codePoint = Character.codePointAt(text, i, spaceUsed);
+            i += Character.charCount(codePoint);
+            final int width = WcWidth.width(codePoint);
+            if (width > 0) {
+                if (column + width > columns) break;
+                style = source.getStyle(column);
+                destination.setChar(column, codePoint, style);
+                column += width;
+            } else if (column > 0) {
+                // A combining char modifies the previous column:
+                destination.setChar(column - 1, codePoint, style);
+            }
+        }
+    }
+
+}
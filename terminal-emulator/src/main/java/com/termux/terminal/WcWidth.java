@@ -1,5 +1,11 @@
 package com.termux.terminal;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 /**
  * Implementation of wcwidth(3) for Unicode 15.
  *
@@ -10,6 +16,10 @@ package com.termux.terminal;
  * https://github.com/termux/wcwidth
  * https://github.com/termux/libandroid-support
  * https://github.com/termux/termux-packages/tree/master/packages/libandroid-support
+ *
+ * The {@link #ZERO_WIDTH} and {@link #WIDE_EASTASIAN} tables are expanded at class initialization into a two-level
+ * lookup table, {@link #WIDTH_BLOCK_INDICES} and {@link #WIDTH_BLOCKS}, so {@link #width(int)} is a constant time
+ * lookup instead of binary searches.
  */
 public final class WcWidth {
 
@@ -490,6 +500,94 @@ public final class WcWidth {
     };
 
 
+    /** The number of code points, from 0 to {@link Character#MAX_CODE_POINT}, covered by the lookup table. */
+    private static final int CODE_POINT_COUNT = Character.MAX_CODE_POINT + 1;
+    /** The number of bits of a code point used to index into a block of {@link #WIDTH_BLOCKS}. */
+    private static final int WIDTH_BLOCK_SHIFT = 8;
+    private static final int WIDTH_BLOCK_SIZE = 1 << WIDTH_BLOCK_SHIFT;
+    private static final int WIDTH_BLOCK_MASK = WIDTH_BLOCK_SIZE - 1;
+
+    /** The first stage of the lookup table: the index of the block in {@link #WIDTH_BLOCKS} for code point >> 8. */
+    private static final char[] WIDTH_BLOCK_INDICES = new char[CODE_POINT_COUNT >> WIDTH_BLOCK_SHIFT];
+    /**
+     * The second stage of the lookup table: the distinct blocks of widths for 256 consecutive code points, with
+     * identical blocks like the ones for unassigned planes shared.
+     */
+    private static final byte[] WIDTH_BLOCKS;
+
+    static {
+        // The zero width code points handled separately from the ZERO_WIDTH table by widthFromTables():
+        final int[][] zeroWidthControlAndFormat = {
+            {0x00000, 0x0001f}, {0x0007f, 0x0009f}, {0x0034f, 0x0034f}, {0x0200b, 0x0200f}, {0x02028, 0x0202e}, {0x02060, 0x02063}
+        };
+        final int[][][] zeroWidthTables = {zeroWidthControlAndFormat, ZERO_WIDTH};
+
+        // Build each block by filling in the ranges overlapping it, with zero width taking precedence over wide as in
+        // widthFromTables(). Blocks where a single range covers the whole block, or no range overlaps it, have the same
+        // width for all code points and share a uniform block. Other identical blocks are shared by looking them up by
+        // hash code, where a block whose hash code collides with a different block is simply not shared.
+        final List<byte[]> blocks = new ArrayList<>();
+        final Map<Integer, Integer> blockIndicesByHash = new HashMap<>();
+        final int[] uniformBlockIndices = {-1, 0, -1};
+        byte[] block = new byte[WIDTH_BLOCK_SIZE];
+        Arrays.fill(block, (byte) 1);
+        blocks.add(block);
+
+        final int[] firstRangeIndices = new int[zeroWidthTables.length + 1];
+        for (int i = 0; i < WIDTH_BLOCK_INDICES.length; i++) {
+            final int blockStart = i << WIDTH_BLOCK_SHIFT;
+            final int blockEnd = blockStart + WIDTH_BLOCK_SIZE;
+            int uniformWidth = 1;
+            boolean blockFilled = false;
+            for (int t = 0; t <= zeroWidthTables.length; t++) {
+                final int[][] table = (t == 0) ? WIDE_EASTASIAN : zeroWidthTables[t - 1];
+                final byte width = (byte) ((t == 0) ? 2 : 0);
+                // Skip ranges ending before this block, the tables being sorted:
+                while (firstRangeIndices[t] < table.length && table[firstRangeIndices[t]][1] < blockStart) firstRangeIndices[t]++;
+                for (int r = firstRangeIndices[t]; r < table.length && table[r][0] < blockEnd; r++) {
+                    final int from = Math.max(table[r][0], blockStart) - blockStart;
+                    final int to = Math.min(table[r][1] + 1, blockEnd) - blockStart;
+                    if (!blockFilled) {
+                        if (from == 0 && to == WIDTH_BLOCK_SIZE) {
+                            uniformWidth = width;
+                            continue;
+                        }
+                        block = new byte[WIDTH_BLOCK_SIZE];
+                        Arrays.fill(block, (byte) uniformWidth);
+                        blockFilled = true;
+                    }
+                    Arrays.fill(block, from, to, width);
+                }
+            }
+
+            int blockIndex;
+            if (!blockFilled) {
+                blockIndex = uniformBlockIndices[uniformWidth];
+                if (blockIndex == -1) {
+                    block = new byte[WIDTH_BLOCK_SIZE];
+                    Arrays.fill(block, (byte) uniformWidth);
+                    blockIndex = uniformBlockIndices[uniformWidth] = blocks.size();
+                    blocks.add(block);
+                }
+            } else {
+                final int hash = Arrays.hashCode(block);
+                Integer existingBlockIndex = blockIndicesByHash.get(hash);
+                if (existingBlockIndex != null && Arrays.equals(block, blocks.get(existingBlockIndex))) {
+                    blockIndex = existingBlockIndex;
+                } else {
+                    blockIndex = blocks.size();
+                    blocks.add(block);
+                    blockIndicesByHash.put(hash, blockIndex);
+                }
+            }
+            WIDTH_BLOCK_INDICES[i] = (char) blockIndex;
+        }
+
+        WIDTH_BLOCKS = new byte[blocks.size() << WIDTH_BLOCK_SHIFT];
+        for (int i = 0; i < blocks.size(); i++)
+            System.arraycopy(blocks.get(i), 0, WIDTH_BLOCKS, i << WIDTH_BLOCK_SHIFT, WIDTH_BLOCK_SIZE);
+    }
+
     private static boolean intable(int[][] table, int c) {
         // First quick check f|| Latin1 etc. characters.
         if (c < table[0][0]) return false;
@@ -512,6 +610,16 @@ public final class WcWidth {
 
     /** Return the terminal display width of a code point: 0, 1 || 2. */
     public static int width(int ucs) {
+        if (ucs >= 0 && ucs < CODE_POINT_COUNT)
+            return WIDTH_BLOCKS[(WIDTH_BLOCK_INDICES[ucs >> WIDTH_BLOCK_SHIFT] << WIDTH_BLOCK_SHIFT) | (ucs & WIDTH_BLOCK_MASK)];
+        return ucs < 0 ? 0 : 1;
+    }
+
+    /**
+     * Return the terminal display width of a code point by searching the {@link #ZERO_WIDTH} and
+     * {@link #WIDE_EASTASIAN} tables. This is what the lookup table used by {@link #width(int)} is built from.
+     */
+    static int widthFromTables(int ucs) {
         if (ucs == 0 ||
             ucs == 0x034F ||
             (0x200B <= ucs && ucs <= 0x200F) ||
@@ -1,16 +1,20 @@
 #include <dirent.h>
+#include <errno.h>
 #include <fcntl.h>
 #include <jni.h>
+#include <limits.h>
 #include <signal.h>
 #include <stdio.h>
 #include <stdlib.h>
 #include <string.h>
+#include <sys/epoll.h>
 #include <sys/ioctl.h>
 #include <sys/wait.h>
 #include <termios.h>
 #include <unistd.h>
 
 #define TERMUX_UNUSED(x) x __attribute__((__unused__))
+#define POLLER_MAX_EVENTS 64
 #ifdef __APPLE__
 # define LACKS_PTSNAME_R
 #endif
@@ -198,10 +202,8 @@ JNIEXPORT void JNICALL Java_com_termux_terminal_JNI_setPtyUTF8Mode(JNIEnv* TERMU
     }
 }
 
-JNIEXPORT jint JNICALL Java_com_termux_terminal_JNI_waitFor(JNIEnv* TERMUX_UNUSED(env), jclass TERMUX_UNUSED(clazz), jint pid)
+static jint get_exit_status(int status)
 {
-    int status;
-    waitpid(pid, &status, 0);
     if (WIFEXITED(status)) {
         return WEXITSTATUS(status);
     } else if (WIFSIGNALED(status)) {
@@ -212,7 +214,100 @@ JNIEXPORT jint JNICALL Java_com_termux_terminal_JNI_waitFor(JNIEnv* TERMUX_UNUSE
     }
 }
 
+JNIEXPORT jint JNICALL Java_com_termux_terminal_JNI_waitFor(JNIEnv* TERMUX_UNUSED(env), jclass TERMUX_UNUSED(clazz), jint pid)
+{
+    int status;
+    waitpid(pid, &status, 0);
+    return get_exit_status(status);
+}
+
+JNIEXPORT jint JNICALL Java_com_termux_terminal_JNI_tryWaitFor(JNIEnv* TERMUX_UNUSED(env), jclass TERMUX_UNUSED(clazz), jint pid)
+{
+    int status;
+    pid_t result;
+    do {
+        result = waitpid(pid, &status, WNOHANG);
+    } while (result < 0 && errno == EINTR);
+    if (result == 0) return INT_MIN;
+    // ECHILD if already reaped by someone else, in which case the exit status is unknown:
+    if (result < 0) return 0;
+    return get_exit_status(status);
+}
+
+JNIEXPORT jint JNICALL Java_com_termux_terminal_JNI_waitForAnyChild(JNIEnv* env, jclass TERMUX_UNUSED(clazz))
+{
+    siginfo_t info;
+    while (1) {
+        info.si_pid = 0;
+        // Leave the child to be reaped, since it may have been started by someone else:
+        if (waitid(P_ALL, 0, &info, WEXITED | WNOWAIT) == 0) return info.si_pid;
+        if (errno == ECHILD) return 0;
+        if (errno != EINTR) return throw_runtime_exception(env, "waitid() failed");
+    }
+}
+
 JNIEXPORT void JNICALL Java_com_termux_terminal_JNI_close(JNIEnv* TERMUX_UNUSED(env), jclass TERMUX_UNUSED(clazz), jint fileDescriptor)
 {
     close(fileDescriptor);
 }
+
+JNIEXPORT jint JNICALL Java_com_termux_terminal_JNI_dup(JNIEnv* env, jclass TERMUX_UNUSED(clazz), jint fd)
+{
+    int new_fd = fcntl(fd, F_DUPFD_CLOEXEC, 0);
+    if (new_fd < 0) return throw_runtime_exception(env, "fcntl(F_DUPFD_CLOEXEC) failed");
+    return new_fd;
+}
+
+JNIEXPORT jint JNICALL Java_com_termux_terminal_JNI_createPoller(JNIEnv* env, jclass TERMUX_UNUSED(clazz))
+{
+    int epoll_fd = epoll_create1(EPOLL_CLOEXEC);
+    if (epoll_fd < 0) return throw_runtime_exception(env, "epoll_create1() failed");
+    return epoll_fd;
+}
+
+static int poller_ctl(int epoll_fd, int op, int fd, jint token, jint events)
+{
+    // One-shot, so that an fd is not reported again until its event has been handled and it is re-armed:
+    struct epoll_event event = { .events = ((uint32_t) events) | EPOLLONESHOT, .data.u64 = (uint32_t) token };
+    return epoll_ctl(epoll_fd, op, fd, &event);
+}
+
+JNIEXPORT void JNICALL Java_com_termux_terminal_JNI_addToPoller(JNIEnv* env, jclass TERMUX_UNUSED(clazz), jint epoll_fd, jint fd, jint token, jint events)
+{
+    int flags = fcntl(fd, F_GETFL);
+    if (flags < 0 || fcntl(fd, F_SETFL, flags | O_NONBLOCK) < 0) {
+        throw_runtime_exception(env, "Cannot make fd non-blocking");
+    } else if (poller_ctl(epoll_fd, EPOLL_CTL_ADD, fd, token, events) < 0) {
+        throw_runtime_exception(env, "epoll_ctl(EPOLL_CTL_ADD) failed");
+    }
+}
+
+JNIEXPORT void JNICALL Java_com_termux_terminal_JNI_armInPoller(JNIEnv* TERMUX_UNUSED(env), jclass TERMUX_UNUSED(clazz), jint epoll_fd, jint fd, jint token, jint events)
+{
+    // Fails if the fd has already been removed, which is fine.
+    poller_ctl(epoll_fd, EPOLL_CTL_MOD, fd, token, events);
+}
+
+JNIEXPORT void JNICALL Java_com_termux_terminal_JNI_removeFromPoller(JNIEnv* TERMUX_UNUSED(env), jclass TERMUX_UNUSED(clazz), jint epoll_fd, jint fd)
+{
+    struct epoll_event event = { 0 };
+    epoll_ctl(epoll_fd, EPOLL_CTL_DEL, fd, &event);
+}
+
+JNIEXPORT jint JNICALL Java_com_termux_terminal_JNI_waitForPoller(JNIEnv* env, jclass TERMUX_UNUSED(clazz), jint epoll_fd, jintArray tokensArray)
+{
+    struct epoll_event events[POLLER_MAX_EVENTS];
+    jsize max_events = (*env)->GetArrayLength(env, tokensArray);
+    if (max_events > POLLER_MAX_EVENTS) max_events = POLLER_MAX_EVENTS;
+
+    int count;
+    do {
+        count = epoll_wait(epoll_fd, events, max_events, -1);
+    } while (count < 0 && errno == EINTR);
+    if (count < 0) return throw_runtime_exception(env, "epoll_wait() failed");
+
+    jint tokens[POLLER_MAX_EVENTS];
+    for (int i = 0; i < count; i++) tokens[i] = (jint) events[i].data.u64;
+    (*env)->SetIntArrayRegion(env, tokensArray, 0, count, tokens);
+    return count;
+}
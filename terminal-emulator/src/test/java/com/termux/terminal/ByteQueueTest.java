@@ -51,4 +51,94 @@ public class ByteQueueTest extends TestCase {
 		assertEquals(0, q.read(new byte[128], false));
 	}
 
+	public void testCloseWakesBlockedReader() throws Exception {
+		final ByteQueue q = new ByteQueue(10);
+		final int[] result = new int[1];
+		Thread reader = new Thread(() -> result[0] = q.read(new byte[10], true));
+		reader.start();
+		Thread.sleep(50);
+		q.close();
+		reader.join(5000);
+		assertFalse(reader.isAlive());
+		assertEquals(-1, result[0]);
+	}
+
+	public void testProducerConsumerThreads() throws Exception {
+		final ByteQueue q = new ByteQueue(7);
+		final int totalBytes = 1 << 20;
+		Thread writer = new Thread(() -> {
+			byte[] chunk = new byte[13];
+			for (int written = 0; written < totalBytes; ) {
+				int length = Math.min(chunk.length, totalBytes - written);
+				for (int i = 0; i < length; i++) chunk[i] = (byte) (written + i);
+				assertTrue(q.write(chunk, 0, length));
+				written += length;
+			}
+		});
+		writer.start();
+
+		byte[] readArray = new byte[5];
+		int totalRead = 0;
+		while (totalRead < totalBytes) {
+			int read = q.read(readArray, true);
+			assertTrue(read > 0);
+			for (int i = 0; i < read; i++) assertEquals((byte) (totalRead + i), readArray[i]);
+			totalRead += read;
+		}
+		writer.join(5000);
+		assertEquals(0, q.read(readArray, false));
+	}
+
+	public void testGrowsWhenRepeatedlyFull() throws Exception {
+		final ByteQueue q = new ByteQueue(8, 32);
+		final int totalBytes = 1 << 16;
+		Thread writer = new Thread(() -> {
+			byte[] chunk = new byte[24];
+			for (int written = 0; written < totalBytes; ) {
+				int length = Math.min(chunk.length, totalBytes - written);
+				for (int i = 0; i < length; i++) chunk[i] = (byte) (written + i);
+				assertTrue(q.write(chunk, 0, length));
+				written += length;
+			}
+		});
+		writer.start();
+
+		byte[] readArray = new byte[3];
+		int totalRead = 0;
+		int maxCapacity = 0;
+		while (totalRead < totalBytes) {
+			int read = q.read(readArray, true);
+			assertTrue(read > 0);
+			for (int i = 0; i < read; i++) assertEquals((byte) (totalRead + i), readArray[i]);
+			totalRead += read;
+			maxCapacity = Math.max(maxCapacity, q.getCapacity());
+		}
+		writer.join(5000);
+		assertEquals(32, maxCapacity);
+		assertEquals(0, q.read(readArray, false));
+	}
+
+	public void testCloseWakesWriterWaitingToGrow() throws Exception {
+		final ByteQueue q = new ByteQueue(2, 4);
+		final boolean[] result = new boolean[]{true};
+		Thread writer = new Thread(() -> {
+			for (int i = 0; i < ByteQueue.GROW_AFTER_FULL_WRITES + 1 && result[0]; i++)
+				result[0] = q.write(new byte[3], 0, 3);
+		});
+		writer.start();
+		byte[] readArray = new byte[1];
+		// Read one byte at a time so that every write has to wait, until the last write waits for the 2 bytes still in
+		// the queue to be read before growing:
+		for (int i = 0; i < 3 * ByteQueue.GROW_AFTER_FULL_WRITES - 2; i++) {
+			Thread.sleep(5);
+			q.read(readArray, true);
+		}
+		Thread.sleep(50);
+		assertEquals(2, q.getCapacity());
+		q.close();
+		writer.join(5000);
+		assertFalse(writer.isAlive());
+		assertFalse(result[0]);
+	}
+
 }
@@ -1,5 +1,11 @@
 package com.termux.terminal;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.StringWriter;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
 
 public class HistoryTest extends TerminalTestCase {
 
@@ -30,4 +36,82 @@ public class HistoryTest extends TerminalTestCase {
 		enterString("LMN").assertLinesAre("111", "IJK", "LMN", "444").assertHistoryStartsWith("FGH", "CDE");
 	}
 
+	public void testPackedHistoryRows() {
+		withTerminalSized(4, 2).enterString("a\u00F6\u679C\r\n\033[31mr\033[0med\r\n\uD834\uDD1E\u0308x\r\n  \r\n");
+		assertHistoryStartsWith("\uD834\uDD1E\u0308x  ", "red ", "a\u00F6\u679C");
+		assertEquals("a\u00F6\u679C\nred\n\uD834\uDD1E\u0308x", mTerminal.getScreen().getTranscriptText());
+		assertForegroundColorAt(-2, 0, 1);
+		assertForegroundColorAt(-2, 1, TextStyle.COLOR_INDEX_FOREGROUND);
+
+		// Packed rows should be unpacked when moved back to the screen or when resizing:
+		resize(4, 6).assertLinesAre("a\u00F6\u679C", "red ", "\uD834\uDD1E\u0308x  ", "    ", "    ", "    ");
+		resize(3, 6);
+		assertEquals("a\u00F6 \u679C\nred\n\uD834\uDD1E\u0308x", mTerminal.getScreen().getTranscriptText());
+	}
+
+	public void testTranscriptSpill() throws Exception {
+		File directory = File.createTempFile("transcript", "");
+		assertTrue(directory.delete());
+		withTerminalSized(4, 3);
+		TerminalBuffer screen = mTerminal.getScreen();
+		try {
+			screen.enableTranscriptSpill(directory, 2 * TranscriptSpill.SEGMENT_ROWS);
+			final int lines = screen.mTotalRows + 3 * TranscriptSpill.SEGMENT_ROWS + 10;
+			final int styledLine = lines - screen.mTotalRows - 50;
+			for (int i = 0; i < lines; i++)
+				enterString((i == styledLine ? "\033[31m" : "") + String.format(Locale.US, "%04d", i % 10000) + "\033[0m\r\n");
+
+			int spilledRows = screen.getSpilledTranscriptRows();
+			assertTrue(spilledRows > TranscriptSpill.SEGMENT_ROWS && spilledRows <= 2 * TranscriptSpill.SEGMENT_ROWS);
+			assertEquals(screen.mTotalRows - 3 + spilledRows, screen.getActiveTranscriptRows());
+			for (int row = -screen.getActiveTranscriptRows(); row < 2; row++)
+				assertEquals(String.format(Locale.US, "%04d", (lines - 2 + row) % 10000), screen.getSelectedText(0, row, 3, row));
+			assertTrue(screen.getTranscriptText().startsWith(String.format(Locale.US, "%04d\n", (lines - 2 - screen.getActiveTranscriptRows()) % 10000)));
+
+			// A spilled row keeps its style, and is the same row object while cached:
+			int styledRow = styledLine - (lines - 2);
+			assertTrue(styledRow < screen.getSpilledTranscriptRows() - screen.getActiveTranscriptRows());
+			assertEquals(1, TextStyle.decodeForeColor(screen.getStyleAt(styledRow, 0)));
+			assertSame(screen.getLine(styledRow), screen.getLine(styledRow));
+
+			// Rows spilled before the number of columns changed are truncated:
+			resize(2, 3);
+			int oldestRow = -screen.getActiveTranscriptRows();
+			assertTrue(screen.getSelectedText(0, oldestRow, 1, oldestRow).matches("[0-9]{2}"));
+
+			screen.clearTranscript();
+			assertEquals(0, screen.getActiveTranscriptRows());
+			String[] files = directory.list();
+			assertNotNull(files);
+			assertEquals(0, files.length);
+		} finally {
+			screen.disableTranscriptSpill();
+			assertTrue(directory.delete());
+		}
+	}
+
+	public void testWriteTranscriptText() throws Exception {
+		withTerminalSized(5, 3).enterString("\r\n  \r\nab\u679C  c \r\ndefgh\r\n\uD834\uDD1E \r\n\r\n   \r\nxyz  ");
+		for (int i = 0; i < 200; i++)
+			enterString(" line " + i + (i % 3 == 0 ? "\u00F6\u679C" : "") + "\r\n");
+		enterString("\r\n  tail \r\n");
+		TerminalBuffer screen = mTerminal.getScreen();
+		assertWrittenTranscriptText(screen.getTranscriptText(), screen, true, false);
+		assertWrittenTranscriptText(screen.getTranscriptTextWithoutJoinedLines(), screen, false, false);
+		assertWrittenTranscriptText(screen.getTranscriptTextWithFullLinesJoined(), screen, true, true);
+
+		withTerminalSized(5, 3);
+		assertWrittenTranscriptText("", mTerminal.getScreen(), true, false);
+	}
+
+	private static void assertWrittenTranscriptText(String expected, TerminalBuffer screen, boolean joinBackLines, boolean joinFullLines) throws Exception {
+		StringWriter writer = new StringWriter();
+		screen.writeTranscriptText(writer, joinBackLines, joinFullLines);
+		assertEquals(expected, writer.toString());
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		screen.writeTranscriptText(Channels.newChannel(bytes), joinBackLines, joinFullLines);
+		assertEquals(expected, new String(bytes.toByteArray(), StandardCharsets.UTF_8));
+	}
+
 }
@@ -0,0 +1,77 @@
+package com.termux.terminal;
+
+import junit.framework.TestCase;
+
+import java.nio.ByteBuffer;
+
+public class PtyChunkQueueTest extends TestCase {
+
+	public void testChunksAreHandedOverInOrder() throws Exception {
+		PtyChunkQueue q = new PtyChunkQueue(2, 8, false);
+		assertNull(q.poll());
+
+		ByteBuffer first = q.takeFree();
+		first.put(new byte[]{1, 2, 3}).flip();
+		q.submit(first);
+		ByteBuffer second = q.takeFree();
+		second.put((byte) 4).flip();
+		q.submit(second);
+
+		assertSame(first, q.poll());
+		assertEquals(3, first.remaining());
+		assertEquals(1, first.array()[0]);
+		q.release(first);
+		assertSame(second, q.poll());
+		q.release(second);
+		assertNull(q.poll());
+
+		// A released chunk is cleared when taken again:
+		assertEquals(8, q.takeFree().remaining());
+	}
+
+	public void testDirectChunks() throws Exception {
+		PtyChunkQueue q = new PtyChunkQueue(1, 16, true);
+		ByteBuffer chunk = q.takeFree();
+		assertTrue(chunk.isDirect());
+		assertEquals(16, q.getChunkSize());
+	}
+
+	public void testProducerWaitsForFreeChunk() throws Exception {
+		final PtyChunkQueue q = new PtyChunkQueue(2, 4, false);
+		final int chunks = 1000;
+		Thread producer = new Thread(() -> {
+			for (int i = 0; i < chunks; i++) {
+				ByteBuffer chunk = q.takeFree();
+				chunk.putInt(i).flip();
+				q.submit(chunk);
+			}
+		});
+		producer.start();
+
+		for (int i = 0; i < chunks; ) {
+			ByteBuffer chunk = q.poll();
+			if (chunk == null) {
+				Thread.yield();
+				continue;
+			}
+			assertEquals(i++, chunk.getInt());
+			q.release(chunk);
+		}
+		producer.join();
+		assertNull(q.poll());
+	}
+
+	public void testCloseWakesWaitingProducer() throws Exception {
+		final PtyChunkQueue q = new PtyChunkQueue(1, 4, false);
+		q.submit(q.takeFree());
+		final Object[] result = new Object[]{"not set"};
+		Thread producer = new Thread(() -> result[0] = q.takeFree());
+		producer.start();
+		Thread.sleep(50);
+		q.close();
+		producer.join(1000);
+		assertFalse(producer.isAlive());
+		assertNull(result[0]);
+	}
+
+}
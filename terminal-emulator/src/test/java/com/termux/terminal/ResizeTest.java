@@ -1,5 +1,9 @@
 package com.termux.terminal;
 
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
 public class ResizeTest extends TerminalTestCase {
 
 	public void testResizeWhenHasHistory() {
@@ -209,4 +213,95 @@ public class ResizeTest extends TerminalTestCase {
 		resize(5, rows).assertLinesAre("ＱＲ ", "     ", "     ", "     ");
 	}
 
+	public void testLazyReflowMatchesReflowingAll() throws Exception {
+		Random random = new Random(4711);
+		for (int round = 0; round < 4; round++) {
+			boolean onlyAscii = round % 2 == 0;
+			int transcriptRows = (round < 2) ? 2000 : 300;
+			String input = randomLines(random, 600, onlyAscii);
+			TerminalEmulator eager = new TerminalEmulator(mOutput, 40, 10, INITIAL_CELL_WIDTH_PIXELS, INITIAL_CELL_HEIGHT_PIXELS, transcriptRows, null);
+			eager.getScreen().mReflowLazily = false;
+			mTerminal = new TerminalEmulator(mOutput, 40, 10, INITIAL_CELL_WIDTH_PIXELS, INITIAL_CELL_HEIGHT_PIXELS, transcriptRows, null);
+
+			// Rows not fitting in the transcript after the resize are spilled in the same order when spilling:
+			File eagerDirectory = null, directory = null;
+			if (round == 3) {
+				eagerDirectory = File.createTempFile("transcript", "");
+				assertTrue(eagerDirectory.delete());
+				directory = File.createTempFile("transcript", "");
+				assertTrue(directory.delete());
+				eager.getScreen().enableTranscriptSpill(eagerDirectory, 10000);
+				mTerminal.getScreen().enableTranscriptSpill(directory, 10000);
+			}
+
+			try {
+				enterString(input);
+				byte[] bytes = input.getBytes(StandardCharsets.UTF_8);
+				eager.append(bytes, bytes.length);
+
+				// Reflowing rows which have already been reflowed loses the blank cell left by a wide char at the end of
+				// a row, so only compare resizing more than once with ascii text:
+				int[] columns = onlyAscii ? new int[]{27, 53, 13} : new int[]{27};
+				for (int newColumns : columns) {
+					eager.resize(newColumns, 10, INITIAL_CELL_WIDTH_PIXELS, INITIAL_CELL_HEIGHT_PIXELS);
+					resize(newColumns, 10);
+					assertTrue(hasReflowChunks(mTerminal.getScreen()));
+					assertSameRows(eager, mTerminal);
+					assertFalse(hasReflowChunks(mTerminal.getScreen()));
+				}
+
+				String more = randomLines(random, 50, onlyAscii);
+				enterString(more);
+				bytes = more.getBytes(StandardCharsets.UTF_8);
+				eager.append(bytes, bytes.length);
+				assertSameRows(eager, mTerminal);
+			} finally {
+				if (directory != null) {
+					eager.getScreen().disableTranscriptSpill();
+					mTerminal.getScreen().disableTranscriptSpill();
+					assertTrue(eagerDirectory.delete());
+					assertTrue(directory.delete());
+				}
+			}
+		}
+	}
+
+	private static String randomLines(Random random, int lines, boolean onlyAscii) {
+		String[] chars = onlyAscii ? new String[]{"a", "b", " "} : new String[]{"a", " ", "\uFF31", "\u679C", "\u00F6", "e\u0302", "\uD834\uDD1E"};
+		StringBuilder builder = new StringBuilder();
+		for (int line = 0; line < lines; line++) {
+			if (random.nextInt(5) != 0) {
+				for (int i = 0, length = random.nextInt(120); i < length; i++) {
+					if (random.nextInt(20) == 0) builder.append("\033[").append(31 + random.nextInt(7)).append('m');
+					builder.append(chars[random.nextInt(chars.length)]);
+				}
+			}
+			builder.append("\r\n");
+		}
+		return builder.toString();
+	}
+
+	private static boolean hasReflowChunks(TerminalBuffer screen) {
+		for (ReflowChunk chunk : screen.mReflowChunks)
+			if (chunk != null) return true;
+		return false;
+	}
+
+	private static void assertSameRows(TerminalEmulator expectedTerminal, TerminalEmulator actualTerminal) {
+		TerminalBuffer expected = expectedTerminal.getScreen();
+		TerminalBuffer actual = actualTerminal.getScreen();
+		assertEquals(expectedTerminal.getCursorRow(), actualTerminal.getCursorRow());
+		assertEquals(expectedTerminal.getCursorCol(), actualTerminal.getCursorCol());
+		assertEquals(expected.getActiveTranscriptRows(), actual.getActiveTranscriptRows());
+		for (int row = -expected.getActiveTranscriptRows(); row < expected.mScreenRows; row++) {
+			TerminalRow expectedRow = expected.getLine(row);
+			TerminalRow actualRow = actual.getLine(row);
+			assertEquals("row " + row, new String(expectedRow.mText, 0, expectedRow.getSpaceUsed()),
+				new String(actualRow.mText, 0, actualRow.getSpaceUsed()));
+			assertEquals("row " + row, expected.getLineWrap(row), actual.getLineWrap(row));
+			for (int column = 0; column < expected.mColumns; column++)
+				assertEquals("row " + row + ", column " + column, expectedRow.getStyle(column), actualRow.getStyle(column));
+		}
+	}
+
 }
@@ -164,4 +164,18 @@ public class ScrollRegionTest extends TerminalTestCase {
 		}
 	}
 
+	public void testScrollRegionWithFullHistory() {
+		withTerminalSized(4, 3);
+		StringBuilder input = new StringBuilder();
+		for (int i = 0; i < mTerminal.getScreen().mTotalRows + 10; i++)
+			input.append(i % 10).append("\r\n");
+		enterString(input.toString()).enterString("AB\r\nCD\r\nEF").assertLinesAre("AB  ", "CD  ", "EF  ");
+		// Scrolling with a bottom margin moves the oldest history row, which is evicted, into the scroll region:
+		enterString("\033[1;2r\033[2;1H\r\nGH\r\nIJ").assertLinesAre("GH  ", "IJ  ", "EF  ");
+		assertHistoryStartsWith("CD  ", "AB  ", "9   ", "8   ");
+		assertEquals("9\nAB\nCD\nGH\nIJ\nEF", mTerminal.getScreen().getTranscriptText().substring(mTerminal.getScreen().getTranscriptText().length() - 16));
+		for (int row = -mTerminal.getScreen().getActiveTranscriptRows(); row < 3; row++)
+			assertFalse(mTerminal.getScreen().getLineWrap(row));
+	}
+
 }
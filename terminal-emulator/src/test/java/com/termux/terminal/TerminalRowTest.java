@@ -429,4 +429,69 @@ public class TerminalRowTest extends TestCase {
 		// assertEquals(' ', line.mText[line.findStartOfColumn(COLUMNS - 1)]);
 	}
 
+	public void testPackAndUnpack() {
+		int[] codePoints = {'a', 'ö', ' ', ONE_JAVA_CHAR_DISPLAY_WIDTH_TWO_1, DIARESIS_CODEPOINT, TWO_JAVA_CHARS_DISPLAY_WIDTH_ONE_1,
+			TWO_JAVA_CHARS_DISPLAY_WIDTH_TWO_2, 'z'};
+		Random random = new Random(4711);
+		for (int i = 0; i < 1000; i++) {
+			row = new TerminalRow(COLUMNS, TextStyle.NORMAL);
+			int charsToSet = random.nextInt(COLUMNS);
+			for (int j = 0; j < charsToSet; j++) {
+				int codePoint = codePoints[random.nextInt(i % 2 == 0 ? 3 : codePoints.length)];
+				int column = random.nextInt(COLUMNS - 2);
+				row.setChar(column, codePoint, random.nextInt(3));
+			}
+			row.mLineWrap = random.nextBoolean();
+
+			TerminalRow unpacked = new TerminalRow(COLUMNS, TextStyle.NORMAL);
+			PackedTerminalRow.pack(row).unpack(unpacked);
+			assertEquals(new String(row.mText, 0, row.getSpaceUsed()), new String(unpacked.mText, 0, unpacked.getSpaceUsed()));
+			for (int column = 0; column < COLUMNS; column++)
+				assertEquals(row.getStyle(column), unpacked.getStyle(column));
+			assertEquals(row.getStyleRunCount(), unpacked.getStyleRunCount());
+			assertEquals(row.mLineWrap, unpacked.mLineWrap);
+			assertEquals(row.mHasNonOneWidthOrSurrogateChars, unpacked.mHasNonOneWidthOrSurrogateChars);
+		}
+	}
+
+	public void testStyleRuns() {
+		assertEquals(1, row.getStyleRunCount());
+		assertEquals(COLUMNS, row.getStyleRunEnd(0));
+
+		row.setChar(3, 'a', 1);
+		row.setChar(4, 'b', 1);
+		assertEquals(3, row.getStyleRunCount());
+		assertEquals(3, row.getStyleRunStart(1));
+		assertEquals(5, row.getStyleRunEnd(1));
+		assertEquals(1, row.getStyleRunStyle(1));
+		assertEquals(1, row.findStyleRun(4));
+		assertEquals(2, row.findStyleRun(5));
+
+		// Setting the style back joins the runs again:
+		row.setChar(3, 'a', TextStyle.NORMAL);
+		row.setChar(4, 'b', TextStyle.NORMAL);
+		assertEquals(1, row.getStyleRunCount());
+
+		Random random = new Random(4711);
+		long[] styles = new long[COLUMNS];
+		Arrays.fill(styles, TextStyle.NORMAL);
+		for (int i = 0; i < 10000; i++) {
+			int start = random.nextInt(COLUMNS);
+			int end = start + 1 + random.nextInt(i % 2 == 0 ? 3 : COLUMNS - start);
+			if (end > COLUMNS) end = COLUMNS;
+			long style = (i % 5 == 0) ? TextStyle.NORMAL : random.nextInt(3);
+			row.setStyle(start, end, style);
+			Arrays.fill(styles, start, end, style);
+
+			for (int column = 0; column < COLUMNS; column++)
+				assertEquals(styles[column], row.getStyle(column));
+			for (int run = 0; run < row.getStyleRunCount(); run++) {
+				assertEquals(run == 0 ? 0 : row.getStyleRunEnd(run - 1), row.getStyleRunStart(run));
+				assertTrue(row.getStyleRunStart(run) < row.getStyleRunEnd(run));
+				if (run > 0) assertTrue(row.getStyleRunStyle(run - 1) != row.getStyleRunStyle(run));
+			}
+			assertEquals(COLUMNS, row.getStyleRunEnd(row.getStyleRunCount() - 1));
+		}
+	}
+
 }
@@ -0,0 +1,69 @@
+package com.termux.terminal;
+
+public class TerminalScreenSnapshotTest extends TerminalTestCase {
+
+	private static String text(TerminalRow row) {
+		return new String(row.mText, 0, row.getSpaceUsed()).trim();
+	}
+
+	public void testSnapshotDoesNotChangeWithEmulator() {
+		withTerminalSized(5, 3).enterString("abc\r\ndef");
+		TerminalScreenSnapshot snapshot = TerminalScreenSnapshot.take(mTerminal, 0, null);
+		assertEquals(3, snapshot.getRows());
+		assertEquals(5, snapshot.getColumns());
+		assertEquals(1, snapshot.getCursorRow());
+		assertEquals(3, snapshot.getCursorCol());
+
+		enterString("\033[2J\033[Hxyz");
+		mTerminal.resize(3, 2, INITIAL_CELL_WIDTH_PIXELS, INITIAL_CELL_HEIGHT_PIXELS);
+		assertEquals("abc", text(snapshot.getLine(0)));
+		assertEquals("def", text(snapshot.getLine(1)));
+		assertEquals("", text(snapshot.getLine(2)));
+		assertEquals(1, snapshot.getCursorRow());
+	}
+
+	public void testUnchangedRowsAreShared() {
+		withTerminalSized(5, 3).enterString("abc\r\ndef");
+		TerminalScreenSnapshot first = TerminalScreenSnapshot.take(mTerminal, 0, null);
+
+		enterString("g");
+		TerminalScreenSnapshot second = TerminalScreenSnapshot.take(mTerminal, 0, first);
+		assertSame(first.getLine(0), second.getLine(0));
+		assertNotSame(first.getLine(1), second.getLine(1));
+		assertEquals("defg", text(second.getLine(1)));
+		assertSame(first.getLine(2), second.getLine(2));
+		assertSame(first.getPalette(), second.getPalette());
+
+		// Rows moved up by scrolling are still shared:
+		enterString("\r\nhij\r\nklm");
+		TerminalScreenSnapshot third = TerminalScreenSnapshot.take(mTerminal, 0, second);
+		assertSame(second.getLine(1), third.getLine(0));
+		assertEquals("hij", text(third.getLine(1)));
+		assertEquals("klm", text(third.getLine(2)));
+	}
+
+	public void testTranscriptRows() {
+		withTerminalSized(5, 2).enterString("abc\r\ndef\r\nghi");
+		TerminalScreenSnapshot snapshot = TerminalScreenSnapshot.take(mTerminal, -1, null);
+		assertEquals(-1, snapshot.getTopRow());
+		assertEquals("abc", text(snapshot.getLine(-1)));
+		assertEquals("def", text(snapshot.getLine(0)));
+		try {
+			snapshot.getLine(1);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// Expected.
+		}
+	}
+
+	public void testChangedColorsAreCopied() {
+		withTerminalSized(5, 2);
+		TerminalScreenSnapshot first = TerminalScreenSnapshot.take(mTerminal, 0, null);
+		enterString("\033]4;1;#ff0000\007");
+		TerminalScreenSnapshot second = TerminalScreenSnapshot.take(mTerminal, 0, first);
+		assertNotSame(first.getPalette(), second.getPalette());
+		assertEquals(0xffff0000, second.getPalette()[1]);
+		assertFalse(first.getPalette()[1] == 0xffff0000);
+	}
+
+}
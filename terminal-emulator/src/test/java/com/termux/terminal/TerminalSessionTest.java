@@ -0,0 +1,155 @@
+package com.termux.terminal;
+
+import junit.framework.TestCase;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class TerminalSessionTest extends TestCase {
+
+	private static class MockTerminalSessionClient implements TerminalSessionClient {
+		@Override public void onTextChanged(TerminalSession changedSession) { }
+		@Override public void onTitleChanged(TerminalSession changedSession) { }
+		@Override public void onSessionFinished(TerminalSession finishedSession) { }
+		@Override public void onCopyTextToClipboard(TerminalSession session, String text) { }
+		@Override public void onPasteTextFromClipboard(TerminalSession session) { }
+		@Override public void onBell(TerminalSession session) { }
+		@Override public void onColorsChanged(TerminalSession session) { }
+		@Override public void onTerminalCursorStateChange(boolean state) { }
+		@Override public void setTerminalShellPid(TerminalSession session, int pid) { }
+		@Override public Integer getTerminalCursorStyle() { return null; }
+		@Override public void logError(String tag, String message) { }
+		@Override public void logWarn(String tag, String message) { }
+		@Override public void logInfo(String tag, String message) { }
+		@Override public void logDebug(String tag, String message) { }
+		@Override public void logVerbose(String tag, String message) { }
+		@Override public void logStackTraceWithMessage(String tag, String message, Exception e) { }
+		@Override public void logStackTrace(String tag, Exception e) { }
+	}
+
+	private static TerminalSession createSession() {
+		return createSession(false);
+	}
+
+	private static TerminalSession createSession(boolean emulatorThread) {
+		TerminalSessionClient client = new MockTerminalSessionClient();
+		TerminalSession session = new TerminalSession("sh", "/", new String[0], new String[0], null, client);
+		session.setEmulatorThreadEnabled(emulatorThread);
+		session.mEmulator = new TerminalEmulator(session, 80, 24, 13, 15, null, client);
+		return session;
+	}
+
+	/**
+	 * Queue process output for a session in the background like the reader thread does, while acting as the main
+	 * thread. Returns the number of messages the main thread had to handle for it.
+	 */
+	private static int queueOutputInBackground(final TerminalSession session, final int lines) throws Exception {
+		session.setBackground(true);
+		Thread reader = new Thread(() -> {
+			for (int i = 0; i < lines; i++) {
+				byte[] line = ("line " + i + "\r\n").getBytes(StandardCharsets.UTF_8);
+				session.mProcessToTerminalIOQueue.write(line, 0, line.length);
+				session.notifyNewInput();
+			}
+		});
+		reader.start();
+
+		int mainThreadMessages = 0;
+		while (reader.isAlive() || session.getQueuedOutputBytes() > 0) {
+			if (session.mNewInputPending.getAndSet(false)) mainThreadMessages++;
+			Thread.yield();
+		}
+		reader.join();
+		// Wait for the output read from the queue to have been appended:
+		TerminalSession.getBackgroundExecutor().submit(() -> { }).get();
+
+		session.setBackground(false);
+		return mainThreadMessages;
+	}
+
+	public void testMainThreadWorkStaysFlatAsBackgroundOutputGrows() throws Exception {
+		TerminalSession session = createSession();
+		assertEquals(0, queueOutputInBackground(session, 100));
+		assertTrue(session.getEmulator().getScreen().getTranscriptText().endsWith("line 99"));
+
+		session = createSession();
+		assertEquals(0, queueOutputInBackground(session, 100 * 100));
+		assertTrue(session.getEmulator().getScreen().getTranscriptText().endsWith("line 9999"));
+	}
+
+	public void testMovingToForegroundNotifiesMainThread() throws Exception {
+		TerminalSession session = createSession();
+		session.setBackground(true);
+		assertTrue(session.isBackground());
+		assertFalse(session.mNewInputPending.get());
+
+		// Output queued in the background and not yet appended there is appended by the main thread from now on:
+		session.setBackground(false);
+		assertFalse(session.isBackground());
+		assertTrue(session.mNewInputPending.get());
+	}
+
+	/** Check that a snapshot is consistent, where each line of output fills a row with {@code lineLength} of one letter. */
+	private static void assertNotTorn(TerminalScreenSnapshot snapshot, int lineLength) {
+		int rows = snapshot.getRows();
+		int columns = snapshot.getColumns();
+		assertTrue(snapshot.getCursorRow() >= 0 && snapshot.getCursorRow() < rows);
+		assertTrue(snapshot.getCursorCol() >= 0 && snapshot.getCursorCol() <= columns);
+		for (int row = 0; row < rows; row++) {
+			TerminalRow line = snapshot.getLine(row);
+			assertEquals(columns, line.mColumns);
+			String text = new String(line.mText, 0, line.getSpaceUsed()).trim();
+			if (text.isEmpty()) continue;
+			// Only the row being output to may be partly written:
+			if (row != snapshot.getCursorRow()) assertEquals(text, lineLength, text.length());
+			for (int i = 1; i < text.length(); i++)
+				assertEquals(text, text.charAt(0), text.charAt(i));
+		}
+	}
+
+	public void testSnapshotsAreNotTornByConcurrentResizeAndOutput() throws Exception {
+		final TerminalSession session = createSession(true);
+		final int lines = 20000;
+		final int lineLength = 20;
+		final TerminalScreenSnapshot first = session.getScreenSnapshot(0);
+
+		Thread reader = new Thread(() -> {
+			for (int i = 0; i < lines; i++) {
+				StringBuilder line = new StringBuilder("\r\n");
+				for (int j = 0; j < lineLength; j++) line.append((char) ('a' + i % 26));
+				byte[] bytes = line.toString().getBytes(StandardCharsets.UTF_8);
+				session.mProcessToTerminalIOQueue.write(bytes, 0, bytes.length);
+				session.notifyNewInput();
+			}
+		});
+		final AtomicBoolean resizing = new AtomicBoolean(true);
+		Thread resizer = new Thread(() -> {
+			final int[][] sizes = {{30, 10}, {80, 24}, {120, 40}, {50, 5}};
+			for (int i = 0; resizing.get(); i++)
+				session.resizeEmulator(sizes[i % sizes.length][0], sizes[i % sizes.length][1], 13, 15);
+		});
+		reader.start();
+		resizer.start();
+
+		// Render on this thread while output is appended on the emulator thread and the emulator is resized:
+		int snapshots = 0;
+		while (reader.isAlive() || session.getQueuedOutputBytes() > 0) {
+			assertNotTorn(session.getScreenSnapshot(0), lineLength);
+			snapshots++;
+		}
+		resizing.set(false);
+		reader.join();
+		resizer.join();
+		session.getEmulatorExecutor().submit(() -> { }).get();
+
+		assertTrue(snapshots > 0);
+		assertNotTorn(session.getScreenSnapshot(0), lineLength);
+		// The last line is made of 'f' since (lines - 1) % 26 == 5:
+		assertTrue(session.getEmulator().getScreen().getTranscriptText().endsWith("\nffffffffffffffffffff"));
+		// Output appended later did not change the snapshot taken before it:
+		assertEquals(24, first.getRows());
+		for (int row = 0; row < first.getRows(); row++)
+			assertEquals("", new String(first.getLine(row).mText, 0, first.getLine(row).getSpaceUsed()).trim());
+	}
+
+}
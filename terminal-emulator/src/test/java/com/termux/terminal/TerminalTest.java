@@ -1,6 +1,8 @@
 package com.termux.terminal;
 
 import java.io.UnsupportedEncodingException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
 
 public class TerminalTest extends TerminalTestCase {
 
@@ -347,4 +349,43 @@ public class TerminalTest extends TerminalTestCase {
 		withTerminalSized(11, 2).enterString("01234567890\033[44m\r\tXX").assertLinesAre("01234567XX0", "           ");
 	}
 
+	public void testAsciiRunAcrossMarginsAndWraps() {
+		withTerminalSized(5, 3).enterString("abcdefghijklmnopq").assertLinesAre("fghij", "klmno", "pq   ").assertCursorAt(2, 2);
+		assertLineWraps(true, true, false);
+		withTerminalSized(5, 3).enterString("\033[?7labcdefgh").assertLinesAre("abcdh", "     ", "     ").assertCursorAt(0, 4);
+		withTerminalSized(6, 3).enterString("\033[?69h\033[2;4s\033[2Gabcdef").assertLinesAre(" abc  ", " def  ", "      ");
+		withTerminalSized(5, 3).enterString("a\u00e9bcdefg").assertLinesAre("a\u00e9bcd", "efg  ", "     ");
+		withTerminalSized(5, 3).enterString("\033[4hab\rX").assertLinesAre("Xab  ", "     ", "     ");
+	}
+
+	/** Check that bulk ASCII output gives the same result as emitting one code point at a time. */
+	public void testAsciiRunMatchesPerCodePointProcessing() {
+		String[] fragments = {"hello world ", "\r\n", "\r", "\t", "\033[31m", "\033[1;44m", "\033[0m", "\033[?7l",
+			"\033[?7h", "\033[2;3r", "\033[r", "\033[4h", "\033[4l", "\033(0", "\033(B", "\033[5G", "\033[2;8H", "x",
+			"0123456789abcdefghijklmnopqrstuvwxyz", "\033[?69h\033[3;9s", "\033[?69l"};
+		Random random = new Random(4711);
+		for (int iteration = 0; iteration < 200; iteration++) {
+			StringBuilder input = new StringBuilder();
+			for (int i = 0; i < 40; i++) input.append(fragments[random.nextInt(fragments.length)]);
+			byte[] bytes = input.toString().getBytes(StandardCharsets.UTF_8);
+
+			TerminalEmulator bulk = new TerminalEmulator(mOutput, 11, 4, INITIAL_CELL_WIDTH_PIXELS, INITIAL_CELL_HEIGHT_PIXELS, 8, null);
+			bulk.append(bytes, bytes.length);
+			TerminalEmulator perCodePoint = new TerminalEmulator(mOutput, 11, 4, INITIAL_CELL_WIDTH_PIXELS, INITIAL_CELL_HEIGHT_PIXELS, 8, null);
+			for (byte b : bytes) perCodePoint.processCodePoint(b);
+
+			String message = "Input: " + input;
+			assertEquals(message, perCodePoint.getCursorRow(), bulk.getCursorRow());
+			assertEquals(message, perCodePoint.getCursorCol(), bulk.getCursorCol());
+			TerminalBuffer expected = perCodePoint.getScreen(), actual = bulk.getScreen();
+			assertEquals(message, expected.getActiveTranscriptRows(), actual.getActiveTranscriptRows());
+			for (int row = -expected.getActiveTranscriptRows(); row < 4; row++) {
+				assertEquals(message, expected.getSelectedText(0, row, 11, row), actual.getSelectedText(0, row, 11, row));
+				assertEquals(message, expected.getLineWrap(row), actual.getLineWrap(row));
+				for (int column = 0; column < 11; column++)
+					assertEquals(message, expected.getStyleAt(row, column), actual.getStyleAt(row, column));
+			}
+		}
+	}
+
 }
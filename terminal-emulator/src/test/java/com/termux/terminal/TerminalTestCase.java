@@ -57,6 +57,10 @@ public abstract class TerminalTestCase extends TestCase {
 		public void onColorsChanged() {
 			colorsChanged++;
 		}
+
+		@Override
+		public void onTerminalCursorStateChange(boolean state) {
+		}
 	}
 
 	public TerminalEmulator mTerminal;
@@ -147,7 +151,10 @@ public abstract class TerminalTestCase extends TestCase {
 
 		Set<LineWrapper> linesSet = new HashSet<>();
 		for (int i = 0; i < lines.length; i++) {
+			if (screen.mReflowChunks[i] != null) assertNull("Line is both packed and waiting to be reflowed at " + i, screen.mPackedLines[i]);
 			if (lines[i] == null) continue;
+			assertNull("Line is both packed and not at " + i, screen.mPackedLines[i]);
+			assertNull("Line is both waiting to be reflowed and not at " + i, screen.mReflowChunks[i]);
 			assertTrue("Line exists at multiple places: " + i, linesSet.add(new LineWrapper(lines[i])));
 			char[] text = lines[i].mText;
 			int usedChars = lines[i].getSpaceUsed();
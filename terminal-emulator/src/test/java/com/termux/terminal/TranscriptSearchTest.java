@@ -0,0 +1,106 @@
+package com.termux.terminal;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class TranscriptSearchTest extends TerminalTestCase {
+
+	private TranscriptSearch search(String query, boolean regex, boolean ignoreCase) {
+		TranscriptSearch search = new TranscriptSearch(mTerminal.getScreen());
+		search.setQuery(query, regex, ignoreCase);
+		return search;
+	}
+
+	private static TranscriptSearch.Match match(int startRow, int startColumn, int endRow, int endColumn) {
+		return new TranscriptSearch.Match(startRow, startColumn, endRow, endColumn);
+	}
+
+	public void testFindInTranscriptAndScreen() {
+		withTerminalSized(10, 3).enterString("hello world\r\nfoo\r\nHello again\r\nbar");
+		assertEquals(3, mTerminal.getScreen().getActiveTranscriptRows());
+
+		// A match continuing on the next row after a line wrap:
+		assertEquals(match(-3, 6, -2, 1), search("world", false, false).findNext(-3, -1));
+
+		TranscriptSearch search = search("hello", false, true);
+		assertEquals(match(-3, 0, -3, 5), search.findNext(-3, -1));
+		assertEquals(match(0, 0, 0, 5), search.findNext(-3, 0));
+		assertNull(search.findNext(0, 0));
+		assertEquals(match(0, 0, 0, 5), search.findPrevious(2, 0));
+		assertEquals(match(-3, 0, -3, 5), search.findPrevious(0, 0));
+		assertNull(search.findPrevious(-3, 0));
+		assertEquals(Arrays.asList(match(0, 0, 0, 5)), search.findMatches(0, 2));
+
+		search = search("hello", false, false);
+		assertEquals(match(-3, 0, -3, 5), search.findNext(-3, -1));
+		assertNull(search.findNext(-3, 0));
+
+		assertEquals(match(0, 6, 1, 1), search("ag+ain", true, false).findNext(-3, -1));
+		assertEquals(match(2, 0, 2, 3), search("b.r", true, false).findNext(-3, -1));
+		assertEquals(Arrays.asList(match(-3, 6, -2, 1)), search("world", false, false).findMatches(-2, -2));
+		assertTrue(search("", false, false).findMatches(-3, 2).isEmpty());
+		assertNull(search("nothing", false, false).findPrevious(2, 10));
+	}
+
+	public void testColumnsOfWideAndCombiningChars() {
+		withTerminalSized(10, 3).enterString("果êx\r\n");
+		TranscriptSearch search = search("êx", false, false);
+		assertEquals(match(0, 2, 0, 4), search.findNext(0, -1));
+		assertTrue(search.findNext(0, -1).contains(0, 3));
+		assertFalse(search.findNext(0, -1).contains(0, 4));
+	}
+
+	public void testRegexEscapesAndNestedClassesAreNotTakenAsLiterals() {
+		// Scroll the line into the transcript, where rows are skipped by their bloom filters:
+		withTerminalSized(20, 3).enterString("xx AB yy ]B 1A\r\n\n\n\n");
+		int row = -mTerminal.getScreen().getActiveTranscriptRows();
+		assertEquals(-2, row);
+		String[] queries = {"\\x41B", "\\x{41}B", "\\u0041B", "A\\x42", "\\0101B", "\\cA?AB", "[A[Z]]B", "[]]B", "[^]x]AB",
+			"(?<n>A)\\k<n>?B", "(A)\\1?B", "\\p{Lu}B", "\\QAB\\E", "[\\Q]\\E]B", "(?x)A B", "(?ix)a b"};
+		for (String query : queries) {
+			TranscriptSearch search = search(query, true, false);
+			Matcher matcher = Pattern.compile(query).matcher("xx AB yy ]B 1A");
+			assertTrue(query, matcher.find());
+			assertEquals(query, match(row, matcher.start(), row, matcher.end()), search.findNext(row, -1));
+		}
+	}
+
+	public void testFindsSameMatchesAsTranscriptText() {
+		Random random = new Random(4711);
+		withTerminalSized(20, 5);
+		StringBuilder input = new StringBuilder();
+		for (int line = 0; line < 3000; line++) {
+			for (int word = random.nextInt(10); word > 0; word--) {
+				for (int i = random.nextInt(8) + 1; i > 0; i--)
+					input.append("abcdefghABCD".charAt(random.nextInt(12)));
+				input.append(' ');
+			}
+			input.append("\r\n");
+		}
+		enterString(input.toString());
+		TerminalBuffer screen = mTerminal.getScreen();
+		String transcript = screen.getTranscriptText();
+
+		String[] queries = {"abc", "a.c", "ab+c", "dh", "d?ha", "c[ab]d", "hgf", "b a", "a|h"};
+		for (String query : queries) {
+			for (boolean ignoreCase : new boolean[]{false, true}) {
+				boolean regex = !query.matches("[a-z ]*");
+				TranscriptSearch search = search(query, regex, ignoreCase);
+				int expected = 0;
+				Matcher matcher = Pattern.compile(query, ignoreCase ? Pattern.CASE_INSENSITIVE : 0).matcher(transcript);
+				while (matcher.find()) expected++;
+
+				int found = 0;
+				for (TranscriptSearch.Match match = search.findNext(-screen.getActiveTranscriptRows(), -1); match != null;
+					 match = search.findNext(match.mStartRow, match.mStartColumn)) {
+					found++;
+				}
+				assertEquals(query, expected, found);
+				assertEquals(query, expected, search.findMatches(-screen.getActiveTranscriptRows(), screen.mScreenRows - 1).size());
+			}
+		}
+	}
+
+}
@@ -78,4 +78,14 @@ public class WcWidthTest extends TestCase {
 		assertWidthIs(2, 0x1F643); // UPSIDE-DOWN FACE (Unicode 8).
 	}
 
+	public void testLookupTableMatchesTables() {
+		for (int codePoint = 0; codePoint <= Character.MAX_CODE_POINT; codePoint++) {
+			if (WcWidth.width(codePoint) != WcWidth.widthFromTables(codePoint))
+				fail("Width mismatch for code point 0x" + Integer.toHexString(codePoint) + ": lookup=" + WcWidth.width(codePoint)
+					+ ", tables=" + WcWidth.widthFromTables(codePoint));
+		}
+		assertEquals(WcWidth.widthFromTables(-1), WcWidth.width(-1));
+		assertEquals(WcWidth.widthFromTables(Character.MAX_CODE_POINT + 1), WcWidth.width(Character.MAX_CODE_POINT + 1));
+	}
+
 }
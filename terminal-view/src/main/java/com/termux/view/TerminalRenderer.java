@@ -1,6 +1,8 @@
 package com.termux.view;
 
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
+import android.graphics.Color;
 import android.graphics.Paint;
 import android.graphics.PorterDuff;
 import android.graphics.Typeface;
@@ -8,11 +10,17 @@ import android.graphics.Typeface;
 import com.termux.terminal.TerminalBuffer;
 import com.termux.terminal.TerminalEmulator;
 import com.termux.terminal.TerminalRow;
+import com.termux.terminal.TerminalScreenSnapshot;
 import com.termux.terminal.TextStyle;
+import com.termux.terminal.TranscriptSearch;
 import com.termux.terminal.WcWidth;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
 /**
- * Renderer of a {@link TerminalEmulator} into a {@link Canvas}.
+ * Renderer of a {@link TerminalEmulator}, or a {@link TerminalScreenSnapshot} of one, into a {@link Canvas}.
  * <p/>
  * Saves font metrics, so needs to be recreated each time the typeface or font size changes.
  */
@@ -32,6 +40,37 @@ public final class TerminalRenderer {
     final int mFontLineSpacingAndAscent;
 
     private final float[] asciiMeasures = new float[127];
+    /** If the {@link #asciiMeasures} do not match the width expected by {@link WcWidth#width(int)}. */
+    private final boolean[] asciiFontWidthMismatches = new boolean[127];
+
+    /** The max number of non-ASCII code points in {@link #mCodePointWidthCache} before it is cleared. */
+    private static final int CODE_POINT_WIDTH_CACHE_SIZE = 1024;
+    /**
+     * The measured width of non-ASCII code points. A renderer is recreated when the typeface or text size changes, so
+     * the cache never needs to be invalidated.
+     */
+    private final CodePointWidthCache mCodePointWidthCache = new CodePointWidthCache(CODE_POINT_WIDTH_CACHE_SIZE);
+
+    /*
+     * The state of the rows last drawn by renderDamagedRows(), indexed by screen row. A renderer is recreated when the
+     * typeface or text size changes, which starts out with all rows needing to be drawn.
+     */
+    private TerminalRow[] mRenderedRows;
+    private int[] mRenderedModificationCounts;
+    private int[] mRenderedRowCursorX, mRenderedRowSelectionX1, mRenderedRowSelectionX2;
+    private int mRenderedColumns;
+    private boolean mRenderedReverseVideo;
+    private int mRenderedCursorShape;
+    private int[] mRenderedPalette;
+
+    /** The color drawn over the cells of search matches. */
+    private static final int SEARCH_MATCH_COLOR = 0x80FFC107;
+    private final Paint mSearchMatchPaint = new Paint();
+    /** The search matches to highlight, see {@link #setSearchMatches(List)}. */
+    private List<TranscriptSearch.Match> mSearchMatches = Collections.emptyList();
+
+    /** The terminal being rendered by the current render call. */
+    private final Frame mFrame = new Frame();
 
     public TerminalRenderer(int textSize, Typeface typeface) {
         mTextSize = textSize;
@@ -45,55 +84,228 @@ public final class TerminalRenderer {
         mFontAscent = (int) Math.ceil(mTextPaint.ascent());
         mFontLineSpacingAndAscent = mFontLineSpacing + mFontAscent;
         mFontWidth = mTextPaint.measureText("X");
+        mSearchMatchPaint.setColor(SEARCH_MATCH_COLOR);
 
         StringBuilder sb = new StringBuilder(" ");
         for (int i = 0; i < asciiMeasures.length; i++) {
             sb.setCharAt(0, (char) i);
             asciiMeasures[i] = mTextPaint.measureText(sb, 0, 1);
+            asciiFontWidthMismatches[i] = isFontWidthMismatch(asciiMeasures[i], WcWidth.width(i));
         }
     }
 
     /** Render the terminal to a canvas with at a specified row scroll, and an optional rectangular selection. */
     public final void render(TerminalEmulator mEmulator, Canvas canvas, int topRow,
                              int selectionY1, int selectionY2, int selectionX1, int selectionX2) {
-        final boolean reverseVideo = mEmulator.isReverseVideo();
-        final int endRow = topRow + mEmulator.mRows;
-        final int columns = mEmulator.mColumns;
-        final int cursorCol = mEmulator.getCursorCol();
-        final int cursorRow = mEmulator.getCursorRow();
-        final boolean cursorVisible = mEmulator.shouldCursorBeVisible();
-        final TerminalBuffer screen = mEmulator.getScreen();
-        final int[] palette = mEmulator.mColors.mCurrentColors;
-        final int cursorShape = mEmulator.getCursorStyle();
-
-        if (reverseVideo)
+        mFrame.set(mEmulator);
+        try {
+            renderFrame(canvas, topRow, selectionY1, selectionY2, selectionX1, selectionX2);
+        } finally {
+            mFrame.clear();
+        }
+    }
+
+    /**
+     * Render a snapshot of the terminal taken by {@link TerminalScreenSnapshot#take(TerminalEmulator, int, TerminalScreenSnapshot)}
+     * to a canvas at the rows it was taken for, and an optional rectangular selection. The emulator may be changed on
+     * another thread while rendering.
+     */
+    public final void render(TerminalScreenSnapshot snapshot, Canvas canvas,
+                             int selectionY1, int selectionY2, int selectionX1, int selectionX2) {
+        mFrame.set(snapshot);
+        try {
+            renderFrame(canvas, snapshot.getTopRow(), selectionY1, selectionY2, selectionX1, selectionX2);
+        } finally {
+            mFrame.clear();
+        }
+    }
+
+    private void renderFrame(Canvas canvas, int topRow, int selectionY1, int selectionY2, int selectionX1, int selectionX2) {
+        final Frame frame = mFrame;
+        final int endRow = topRow + frame.rows;
+        final int[] palette = frame.palette;
+
+        if (frame.reverseVideo)
             canvas.drawColor(palette[TextStyle.COLOR_INDEX_FOREGROUND], PorterDuff.Mode.SRC);
 
         float heightOffset = mFontLineSpacingAndAscent;
         for (int row = topRow; row < endRow; row++) {
             heightOffset += mFontLineSpacing;
 
+            final int cursorX = (row == frame.cursorRow && frame.cursorVisible) ? frame.cursorCol : -1;
+            int selx1 = -1, selx2 = -1;
+            if (row >= selectionY1 && row <= selectionY2) {
+                if (row == selectionY1) selx1 = selectionX1;
+                selx2 = (row == selectionY2) ? selectionX2 : frame.columns;
+            }
+
+            TerminalRow lineObject = frame.getLine(row);
+            renderRow(canvas, lineObject, heightOffset, cursorX, selx1, selx2);
+            renderSearchMatches(canvas, row, frame.columns, heightOffset);
+        }
+    }
+
+    /**
+     * Render the terminal to a canvas which keeps its contents between calls, like one backed by a {@link Bitmap},
+     * only redrawing the rows that changed since the last call. Rows are redrawn if their {@link TerminalRow} or its
+     * {@link TerminalRow#getModificationCount()} changed, for example due to scrolling or output, or if the cursor or
+     * selection on them changed. All rows are redrawn if the size, colors, cursor style or reverse video changed, or
+     * after {@link #invalidateRenderedRows()}.
+     * <p/>
+     * The arguments are the same as for {@link #render(TerminalEmulator, Canvas, int, int, int, int, int)}.
+     */
+    public final void renderDamagedRows(TerminalEmulator mEmulator, Canvas canvas, int topRow,
+                                        int selectionY1, int selectionY2, int selectionX1, int selectionX2) {
+        mFrame.set(mEmulator);
+        try {
+            renderDamagedFrame(canvas, topRow, selectionY1, selectionY2, selectionX1, selectionX2);
+        } finally {
+            mFrame.clear();
+        }
+    }
+
+    /**
+     * Render a snapshot of the terminal like {@link #renderDamagedRows(TerminalEmulator, Canvas, int, int, int, int, int)}.
+     * Rows which have not changed are shared between snapshots, so only the rows that changed since the last snapshot
+     * rendered are redrawn.
+     */
+    public final void renderDamagedRows(TerminalScreenSnapshot snapshot, Canvas canvas,
+                                        int selectionY1, int selectionY2, int selectionX1, int selectionX2) {
+        mFrame.set(snapshot);
+        try {
+            renderDamagedFrame(canvas, snapshot.getTopRow(), selectionY1, selectionY2, selectionX1, selectionX2);
+        } finally {
+            mFrame.clear();
+        }
+    }
+
+    private void renderDamagedFrame(Canvas canvas, int topRow, int selectionY1, int selectionY2, int selectionX1, int selectionX2) {
+        final Frame frame = mFrame;
+        final boolean reverseVideo = frame.reverseVideo;
+        final int rows = frame.rows;
+        final int columns = frame.columns;
+        final int cursorCol = frame.cursorCol;
+        final int cursorRow = frame.cursorRow;
+        final boolean cursorVisible = frame.cursorVisible;
+        final int[] palette = frame.palette;
+        final int cursorShape = frame.cursorShape;
+
+        final boolean renderAllRows = mRenderedRows == null || mRenderedRows.length != rows || mRenderedColumns != columns
+            || mRenderedReverseVideo != reverseVideo || mRenderedCursorShape != cursorShape || !Arrays.equals(mRenderedPalette, palette);
+        if (renderAllRows) {
+            if (mRenderedRows == null || mRenderedRows.length != rows) {
+                mRenderedRows = new TerminalRow[rows];
+                mRenderedModificationCounts = new int[rows];
+                mRenderedRowCursorX = new int[rows];
+                mRenderedRowSelectionX1 = new int[rows];
+                mRenderedRowSelectionX2 = new int[rows];
+            } else {
+                Arrays.fill(mRenderedRows, null);
+            }
+            mRenderedColumns = columns;
+            mRenderedReverseVideo = reverseVideo;
+            mRenderedCursorShape = cursorShape;
+            mRenderedPalette = palette.clone();
+
+            if (reverseVideo)
+                canvas.drawColor(palette[TextStyle.COLOR_INDEX_FOREGROUND], PorterDuff.Mode.SRC);
+            else
+                canvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
+        }
+
+        float heightOffset = mFontLineSpacingAndAscent;
+        for (int i = 0; i < rows; i++) {
+            final int row = topRow + i;
+            heightOffset += mFontLineSpacing;
+
             final int cursorX = (row == cursorRow && cursorVisible) ? cursorCol : -1;
             int selx1 = -1, selx2 = -1;
             if (row >= selectionY1 && row <= selectionY2) {
                 if (row == selectionY1) selx1 = selectionX1;
-                selx2 = (row == selectionY2) ? selectionX2 : mEmulator.mColumns;
+                selx2 = (row == selectionY2) ? selectionX2 : columns;
             }
 
-            TerminalRow lineObject = screen.allocateFullLineIfNecessary(screen.externalToInternalRow(row));
-            final char[] line = lineObject.mText;
-            final int charsUsedInLine = lineObject.getSpaceUsed();
+            TerminalRow lineObject = frame.getLine(row);
+            if (lineObject == mRenderedRows[i] && lineObject.getModificationCount() == mRenderedModificationCounts[i]
+                && cursorX == mRenderedRowCursorX[i] && selx1 == mRenderedRowSelectionX1[i] && selx2 == mRenderedRowSelectionX2[i]) {
+                continue;
+            }
+            mRenderedRows[i] = lineObject;
+            mRenderedModificationCounts[i] = lineObject.getModificationCount();
+            mRenderedRowCursorX[i] = cursorX;
+            mRenderedRowSelectionX1[i] = selx1;
+            mRenderedRowSelectionX2[i] = selx2;
 
-            long lastRunStyle = 0;
-            boolean lastRunInsideCursor = false;
-            boolean lastRunInsideSelection = false;
-            int lastRunStartColumn = -1;
-            int lastRunStartIndex = 0;
-            boolean lastRunFontWidthMismatch = false;
-            int currentCharIndex = 0;
-            float measuredWidthForRun = 0.f;
+            canvas.save();
+            canvas.clipRect(0, heightOffset - mFontLineSpacing, canvas.getWidth(), heightOffset);
+            if (!renderAllRows) {
+                if (reverseVideo)
+                    canvas.drawColor(palette[TextStyle.COLOR_INDEX_FOREGROUND], PorterDuff.Mode.SRC);
+                else
+                    canvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
+            }
+            renderRow(canvas, lineObject, heightOffset, cursorX, selx1, selx2);
+            renderSearchMatches(canvas, row, columns, heightOffset);
+            canvas.restore();
+        }
+    }
+
+    /** Make the next {@link #renderDamagedRows(TerminalEmulator, Canvas, int, int, int, int, int)} redraw all rows. */
+    public void invalidateRenderedRows() {
+        mRenderedRows = null;
+    }
+
+    /**
+     * Set the search matches to highlight, such as the ones found by {@link TranscriptSearch#findMatches(int, int)} for
+     * the rows being displayed, or null to highlight none.
+     */
+    public void setSearchMatches(List<TranscriptSearch.Match> matches) {
+        mSearchMatches = (matches == null) ? Collections.<TranscriptSearch.Match>emptyList() : matches;
+        invalidateRenderedRows();
+    }
 
-            for (int column = 0; column < columns; ) {
+    /** Highlight the cells of the search matches on a row with its text baseline at heightOffset. */
+    private void renderSearchMatches(Canvas canvas, int row, int columns, float heightOffset) {
+        for (int i = 0, size = mSearchMatches.size(); i < size; i++) {
+            final TranscriptSearch.Match match = mSearchMatches.get(i);
+            if (row < match.mStartRow || row > match.mEndRow) continue;
+            final int startColumn = (row == match.mStartRow) ? match.mStartColumn : 0;
+            final int endColumn = (row == match.mEndRow) ? match.mEndColumn : columns;
+            canvas.drawRect(startColumn * mFontWidth, heightOffset - mFontLineSpacingAndAscent + mFontAscent,
+                endColumn * mFontWidth, heightOffset, mSearchMatchPaint);
+        }
+    }
+
+    /** Render a single row with its text baseline at heightOffset. */
+    private void renderRow(Canvas canvas, TerminalRow lineObject, float heightOffset, int cursorX, int selx1, int selx2) {
+        final boolean reverseVideo = mFrame.reverseVideo;
+        final int columns = mFrame.columns;
+        final int[] palette = mFrame.palette;
+        final int cursorShape = mFrame.cursorShape;
+
+        final char[] line = lineObject.mText;
+        final int charsUsedInLine = lineObject.getSpaceUsed();
+
+        long lastRunStyle = 0;
+        boolean lastRunInsideCursor = false;
+        boolean lastRunInsideSelection = false;
+        int lastRunStartColumn = -1;
+        int lastRunStartIndex = 0;
+        boolean lastRunFontWidthMismatch = false;
+        int currentCharIndex = 0;
+        float measuredWidthForRun = 0.f;
+
+        // Iterate over the style runs of the row, so that the style only needs to be compared at their boundaries,
+        // where it always changes, instead of for each column:
+        int column = 0;
+        for (int styleRun = 0, styleRunCount = lineObject.getStyleRunCount(); styleRun < styleRunCount && column < columns; styleRun++) {
+            final int styleRunEnd = lineObject.getStyleRunEnd(styleRun);
+            // The run may be covered by a wide char starting in the previous run:
+            if (column >= styleRunEnd) continue;
+            final long style = lineObject.getStyleRunStyle(styleRun);
+            boolean styleChanged = true;
+
+            while (column < styleRunEnd) {
                 final char charAtIndex = line[currentCharIndex];
                 final boolean charIsHighsurrogate = Character.isHighSurrogate(charAtIndex);
                 final int charsForCodePoint = charIsHighsurrogate ? 2 : 1;
@@ -101,23 +313,33 @@ public final class TerminalRenderer {
                 final int codePointWcWidth = WcWidth.width(codePoint);
                 final boolean insideCursor = (cursorX == column || (codePointWcWidth == 2 && cursorX == column + 1));
                 final boolean insideSelection = column >= selx1 && column <= selx2;
-                final long style = lineObject.getStyle(column);
 
                 // Check if the measured text width for this code point is not the same as that expected by wcwidth().
                 // This could happen for some fonts which are not truly monospace, or for more exotic characters such as
                 // smileys which android font renders as wide.
                 // If this is detected, we draw this code point scaled to match what wcwidth() expects.
-                final float measuredCodePointWidth = (codePoint < asciiMeasures.length) ? asciiMeasures[codePoint] : mTextPaint.measureText(line,
-                    currentCharIndex, charsForCodePoint);
-                final boolean fontWidthMismatch = Math.abs(measuredCodePointWidth / mFontWidth - codePointWcWidth) > 0.01;
+                final float measuredCodePointWidth;
+                final boolean fontWidthMismatch;
+                if (codePoint < asciiMeasures.length) {
+                    measuredCodePointWidth = asciiMeasures[codePoint];
+                    fontWidthMismatch = asciiFontWidthMismatches[codePoint];
+                } else {
+                    int cacheIndex = mCodePointWidthCache.indexOf(codePoint);
+                    if (cacheIndex < 0) {
+                        float width = mTextPaint.measureText(line, currentCharIndex, charsForCodePoint);
+                        cacheIndex = mCodePointWidthCache.put(codePoint, width, isFontWidthMismatch(width, codePointWcWidth));
+                    }
+                    measuredCodePointWidth = mCodePointWidthCache.mWidths[cacheIndex];
+                    fontWidthMismatch = mCodePointWidthCache.mFontWidthMismatches[cacheIndex];
+                }
 
-                if (style != lastRunStyle || insideCursor != lastRunInsideCursor || insideSelection != lastRunInsideSelection || fontWidthMismatch || lastRunFontWidthMismatch) {
+                if (styleChanged || insideCursor != lastRunInsideCursor || insideSelection != lastRunInsideSelection || fontWidthMismatch || lastRunFontWidthMismatch) {
                     if (column == 0) {
                         // Skip first column as there is nothing to draw, just record the current style.
                     } else {
                         final int columnWidthSinceLastRun = column - lastRunStartColumn;
                         final int charsSinceLastRun = currentCharIndex - lastRunStartIndex;
-                        int cursorColor = lastRunInsideCursor ? mEmulator.mColors.mCurrentColors[TextStyle.COLOR_INDEX_CURSOR] : 0;
+                        int cursorColor = lastRunInsideCursor ? palette[TextStyle.COLOR_INDEX_CURSOR] : 0;
                         boolean invertCursorTextColor = false;
                         if (lastRunInsideCursor && cursorShape == TerminalEmulator.TERMINAL_CURSOR_STYLE_BLOCK) {
                             invertCursorTextColor = true;
@@ -133,6 +355,7 @@ public final class TerminalRenderer {
                     lastRunStartColumn = column;
                     lastRunStartIndex = currentCharIndex;
                     lastRunFontWidthMismatch = fontWidthMismatch;
+                    styleChanged = false;
                 }
                 measuredWidthForRun += measuredCodePointWidth;
                 column += codePointWcWidth;
@@ -143,17 +366,21 @@ public final class TerminalRenderer {
                     currentCharIndex += Character.isHighSurrogate(line[currentCharIndex]) ? 2 : 1;
                 }
             }
+        }
 
-            final int columnWidthSinceLastRun = columns - lastRunStartColumn;
-            final int charsSinceLastRun = currentCharIndex - lastRunStartIndex;
-            int cursorColor = lastRunInsideCursor ? mEmulator.mColors.mCurrentColors[TextStyle.COLOR_INDEX_CURSOR] : 0;
-            boolean invertCursorTextColor = false;
-            if (lastRunInsideCursor && cursorShape == TerminalEmulator.TERMINAL_CURSOR_STYLE_BLOCK) {
-                invertCursorTextColor = true;
-            }
-            drawTextRun(canvas, line, palette, heightOffset, lastRunStartColumn, columnWidthSinceLastRun, lastRunStartIndex, charsSinceLastRun,
-                measuredWidthForRun, cursorColor, cursorShape, lastRunStyle, reverseVideo || invertCursorTextColor || lastRunInsideSelection);
+        final int columnWidthSinceLastRun = columns - lastRunStartColumn;
+        final int charsSinceLastRun = currentCharIndex - lastRunStartIndex;
+        int cursorColor = lastRunInsideCursor ? palette[TextStyle.COLOR_INDEX_CURSOR] : 0;
+        boolean invertCursorTextColor = false;
+        if (lastRunInsideCursor && cursorShape == TerminalEmulator.TERMINAL_CURSOR_STYLE_BLOCK) {
+            invertCursorTextColor = true;
         }
+        drawTextRun(canvas, line, palette, heightOffset, lastRunStartColumn, columnWidthSinceLastRun, lastRunStartIndex, charsSinceLastRun,
+            measuredWidthForRun, cursorColor, cursorShape, lastRunStyle, reverseVideo || invertCursorTextColor || lastRunInsideSelection);
+    }
+
+    private boolean isFontWidthMismatch(float measuredCodePointWidth, int codePointWcWidth) {
+        return Math.abs(measuredCodePointWidth / mFontWidth - codePointWcWidth) > 0.01;
     }
 
     private void drawTextRun(Canvas canvas, char[] text, int[] palette, float y, int startColumn, int runWidthColumns,
@@ -246,4 +473,130 @@ public final class TerminalRenderer {
     public int getFontLineSpacing() {
         return mFontLineSpacing;
     }
+
+    /** Get the number of non-ASCII code point widths found in the width cache since this renderer was created. */
+    public long getCodePointWidthCacheHits() {
+        return mCodePointWidthCache.mHits;
+    }
+
+    /** Get the number of non-ASCII code point widths that had to be measured since this renderer was created. */
+    public long getCodePointWidthCacheMisses() {
+        return mCodePointWidthCache.mMisses;
+    }
+
+    /**
+     * A bounded open addressing hash map from code point to measured width, keyed on primitive ints to not box on
+     * lookups. When full it is cleared, since the code points used in a terminal are usually few.
+     */
+    private static final class CodePointWidthCache {
+
+        private static final int EMPTY = -1;
+
+        private final int mMaxSize;
+        private final int[] mCodePoints;
+        final float[] mWidths;
+        final boolean[] mFontWidthMismatches;
+        private int mSize;
+        long mHits, mMisses;
+
+        CodePointWidthCache(int maxSize) {
+            mMaxSize = maxSize;
+            // Keep the load factor at most 0.5 to keep probe sequences short:
+            int capacity = Integer.highestOneBit(maxSize) << 2;
+            mCodePoints = new int[capacity];
+            mWidths = new float[capacity];
+            mFontWidthMismatches = new boolean[capacity];
+            Arrays.fill(mCodePoints, EMPTY);
+        }
+
+        /** Get the index of the code point in the cache arrays, or -1 if not cached. */
+        int indexOf(int codePoint) {
+            final int mask = mCodePoints.length - 1;
+            for (int i = hash(codePoint) & mask; ; i = (i + 1) & mask) {
+                int cached = mCodePoints[i];
+                if (cached == codePoint) {
+                    mHits++;
+                    return i;
+                } else if (cached == EMPTY) {
+                    mMisses++;
+                    return -1;
+                }
+            }
+        }
+
+        /** Add a code point not already in the cache, returning its index in the cache arrays. */
+        int put(int codePoint, float width, boolean fontWidthMismatch) {
+            if (mSize == mMaxSize) {
+                Arrays.fill(mCodePoints, EMPTY);
+                mSize = 0;
+            }
+            final int mask = mCodePoints.length - 1;
+            int i = hash(codePoint) & mask;
+            while (mCodePoints[i] != EMPTY) i = (i + 1) & mask;
+            mCodePoints[i] = codePoint;
+            mWidths[i] = width;
+            mFontWidthMismatches[i] = fontWidthMismatch;
+            mSize++;
+            return i;
+        }
+
+        private static int hash(int codePoint) {
+            return codePoint * 0x9E3779B9 >>> 16;
+        }
+
+    }
+
+    /**
+     * The state of the terminal to render, taken either from the emulator itself or from a snapshot of it, so that both
+     * are rendered the same way.
+     */
+    private static final class Frame {
+
+        int rows, columns;
+        int cursorRow, cursorCol, cursorShape;
+        boolean cursorVisible, reverseVideo;
+        int[] palette;
+        /** The screen to get the rows from, or null if rendering {@link #snapshot}. */
+        TerminalBuffer screen;
+        TerminalScreenSnapshot snapshot;
+
+        void set(TerminalEmulator emulator) {
+            rows = emulator.mRows;
+            columns = emulator.mColumns;
+            cursorRow = emulator.getCursorRow();
+            cursorCol = emulator.getCursorCol();
+            cursorShape = emulator.getCursorStyle();
+            cursorVisible = emulator.shouldCursorBeVisible();
+            reverseVideo = emulator.isReverseVideo();
+            palette = emulator.mColors.mCurrentColors;
+            screen = emulator.getScreen();
+            snapshot = null;
+        }
+
+        void set(TerminalScreenSnapshot snapshot) {
+            rows = snapshot.getRows();
+            columns = snapshot.getColumns();
+            cursorRow = snapshot.getCursorRow();
+            cursorCol = snapshot.getCursorCol();
+            cursorShape = snapshot.getCursorStyle();
+            cursorVisible = snapshot.isCursorVisible();
+            reverseVideo = snapshot.isReverseVideo();
+            palette = snapshot.getPalette();
+            screen = null;
+            this.snapshot = snapshot;
+        }
+
+        TerminalRow getLine(int row) {
+            return (screen != null) ? screen.getLine(row) : snapshot.getLine(row);
+        }
+
+        /** Release the terminal rendered, so that it is not kept around by the renderer. */
+        void clear() {
+            palette = null;
+            screen = null;
+            snapshot = null;
+        }
+
+    }
+
 }
@@ -6,6 +6,7 @@ import android.app.Activity;
 import android.content.ClipData;
 import android.content.ClipboardManager;
 import android.content.Context;
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Typeface;
 import android.os.Build;
@@ -39,9 +40,13 @@ import androidx.annotation.RequiresApi;
 
 import com.termux.terminal.KeyHandler;
 import com.termux.terminal.TerminalEmulator;
+import com.termux.terminal.TerminalScreenSnapshot;
 import com.termux.terminal.TerminalSession;
+import com.termux.terminal.TranscriptSearch;
 import com.termux.view.textselection.TextSelectionCursorController;
 
+import java.util.List;
+
 /** View displaying and interacting with a {@link TerminalSession}. */
 public final class TerminalView extends View {
 
@@ -55,6 +60,13 @@ public final class TerminalView extends View {
 
     public TerminalRenderer mRenderer;
 
+    /**
+     * The bitmap the terminal is rendered into with {@link TerminalRenderer#renderDamagedRows}, so that only changed
+     * rows need to be redrawn for each frame, and its canvas. Recreated when the view size changes.
+     */
+    private Bitmap mScreenBitmap;
+    private Canvas mScreenCanvas;
+
     public TerminalViewClient mClient;
 
     private TextSelectionCursorController mTextSelectionCursorController;
@@ -69,6 +81,8 @@ public final class TerminalView extends View {
     /** The top row of text to display. Ranges from -activeTranscriptRows to 0. */
     int mTopRow;
     int[] mDefaultSelectors = new int[]{-1,-1,-1,-1};
+    /** The search matches highlighted by the renderer, see {@link #setSearchMatches(List)}. */
+    private List<TranscriptSearch.Match> mSearchMatches;
 
     float mScaleFactor = 1.f;
     final GestureAndScaleRecognizer mGestureRecognizer;
@@ -204,7 +218,7 @@ public final class TerminalView extends View {
                 if (mouseTrackingAtStartOfFling) {
                     mScroller.fling(0, 0, 0, -(int) (velocityY * SCALE), 0, 0, -mEmulator.mRows / 2, mEmulator.mRows / 2);
                 } else {
-                    mScroller.fling(0, mTopRow, 0, -(int) (velocityY * SCALE), 0, 0, -mEmulator.getScreen().getActiveTranscriptRows(), 0);
+                    mScroller.fling(0, mTopRow, 0, -(int) (velocityY * SCALE), 0, 0, -getActiveTranscriptRows(), 0);
                 }
 
                 post(new Runnable() {
@@ -291,6 +305,9 @@ public final class TerminalView extends View {
         if (session == mTermSession) return false;
         mTopRow = 0;
 
+        // Output of sessions not shown is appended in the background, off the main thread
+        if (mTermSession != null) mTermSession.setBackground(true);
+        if (session != null) session.setBackground(false);
         mTermSession = session;
         mEmulator = null;
         mCombiningAccent = 0;
@@ -437,7 +454,7 @@ public final class TerminalView extends View {
 
     @Override
     protected int computeVerticalScrollRange() {
-        return mEmulator == null ? 1 : mEmulator.getScreen().getActiveRows();
+        return mEmulator == null ? 1 : getActiveRows();
     }
 
     @Override
@@ -447,7 +464,25 @@ public final class TerminalView extends View {
 
     @Override
     protected int computeVerticalScrollOffset() {
-        return mEmulator == null ? 1 : mEmulator.getScreen().getActiveRows() + mTopRow - mEmulator.mRows;
+        return mEmulator == null ? 1 : getActiveRows() + mTopRow - mEmulator.mRows;
+    }
+
+    /**
+     * Get the number of rows in the screen and transcript of {@link #mEmulator}. Process output may be appended on
+     * another thread, see TerminalSession#setEmulatorThreadEnabled(boolean), so it is read while holding the emulator
+     * lock.
+     */
+    private int getActiveRows() {
+        synchronized (mTermSession.getEmulatorLock()) {
+            return mEmulator.getScreen().getActiveRows();
+        }
+    }
+
+    /** Get the number of rows in the transcript of {@link #mEmulator}, see {@link #getActiveRows()}. */
+    private int getActiveTranscriptRows() {
+        synchronized (mTermSession.getEmulatorLock()) {
+            return mEmulator.getScreen().getActiveTranscriptRows();
+        }
     }
 
     public void onScreenUpdated() {
@@ -457,6 +492,18 @@ public final class TerminalView extends View {
     public void onScreenUpdated(boolean skipScrolling) {
         if (mEmulator == null) return;
 
+        // Process output may be appended on another thread while reading the scroll state, see
+        // TerminalSession#setEmulatorThreadEnabled(boolean):
+        synchronized (mTermSession.getEmulatorLock()) {
+            updateTopRow(skipScrolling);
+        }
+
+        invalidate();
+        if (mAccessibilityEnabled) setContentDescription(getText());
+    }
+
+    /** Keep the rows shown in place while selecting text or with auto scroll disabled, otherwise scroll to the bottom. */
+    private void updateTopRow(boolean skipScrolling) {
         int rowsInHistory = mEmulator.getScreen().getActiveTranscriptRows();
         if (mTopRow < -rowsInHistory) mTopRow = -rowsInHistory;
 
@@ -493,9 +540,6 @@ public final class TerminalView extends View {
         }
 
         mEmulator.clearScrollCounter();
-
-        invalidate();
-        if (mAccessibilityEnabled) setContentDescription(getText());
     }
 
     /** This must be called by the hosting activity in {@link Activity#onContextMenuClosed(Menu)}
@@ -513,15 +557,27 @@ public final class TerminalView extends View {
      */
     public void setTextSize(int textSize) {
         mRenderer = new TerminalRenderer(textSize, mRenderer == null ? Typeface.MONOSPACE : mRenderer.mTypeface);
+        mRenderer.setSearchMatches(mSearchMatches);
         updateSize();
     }
 
     public void setTypeface(Typeface newTypeface) {
         mRenderer = new TerminalRenderer(mRenderer.mTextSize, newTypeface);
+        mRenderer.setSearchMatches(mSearchMatches);
         updateSize();
         invalidate();
     }
 
+    /**
+     * Highlight search matches, such as the ones found by {@link TranscriptSearch#findMatches(int, int)} for the rows
+     * currently displayed, or clear the highlights with null.
+     */
+    public void setSearchMatches(@Nullable List<TranscriptSearch.Match> matches) {
+        mSearchMatches = matches;
+        mRenderer.setSearchMatches(matches);
+        invalidate();
+    }
+
     @Override
     public boolean onCheckIsTextEditor() {
         return true;
@@ -582,7 +638,7 @@ public final class TerminalView extends View {
                 // e.g. less, which shifts to the alt screen without mouse handling.
                 handleKeyCode(up ? KeyEvent.KEYCODE_DPAD_UP : KeyEvent.KEYCODE_DPAD_DOWN, 0);
             } else {
-                mTopRow = Math.min(0, Math.max(-(mEmulator.getScreen().getActiveTranscriptRows()), mTopRow + (up ? -1 : 1)));
+                mTopRow = Math.min(0, Math.max(-getActiveTranscriptRows(), mTopRow + (up ? -1 : 1)));
                 if (!awakenScrollBars()) invalidate();
             }
         }
@@ -622,7 +678,7 @@ public final class TerminalView extends View {
                     ClipData.Item clipItem = clipData.getItemAt(0);
                     if (clipItem != null) {
                         CharSequence text = clipItem.coerceToText(getContext());
-                        if (!TextUtils.isEmpty(text)) mEmulator.paste(text.toString());
+                        if (!TextUtils.isEmpty(text)) mTermSession.paste(text.toString());
                     }
                 }
             } else if (mEmulator.isMouseTrackingActive()) { // BUTTON_PRIMARY.
@@ -1014,19 +1070,66 @@ public final class TerminalView extends View {
                 mTextSelectionCursorController.getSelectors(sel);
             }
 
-            mRenderer.render(mEmulator, canvas, mTopRow, sel[0], sel[1], sel[2], sel[3]);
+            if (mTermSession.isEmulatorThreadEnabled()) {
+                // Render a snapshot instead of the emulator, which may be changed on the emulator thread meanwhile:
+                TerminalScreenSnapshot snapshot = mTermSession.getScreenSnapshot(mTopRow);
+                if (ensureScreenBitmap()) {
+                    mRenderer.renderDamagedRows(snapshot, mScreenCanvas, sel[0], sel[1], sel[2], sel[3]);
+                    canvas.drawBitmap(mScreenBitmap, 0, 0, null);
+                } else {
+                    mRenderer.render(snapshot, canvas, sel[0], sel[1], sel[2], sel[3]);
+                }
+            } else if (ensureScreenBitmap()) {
+                mRenderer.renderDamagedRows(mEmulator, mScreenCanvas, mTopRow, sel[0], sel[1], sel[2], sel[3]);
+                canvas.drawBitmap(mScreenBitmap, 0, 0, null);
+            } else {
+                mRenderer.render(mEmulator, canvas, mTopRow, sel[0], sel[1], sel[2], sel[3]);
+            }
 
             // render the text selection handles
             renderTextSelection();
         }
     }
 
+    /**
+     * Make sure {@link #mScreenBitmap} matches the view size, recreating it and invalidating all rows rendered into it
+     * if needed.
+     *
+     * @return Returns {@code true} if the bitmap can be rendered into, otherwise {@code false}.
+     */
+    private boolean ensureScreenBitmap() {
+        int width = getWidth();
+        int height = getHeight();
+        if (width == 0 || height == 0) return false;
+        if (mScreenBitmap != null && mScreenBitmap.getWidth() == width && mScreenBitmap.getHeight() == height) return true;
+
+        releaseScreenBitmap();
+        try {
+            mScreenBitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        } catch (OutOfMemoryError e) {
+            return false;
+        }
+        mScreenCanvas = new Canvas(mScreenBitmap);
+        mRenderer.invalidateRenderedRows();
+        return true;
+    }
+
+    private void releaseScreenBitmap() {
+        if (mScreenBitmap != null) {
+            mScreenBitmap.recycle();
+            mScreenBitmap = null;
+            mScreenCanvas = null;
+        }
+    }
+
     public TerminalSession getCurrentSession() {
         return mTermSession;
     }
 
     private CharSequence getText() {
-        return mEmulator.getScreen().getSelectedText(0, mTopRow, mEmulator.mColumns, mTopRow + mEmulator.mRows);
+        synchronized (mTermSession.getEmulatorLock()) {
+            return mEmulator.getScreen().getSelectedText(0, mTopRow, mEmulator.mColumns, mTopRow + mEmulator.mRows);
+        }
     }
 
     public int getCursorX(float x) {
@@ -1441,6 +1544,8 @@ public final class TerminalView extends View {
     protected void onDetachedFromWindow() {
         super.onDetachedFromWindow();
 
+        releaseScreenBitmap();
+
         if (mTextSelectionCursorController != null) {
             // Might solve the following exception
             // android.view.WindowLeaked: Activity com.termux.app.TermuxActivity has leaked window android.widget.PopupWindow
@@ -0,0 +1,203 @@
+package com.termux.shared.shell.am;
+
+import android.content.Context;
+import android.net.LocalSocket;
+import android.net.LocalSocketAddress;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.termux.shared.net.socket.local.LocalSocketManager;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+/**
+ * Benchmark of the round-trip latency of {@link AmSocketServer#processAmClient(LocalSocketManager, com.termux.shared.net.socket.local.LocalClientSocket)}
+ * for am commands of different sizes, from connecting to the server until the result has been
+ * read, and of pipelining am commands on a single connection with the framed protocol, which
+ * runs on an Android device.
+ *
+ * Run it with `./gradlew :termux-shared:connectedAndroidTest -Pandroid.testInstrumentationRunnerArguments.class=com.termux.shared.shell.am.AmSocketServerBenchmark`
+ * and check the results logged with the {@link #LOG_TAG} tag.
+ */
+@RunWith(AndroidJUnit4.class)
+public class AmSocketServerBenchmark {
+
+    private static final String LOG_TAG = "AmSocketServerBenchmark";
+
+    private static final int WARMUP_ITERATIONS = 20;
+    private static final int ITERATIONS = 200;
+
+    private LocalSocketManager mLocalSocketManager;
+    private String mSocketPath;
+
+    @Before
+    public void startServer() {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        mSocketPath = new File(context.getCacheDir(), "am-benchmark.sock").getAbsolutePath();
+
+        AmSocketServerRunConfig amSocketServerRunConfig = new AmSocketServerRunConfig(LOG_TAG, mSocketPath,
+            new AmSocketServer.AmSocketServerClient() {
+                @Override
+                protected String getLogTag() {
+                    return LOG_TAG;
+                }
+            });
+        mLocalSocketManager = AmSocketServer.start(context, amSocketServerRunConfig);
+        assertNotNull("Failed to start am socket server", mLocalSocketManager);
+    }
+
+    @After
+    public void stopServer() {
+        if (mLocalSocketManager != null)
+            mLocalSocketManager.stop();
+    }
+
+    @Test
+    public void roundTrip1KiB() throws IOException {
+        benchmarkRoundTrip(1024);
+    }
+
+    @Test
+    public void roundTrip64KiB() throws IOException {
+        benchmarkRoundTrip(64 * 1024);
+    }
+
+    @Test
+    public void pipelined1KiB() throws Exception {
+        byte[] command = getAmCommand(1024);
+
+        runPipelinedAmCommands(command, WARMUP_ITERATIONS);
+
+        long start = System.nanoTime();
+        runPipelinedAmCommands(command, ITERATIONS);
+        long time = System.nanoTime() - start;
+
+        Log.i(LOG_TAG, String.format(Locale.ROOT, "%d bytes command pipelined with the framed protocol: %.1f us per command",
+            command.length, time / 1000.0 / ITERATIONS));
+    }
+
+    private void benchmarkRoundTrip(int size) throws IOException {
+        byte[] command = getAmCommand(size);
+
+        for (int i = 0; i < WARMUP_ITERATIONS; i++)
+            runAmCommand(command);
+
+        long[] times = new long[ITERATIONS];
+        for (int i = 0; i < ITERATIONS; i++) {
+            long start = System.nanoTime();
+            runAmCommand(command);
+            times[i] = System.nanoTime() - start;
+        }
+
+        Arrays.sort(times);
+        Log.i(LOG_TAG, String.format(Locale.ROOT, "%d bytes command: median %.1f us, p90 %.1f us, max %.1f us",
+            command.length, times[ITERATIONS / 2] / 1000.0, times[ITERATIONS * 9 / 10] / 1000.0,
+            times[ITERATIONS - 1] / 1000.0));
+    }
+
+    /** Send the am command to the server like termux-am-socket does and check that it succeeded. */
+    private void runAmCommand(@NonNull byte[] command) throws IOException {
+        try (LocalSocket socket = new LocalSocket()) {
+            socket.connect(new LocalSocketAddress(mSocketPath, LocalSocketAddress.Namespace.FILESYSTEM));
+            socket.getOutputStream().write(command);
+            socket.shutdownOutput();
+
+            ByteArrayOutputStream result = new ByteArrayOutputStream();
+            InputStream inputStream = socket.getInputStream();
+            byte[] buffer = new byte[4096];
+            int bytesRead;
+            while ((bytesRead = inputStream.read(buffer)) != -1)
+                result.write(buffer, 0, bytesRead);
+
+            String[] parts = result.toString(StandardCharsets.UTF_8.name()).split("\0", -1);
+            assertEquals("Unexpected result: " + Arrays.toString(parts), "0", parts[0]);
+        }
+    }
+
+    /**
+     * Send the am command count times on a single connection with the framed protocol, writing
+     * the requests on another thread while reading the responses, and check that all succeeded.
+     */
+    private void runPipelinedAmCommands(@NonNull byte[] command, int count) throws Exception {
+        try (LocalSocket socket = new LocalSocket()) {
+            socket.connect(new LocalSocketAddress(mSocketPath, LocalSocketAddress.Namespace.FILESYSTEM));
+
+            Thread writer = new Thread(() -> {
+                try {
+                    BufferedOutputStream outputStream = new BufferedOutputStream(socket.getOutputStream());
+                    AmSocketServerFramedProtocol.writeClientHandshake(outputStream);
+                    for (int i = 0; i < count; i++)
+                        AmSocketServerFramedProtocol.writeRequest(outputStream, i, command);
+                    outputStream.flush();
+                    socket.shutdownOutput();
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "Failed to send pipelined am commands", e);
+                }
+            });
+            writer.start();
+
+            DataInputStream inputStream = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            assertEquals(AmSocketServerFramedProtocol.FRAMED_PROTOCOL_VERSION, AmSocketServerFramedProtocol.readServerVersion(inputStream));
+
+            BitSet requestIds = new BitSet(count);
+            AmSocketServerFramedProtocol.Response response;
+            while ((response = AmSocketServerFramedProtocol.readResponse(inputStream)) != null) {
+                assertEquals("Unexpected result for request " + response.requestId + ": " + response.stderr, 0, response.exitCode);
+                requestIds.set(response.requestId);
+            }
+            assertEquals(count, requestIds.cardinality());
+
+            writer.join();
+        }
+    }
+
+    /**
+     * Get an am command which sends a broadcast with a string extra padded so that the command is
+     * {@code size} bytes long. The extra has some multi-byte characters so that decoding UTF-8 split
+     * across reads is also covered.
+     */
+    @NonNull
+    private static byte[] getAmCommand(int size) {
+        StringBuilder command = new StringBuilder("broadcast -a com.termux.shared.BENCHMARK --es extra '");
+        int bytes = command.length();
+        while (bytes < size - 3) {
+            if (bytes % 64 == 0) {
+                command.append('é');
+                bytes += 2;
+            } else {
+                command.append('x');
+                bytes++;
+            }
+        }
+        while (bytes < size - 1) {
+            command.append('x');
+            bytes++;
+        }
+        command.append('\'');
+
+        byte[] commandBytes = command.toString().getBytes(StandardCharsets.UTF_8);
+        assertEquals(size, commandBytes.length);
+        return commandBytes;
+    }
+
+}
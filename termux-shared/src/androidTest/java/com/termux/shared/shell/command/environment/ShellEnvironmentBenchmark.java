@@ -0,0 +1,141 @@
+package com.termux.shared.shell.command.environment;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.termux.shared.logger.Logger;
+import com.termux.shared.shell.command.ExecutionCommand;
+import com.termux.shared.shell.command.runner.app.AppShell;
+import com.termux.shared.termux.shell.command.environment.TermuxShellEnvironment;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+/**
+ * Benchmark of the latency of setting up the shell environment of commands and of spawning
+ * {@link AppShell} commands, with the environment built for every command like before
+ * {@link ShellEnvironmentCache} was added and with the cached environment, which runs on an
+ * Android device.
+ *
+ * Run it with `./gradlew :termux-shared:connectedAndroidTest -Pandroid.testInstrumentationRunnerArguments.class=com.termux.shared.shell.command.environment.ShellEnvironmentBenchmark`
+ * and check the results logged with the {@link #LOG_TAG} tag.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ShellEnvironmentBenchmark {
+
+    private static final String LOG_TAG = "ShellEnvironmentBenchmark";
+
+    private static final int WARMUP_ITERATIONS = 20;
+    private static final int ITERATIONS = 200;
+
+    private Context mContext;
+    private TermuxShellEnvironment mShellEnvironment;
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        mShellEnvironment = new TermuxShellEnvironment();
+        ShellEnvironmentCache.invalidate("benchmark started");
+    }
+
+    @Test
+    public void setupEnvironment() {
+        HashMap<String, String> additionalEnvironment = new HashMap<>();
+        additionalEnvironment.put("BENCHMARK", "1");
+
+        String[] uncachedEnviron = setupUncachedEnviron(getExecutionCommand(), additionalEnvironment);
+        String[] cachedEnviron = mShellEnvironment.setupShellCommandEnviron(mContext, getExecutionCommand(), additionalEnvironment);
+        Arrays.sort(uncachedEnviron);
+        Arrays.sort(cachedEnviron);
+        assertArrayEquals(uncachedEnviron, cachedEnviron);
+
+        long[] uncachedTimes = new long[ITERATIONS];
+        long[] cachedTimes = new long[ITERATIONS];
+        for (int i = 0; i < WARMUP_ITERATIONS + ITERATIONS; i++) {
+            long start = System.nanoTime();
+            setupUncachedEnviron(getExecutionCommand(), additionalEnvironment);
+            long uncachedTime = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            mShellEnvironment.setupShellCommandEnviron(mContext, getExecutionCommand(), additionalEnvironment);
+            long cachedTime = System.nanoTime() - start;
+
+            if (i >= WARMUP_ITERATIONS) {
+                uncachedTimes[i - WARMUP_ITERATIONS] = uncachedTime;
+                cachedTimes[i - WARMUP_ITERATIONS] = cachedTime;
+            }
+        }
+
+        logTimes("Environment setup without cache", uncachedTimes);
+        logTimes("Environment setup with cache", cachedTimes);
+    }
+
+    @Test
+    public void spawnAppShell() {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++)
+            runAppShell();
+
+        long[] uncachedTimes = new long[ITERATIONS];
+        long[] cachedTimes = new long[ITERATIONS];
+        for (int i = 0; i < ITERATIONS; i++) {
+            ShellEnvironmentCache.invalidate("benchmark");
+            uncachedTimes[i] = runAppShell();
+            cachedTimes[i] = runAppShell();
+        }
+
+        logTimes("AppShell spawn without cache", uncachedTimes);
+        logTimes("AppShell spawn with cache", cachedTimes);
+    }
+
+    /** Setup the environment like it was done before {@link ShellEnvironmentCache} was added. */
+    @NonNull
+    private String[] setupUncachedEnviron(@NonNull ExecutionCommand executionCommand,
+                                          @NonNull HashMap<String, String> additionalEnvironment) {
+        HashMap<String, String> environment = mShellEnvironment.setupShellCommandEnvironment(mContext, executionCommand);
+        environment.putAll(additionalEnvironment);
+        List<String> environmentList = ShellEnvironmentUtils.convertEnvironmentToEnviron(environment);
+        Collections.sort(environmentList);
+        return environmentList.toArray(new String[0]);
+    }
+
+    /** Run `/system/bin/true` synchronously and return the time taken in nanoseconds. */
+    private long runAppShell() {
+        ExecutionCommand executionCommand = getExecutionCommand();
+        long start = System.nanoTime();
+        AppShell appShell = AppShell.execute(mContext, executionCommand, null, mShellEnvironment, null, true);
+        long time = System.nanoTime() - start;
+        assertNotNull("Failed to start AppShell", appShell);
+        assertTrue(executionCommand.toString(), executionCommand.isSuccessful());
+        return time;
+    }
+
+    @NonNull
+    private ExecutionCommand getExecutionCommand() {
+        ExecutionCommand executionCommand = new ExecutionCommand(-1, "/system/bin/true", null, null,
+            mContext.getCacheDir().getAbsolutePath(), ExecutionCommand.Runner.APP_SHELL.getName(), false);
+        executionCommand.commandLabel = LOG_TAG;
+        executionCommand.backgroundCustomLogLevel = Logger.LOG_LEVEL_OFF;
+        return executionCommand;
+    }
+
+    private static void logTimes(@NonNull String label, @NonNull long[] times) {
+        Arrays.sort(times);
+        Log.i(LOG_TAG, String.format(Locale.ROOT, "%s: median %.1f us, p90 %.1f us, max %.1f us", label,
+            times[times.length / 2] / 1000.0, times[times.length * 9 / 10] / 1000.0,
+            times[times.length - 1] / 1000.0));
+    }
+
+}
@@ -5,9 +5,11 @@
 #include <sstream>
 #include <string>
 #include <unistd.h>
+#include <vector>
 
 #include <android/log.h>
 
+#include <sys/epoll.h>
 #include <sys/ioctl.h>
 #include <sys/socket.h>
 #include <sys/types.h>
@@ -16,6 +18,9 @@
 #define LOG_TAG "local-socket"
 #define JNI_EXCEPTION "jni-exception"
 
+/* The max bytes read from a socket by a single readNative() call. */
+#define READ_BUFFER_SIZE 8192
+
 using namespace std;
 
 
@@ -353,29 +358,41 @@ JNIEXPORT jobject JNICALL
 Java_com_termux_shared_net_socket_local_LocalSocketManager_readNative(JNIEnv *env, jclass clazz,
                                                                       jstring logTitle,
                                                                       jint fd, jbyteArray dataArray,
+                                                                      jint offset, jint length,
                                                                       jlong deadline) {
     if (fd < 0) {
         return getJniResult(env, logTitle, -1, "readNative(): Invalid fd \"" + to_string(fd) + "\" passed");
     }
 
-    jbyte* data = env->GetByteArrayElements(dataArray, nullptr);
-    if (checkJniException(env)) return NULL;
-    if (data == nullptr) {
+    if (dataArray == nullptr) {
         return getJniResult(env, logTitle, -1, "readNative(): data passed is null");
     }
 
-    struct timespec time = {};
-    jbyte* current = data;
     int bytes = env->GetArrayLength(dataArray);
     if (checkJniException(env)) return NULL;
-    int bytesRead = 0;
-    while (bytesRead < bytes) {
+    if (offset < 0 || length < 0 || offset > bytes - length) {
+        return getJniResult(env, logTitle, -1, "readNative(): Invalid offset \"" + to_string(offset) +
+                                               "\" and length \"" + to_string(length) +
+                                               "\" passed for data of length " + to_string(bytes));
+    }
+
+    if (length == 0) {
+        return getJniResult(env, logTitle, 0);
+    }
+
+    // Read into a buffer on the stack and only copy the bytes actually read into the java array,
+    // instead of copying the whole array in and out with GetByteArrayElements() for every call.
+    jbyte buffer[READ_BUFFER_SIZE];
+    if (length > READ_BUFFER_SIZE)
+        length = READ_BUFFER_SIZE;
+
+    struct timespec time = {};
+    int ret;
+    while (true) {
         if (deadline > 0) {
             if (clock_gettime(CLOCK_REALTIME, &time) != -1) {
                 // If current time is greater than the time defined in deadline
                 if (timespec_to_milliseconds(&time) > deadline) {
-                    env->ReleaseByteArrayElements(dataArray, data, 0);
-                    if (checkJniException(env)) return NULL;
                     return getJniResult(env, logTitle, -1,
                                         "readNative(): Deadline \"" + to_string(deadline) + "\" timeout");
                 }
@@ -386,28 +403,26 @@ Java_com_termux_shared_net_socket_local_LocalSocketManager_readNative(JNIEnv *en
             }
         }
 
-        // Read data from socket
-        int ret = read(fd, current, bytes);
+        // Read data from socket, returning as soon as some data has been read or peer closed
+        // writing end (EOF) so that callers can process data as it arrives
+        ret = read(fd, buffer, length);
         if (ret == -1) {
+            if (errno == EINTR)
+                continue;
             int errnoBackup = errno;
-            env->ReleaseByteArrayElements(dataArray, data, 0);
-            if (checkJniException(env)) return NULL;
             return getJniResult(env, logTitle, -1, errnoBackup, "readNative(): Failed to read on fd "  + to_string(fd));
         }
-        // EOF, peer closed writing end
-        if (ret == 0) {
-            break;
-        }
 
-        bytesRead += ret;
-        current += ret;
+        break;
     }
 
-    env->ReleaseByteArrayElements(dataArray, data, 0);
-    if (checkJniException(env)) return NULL;
+    if (ret > 0) {
+        env->SetByteArrayRegion(dataArray, offset, ret, buffer);
+        if (checkJniException(env)) return NULL;
+    }
 
     // Return success and bytes read in JniResult.intData field
-    return getJniResult(env, logTitle, bytesRead);
+    return getJniResult(env, logTitle, ret);
 }
 
 
@@ -601,3 +616,97 @@ Java_com_termux_shared_net_socket_local_LocalSocketManager_getPeerCredNative(JNI
     // Return success since PeerCred was filled successfully
     return getJniResult(env, logTitle);
 }
+
+extern "C"
+JNIEXPORT jobject JNICALL
+Java_com_termux_shared_net_socket_local_LocalSocketManager_createEpollNative(JNIEnv *env, jclass clazz,
+                                                                             jstring logTitle) {
+    int epollFd = epoll_create1(EPOLL_CLOEXEC);
+    if (epollFd == -1) {
+        return getJniResult(env, logTitle, -1, errno, "createEpollNative(): Create epoll failed");
+    }
+
+    // Return success and epoll fd in JniResult.intData field
+    return getJniResult(env, logTitle, epollFd);
+}
+
+extern "C"
+JNIEXPORT jobject JNICALL
+Java_com_termux_shared_net_socket_local_LocalSocketManager_epollAddNative(JNIEnv *env, jclass clazz,
+                                                                          jstring logTitle,
+                                                                          jint epollFd, jint fd,
+                                                                          jboolean oneShot) {
+    if (epollFd < 0 || fd < 0) {
+        return getJniResult(env, logTitle, -1, "epollAddNative(): Invalid epoll fd \"" + to_string(epollFd) +
+                                               "\" or fd \"" + to_string(fd) + "\" passed");
+    }
+
+    // A peer closing its end is reported as readable as well, so that the read sees the EOF
+    struct epoll_event event = {};
+    event.events = EPOLLIN | EPOLLRDHUP;
+    if (oneShot)
+        event.events |= EPOLLONESHOT;
+    event.data.fd = fd;
+
+    if (epoll_ctl(epollFd, EPOLL_CTL_ADD, fd, &event) == -1) {
+        return getJniResult(env, logTitle, -1, errno,
+                            "epollAddNative(): Failed to add fd " + to_string(fd) + " to epoll fd " + to_string(epollFd));
+    }
+
+    // Return success
+    return getJniResult(env, logTitle);
+}
+
+extern "C"
+JNIEXPORT jobject JNICALL
+Java_com_termux_shared_net_socket_local_LocalSocketManager_epollRemoveNative(JNIEnv *env, jclass clazz,
+                                                                             jstring logTitle,
+                                                                             jint epollFd, jint fd) {
+    if (epollFd < 0 || fd < 0) {
+        return getJniResult(env, logTitle, -1, "epollRemoveNative(): Invalid epoll fd \"" + to_string(epollFd) +
+                                               "\" or fd \"" + to_string(fd) + "\" passed");
+    }
+
+    if (epoll_ctl(epollFd, EPOLL_CTL_DEL, fd, nullptr) == -1) {
+        return getJniResult(env, logTitle, -1, errno,
+                            "epollRemoveNative(): Failed to remove fd " + to_string(fd) + " from epoll fd " + to_string(epollFd));
+    }
+
+    // Return success
+    return getJniResult(env, logTitle);
+}
+
+extern "C"
+JNIEXPORT jobject JNICALL
+Java_com_termux_shared_net_socket_local_LocalSocketManager_epollWaitNative(JNIEnv *env, jclass clazz,
+                                                                           jstring logTitle,
+                                                                           jint epollFd, jintArray readyFdsArray,
+                                                                           jint timeout) {
+    if (epollFd < 0) {
+        return getJniResult(env, logTitle, -1, "epollWaitNative(): Invalid epoll fd \"" + to_string(epollFd) + "\" passed");
+    }
+
+    int maxEvents = env->GetArrayLength(readyFdsArray);
+    if (checkJniException(env)) return NULL;
+    if (maxEvents < 1) {
+        return getJniResult(env, logTitle, -1, "epollWaitNative(): readyFds passed is empty");
+    }
+
+    vector<struct epoll_event> events(maxEvents);
+    int ready = epoll_wait(epollFd, events.data(), maxEvents, timeout);
+    if (ready == -1) {
+        // Being interrupted by a signal is not an error, just return no fds
+        if (errno == EINTR)
+            return getJniResult(env, logTitle, 0);
+        return getJniResult(env, logTitle, -1, errno, "epollWaitNative(): Failed to wait on epoll fd " + to_string(epollFd));
+    }
+
+    vector<jint> readyFds(maxEvents);
+    for (int i = 0; i < ready; i++)
+        readyFds[i] = events[i].data.fd;
+    env->SetIntArrayRegion(readyFdsArray, 0, ready, readyFds.data());
+    if (checkJniException(env)) return NULL;
+
+    // Return success and number of ready fds in JniResult.intData field
+    return getJniResult(env, logTitle, ready);
+}
@@ -80,6 +80,28 @@ public class ShareUtils {
         openSystemAppChooser(context, shareTextIntent, DataUtils.isNullOrEmpty(title) ? context.getString(R.string.title_share_with) : title);
     }
 
+    /**
+     * Share a stream, like a file exposed by a content provider, instead of passing its content
+     * in the intent, which is not limited by {@link DataUtils#TRANSACTION_SIZE_LIMIT_IN_BYTES}.
+     *
+     * @param context The context for operations.
+     * @param subject The subject for sharing.
+     * @param uri The content {@link Uri} of the stream to share, to which read permission is granted.
+     * @param mimeType The mime type of the stream.
+     * @param title The title for share menu.
+     */
+    public static void shareStream(final Context context, final String subject, final Uri uri, final String mimeType, @Nullable final String title) {
+        if (context == null || uri == null) return;
+
+        final Intent shareStreamIntent = new Intent(Intent.ACTION_SEND);
+        shareStreamIntent.setType(mimeType);
+        shareStreamIntent.putExtra(Intent.EXTRA_SUBJECT, subject);
+        shareStreamIntent.putExtra(Intent.EXTRA_STREAM, uri);
+        shareStreamIntent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+
+        openSystemAppChooser(context, shareStreamIntent, DataUtils.isNullOrEmpty(title) ? context.getString(R.string.title_share_with) : title);
+    }
+
 
 
     /** Wrapper for {@link #copyTextToClipboard(Context, String, String, String)} with `null` `clipDataLabel` and `toastString`. */
@@ -9,18 +9,27 @@ import com.termux.shared.logger.Logger;
 import com.termux.shared.markdown.MarkdownUtils;
 
 import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 
 /** The client socket for {@link LocalSocketManager}. */
 public class LocalClientSocket implements Closeable {
 
     public static final String LOG_TAG = "LocalClientSocket";
 
+    /**
+     * The size of the buffer used by {@link #readDataOnInputStream(StringBuilder, boolean)}, which
+     * is also the max bytes read by a single call to the native read.
+     */
+    public static final int READ_BUFFER_SIZE = 8192;
+
     /** The {@link LocalSocketManager} instance for the local socket. */
     @NonNull protected final LocalSocketManager mLocalSocketManager;
 
@@ -45,6 +54,12 @@ public class LocalClientSocket implements Closeable {
     /** The {@link InputStream} implementation for the {@link LocalClientSocket}. */
     @NonNull protected final SocketInputStream mInputStream;
 
+    /**
+     * The buffer reused by {@link #readDataOnInputStream(StringBuilder, boolean)}. It is created
+     * on first use.
+     */
+    protected byte[] mReadBuffer;
+
     /**
      * Create an new instance of {@link LocalClientSocket}.
      *
@@ -121,6 +136,24 @@ public class LocalClientSocket implements Closeable {
      * error {@link String}, otherwise {@code null}.
      */
     public Error read(@NonNull byte[] data, MutableInt bytesRead) {
+        return read(data, 0, data.length, bytesRead);
+    }
+
+    /**
+     * Attempts to read up to length bytes from file descriptor into the data buffer starting at
+     * offset. On success, the number of bytes read is returned (zero indicates end of file) in
+     * bytesRead. The call returns as soon as some bytes have been read.
+     *
+     * This is a wrapper for {@link LocalSocketManager#read(String, int, byte[], int, int, long)}.
+     *
+     * @param data The data buffer to read bytes into.
+     * @param offset The offset in data buffer to start writing bytes read at.
+     * @param length The max bytes to read.
+     * @param bytesRead The actual bytes read.
+     * @return Returns the {@code error} if reading was not successful containing {@link JniResult}
+     * error {@link String}, otherwise {@code null}.
+     */
+    public Error read(@NonNull byte[] data, int offset, int length, MutableInt bytesRead) {
         bytesRead.value = 0;
 
         if (mFD < 0) {
@@ -129,7 +162,7 @@ public class LocalClientSocket implements Closeable {
         }
 
         JniResult result = LocalSocketManager.read(mLocalSocketRunConfig.getLogTitle() + " (client)",
-            mFD, data,
+            mFD, data, offset, length,
             mLocalSocketRunConfig.getDeadline() > 0 ? mCreationTime + mLocalSocketRunConfig.getDeadline() : 0);
         if (result == null || result.retval != 0) {
             return LocalSocketErrno.ERRNO_READ_DATA_FROM_CLIENT_SOCKET_FAILED.getError(
@@ -173,10 +206,12 @@ public class LocalClientSocket implements Closeable {
     }
 
     /**
-     * Attempts to read all the bytes available on {@link SocketInputStream} and appends them to
-     * {@code data} {@link StringBuilder}.
+     * Attempts to read all the bytes available on {@link SocketInputStream} until end of file or
+     * a null byte and appends them to {@code data} {@link StringBuilder} decoded as UTF-8.
      *
-     * This is a wrapper for {@link #read(byte[], MutableInt)} called via {@link SocketInputStream#read()}.
+     * The bytes are read in chunks of up to {@link #READ_BUFFER_SIZE} into {@link #mReadBuffer}
+     * with {@link #read(byte[], int, int, MutableInt)} called via {@link SocketInputStream#read(byte[], int, int)},
+     * and are decoded once all of them have been read.
      *
      * @param data The data {@link StringBuilder} to append the bytes read into.
      * @param closeStreamOnFinish If set to {@code true}, then underlying input stream will closed
@@ -185,12 +220,35 @@ public class LocalClientSocket implements Closeable {
      * error {@link String}, otherwise {@code null}.
      */
     public Error readDataOnInputStream(@NonNull StringBuilder data, boolean closeStreamOnFinish) {
-        int c;
-        InputStreamReader inputStreamReader = getInputStreamReader();
+        return readDataOnInputStream(getInputStream(), data, closeStreamOnFinish);
+    }
+
+    /**
+     * Same as {@link #readDataOnInputStream(StringBuilder, boolean)}, but reads from an
+     * {@link InputStream} that wraps {@link SocketInputStream}, like a {@link java.io.SequenceInputStream}
+     * that first returns some bytes already read from the socket.
+     *
+     * @param inputStream The {@link InputStream} to read from.
+     * @param data The data {@link StringBuilder} to append the bytes read into.
+     * @param closeStreamOnFinish If set to {@code true}, then {@code inputStream} will be closed.
+     * @return Returns the {@code error} if reading was not successful containing {@link JniResult}
+     * error {@link String}, otherwise {@code null}.
+     */
+    public Error readDataOnInputStream(@NonNull InputStream inputStream, @NonNull StringBuilder data, boolean closeStreamOnFinish) {
+        if (mReadBuffer == null)
+            mReadBuffer = new byte[READ_BUFFER_SIZE];
+
+        ByteArrayOutputStream dataBytes = new ByteArrayOutputStream(READ_BUFFER_SIZE);
         try {
-            while ((c = inputStreamReader.read()) > 0) {
-                data.append((char) c);
+            int bytesRead;
+            boolean nullByteRead = false;
+            while (!nullByteRead && (bytesRead = inputStream.read(mReadBuffer, 0, mReadBuffer.length)) > 0) {
+                int length = 0;
+                while (length < bytesRead && mReadBuffer[length] != 0) length++;
+                nullByteRead = length < bytesRead;
+                dataBytes.write(mReadBuffer, 0, length);
             }
+            data.append(dataBytes.toString(StandardCharsets.UTF_8.name()));
         } catch (IOException e) {
             // The SocketInputStream.read() throws the Error message in an IOException,
             // so just read the exception message and not the stack trace, otherwise it would result
@@ -202,7 +260,7 @@ public class LocalClientSocket implements Closeable {
                 e, mLocalSocketRunConfig.getTitle(), e.getMessage());
         } finally {
             if (closeStreamOnFinish) {
-                try { inputStreamReader.close();
+                try { inputStream.close();
                 } catch (IOException e) {
                     // Ignore
                 }
@@ -274,7 +332,7 @@ public class LocalClientSocket implements Closeable {
             return null;
         }
 
-        JniResult result = LocalSocketManager.available(mLocalSocketRunConfig.getLogTitle() + " (client)", mLocalSocketRunConfig.getFD());
+        JniResult result = LocalSocketManager.available(mLocalSocketRunConfig.getLogTitle() + " (client)", mFD);
         if (result == null || result.retval != 0) {
             return LocalSocketErrno.ERRNO_CHECK_AVAILABLE_DATA_ON_CLIENT_SOCKET_FAILED.getError(
                 mLocalSocketRunConfig.getTitle(), JniResult.getErrorString(result));
@@ -422,7 +480,7 @@ public class LocalClientSocket implements Closeable {
                 return -1;
             }
 
-            return mBytes[0];
+            return mBytes[0] & 0xFF;
         }
 
         @Override
@@ -431,8 +489,23 @@ public class LocalClientSocket implements Closeable {
                 throw new NullPointerException("Read buffer can't be null");
             }
 
+            return read(bytes, 0, bytes.length);
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            if (bytes == null) {
+                throw new NullPointerException("Read buffer can't be null");
+            }
+            if (offset < 0 || length < 0 || length > bytes.length - offset) {
+                throw new IndexOutOfBoundsException("Invalid offset " + offset + " and length " + length + " for read buffer of length " + bytes.length);
+            }
+            if (length == 0) {
+                return 0;
+            }
+
             MutableInt bytesRead = new MutableInt(0);
-            Error error = LocalClientSocket.this.read(bytes, bytesRead);
+            Error error = LocalClientSocket.this.read(bytes, offset, length, bytesRead);
             if (error != null) {
                 throw new IOException(error.getErrorMarkdownString());
             }
@@ -478,6 +551,23 @@ public class LocalClientSocket implements Closeable {
                 throw new IOException(error.getErrorMarkdownString());
             }
         }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            if (bytes == null) {
+                throw new NullPointerException("Write buffer can't be null");
+            }
+            if (offset < 0 || length < 0 || length > bytes.length - offset) {
+                throw new IndexOutOfBoundsException("Invalid offset " + offset + " and length " + length + " for write buffer of length " + bytes.length);
+            }
+            if (length == 0) {
+                return;
+            }
+
+            // Send the whole range with one call instead of the byte at a time default of OutputStream,
+            // like for the BufferedWriter of sendDataToOutputStream()
+            write(offset == 0 && length == bytes.length ? bytes : Arrays.copyOfRange(bytes, offset, offset + length));
+        }
     }
 
 }
@@ -11,6 +11,9 @@ import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
 
 /** The server socket for {@link LocalSocketManager}. */
 public class LocalServerSocket implements Closeable {
@@ -36,6 +39,15 @@ public class LocalServerSocket implements Closeable {
      */
     public static final String SERVER_SOCKET_PARENT_DIRECTORY_PERMISSIONS = "rwx"; // Default: "rwx"
 
+    /**
+     * The maximum time in milliseconds the epoll client listener waits before checking if the server
+     * has been stopped and if idle clients have timed out.
+     */
+    public static final int EPOLL_WAIT_TIMEOUT = 1000;
+
+    /** The maximum number of ready fds returned by one wait of the epoll client listener. */
+    public static final int EPOLL_MAX_READY_FDS = 32;
+
     /**
      * Create an new instance of {@link LocalServerSocket}.
      *
@@ -187,7 +199,6 @@ public class LocalServerSocket implements Closeable {
     public LocalClientSocket accept() {
         Logger.logVerbose(LOG_TAG, "accept");
 
-        int clientFD;
         while (true) {
             // If server socket closed
             int fd = mLocalSocketRunConfig.getFD();
@@ -195,51 +206,92 @@ public class LocalServerSocket implements Closeable {
                 return null;
             }
 
-            JniResult result = LocalSocketManager.accept(mLocalSocketRunConfig.getLogTitle() + " (client)", fd);
-            if (result == null || result.retval != 0) {
-                mLocalSocketManager.onError(
-                    LocalSocketErrno.ERRNO_ACCEPT_CLIENT_SOCKET_FAILED.getError(mLocalSocketRunConfig.getTitle(), JniResult.getErrorString(result)));
-                continue;
-            }
+            LocalClientSocket clientSocket = acceptClientSocket(fd);
+            if (clientSocket != null)
+                return clientSocket;
+        }
+    }
 
-            clientFD = result.intData;
-            if (clientFD < 0) {
-                mLocalSocketManager.onError(
-                    LocalSocketErrno.ERRNO_CLIENT_SOCKET_FD_INVALID.getError(clientFD, mLocalSocketRunConfig.getTitle()));
-                continue;
-            }
+    /**
+     * Accept a new {@link LocalClientSocket} on the server socket fd and check that its peer is allowed
+     * to connect.
+     *
+     * @param fd The server socket fd.
+     * @return Returns the {@link LocalClientSocket}, or {@code null} if accepting failed or the peer
+     * is not allowed, in which case the error has already been reported and the client socket closed.
+     */
+    protected LocalClientSocket acceptClientSocket(int fd) {
+        JniResult result = LocalSocketManager.accept(mLocalSocketRunConfig.getLogTitle() + " (client)", fd);
+        if (result == null || result.retval != 0) {
+            mLocalSocketManager.onError(
+                LocalSocketErrno.ERRNO_ACCEPT_CLIENT_SOCKET_FAILED.getError(mLocalSocketRunConfig.getTitle(), JniResult.getErrorString(result)));
+            return null;
+        }
 
-            PeerCred peerCred = new PeerCred();
-            result = LocalSocketManager.getPeerCred(mLocalSocketRunConfig.getLogTitle() + " (client)", clientFD, peerCred);
-            if (result == null || result.retval != 0) {
-                mLocalSocketManager.onError(
-                    LocalSocketErrno.ERRNO_GET_CLIENT_SOCKET_PEER_UID_FAILED.getError(mLocalSocketRunConfig.getTitle(), JniResult.getErrorString(result)));
-                LocalClientSocket.closeClientSocket(mLocalSocketManager, clientFD);
-                continue;
-            }
+        int clientFD = result.intData;
+        if (clientFD < 0) {
+            mLocalSocketManager.onError(
+                LocalSocketErrno.ERRNO_CLIENT_SOCKET_FD_INVALID.getError(clientFD, mLocalSocketRunConfig.getTitle()));
+            return null;
+        }
 
-            int peerUid = peerCred.uid;
-            if (peerUid < 0) {
-                mLocalSocketManager.onError(
-                    LocalSocketErrno.ERRNO_CLIENT_SOCKET_PEER_UID_INVALID.getError(peerUid, mLocalSocketRunConfig.getTitle()));
-                LocalClientSocket.closeClientSocket(mLocalSocketManager, clientFD);
-                continue;
-            }
+        PeerCred peerCred = new PeerCred();
+        result = LocalSocketManager.getPeerCred(mLocalSocketRunConfig.getLogTitle() + " (client)", clientFD, peerCred);
+        if (result == null || result.retval != 0) {
+            mLocalSocketManager.onError(
+                LocalSocketErrno.ERRNO_GET_CLIENT_SOCKET_PEER_UID_FAILED.getError(mLocalSocketRunConfig.getTitle(), JniResult.getErrorString(result)));
+            LocalClientSocket.closeClientSocket(mLocalSocketManager, clientFD);
+            return null;
+        }
 
-            LocalClientSocket clientSocket =  new LocalClientSocket(mLocalSocketManager, clientFD, peerCred);
-            Logger.logVerbose(LOG_TAG, "Client socket accept for \"" + mLocalSocketRunConfig.getTitle() + "\" server\n" + clientSocket.getLogString());
+        int peerUid = peerCred.uid;
+        if (peerUid < 0) {
+            mLocalSocketManager.onError(
+                LocalSocketErrno.ERRNO_CLIENT_SOCKET_PEER_UID_INVALID.getError(peerUid, mLocalSocketRunConfig.getTitle()));
+            LocalClientSocket.closeClientSocket(mLocalSocketManager, clientFD);
+            return null;
+        }
 
-            // Only allow connection if the peer has the same uid as server app's user id or root user id
-            if (peerUid != mLocalSocketManager.getContext().getApplicationInfo().uid && peerUid != 0) {
-                mLocalSocketManager.onDisallowedClientConnected(clientSocket,
-                    LocalSocketErrno.ERRNO_CLIENT_SOCKET_PEER_UID_DISALLOWED.getError(clientSocket.getPeerCred().getMinimalString(),
-                        mLocalSocketManager.getLocalSocketRunConfig().getTitle()));
-                clientSocket.closeClientSocket(true);
-                continue;
-            }
+        LocalClientSocket clientSocket =  new LocalClientSocket(mLocalSocketManager, clientFD, peerCred);
+        Logger.logVerbose(LOG_TAG, "Client socket accept for \"" + mLocalSocketRunConfig.getTitle() + "\" server\n" + clientSocket.getLogString());
 
-            return clientSocket;
+        // Only allow connection if the peer has the same uid as server app's user id or root user id
+        if (peerUid != mLocalSocketManager.getContext().getApplicationInfo().uid && peerUid != 0) {
+            mLocalSocketManager.onDisallowedClientConnected(clientSocket,
+                LocalSocketErrno.ERRNO_CLIENT_SOCKET_PEER_UID_DISALLOWED.getError(clientSocket.getPeerCred().getMinimalString(),
+                    mLocalSocketManager.getLocalSocketRunConfig().getTitle()));
+            clientSocket.closeClientSocket(true);
+            return null;
         }
+
+        return clientSocket;
+    }
+
+    /**
+     * Set the read and write timeouts of a new {@link LocalClientSocket}.
+     *
+     * @param clientSocket The {@link LocalClientSocket}.
+     * @return Returns {@code true} if the timeouts were set, otherwise {@code false}, in which case the
+     * error has already been reported and the client socket closed.
+     */
+    protected boolean setClientSocketTimeouts(@NonNull LocalClientSocket clientSocket) {
+        Error error;
+
+        error = clientSocket.setReadTimeout();
+        if (error != null) {
+            mLocalSocketManager.onError(clientSocket, error);
+            clientSocket.closeClientSocket(true);
+            return false;
+        }
+
+        error = clientSocket.setWriteTimeout();
+        if (error != null) {
+            mLocalSocketManager.onError(clientSocket, error);
+            clientSocket.closeClientSocket(true);
+            return false;
+        }
+
+        return true;
     }
 
 
@@ -253,6 +305,10 @@ public class LocalServerSocket implements Closeable {
             try {
                 Logger.logVerbose(LOG_TAG, "ClientSocketListener start");
 
+                // Fall back to blocking in accept() if epoll could not be used
+                if (mLocalSocketRunConfig.isEpollClientListenerEnabled() && listenWithEpoll())
+                    return;
+
                 while (!Thread.currentThread().isInterrupted()) {
                     LocalClientSocket clientSocket = null;
                     try {
@@ -263,21 +319,8 @@ public class LocalServerSocket implements Closeable {
                         if (clientSocket == null)
                             break;
 
-                        Error error;
-
-                        error = clientSocket.setReadTimeout();
-                        if (error != null) {
-                            mLocalSocketManager.onError(clientSocket, error);
-                            clientSocket.closeClientSocket(true);
-                            continue;
-                        }
-
-                        error = clientSocket.setWriteTimeout();
-                        if (error != null) {
-                            mLocalSocketManager.onError(clientSocket, error);
-                            clientSocket.closeClientSocket(true);
+                        if (!setClientSocketTimeouts(clientSocket))
                             continue;
-                        }
 
                         // Start new thread for client logic and pass control to ILocalSocketManager implementation
                         mLocalSocketManager.onClientAccepted(clientSocket);
@@ -293,9 +336,123 @@ public class LocalServerSocket implements Closeable {
                 try {
                     close();
                 } catch (Exception ignored) {}
+
+                Logger.logVerbose(LOG_TAG, "ClientSocketListener end");
+            }
+        }
+
+        /**
+         * Listen for new clients with epoll, and only pass an accepted client to
+         * {@link LocalSocketManager#onClientAccepted(LocalClientSocket)} once it is readable, so
+         * that clients which are connected but have not sent anything yet are all waited on by this
+         * thread instead of each taking a thread of the pool. Idle clients that do not send anything
+         * within {@link LocalSocketRunConfig#getReceiveTimeout()} are closed.
+         *
+         * @return Returns {@code false} if epoll could not be used and the listener should fall back
+         * to blocking in {@link #accept()}, otherwise {@code true} once the server socket is closed.
+         */
+        protected boolean listenWithEpoll() {
+            String logTitle = mLocalSocketRunConfig.getLogTitle() + " (server)";
+            int fd = mLocalSocketRunConfig.getFD();
+            if (fd < 0)
+                return true;
+
+            JniResult result = LocalSocketManager.createEpoll(logTitle);
+            if (result == null || result.retval != 0) {
+                mLocalSocketManager.onError(LocalSocketErrno.ERRNO_CREATE_CLIENT_SOCKET_LISTENER_EPOLL_FAILED.getError(
+                    mLocalSocketRunConfig.getTitle(), JniResult.getErrorString(result)));
+                return false;
             }
 
-            Logger.logVerbose(LOG_TAG, "ClientSocketListener end");
+            int epollFD = result.intData;
+            // The accepted clients that have not sent anything yet, by their fd
+            Map<Integer, LocalClientSocket> idleClientSockets = new HashMap<>();
+            try {
+                result = LocalSocketManager.epollAdd(logTitle, epollFD, fd, false);
+                if (result == null || result.retval != 0) {
+                    mLocalSocketManager.onError(LocalSocketErrno.ERRNO_CREATE_CLIENT_SOCKET_LISTENER_EPOLL_FAILED.getError(
+                        mLocalSocketRunConfig.getTitle(), JniResult.getErrorString(result)));
+                    return false;
+                }
+
+                int[] readyFDs = new int[EPOLL_MAX_READY_FDS];
+                while (!Thread.currentThread().isInterrupted()) {
+                    // If server socket closed
+                    if (mLocalSocketRunConfig.getFD() < 0)
+                        return true;
+
+                    result = LocalSocketManager.epollWait(logTitle, epollFD, readyFDs, EPOLL_WAIT_TIMEOUT);
+                    if (result == null || result.retval != 0) {
+                        mLocalSocketManager.onError(LocalSocketErrno.ERRNO_CLIENT_SOCKET_LISTENER_EPOLL_WAIT_FAILED.getError(
+                            mLocalSocketRunConfig.getTitle(), JniResult.getErrorString(result)));
+                        return false;
+                    }
+
+                    for (int i = 0; i < result.intData; i++) {
+                        int readyFD = readyFDs[i];
+                        if (readyFD == fd) {
+                            LocalClientSocket clientSocket = null;
+                            try {
+                                clientSocket = acceptClientSocket(fd);
+                                if (clientSocket == null || !setClientSocketTimeouts(clientSocket))
+                                    continue;
+
+                                // Pass the client on right away if it can not be waited on
+                                JniResult addResult = LocalSocketManager.epollAdd(logTitle, epollFD, clientSocket.getFD(), true);
+                                if (addResult == null || addResult.retval != 0)
+                                    mLocalSocketManager.onClientAccepted(clientSocket);
+                                else
+                                    idleClientSockets.put(clientSocket.getFD(), clientSocket);
+                            } catch (Throwable t) {
+                                mLocalSocketManager.onError(clientSocket,
+                                    LocalSocketErrno.ERRNO_CLIENT_SOCKET_LISTENER_FAILED_WITH_EXCEPTION.getError(t, mLocalSocketRunConfig.getTitle(), t.getMessage()));
+                                if (clientSocket != null)
+                                    clientSocket.closeClientSocket(true);
+                            }
+                        } else {
+                            // Remove the client before passing it on, since its fd may be reused once it is closed
+                            LocalClientSocket clientSocket = idleClientSockets.remove(readyFD);
+                            if (clientSocket == null)
+                                continue;
+                            LocalSocketManager.epollRemove(logTitle, epollFD, readyFD);
+                            mLocalSocketManager.onClientAccepted(clientSocket);
+                        }
+                    }
+
+                    closeTimedOutIdleClientSockets(idleClientSockets, epollFD);
+                }
+
+                return true;
+            } finally {
+                // Pass on the clients still waiting, so that each is either handled or closed if the
+                // LocalSocketManager has already been stopped
+                for (LocalClientSocket clientSocket : idleClientSockets.values()) {
+                    LocalSocketManager.epollRemove(logTitle, epollFD, clientSocket.getFD());
+                    mLocalSocketManager.onClientAccepted(clientSocket);
+                }
+                LocalSocketManager.closeSocket(logTitle, epollFD);
+            }
+        }
+
+        /** Close the idle clients that have not sent anything within {@link LocalSocketRunConfig#getReceiveTimeout()}. */
+        protected void closeTimedOutIdleClientSockets(@NonNull Map<Integer, LocalClientSocket> idleClientSockets, int epollFD) {
+            int receiveTimeout = mLocalSocketRunConfig.getReceiveTimeout();
+            if (receiveTimeout <= 0 || idleClientSockets.isEmpty())
+                return;
+
+            long currentTime = System.currentTimeMillis();
+            Iterator<LocalClientSocket> iterator = idleClientSockets.values().iterator();
+            while (iterator.hasNext()) {
+                LocalClientSocket clientSocket = iterator.next();
+                if (currentTime - clientSocket.getCreationTime() <= receiveTimeout)
+                    continue;
+
+                iterator.remove();
+                LocalSocketManager.epollRemove(mLocalSocketRunConfig.getLogTitle() + " (server)", epollFD, clientSocket.getFD());
+                mLocalSocketManager.onError(clientSocket,
+                    LocalSocketErrno.ERRNO_CLIENT_SOCKET_IDLE_TIMEOUT.getError(mLocalSocketRunConfig.getTitle(), receiveTimeout));
+                clientSocket.closeClientSocket(true);
+            }
         }
 
     }
@@ -9,6 +9,14 @@ import com.termux.shared.errors.Error;
 import com.termux.shared.jni.models.JniResult;
 import com.termux.shared.logger.Logger;
 
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * Manager for an AF_UNIX/SOCK_STREAM local server.
  *
@@ -30,6 +38,9 @@ public class LocalSocketManager {
     /** Whether {@link #LOCAL_SOCKET_LIBRARY} has been loaded or not. */
     protected static boolean localSocketLibraryLoaded;
 
+    /** The time in seconds after which idle threads of {@link #mClientExecutor} are stopped. */
+    public static final int CLIENT_THREAD_KEEP_ALIVE_SECONDS = 30;
+
     /** The {@link Context} that may needed for various operations. */
     @NonNull protected final Context mContext;
 
@@ -45,6 +56,17 @@ public class LocalSocketManager {
     /** The {@link Thread.UncaughtExceptionHandler} used for client thread started by {@link LocalSocketManager}. */
     @NonNull protected final Thread.UncaughtExceptionHandler mLocalSocketManagerClientThreadUEH;
 
+    /**
+     * The bounded pool of threads that runs the client logic and the other {@link ILocalSocketManager}
+     * callbacks, configured by {@link LocalSocketRunConfig#getClientThreadPoolSize()} and
+     * {@link LocalSocketRunConfig#getClientTaskQueueCapacity()}. It is shut down by {@link #stop()}
+     * and created again by {@link #start()}.
+     */
+    @NonNull protected volatile ThreadPoolExecutor mClientExecutor;
+
+    /** The number of callbacks rejected by {@link #mClientExecutor} since it was full or shut down. */
+    @NonNull protected final AtomicLong mRejectedClientTaskCount = new AtomicLong();
+
     /** Whether the {@link LocalServerSocket} managed by {@link LocalSocketManager} in running or not. */
     protected boolean mIsRunning;
 
@@ -61,6 +83,7 @@ public class LocalSocketManager {
         mServerSocket = new LocalServerSocket(this);
         mLocalSocketManagerClient = mLocalSocketRunConfig.getLocalSocketManagerClient();
         mLocalSocketManagerClientThreadUEH = getLocalSocketManagerClientThreadUEHOrDefault();
+        mClientExecutor = createClientExecutor();
         mIsRunning = false;
     }
 
@@ -82,6 +105,10 @@ public class LocalSocketManager {
             }
         }
 
+        // The executor is shut down if the server was stopped before
+        if (mClientExecutor.isShutdown())
+            mClientExecutor = createClientExecutor();
+
         mIsRunning = true;
         return mServerSocket.start();
     }
@@ -93,7 +120,11 @@ public class LocalSocketManager {
         if (mIsRunning) {
             Logger.logDebugExtended(LOG_TAG, "stop\n" + mLocalSocketRunConfig);
             mIsRunning = false;
-            return mServerSocket.stop();
+            Error error = mServerSocket.stop();
+            // Let the callbacks already submitted run, but do not accept new ones
+            mClientExecutor.shutdown();
+            Logger.logDebug(LOG_TAG, getClientThreadPoolStatsLogString());
+            return error;
         }
         return null;
     }
@@ -190,8 +221,31 @@ public class LocalSocketManager {
      */
     @Nullable
     public static JniResult read(@NonNull String serverTitle, int fd, @NonNull byte[] data, long deadline) {
+        return read(serverTitle, fd, data, 0, data.length, deadline);
+    }
+
+    /**
+     * Attempts to read up to length bytes from file descriptor fd into the data buffer starting at
+     * offset. On success, the number of bytes read is returned (zero indicates end of file).
+     * The call returns as soon as some bytes have been read, and at most 8192 bytes are read per
+     * call, so callers must call it in a loop until end of file to read all the data.
+     * On error, the {@link JniResult#errno} and {@link JniResult#errmsg} will be set.
+     *
+     * If the deadline has elapsed before reading, the call will fail.
+     *
+     * @param serverTitle The server title used for logging and errors.
+     * @param fd The socket fd.
+     * @param data The data buffer to read bytes into.
+     * @param offset The offset in data buffer to start writing bytes read at.
+     * @param length The max bytes to read.
+     * @param deadline The deadline milliseconds since epoch.
+     * @return Returns the {@link JniResult}. If reading was successful, then {@link JniResult#retval}
+     * will be 0 and {@link JniResult#intData} will contain the bytes read.
+     */
+    @Nullable
+    public static JniResult read(@NonNull String serverTitle, int fd, @NonNull byte[] data, int offset, int length, long deadline) {
         try {
-            return readNative(serverTitle, fd, data, deadline);
+            return readNative(serverTitle, fd, data, offset, length, deadline);
         } catch (Throwable t) {
             String message = "Exception in readNative()";
             Logger.logStackTraceWithMessage(LOG_TAG, message, t);
@@ -304,40 +358,160 @@ public class LocalSocketManager {
 
 
 
+    /**
+     * Creates an epoll instance that {@link LocalServerSocket} waits on for new and readable clients.
+     *
+     * @param serverTitle The server title used for logging and errors.
+     * @return Returns the {@link JniResult}. If creation was successful, then {@link JniResult#retval}
+     * will be 0 and {@link JniResult#intData} will contain the epoll fd, which must be closed with
+     * {@link #closeSocket(String, int)}.
+     */
+    @Nullable
+    public static JniResult createEpoll(@NonNull String serverTitle) {
+        try {
+            return createEpollNative(serverTitle);
+        } catch (Throwable t) {
+            String message = "Exception in createEpollNative()";
+            Logger.logStackTraceWithMessage(LOG_TAG, message, t);
+            return new JniResult(message, t);
+        }
+    }
+
+    /**
+     * Adds the fd to the epoll instance to wait until it is readable or its peer has closed.
+     *
+     * @param serverTitle The server title used for logging and errors.
+     * @param epollFd The epoll fd.
+     * @param fd The socket fd.
+     * @param oneShot If the fd should be disabled after it has been returned by {@link #epollWait(String, int, int[], int)}
+     *                once, as for client sockets that are then handed over to another thread.
+     * @return Returns the {@link JniResult}. If adding was successful, then {@link JniResult#retval}
+     * will be 0.
+     */
+    @Nullable
+    public static JniResult epollAdd(@NonNull String serverTitle, int epollFd, int fd, boolean oneShot) {
+        try {
+            return epollAddNative(serverTitle, epollFd, fd, oneShot);
+        } catch (Throwable t) {
+            String message = "Exception in epollAddNative()";
+            Logger.logStackTraceWithMessage(LOG_TAG, message, t);
+            return new JniResult(message, t);
+        }
+    }
+
+    /**
+     * Removes the fd from the epoll instance.
+     *
+     * @param serverTitle The server title used for logging and errors.
+     * @param epollFd The epoll fd.
+     * @param fd The socket fd.
+     * @return Returns the {@link JniResult}. If removing was successful, then {@link JniResult#retval}
+     * will be 0.
+     */
+    @Nullable
+    public static JniResult epollRemove(@NonNull String serverTitle, int epollFd, int fd) {
+        try {
+            return epollRemoveNative(serverTitle, epollFd, fd);
+        } catch (Throwable t) {
+            String message = "Exception in epollRemoveNative()";
+            Logger.logStackTraceWithMessage(LOG_TAG, message, t);
+            return new JniResult(message, t);
+        }
+    }
+
+    /**
+     * Waits for fds added to the epoll instance to become readable. Being interrupted by a signal
+     * is not an error, and returns no fds.
+     *
+     * @param serverTitle The server title used for logging and errors.
+     * @param epollFd The epoll fd.
+     * @param readyFds The array to fill with the fds that are ready, whose length is the maximum
+     *                 number of fds returned.
+     * @param timeout The maximum time to wait in milliseconds, or -1 to wait indefinitely.
+     * @return Returns the {@link JniResult}. If waiting was successful, then {@link JniResult#retval}
+     * will be 0 and {@link JniResult#intData} will contain the number of fds in {@code readyFds}.
+     */
+    @Nullable
+    public static JniResult epollWait(@NonNull String serverTitle, int epollFd, @NonNull int[] readyFds, int timeout) {
+        try {
+            return epollWaitNative(serverTitle, epollFd, readyFds, timeout);
+        } catch (Throwable t) {
+            String message = "Exception in epollWaitNative()";
+            Logger.logStackTraceWithMessage(LOG_TAG, message, t);
+            return new JniResult(message, t);
+        }
+    }
+
+
+
     /** Wrapper for {@link #onError(LocalClientSocket, Error)} for {@code null} {@link LocalClientSocket}. */
     public void onError(@NonNull Error error) {
         onError(null, error);
     }
 
-    /** Wrapper to call {@link ILocalSocketManager#onError(LocalSocketManager, LocalClientSocket, Error)} in a new thread. */
+    /** Wrapper to call {@link ILocalSocketManager#onError(LocalSocketManager, LocalClientSocket, Error)} on a client thread. */
     public void onError(@Nullable LocalClientSocket clientSocket, @NonNull Error error) {
         startLocalSocketManagerClientThread(() ->
             mLocalSocketManagerClient.onError(this, clientSocket, error));
     }
 
-    /** Wrapper to call {@link ILocalSocketManager#onDisallowedClientConnected(LocalSocketManager, LocalClientSocket, Error)} in a new thread. */
+    /** Wrapper to call {@link ILocalSocketManager#onDisallowedClientConnected(LocalSocketManager, LocalClientSocket, Error)} on a client thread. */
     public void onDisallowedClientConnected(@NonNull LocalClientSocket clientSocket, @NonNull Error error) {
         startLocalSocketManagerClientThread(() ->
             mLocalSocketManagerClient.onDisallowedClientConnected(this, clientSocket, error));
     }
 
-    /** Wrapper to call {@link ILocalSocketManager#onClientAccepted(LocalSocketManager, LocalClientSocket)} in a new thread. */
+    /**
+     * Wrapper to call {@link ILocalSocketManager#onClientAccepted(LocalSocketManager, LocalClientSocket)} on a client thread.
+     * The client socket is closed if the callback is rejected by {@link #mClientExecutor}.
+     */
     public void onClientAccepted(@NonNull LocalClientSocket clientSocket) {
-        startLocalSocketManagerClientThread(() ->
-            mLocalSocketManagerClient.onClientAccepted(this, clientSocket));
+        if (!startLocalSocketManagerClientThread(() ->
+            mLocalSocketManagerClient.onClientAccepted(this, clientSocket))) {
+            clientSocket.closeClientSocket(true);
+        }
     }
 
-    /** All client accept logic must be run on separate threads so that incoming client acceptance is not blocked. */
-    public void startLocalSocketManagerClientThread(@NonNull Runnable runnable) {
-        Thread thread = new Thread(runnable);
-        thread.setUncaughtExceptionHandler(getLocalSocketManagerClientThreadUEH());
+    /**
+     * All client accept logic must be run on separate threads so that incoming client acceptance is not blocked.
+     * The runnable is run on a thread of {@link #mClientExecutor}, or waits in its queue until a
+     * thread is free.
+     *
+     * @param runnable The {@link Runnable} to run.
+     * @return Returns {@code true} if the runnable was submitted, or {@code false} if it was rejected
+     * since all threads were busy and the queue full, or the {@link LocalSocketManager} was stopped.
+     */
+    public boolean startLocalSocketManagerClientThread(@NonNull Runnable runnable) {
         try {
-            thread.start();
+            mClientExecutor.execute(runnable);
+            return true;
         } catch (Exception e) {
-            Logger.logStackTraceWithMessage(LOG_TAG, "LocalSocketManagerClientThread start failed", e);
+            long rejected = mRejectedClientTaskCount.incrementAndGet();
+            Logger.logError(LOG_TAG, "LocalSocketManagerClientThread task rejected for \"" + mLocalSocketRunConfig.getTitle() +
+                "\" server, " + rejected + " rejected so far: " + e.getMessage());
+            return false;
         }
     }
 
+    /** Create the {@link #mClientExecutor} for the {@link #mLocalSocketRunConfig}. */
+    @NonNull
+    protected ThreadPoolExecutor createClientExecutor() {
+        int poolSize = mLocalSocketRunConfig.getClientThreadPoolSize();
+        int queueCapacity = mLocalSocketRunConfig.getClientTaskQueueCapacity();
+        BlockingQueue<Runnable> queue = queueCapacity > 0 ? new LinkedBlockingQueue<>(queueCapacity) : new SynchronousQueue<>();
+        AtomicInteger threadCount = new AtomicInteger();
+
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(poolSize, poolSize,
+            CLIENT_THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, queue, runnable -> {
+                Thread thread = new Thread(runnable, mLocalSocketRunConfig.getTitle() + "-LocalSocketManagerClientThread-" + threadCount.incrementAndGet());
+                thread.setUncaughtExceptionHandler(getLocalSocketManagerClientThreadUEH());
+                return thread;
+            });
+        // Do not keep threads around for servers that are rarely used
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
 
 
     /** Get {@link #mContext}. */
@@ -384,6 +558,46 @@ public class LocalSocketManager {
         return mIsRunning;
     }
 
+    /** Get the number of callbacks waiting in the queue of {@link #mClientExecutor} for a free thread. */
+    public int getClientTaskQueueDepth() {
+        return mClientExecutor.getQueue().size();
+    }
+
+    /** Get the number of threads of {@link #mClientExecutor} currently running callbacks. */
+    public int getActiveClientThreadCount() {
+        return mClientExecutor.getActiveCount();
+    }
+
+    /** Get the largest number of threads that {@link #mClientExecutor} has had at the same time. */
+    public int getLargestClientThreadPoolSize() {
+        return mClientExecutor.getLargestPoolSize();
+    }
+
+    /** Get the number of callbacks that {@link #mClientExecutor} has completed. */
+    public long getCompletedClientTaskCount() {
+        return mClientExecutor.getCompletedTaskCount();
+    }
+
+    /** Get {@link #mRejectedClientTaskCount}. */
+    public long getRejectedClientTaskCount() {
+        return mRejectedClientTaskCount.get();
+    }
+
+    /** Get a log {@link String} for the stats of {@link #mClientExecutor}. */
+    @NonNull
+    public String getClientThreadPoolStatsLogString() {
+        StringBuilder logString = new StringBuilder();
+
+        logString.append(mLocalSocketRunConfig.getTitle()).append(" Socket Server Client Thread Pool:");
+        logString.append("\n").append(Logger.getSingleLineLogStringEntry("QueueDepth", getClientTaskQueueDepth(), "-"));
+        logString.append("\n").append(Logger.getSingleLineLogStringEntry("ActiveThreads", getActiveClientThreadCount(), "-"));
+        logString.append("\n").append(Logger.getSingleLineLogStringEntry("LargestPoolSize", getLargestClientThreadPoolSize(), "-"));
+        logString.append("\n").append(Logger.getSingleLineLogStringEntry("CompletedTasks", getCompletedClientTaskCount(), "-"));
+        logString.append("\n").append(Logger.getSingleLineLogStringEntry("RejectedTasks", getRejectedClientTaskCount(), "-"));
+
+        return logString.toString();
+    }
+
 
 
     /** Get an error log {@link String} for the {@link LocalSocketManager}. */
@@ -435,7 +649,7 @@ public class LocalSocketManager {
 
     @Nullable private static native JniResult acceptNative(@NonNull String serverTitle, int fd);
 
-    @Nullable private static native JniResult readNative(@NonNull String serverTitle, int fd, @NonNull byte[] data, long deadline);
+    @Nullable private static native JniResult readNative(@NonNull String serverTitle, int fd, @NonNull byte[] data, int offset, int length, long deadline);
 
     @Nullable private static native JniResult sendNative(@NonNull String serverTitle, int fd, @NonNull byte[] data, long deadline);
 
@@ -447,4 +661,12 @@ public class LocalSocketManager {
 
     @Nullable private static native JniResult getPeerCredNative(@NonNull String serverTitle, int fd, PeerCred peerCred);
 
+    @Nullable private static native JniResult createEpollNative(@NonNull String serverTitle);
+
+    @Nullable private static native JniResult epollAddNative(@NonNull String serverTitle, int epollFd, int fd, boolean oneShot);
+
+    @Nullable private static native JniResult epollRemoveNative(@NonNull String serverTitle, int epollFd, int fd);
+
+    @Nullable private static native JniResult epollWaitNative(@NonNull String serverTitle, int epollFd, @NonNull int[] readyFds, int timeout);
+
 }
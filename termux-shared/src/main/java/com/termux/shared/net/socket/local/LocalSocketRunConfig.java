@@ -94,6 +94,36 @@ public class LocalSocketRunConfig implements Serializable {
     protected Integer mBacklog;
     public static final int DEFAULT_BACKLOG = 50;
 
+    /**
+     * The maximum number of threads of the {@link LocalSocketManager} pool that runs the client logic
+     * for {@link LocalClientSocket} and the other {@link ILocalSocketManager} callbacks. Idle threads
+     * are stopped after {@link LocalSocketManager#CLIENT_THREAD_KEEP_ALIVE_SECONDS}. Value must be
+     * greater than 0.
+     * Defaults to {@link #DEFAULT_CLIENT_THREAD_POOL_SIZE}.
+     */
+    protected Integer mClientThreadPoolSize;
+    public static final int DEFAULT_CLIENT_THREAD_POOL_SIZE = 8;
+
+    /**
+     * The maximum number of callbacks that may wait for a thread of the {@link LocalSocketManager}
+     * pool when all are busy. Callbacks submitted when the queue is full are rejected, and the
+     * {@link LocalClientSocket} of a rejected client is closed. Set to 0 to not queue callbacks.
+     * Defaults to {@link #DEFAULT_CLIENT_TASK_QUEUE_CAPACITY}.
+     */
+    protected Integer mClientTaskQueueCapacity;
+    public static final int DEFAULT_CLIENT_TASK_QUEUE_CAPACITY = 64;
+
+    /**
+     * Whether the {@link LocalServerSocket} client listener should wait for new clients and for
+     * accepted clients to send data with `epoll` instead of blocking in `accept()`. Clients are then
+     * only passed to {@link ILocalSocketManager#onClientAccepted(LocalSocketManager, LocalClientSocket)}
+     * once they have sent data or closed their end, so that connected clients that are still idle
+     * are all waited on by the listener thread instead of each taking a thread of the pool.
+     * Defaults to {@link #DEFAULT_EPOLL_CLIENT_LISTENER}.
+     */
+    protected Boolean mEpollClientListener;
+    public static final boolean DEFAULT_EPOLL_CLIENT_LISTENER = false;
+
 
     /**
      * Create an new instance of {@link LocalSocketRunConfig}.
@@ -194,6 +224,38 @@ public class LocalSocketRunConfig implements Serializable {
             mBacklog = backlog;
     }
 
+    /** Get {@link #mClientThreadPoolSize} if set, otherwise {@link #DEFAULT_CLIENT_THREAD_POOL_SIZE}. */
+    public Integer getClientThreadPoolSize() {
+        return mClientThreadPoolSize != null ? mClientThreadPoolSize : DEFAULT_CLIENT_THREAD_POOL_SIZE;
+    }
+
+    /** Set {@link #mClientThreadPoolSize}. Value must be greater than 0. */
+    public void setClientThreadPoolSize(Integer clientThreadPoolSize) {
+        if (clientThreadPoolSize > 0)
+            mClientThreadPoolSize = clientThreadPoolSize;
+    }
+
+    /** Get {@link #mClientTaskQueueCapacity} if set, otherwise {@link #DEFAULT_CLIENT_TASK_QUEUE_CAPACITY}. */
+    public Integer getClientTaskQueueCapacity() {
+        return mClientTaskQueueCapacity != null ? mClientTaskQueueCapacity : DEFAULT_CLIENT_TASK_QUEUE_CAPACITY;
+    }
+
+    /** Set {@link #mClientTaskQueueCapacity}. Value must be greater than or equal to 0. */
+    public void setClientTaskQueueCapacity(Integer clientTaskQueueCapacity) {
+        if (clientTaskQueueCapacity >= 0)
+            mClientTaskQueueCapacity = clientTaskQueueCapacity;
+    }
+
+    /** Get {@link #mEpollClientListener} if set, otherwise {@link #DEFAULT_EPOLL_CLIENT_LISTENER}. */
+    public boolean isEpollClientListenerEnabled() {
+        return mEpollClientListener != null ? mEpollClientListener : DEFAULT_EPOLL_CLIENT_LISTENER;
+    }
+
+    /** Set {@link #mEpollClientListener}. */
+    public void setEpollClientListenerEnabled(Boolean epollClientListener) {
+        mEpollClientListener = epollClientListener;
+    }
+
 
     /**
      * Get a log {@link String} for {@link LocalSocketRunConfig}.
@@ -221,6 +283,9 @@ public class LocalSocketRunConfig implements Serializable {
         logString.append("\n").append(Logger.getSingleLineLogStringEntry("SendTimeout", getSendTimeout(), "-"));
         logString.append("\n").append(Logger.getSingleLineLogStringEntry("Deadline", getDeadline(), "-"));
         logString.append("\n").append(Logger.getSingleLineLogStringEntry("Backlog", getBacklog(), "-"));
+        logString.append("\n").append(Logger.getSingleLineLogStringEntry("ClientThreadPoolSize", getClientThreadPoolSize(), "-"));
+        logString.append("\n").append(Logger.getSingleLineLogStringEntry("ClientTaskQueueCapacity", getClientTaskQueueCapacity(), "-"));
+        logString.append("\n").append(Logger.getSingleLineLogStringEntry("EpollClientListener", isEpollClientListenerEnabled(), "-"));
 
         return logString.toString();
     }
@@ -250,6 +315,9 @@ public class LocalSocketRunConfig implements Serializable {
         markdownString.append("\n").append(MarkdownUtils.getSingleLineMarkdownStringEntry("SendTimeout", getSendTimeout(), "-"));
         markdownString.append("\n").append(MarkdownUtils.getSingleLineMarkdownStringEntry("Deadline", getDeadline(), "-"));
         markdownString.append("\n").append(MarkdownUtils.getSingleLineMarkdownStringEntry("Backlog", getBacklog(), "-"));
+        markdownString.append("\n").append(MarkdownUtils.getSingleLineMarkdownStringEntry("ClientThreadPoolSize", getClientThreadPoolSize(), "-"));
+        markdownString.append("\n").append(MarkdownUtils.getSingleLineMarkdownStringEntry("ClientTaskQueueCapacity", getClientTaskQueueCapacity(), "-"));
+        markdownString.append("\n").append(MarkdownUtils.getSingleLineMarkdownStringEntry("EpollClientListener", isEpollClientListenerEnabled(), "-"));
 
         return markdownString.toString();
     }
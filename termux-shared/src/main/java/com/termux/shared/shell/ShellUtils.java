@@ -8,7 +8,9 @@ import com.termux.terminal.TerminalBuffer;
 import com.termux.terminal.TerminalEmulator;
 import com.termux.terminal.TerminalSession;
 
+import java.io.IOException;
 import java.lang.reflect.Field;
+import java.nio.channels.WritableByteChannel;
 
 import java.util.ArrayList;
 import java.util.Collections;
@@ -60,10 +62,13 @@ public class ShellUtils {
 
         String transcriptText;
 
-        if (linesJoined)
-            transcriptText = terminalBuffer.getTranscriptTextWithFullLinesJoined();
-        else
-            transcriptText = terminalBuffer.getTranscriptTextWithoutJoinedLines();
+        // Output may be appended on another thread, see TerminalSession#getEmulatorLock()
+        synchronized (terminalSession.getEmulatorLock()) {
+            if (linesJoined)
+                transcriptText = terminalBuffer.getTranscriptTextWithFullLinesJoined();
+            else
+                transcriptText = terminalBuffer.getTranscriptTextWithoutJoinedLines();
+        }
 
         if (transcriptText == null) return null;
 
@@ -73,4 +78,30 @@ public class ShellUtils {
         return transcriptText;
     }
 
+    /**
+     * Write trimmed transcript for {@link TerminalSession} to a channel encoded as UTF-8, without
+     * building it as a {@link String} first.
+     *
+     * @return Returns {@code false} if the session does not have a transcript.
+     */
+    public static boolean writeTerminalSessionTranscriptText(TerminalSession terminalSession, boolean linesJoined,
+                                                             @NonNull WritableByteChannel channel) throws IOException {
+        if (terminalSession == null) return false;
+
+        TerminalEmulator terminalEmulator = terminalSession.getEmulator();
+        if (terminalEmulator == null) return false;
+
+        TerminalBuffer terminalBuffer = terminalEmulator.getScreen();
+        if (terminalBuffer == null) return false;
+
+        synchronized (terminalSession.getEmulatorLock()) {
+            if (linesJoined)
+                terminalBuffer.writeTranscriptText(channel, true, true);
+            else
+                terminalBuffer.writeTranscriptText(channel, false, false);
+        }
+
+        return true;
+    }
+
 }
@@ -0,0 +1,289 @@
+package com.termux.shared.shell;
+
+import androidx.annotation.AnyThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.termux.shared.logger.Logger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Thread continuously reading the bytes of an {@link InputStream}, like the stdout or stderr of a
+ * process, in chunks into a buffer bounded by a size limit.
+ *
+ * Unlike {@link StreamGobbler}, the output is not decoded and split into lines while it is being
+ * read, it is only decoded as UTF-8 once when {@link #appendTo(StringBuilder)} or
+ * {@link #getOutput()} is called. If more bytes than the limit are read, then the first half of
+ * the limit of bytes and the last half are kept, and the bytes in between are dropped and replaced
+ * with a truncation marker when the output is decoded.
+ */
+@SuppressWarnings({"WeakerAccess"})
+public class StreamCapture extends Thread {
+
+    /** The default max number of bytes of output to keep. */
+    public static final int DEFAULT_OUTPUT_LIMIT_IN_BYTES = 8 * 1024 * 1024;
+
+    /** The number of bytes to read at a time from the {@link InputStream}. */
+    private static final int READ_BUFFER_SIZE = 8192;
+
+    /**
+     * The max number of bytes of a line to log before logging it even if no newline has been
+     * read yet, since lines longer than the LOGGER_ENTRY_MAX_LEN would get truncated anyways.
+     */
+    private static final int MAX_LOG_LINE_LENGTH = 4096;
+
+    private static int threadCounter = 0;
+    private static int incThreadCounter() {
+        synchronized (StreamCapture.class) {
+            int ret = threadCounter;
+            threadCounter++;
+            return ret;
+        }
+    }
+
+    @NonNull
+    private final String mShell;
+    @NonNull
+    private final InputStream mInputStream;
+    @Nullable
+    private final Integer mLogLevel;
+
+    /** The max number of bytes to keep from the start of the output. */
+    private final int mHeadLimit;
+    /** The max number of bytes to keep from the end of the output. */
+    private final int mTailLimit;
+
+    /** The first bytes of the output, up to {@link #mHeadLimit} bytes. */
+    private byte[] mHead;
+    private int mHeadLength;
+
+    /**
+     * Ring buffer of the last bytes of the output after {@link #mHead} is full, up to
+     * {@link #mTailLimit} bytes. It is only created if the output does not fit in {@link #mHead}.
+     */
+    private byte[] mTail;
+    private int mTailStart;
+    private int mTailLength;
+
+    /** The number of bytes read which were dropped between {@link #mHead} and {@link #mTail}. */
+    private long mDroppedBytes;
+
+    private static final String LOG_TAG = "StreamCapture";
+
+    /**
+     * StreamCapture constructor.
+     *
+     * The stdout and stderr of a process should be read as quickly as possible to prevent a
+     * deadlock from occurring, or Process.waitFor() never returning (as the buffer is full, pausing
+     * the native process), so the bytes are only copied into the buffer while being read.
+     *
+     * @param shell Name of the shell.
+     * @param inputStream The {@link InputStream} to read from.
+     * @param limit The max number of bytes of output to keep. If set to {@code null}, then
+     *              {@link #DEFAULT_OUTPUT_LIMIT_IN_BYTES} will be used.
+     * @param logLevel The custom log level to use for logging the command output. If set to
+     *                 {@code null}, then {@link Logger#LOG_LEVEL_VERBOSE} will be used.
+     */
+    @AnyThread
+    public StreamCapture(@NonNull String shell, @NonNull InputStream inputStream,
+                         @Nullable Integer limit, @Nullable Integer logLevel) {
+        super("Capture#" + incThreadCounter());
+        mShell = shell;
+        mInputStream = inputStream;
+        mLogLevel = logLevel;
+
+        if (limit == null) limit = DEFAULT_OUTPUT_LIMIT_IN_BYTES;
+        if (limit < 0) limit = 0;
+        mHeadLimit = limit / 2;
+        mTailLimit = limit - mHeadLimit;
+        mHead = new byte[Math.min(READ_BUFFER_SIZE, mHeadLimit)];
+    }
+
+    @Override
+    public void run() {
+        String defaultLogTag = Logger.getDefaultLogTag();
+        boolean loggingEnabled = Logger.shouldEnableLoggingForCustomLogLevel(mLogLevel);
+        if (loggingEnabled)
+            Logger.logVerbose(LOG_TAG, "Using custom log level: " + mLogLevel + ", current log level: " + Logger.getLogLevel());
+
+        ByteArrayOutputStream logLine = loggingEnabled ? new ByteArrayOutputStream() : null;
+        byte[] buffer = new byte[READ_BUFFER_SIZE];
+
+        // keep reading the InputStream until it ends (or an error occurs)
+        try {
+            int bytesRead;
+            while ((bytesRead = mInputStream.read(buffer)) != -1) {
+                write(buffer, 0, bytesRead);
+                if (logLine != null)
+                    logLines(defaultLogTag, logLine, buffer, bytesRead);
+            }
+        } catch (IOException e) {
+            // stream probably closed, expected exit condition
+        }
+
+        if (logLine != null && logLine.size() > 0)
+            logLine(defaultLogTag, logLine);
+
+        // make sure our stream is closed and resources will be freed
+        try {
+            mInputStream.close();
+        } catch (IOException e) {
+            // stream already closed
+        }
+    }
+
+    /** Copy bytes read into {@link #mHead}, or into {@link #mTail} once {@link #mHead} is full. */
+    private synchronized void write(@NonNull byte[] data, int offset, int length) {
+        int headBytes = Math.min(length, mHeadLimit - mHeadLength);
+        if (headBytes > 0) {
+            if (mHeadLength + headBytes > mHead.length)
+                mHead = Arrays.copyOf(mHead, Math.min(mHeadLimit, Math.max(mHeadLength + headBytes, mHead.length * 2)));
+            System.arraycopy(data, offset, mHead, mHeadLength, headBytes);
+            mHeadLength += headBytes;
+            offset += headBytes;
+            length -= headBytes;
+        }
+
+        if (length == 0) return;
+
+        if (mTailLimit == 0) {
+            mDroppedBytes += length;
+            return;
+        }
+
+        if (mTail == null)
+            mTail = new byte[mTailLimit];
+
+        if (length >= mTailLimit) {
+            mDroppedBytes += mTailLength + length - mTailLimit;
+            System.arraycopy(data, offset + length - mTailLimit, mTail, 0, mTailLimit);
+            mTailStart = 0;
+            mTailLength = mTailLimit;
+            return;
+        }
+
+        // Drop the oldest bytes of the tail that the new bytes do not fit with
+        int overflow = mTailLength + length - mTailLimit;
+        if (overflow > 0) {
+            mTailStart = (mTailStart + overflow) % mTailLimit;
+            mTailLength -= overflow;
+            mDroppedBytes += overflow;
+        }
+
+        int end = (mTailStart + mTailLength) % mTailLimit;
+        int firstPart = Math.min(length, mTailLimit - end);
+        System.arraycopy(data, offset, mTail, end, firstPart);
+        System.arraycopy(data, offset + firstPart, mTail, 0, length - firstPart);
+        mTailLength += length;
+    }
+
+    /** Log the complete lines in the bytes read, keeping the last incomplete line in {@code logLine}. */
+    private void logLines(@NonNull String defaultLogTag, @NonNull ByteArrayOutputStream logLine, @NonNull byte[] data, int length) {
+        int lineStart = 0;
+        for (int i = 0; i < length; i++) {
+            if (data[i] == '\n' || logLine.size() + i - lineStart >= MAX_LOG_LINE_LENGTH) {
+                logLine.write(data, lineStart, i - lineStart);
+                logLine(defaultLogTag, logLine);
+                lineStart = data[i] == '\n' ? i + 1 : i;
+            }
+        }
+        logLine.write(data, lineStart, length - lineStart);
+    }
+
+    private void logLine(@NonNull String defaultLogTag, @NonNull ByteArrayOutputStream logLine) {
+        String line = new String(logLine.toByteArray(), StandardCharsets.UTF_8);
+        if (line.endsWith("\r"))
+            line = line.substring(0, line.length() - 1);
+        Logger.logVerboseForce(defaultLogTag + "Command", String.format(Locale.ENGLISH, "[%s] %s", mShell, line)); // This will get truncated by LOGGER_ENTRY_MAX_LEN, likely 4KB
+        logLine.reset();
+    }
+
+    /**
+     * Decode the output read so far as UTF-8 and append it to a {@link StringBuilder}. If output
+     * was dropped, then a truncation marker with the number of bytes dropped is appended in its
+     * place.
+     *
+     * @param output The {@link StringBuilder} to append to.
+     */
+    @AnyThread
+    public synchronized void appendTo(@NonNull StringBuilder output) {
+        byte[] tail = getTail();
+
+        if (mDroppedBytes == 0) {
+            // The tail continues the head, so decode them together in case a character is split between them
+            byte[] bytes = Arrays.copyOf(mHead, mHeadLength + tail.length);
+            System.arraycopy(tail, 0, bytes, mHeadLength, tail.length);
+            output.append(new String(bytes, StandardCharsets.UTF_8));
+            return;
+        }
+
+        // Do not decode the partial characters left at the end of the head and start of the tail
+        int headLength = getCompleteUtf8Length(mHead, mHeadLength);
+        int tailStart = getLeadingUtf8ContinuationBytes(tail);
+
+        output.append(new String(mHead, 0, headLength, StandardCharsets.UTF_8));
+        output.append(String.format(Locale.ENGLISH, "\n\n(truncated %d bytes)\n\n",
+            mDroppedBytes + mHeadLength - headLength + tailStart));
+        output.append(new String(tail, tailStart, tail.length - tailStart, StandardCharsets.UTF_8));
+    }
+
+    /** Get the output read so far decoded as UTF-8. Check {@link #appendTo(StringBuilder)}. */
+    @NonNull
+    @AnyThread
+    public String getOutput() {
+        StringBuilder output = new StringBuilder();
+        appendTo(output);
+        return output.toString();
+    }
+
+    /** Get whether any of the output read so far was dropped since it was larger than the limit. */
+    @AnyThread
+    public synchronized boolean isTruncated() {
+        return mDroppedBytes > 0;
+    }
+
+    /** Get the number of bytes of output read so far. */
+    @AnyThread
+    public synchronized long getOutputLength() {
+        return mHeadLength + mDroppedBytes + mTailLength;
+    }
+
+    /** Get the bytes of {@link #mTail} in order. */
+    @NonNull
+    private byte[] getTail() {
+        byte[] tail = new byte[mTailLength];
+        if (mTailLength == 0) return tail;
+
+        int firstPart = Math.min(mTailLength, mTailLimit - mTailStart);
+        System.arraycopy(mTail, mTailStart, tail, 0, firstPart);
+        System.arraycopy(mTail, 0, tail, firstPart, mTailLength - firstPart);
+        return tail;
+    }
+
+    /** Get the length of the UTF-8 bytes without an incomplete character at their end. */
+    private static int getCompleteUtf8Length(@NonNull byte[] data, int length) {
+        for (int i = length - 1; i >= 0 && i >= length - 4; i--) {
+            int b = data[i] & 0xFF;
+            if ((b & 0xC0) == 0x80) continue; // continuation byte
+
+            int characterLength = b >= 0xF0 ? 4 : b >= 0xE0 ? 3 : b >= 0xC0 ? 2 : 1;
+            return i + characterLength <= length ? length : i;
+        }
+        return length;
+    }
+
+    /** Get the number of UTF-8 continuation bytes of a character started before the bytes. */
+    private static int getLeadingUtf8ContinuationBytes(@NonNull byte[] data) {
+        int i = 0;
+        while (i < data.length && i < 3 && (data[i] & 0xC0) == 0x80)
+            i++;
+        return i;
+    }
+
+}
@@ -11,10 +11,12 @@ import com.termux.am.Am;
 import com.termux.shared.R;
 import com.termux.shared.android.PackageUtils;
 import com.termux.shared.android.PermissionUtils;
+import com.termux.shared.data.DataUtils;
 import com.termux.shared.errors.Error;
 import com.termux.shared.logger.Logger;
 import com.termux.shared.net.socket.local.ILocalSocketManager;
 import com.termux.shared.net.socket.local.LocalClientSocket;
+import com.termux.shared.net.socket.local.LocalSocketErrno;
 import com.termux.shared.net.socket.local.LocalServerSocket;
 import com.termux.shared.net.socket.local.LocalSocketManager;
 import com.termux.shared.net.socket.local.LocalSocketManagerClientBase;
@@ -22,12 +24,20 @@ import com.termux.shared.net.socket.local.LocalSocketRunConfig;
 import com.termux.shared.shell.ArgumentTokenizer;
 import com.termux.shared.shell.command.ExecutionCommand;
 
+import java.io.BufferedInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.PrintStream;
+import java.io.PushbackInputStream;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * A AF_UNIX/SOCK_STREAM local server managed with {@link LocalSocketManager} whose
@@ -40,6 +50,28 @@ import java.util.List;
  * back in the format `exit_code\0stdout\0stderr\0` where `\0` represents a null character.
  * Check termux/termux-am-socket for implementation of a native c client.
  *
+ * Clients that send many am commands can instead keep a single connection open and pipeline them
+ * with the framed protocol implemented by {@link AmSocketServerFramedProtocol}, so that they do not
+ * have to connect again for each command:
+ * 1. The client sends a {@link AmSocketServerFramedProtocol#FRAMED_PROTOCOL_MAGIC} byte, which a
+ *    one-shot am command can not start with, followed by the protocol version byte it uses. The
+ *    server replies with the {@link AmSocketServerFramedProtocol#FRAMED_PROTOCOL_MAGIC} byte and the
+ *    {@link AmSocketServerFramedProtocol#FRAMED_PROTOCOL_VERSION} byte, and closes the connection
+ *    if the versions do not match. Servers that do not support the framed protocol reply with a
+ *    one-shot result instead, which does not start with a null character.
+ * 2. The client sends each am command as a request frame of a 4 byte request id chosen by the client,
+ *    a 4 byte length of the command and the command itself encoded in UTF-8. The numbers are
+ *    signed big-endian integers, as written by {@link java.io.DataOutputStream}. The client does not
+ *    need to wait for results before sending the next request.
+ * 3. The server runs up to {@link AmSocketServerFramedProtocol#MAX_PIPELINED_REQUESTS} requests at
+ *    a time, and sends back the result of each one as soon as it is done, so in any order, as a
+ *    response frame of the 4 byte request id, 4 byte exit code, 4 byte stdout length, stdout,
+ *    4 byte stderr length and stderr.
+ * 4. The client shuts down its writing end of the socket after its last request. The server
+ *    sends the results of the requests still running and then closes the connection.
+ * The connection is closed if the client does not send anything for the receive timeout of the
+ * {@link LocalSocketRunConfig}.
+ *
  * Usage:
  * 1. Optionally extend {@link AmSocketServerClient}, the implementation for
  *    {@link ILocalSocketManager} that will receive call backs from the server including
@@ -79,19 +111,124 @@ public class AmSocketServer {
         return localSocketManager;
     }
 
+    /**
+     * Process a client connected to the server. If the first byte sent by the client is the
+     * {@link AmSocketServerFramedProtocol#FRAMED_PROTOCOL_MAGIC}, then
+     * {@link #processFramedAmClient(LocalSocketManager, LocalClientSocket, InputStream)} is called,
+     * otherwise a single am command is read until end of file and its result is sent to the client.
+     *
+     * @param localSocketManager The {@link LocalSocketManager} instance for the local socket.
+     * @param clientSocket The {@link LocalClientSocket} that connected.
+     */
     public static void processAmClient(@NonNull LocalSocketManager localSocketManager,
                                        @NonNull LocalClientSocket clientSocket) {
         Error error;
 
-        // Read amCommandString client sent and close input stream
+        // Read the first byte to find out if the client uses the framed protocol
+        PushbackInputStream inputStream = new PushbackInputStream(clientSocket.getInputStream());
+        boolean isFramedClient;
+        try {
+            isFramedClient = AmSocketServerFramedProtocol.readFramedProtocolMagic(inputStream);
+        } catch (IOException e) {
+            error = LocalSocketErrno.ERRNO_READ_DATA_FROM_INPUT_STREAM_OF_CLIENT_SOCKET_FAILED_WITH_EXCEPTION.getError(
+                localSocketManager.getLocalSocketRunConfig().getTitle(), DataUtils.getSpaceIndentedString(e.getMessage(), 1));
+            sendResultToClient(localSocketManager, clientSocket, 1, null, error.toString());
+            return;
+        }
+
+        if (isFramedClient) {
+            processFramedAmClient(localSocketManager, clientSocket, inputStream);
+            return;
+        }
+
+        // Read amCommandString client sent, including the first byte pushed back, and close input stream
         StringBuilder data = new StringBuilder();
-        error = clientSocket.readDataOnInputStream(data, true);
+        error = clientSocket.readDataOnInputStream(inputStream, data, true);
         if (error != null) {
             sendResultToClient(localSocketManager, clientSocket, 1, null, error.toString());
             return;
         }
 
-        String amCommandString = data.toString();
+        AmCommandResult result = runAmCommandString(localSocketManager, clientSocket, data.toString());
+        sendResultToClient(localSocketManager, clientSocket, result.exitCode, result.stdout, result.stderr);
+    }
+
+    /**
+     * Process a client using the framed protocol described in {@link AmSocketServer}, after its
+     * {@link AmSocketServerFramedProtocol#FRAMED_PROTOCOL_MAGIC} byte has been read. The requests
+     * are read until the client shuts down its writing end, and are run with
+     * {@link AmSocketServerFramedProtocol#processRequests(DataInputStream, OutputStream,
+     * AmSocketServerFramedProtocol.RequestHandler, ThreadFactory)}. This returns once the results
+     * of all the requests have been sent.
+     *
+     * @param localSocketManager The {@link LocalSocketManager} instance for the local socket.
+     * @param clientSocket The {@link LocalClientSocket} that connected.
+     * @param clientInputStream The {@link InputStream} of the {@code clientSocket} to read from.
+     */
+    public static void processFramedAmClient(@NonNull LocalSocketManager localSocketManager,
+                                             @NonNull LocalClientSocket clientSocket,
+                                             @NonNull InputStream clientInputStream) {
+        Error error;
+        DataInputStream inputStream = new DataInputStream(new BufferedInputStream(clientInputStream,
+            LocalClientSocket.READ_BUFFER_SIZE));
+        OutputStream outputStream = clientSocket.getOutputStream();
+
+        try {
+            int version = AmSocketServerFramedProtocol.readClientVersion(inputStream);
+
+            // Reply with the version supported so that the client can check it
+            AmSocketServerFramedProtocol.writeServerHandshake(outputStream);
+
+            if (version != AmSocketServerFramedProtocol.FRAMED_PROTOCOL_VERSION) {
+                localSocketManager.onError(clientSocket, AmSocketServerErrno.ERRNO_UNSUPPORTED_FRAMED_PROTOCOL_VERSION.getError(
+                    version, AmSocketServerFramedProtocol.FRAMED_PROTOCOL_VERSION));
+                return;
+            }
+        } catch (IOException e) {
+            localSocketManager.onError(clientSocket, AmSocketServerErrno.ERRNO_READ_FRAMED_REQUEST_FAILED_WITH_EXCEPTION.getError(
+                DataUtils.getSpaceIndentedString(e.getMessage(), 1)));
+            return;
+        }
+
+        final AtomicInteger threadCount = new AtomicInteger();
+        error = AmSocketServerFramedProtocol.processRequests(inputStream, outputStream,
+            new AmSocketServerFramedProtocol.RequestHandler() {
+                @NonNull
+                @Override
+                public AmCommandResult runRequest(int requestId, @NonNull String amCommandString) {
+                    AmCommandResult result = runAmCommandString(localSocketManager, clientSocket, amCommandString);
+                    return new AmCommandResult(sanitizeExitCode(clientSocket, result.exitCode), result.stdout, result.stderr);
+                }
+
+                @Override
+                public void onError(@NonNull Error error) {
+                    localSocketManager.onError(clientSocket, error);
+                }
+            },
+            runnable -> {
+                Thread thread = new Thread(runnable, localSocketManager.getLocalSocketRunConfig().getTitle() +
+                    "-AmSocketServerRequestThread-" + threadCount.incrementAndGet());
+                thread.setUncaughtExceptionHandler(localSocketManager.getLocalSocketManagerClientThreadUEH());
+                return thread;
+            });
+        if (error != null) {
+            localSocketManager.onError(clientSocket, error);
+        }
+    }
+
+    /**
+     * Parse and run an am command string sent by a client.
+     *
+     * @param localSocketManager The {@link LocalSocketManager} instance for the local socket.
+     * @param clientSocket The {@link LocalClientSocket} that sent the am command.
+     * @param amCommandString The am command {@link String}.
+     * @return Returns the {@link AmCommandResult} of the am command.
+     */
+    @NonNull
+    public static AmCommandResult runAmCommandString(@NonNull LocalSocketManager localSocketManager,
+                                                     @NonNull LocalClientSocket clientSocket,
+                                                     String amCommandString) {
+        Error error;
 
         Logger.logVerbose(LOG_TAG, "am command received from peer " + clientSocket.getPeerCred().getMinimalString() +
             "\nam command: `" + amCommandString + "`");
@@ -100,8 +237,7 @@ public class AmSocketServer {
         List<String> amCommandList = new ArrayList<>();
         error = parseAmCommand(amCommandString, amCommandList);
         if (error != null) {
-            sendResultToClient(localSocketManager, clientSocket, 1, null, error.toString());
-            return;
+            return new AmCommandResult(1, null, error.toString());
         }
 
         String[] amCommandArray = amCommandList.toArray(new String[0]);
@@ -111,17 +247,17 @@ public class AmSocketServer {
 
         AmSocketServerRunConfig amSocketServerRunConfig = (AmSocketServerRunConfig) localSocketManager.getLocalSocketRunConfig();
 
-        // Run am command and send its result to the client
+        // Run am command and return its result
         StringBuilder stdout = new StringBuilder();
         StringBuilder stderr = new StringBuilder();
         error = runAmCommand(localSocketManager.getContext(), amCommandArray, stdout, stderr,
             amSocketServerRunConfig.shouldCheckDisplayOverAppsPermission());
         if (error != null) {
-            sendResultToClient(localSocketManager, clientSocket, 1, stdout.toString(),
+            return new AmCommandResult(1, stdout.toString(),
                 !stderr.toString().isEmpty() ? stderr + "\n\n" + error : error.toString());
         }
 
-        sendResultToClient(localSocketManager, clientSocket, 0, stdout.toString(), stderr.toString());
+        return new AmCommandResult(0, stdout.toString(), stderr.toString());
     }
 
     /**
@@ -243,6 +379,28 @@ public class AmSocketServer {
 
 
 
+    /** The result of an am command run for a client. */
+    public static class AmCommandResult {
+
+        /** The exit code of the am command. */
+        public final int exitCode;
+
+        /** The stdout of the am command. */
+        @Nullable public final String stdout;
+
+        /** The stderr of the am command. */
+        @Nullable public final String stderr;
+
+        public AmCommandResult(int exitCode, @Nullable String stdout, @Nullable String stderr) {
+            this.exitCode = exitCode;
+            this.stdout = stdout;
+            this.stderr = stderr;
+        }
+
+    }
+
+
+
     /** Implementation for {@link ILocalSocketManager} for {@link AmSocketServer}. */
     public abstract static class AmSocketServerClient extends LocalSocketManagerClientBase {
 
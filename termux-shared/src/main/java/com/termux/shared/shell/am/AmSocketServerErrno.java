@@ -10,6 +10,10 @@ public class AmSocketServerErrno extends Errno {
     /** Errors for {@link AmSocketServer} (100-150) */
     public static final Errno ERRNO_PARSE_AM_COMMAND_FAILED_WITH_EXCEPTION = new Errno(TYPE, 100, "Parse am command `%1$s` failed.\nException: %2$s");
     public static final Errno ERRNO_RUN_AM_COMMAND_FAILED_WITH_EXCEPTION = new Errno(TYPE, 101, "Run am command `%1$s` failed.\nException: %2$s");
+    public static final Errno ERRNO_UNSUPPORTED_FRAMED_PROTOCOL_VERSION = new Errno(TYPE, 102, "The framed protocol version %1$s requested by the client is not supported. The supported version is %2$s.");
+    public static final Errno ERRNO_INVALID_FRAMED_REQUEST_LENGTH = new Errno(TYPE, 103, "The length %1$s of the framed am command request %2$s is invalid. It must be between 0 and %3$s.");
+    public static final Errno ERRNO_READ_FRAMED_REQUEST_FAILED_WITH_EXCEPTION = new Errno(TYPE, 104, "Read framed am command request failed.\nException: %1$s");
+    public static final Errno ERRNO_SEND_FRAMED_RESPONSE_FAILED_WITH_EXCEPTION = new Errno(TYPE, 105, "Send framed am command response %1$s failed.\nException: %2$s");
 
     AmSocketServerErrno(final String type, final int code, final String message) {
         super(type, code, message);
@@ -0,0 +1,329 @@
+package com.termux.shared.shell.am;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.termux.shared.data.DataUtils;
+import com.termux.shared.errors.Error;
+import com.termux.shared.net.socket.local.LocalSocketManager;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The framed protocol of {@link AmSocketServer} for pipelining am commands on a single connection,
+ * which is described in the {@link AmSocketServer} class docs.
+ *
+ * The frames are read from and written to plain {@link InputStream} and {@link OutputStream}, so
+ * that the protocol does not depend on a {@link com.termux.shared.net.socket.local.LocalClientSocket}.
+ * The client side of the protocol is also implemented for clients written in java.
+ */
+public class AmSocketServerFramedProtocol {
+
+    /** The first byte a client sends to use the framed protocol instead of sending a one-shot am command. */
+    public static final byte FRAMED_PROTOCOL_MAGIC = 0;
+
+    /** The version of the framed protocol supported by the server. */
+    public static final byte FRAMED_PROTOCOL_VERSION = 1;
+
+    /** The max length in bytes of the am command of a framed protocol request. */
+    public static final int MAX_FRAMED_REQUEST_LENGTH = 1024 * 1024;
+
+    /**
+     * The max framed protocol requests of a client that are run at a time. Reading more requests
+     * from the client waits until one of them is done.
+     */
+    public static final int MAX_PIPELINED_REQUESTS = 8;
+
+    /**
+     * Read the first byte sent by a client and check if it is the {@link #FRAMED_PROTOCOL_MAGIC}.
+     * If it is not, then it is pushed back so that the one-shot am command can be read whole.
+     *
+     * @param inputStream The {@link PushbackInputStream} to read from.
+     * @return Returns {@code true} if the client uses the framed protocol, otherwise {@code false}.
+     */
+    public static boolean readFramedProtocolMagic(@NonNull PushbackInputStream inputStream) throws IOException {
+        int firstByte = inputStream.read();
+        if (firstByte == FRAMED_PROTOCOL_MAGIC)
+            return true;
+
+        if (firstByte != -1)
+            inputStream.unread(firstByte);
+        return false;
+    }
+
+    /**
+     * Read the protocol version sent by the client after the {@link #FRAMED_PROTOCOL_MAGIC}.
+     *
+     * @param inputStream The {@link InputStream} to read from.
+     * @return Returns the version, or {@code -1} if the client closed its writing end.
+     */
+    public static int readClientVersion(@NonNull InputStream inputStream) throws IOException {
+        return inputStream.read();
+    }
+
+    /** Reply to the handshake of a client with the {@link #FRAMED_PROTOCOL_VERSION} of the server. */
+    public static void writeServerHandshake(@NonNull OutputStream outputStream) throws IOException {
+        outputStream.write(new byte[]{FRAMED_PROTOCOL_MAGIC, FRAMED_PROTOCOL_VERSION});
+        outputStream.flush();
+    }
+
+    /** Start the framed protocol as a client with the {@link #FRAMED_PROTOCOL_VERSION}. */
+    public static void writeClientHandshake(@NonNull OutputStream outputStream) throws IOException {
+        outputStream.write(new byte[]{FRAMED_PROTOCOL_MAGIC, FRAMED_PROTOCOL_VERSION});
+    }
+
+    /**
+     * Read the reply of the server to the handshake of a client.
+     *
+     * @param inputStream The {@link InputStream} to read from.
+     * @return Returns the version supported by the server, or {@code -1} if the server does not
+     * support the framed protocol.
+     */
+    public static int readServerVersion(@NonNull InputStream inputStream) throws IOException {
+        if (inputStream.read() != FRAMED_PROTOCOL_MAGIC)
+            return -1;
+        return inputStream.read();
+    }
+
+    /**
+     * Write a request frame for an am command as a client.
+     *
+     * @param outputStream The {@link OutputStream} to write to.
+     * @param requestId The id of the request.
+     * @param amCommand The am command encoded in UTF-8.
+     */
+    public static void writeRequest(@NonNull OutputStream outputStream, int requestId, @NonNull byte[] amCommand) throws IOException {
+        ByteBuffer request = ByteBuffer.allocate(8 + amCommand.length);
+        request.putInt(requestId);
+        request.putInt(amCommand.length).put(amCommand);
+        outputStream.write(request.array());
+    }
+
+    /**
+     * Read a request frame sent by a client. If the length of the request is invalid, then its am
+     * command is not read and the rest of the data can not be split into requests anymore.
+     *
+     * @param inputStream The {@link DataInputStream} to read from.
+     * @return Returns the {@link Request}, or {@code null} if the client closed its writing end
+     * after its last request.
+     * @throws EOFException If the client closed its writing end in the middle of a request.
+     */
+    @Nullable
+    public static Request readRequest(@NonNull DataInputStream inputStream) throws IOException {
+        int firstByte = inputStream.read();
+        if (firstByte == -1)
+            return null;
+
+        int requestId = (firstByte << 24) | (inputStream.readUnsignedByte() << 16) | inputStream.readUnsignedShort();
+        int length = inputStream.readInt();
+        if (length < 0 || length > MAX_FRAMED_REQUEST_LENGTH)
+            return new Request(requestId, length, null);
+
+        byte[] amCommandBytes = new byte[length];
+        inputStream.readFully(amCommandBytes);
+        return new Request(requestId, length, new String(amCommandBytes, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Write a response frame for the result of a request. The whole frame is written with a single
+     * call while holding the lock of the {@code outputStream}, so that frames of requests that
+     * finish at the same time are not mixed.
+     *
+     * @param outputStream The {@link OutputStream} to write to.
+     * @param requestId The id of the request.
+     * @param exitCode The exit code value to send.
+     * @param stdout The stdout value to send.
+     * @param stderr The stderr value to send.
+     */
+    public static void writeResponse(@NonNull OutputStream outputStream, int requestId, int exitCode,
+                                     @Nullable String stdout, @Nullable String stderr) throws IOException {
+        byte[] stdoutBytes = (stdout != null ? stdout : "").getBytes(StandardCharsets.UTF_8);
+        byte[] stderrBytes = (stderr != null ? stderr : "").getBytes(StandardCharsets.UTF_8);
+
+        ByteBuffer response = ByteBuffer.allocate(16 + stdoutBytes.length + stderrBytes.length);
+        response.putInt(requestId);
+        response.putInt(exitCode);
+        response.putInt(stdoutBytes.length).put(stdoutBytes);
+        response.putInt(stderrBytes.length).put(stderrBytes);
+
+        synchronized (outputStream) {
+            outputStream.write(response.array());
+            outputStream.flush();
+        }
+    }
+
+    /**
+     * Read a response frame sent by the server as a client.
+     *
+     * @param inputStream The {@link DataInputStream} to read from.
+     * @return Returns the {@link Response}, or {@code null} if the server closed the connection
+     * after the last response.
+     * @throws EOFException If the server closed the connection in the middle of a response.
+     */
+    @Nullable
+    public static Response readResponse(@NonNull DataInputStream inputStream) throws IOException {
+        int firstByte = inputStream.read();
+        if (firstByte == -1)
+            return null;
+
+        int requestId = (firstByte << 24) | (inputStream.readUnsignedByte() << 16) | inputStream.readUnsignedShort();
+        int exitCode = inputStream.readInt();
+        byte[] stdout = new byte[inputStream.readInt()];
+        inputStream.readFully(stdout);
+        byte[] stderr = new byte[inputStream.readInt()];
+        inputStream.readFully(stderr);
+        return new Response(requestId, exitCode, new String(stdout, StandardCharsets.UTF_8),
+            new String(stderr, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Read the requests of a client after the handshake until it closes its writing end, run them
+     * with the {@link RequestHandler} and write back their results as soon as they are done.
+     * Up to {@link #MAX_PIPELINED_REQUESTS} requests are run at a time on threads created with
+     * {@code threadFactory}. This returns once the results of all the requests have been written.
+     *
+     * @param inputStream The {@link DataInputStream} to read requests from.
+     * @param outputStream The {@link OutputStream} to write responses to.
+     * @param requestHandler The {@link RequestHandler} that runs the requests.
+     * @param threadFactory The {@link ThreadFactory} for the threads that run the requests.
+     * @return Returns the {@code error} if reading the requests failed or a request was invalid,
+     * otherwise {@code null}.
+     */
+    @Nullable
+    public static Error processRequests(@NonNull DataInputStream inputStream, @NonNull OutputStream outputStream,
+                                        @NonNull RequestHandler requestHandler, @NonNull ThreadFactory threadFactory) {
+        // The requests are not run on the threads of the LocalSocketManager, since if all of them are
+        // running framed clients waiting for their requests to finish, the requests would never run
+        final Semaphore runningRequests = new Semaphore(MAX_PIPELINED_REQUESTS);
+        ThreadPoolExecutor requestExecutor = new ThreadPoolExecutor(0, MAX_PIPELINED_REQUESTS,
+            LocalSocketManager.CLIENT_THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new SynchronousQueue<>(), threadFactory);
+
+        try {
+            Request request;
+            // The client shuts down its writing end after its last request
+            while ((request = readRequest(inputStream)) != null) {
+                final int requestId = request.requestId;
+                final String amCommandString = request.amCommandString;
+                if (amCommandString == null) {
+                    // The rest of the data can not be split into requests anymore, so stop reading
+                    Error error = AmSocketServerErrno.ERRNO_INVALID_FRAMED_REQUEST_LENGTH.getError(
+                        request.length, requestId, MAX_FRAMED_REQUEST_LENGTH);
+                    sendResponse(outputStream, requestHandler, requestId, new AmSocketServer.AmCommandResult(1, null, error.toString()));
+                    return error;
+                }
+
+                runningRequests.acquireUninterruptibly();
+                Runnable runnable = () -> {
+                    try {
+                        sendResponse(outputStream, requestHandler, requestId, requestHandler.runRequest(requestId, amCommandString));
+                    } finally {
+                        runningRequests.release();
+                    }
+                };
+
+                try {
+                    requestExecutor.execute(runnable);
+                } catch (RejectedExecutionException e) {
+                    // A thread that released its permit may not be waiting for the next request yet
+                    runnable.run();
+                }
+            }
+        } catch (IOException e) {
+            return AmSocketServerErrno.ERRNO_READ_FRAMED_REQUEST_FAILED_WITH_EXCEPTION.getError(
+                DataUtils.getSpaceIndentedString(e.getMessage(), 1));
+        } finally {
+            // Wait for the results of all the requests to be sent before the client socket is closed
+            runningRequests.acquireUninterruptibly(MAX_PIPELINED_REQUESTS);
+            requestExecutor.shutdown();
+        }
+
+        return null;
+    }
+
+    private static void sendResponse(@NonNull OutputStream outputStream, @NonNull RequestHandler requestHandler,
+                                     int requestId, @NonNull AmSocketServer.AmCommandResult result) {
+        try {
+            writeResponse(outputStream, requestId, result.exitCode, result.stdout, result.stderr);
+        } catch (IOException e) {
+            requestHandler.onError(AmSocketServerErrno.ERRNO_SEND_FRAMED_RESPONSE_FAILED_WITH_EXCEPTION.getError(
+                requestId, DataUtils.getSpaceIndentedString(e.getMessage(), 1)));
+        }
+    }
+
+
+
+
+
+    /** A request frame sent by a client. */
+    public static class Request {
+
+        /** The id of the request chosen by the client. */
+        public final int requestId;
+
+        /** The length in bytes of the am command. */
+        public final int length;
+
+        /** The am command, or {@code null} if the {@link #length} is invalid. */
+        @Nullable public final String amCommandString;
+
+        public Request(int requestId, int length, @Nullable String amCommandString) {
+            this.requestId = requestId;
+            this.length = length;
+            this.amCommandString = amCommandString;
+        }
+
+    }
+
+
+
+    /** A response frame sent by the server. */
+    public static class Response extends AmSocketServer.AmCommandResult {
+
+        /** The id of the request the response is for. */
+        public final int requestId;
+
+        public Response(int requestId, int exitCode, @Nullable String stdout, @Nullable String stderr) {
+            super(exitCode, stdout, stderr);
+            this.requestId = requestId;
+        }
+
+    }
+
+
+
+    /** The handler that runs the requests of {@link #processRequests(DataInputStream, OutputStream, RequestHandler, ThreadFactory)}. */
+    public interface RequestHandler {
+
+        /**
+         * Run the am command of a request. This is called on a thread of the request executor.
+         *
+         * @param requestId The id of the request.
+         * @param amCommandString The am command {@link String}.
+         * @return Returns the {@link AmSocketServer.AmCommandResult} to send back.
+         */
+        @NonNull
+        AmSocketServer.AmCommandResult runRequest(int requestId, @NonNull String amCommandString);
+
+        /**
+         * Called when sending the result of a request failed.
+         *
+         * @param error The {@link Error} generated.
+         */
+        void onError(@NonNull Error error);
+
+    }
+
+}
@@ -177,13 +177,21 @@ public class ExecutionCommand {
 
     /**
      * The {@link ExecutionCommand} custom log level for background {@link AppShell}
-     * commands. By default, @link com.termux.shared.shell.StreamGobbler} only logs stdout and
+     * commands. By default, {@link com.termux.shared.shell.StreamCapture} only logs stdout and
      * stderr if {@link Logger} `CURRENT_LOG_LEVEL` is >= {@link Logger#LOG_LEVEL_VERBOSE} and
      * {@link AppShell} only logs stdin if `CURRENT_LOG_LEVEL` is >=
      * {@link Logger#LOG_LEVEL_DEBUG}.
      */
     public Integer backgroundCustomLogLevel;
 
+    /**
+     * The max number of bytes of each of stdout and stderr to keep in {@link ResultData} for
+     * background {@link AppShell} commands. If more bytes are output, then the start and end are
+     * kept with a truncation marker in between. If set to {@code null}, then
+     * {@link com.termux.shared.shell.StreamCapture#DEFAULT_OUTPUT_LIMIT_IN_BYTES} is used.
+     */
+    public Integer backgroundOutputLimit;
+
 
     /** The session action of {@link Runner#TERMINAL_SESSION} commands. */
     public String sessionAction;
@@ -387,6 +395,9 @@ public class ExecutionCommand {
 
             if (!ignoreNull || executionCommand.backgroundCustomLogLevel != null)
                 logString.append("\n").append(executionCommand.getBackgroundCustomLogLevelLogString());
+
+            if (!ignoreNull || executionCommand.backgroundOutputLimit != null)
+                logString.append("\n").append(executionCommand.getBackgroundOutputLimitLogString());
         }
 
         if (!ignoreNull || executionCommand.sessionAction != null)
@@ -490,6 +501,8 @@ public class ExecutionCommand {
                 markdownString.append("\n").append(MarkdownUtils.getMultiLineMarkdownStringEntry("Stdin", executionCommand.stdin, "-"));
             if (executionCommand.backgroundCustomLogLevel != null)
                 markdownString.append("\n").append(MarkdownUtils.getSingleLineMarkdownStringEntry("Background Custom Log Level", executionCommand.backgroundCustomLogLevel, "-"));
+            if (executionCommand.backgroundOutputLimit != null)
+                markdownString.append("\n").append(MarkdownUtils.getSingleLineMarkdownStringEntry("Background Output Limit", executionCommand.backgroundOutputLimit, "-"));
         }
 
         markdownString.append("\n").append(MarkdownUtils.getSingleLineMarkdownStringEntry("Session Action", executionCommand.sessionAction, "-"));
@@ -582,6 +595,10 @@ public class ExecutionCommand {
         return "Background Custom Log Level: `" + backgroundCustomLogLevel + "`";
     }
 
+    public String getBackgroundOutputLimitLogString() {
+        return "Background Output Limit: `" + backgroundOutputLimit + "`";
+    }
+
     public String getSessionActionLogString() {
         return Logger.getSingleLineLogStringEntry("Session Action", sessionAction, "-");
     }
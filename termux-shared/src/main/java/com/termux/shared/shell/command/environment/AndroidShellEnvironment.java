@@ -3,6 +3,7 @@ package com.termux.shared.shell.command.environment;
 import android.content.Context;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import com.termux.shared.shell.command.ExecutionCommand;
 
@@ -84,12 +85,44 @@ public class AndroidShellEnvironment extends UnixShellEnvironment {
     public HashMap<String, String> setupShellCommandEnvironment(@NonNull Context currentPackageContext,
                                                                 @NonNull ExecutionCommand executionCommand) {
         HashMap<String, String> environment = getEnvironment(currentPackageContext, executionCommand.isFailsafe);
+        ShellEnvironmentUtils.createHomeDir(environment);
+        environment.putAll(getShellCommandEnvironment(currentPackageContext, executionCommand));
+        return environment;
+    }
+
+    /**
+     * Setup shell command environment by merging the variables for the {@link ExecutionCommand}
+     * into the environment cached by {@link ShellEnvironmentCache}, instead of building the
+     * environment again and sorting it.
+     */
+    @NonNull
+    @Override
+    public String[] setupShellCommandEnviron(@NonNull Context currentPackageContext,
+                                             @NonNull ExecutionCommand executionCommand,
+                                             @Nullable HashMap<String, String> additionalEnvironment) {
+        ShellEnvironmentCache.Environ environ = ShellEnvironmentCache.getEnviron(currentPackageContext, this,
+            executionCommand.isFailsafe);
+        ShellEnvironmentUtils.createHomeDir(environ.getValue(ENV_HOME));
+
+        HashMap<String, String> environment = getShellCommandEnvironment(currentPackageContext, executionCommand);
+        if (additionalEnvironment != null)
+            environment.putAll(additionalEnvironment);
+        return environ.merge(environment);
+    }
+
+    /**
+     * Get the shell environment variables for the {@link ExecutionCommand} that are set on top of
+     * the environment returned by {@link #getEnvironment(Context, boolean)}.
+     */
+    @NonNull
+    protected HashMap<String, String> getShellCommandEnvironment(@NonNull Context currentPackageContext,
+                                                                 @NonNull ExecutionCommand executionCommand) {
+        HashMap<String, String> environment = new HashMap<>();
 
         String workingDirectory = executionCommand.workingDirectory;
         environment.put(ENV_PWD,
             workingDirectory != null && !workingDirectory.isEmpty() ? new File(workingDirectory).getAbsolutePath() : // PWD must be absolute path
             getDefaultWorkingDirectoryPath());
-        ShellEnvironmentUtils.createHomeDir(environment);
 
         if (executionCommand.setShellCommandShellEnvironment && shellCommandShellEnvironment != null)
             environment.putAll(shellCommandShellEnvironment.getEnvironment(currentPackageContext, executionCommand));
@@ -49,4 +49,19 @@ public interface IShellEnvironment {
     HashMap<String, String> setupShellCommandEnvironment(@NonNull Context currentPackageContext,
                                                          @NonNull ExecutionCommand executionCommand);
 
+    /**
+     * Setup shell command environment to be used for commands as an `environ` sorted by variable
+     * name, with the items in the format `name=value`.
+     *
+     * @param currentPackageContext The {@link Context} for the current package.
+     * @param executionCommand The {@link ExecutionCommand} for which to set environment.
+     * @param additionalEnvironment The additional shell environment variables to export. Existing
+     *                              variables will be overridden.
+     * @return Should return the shell environment `environ`.
+     */
+    @NonNull
+    String[] setupShellCommandEnviron(@NonNull Context currentPackageContext,
+                                      @NonNull ExecutionCommand executionCommand,
+                                      @Nullable HashMap<String, String> additionalEnvironment);
+
 }
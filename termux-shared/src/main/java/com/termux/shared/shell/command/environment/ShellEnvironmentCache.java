@@ -0,0 +1,194 @@
+package com.termux.shared.shell.command.environment;
+
+import android.content.Context;
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.termux.shared.logger.Logger;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of the `environ` built from {@link UnixShellEnvironment#getEnvironment(Context, boolean)},
+ * so that the environment does not need to be built, converted and sorted again for every command
+ * that is started.
+ *
+ * The cached environments are keyed by the {@link UnixShellEnvironment} class, the package of the
+ * {@link Context} and whether failsafe is enabled, and are versioned by a generation which is
+ * incremented by {@link #invalidate(String)}. It must be called whenever something the environment
+ * depends on changes, like when a package is installed/updated/removed or the `termux.properties`
+ * are reloaded. Environments may additionally expire after the max age returned by
+ * {@link UnixShellEnvironment#getEnvironmentCacheMaxAge(Context)}, like for packages which do
+ * not receive the events on which the cache is invalidated.
+ */
+public class ShellEnvironmentCache {
+
+    /** The max age for environments which are cached until {@link #invalidate(String)} is called. */
+    public static final long MAX_AGE_UNTIL_INVALIDATED = -1;
+
+    private static final AtomicLong sGeneration = new AtomicLong();
+
+    private static final ConcurrentHashMap<String, Environ> sEnvironCache = new ConcurrentHashMap<>();
+
+    private static final String LOG_TAG = "ShellEnvironmentCache";
+
+    /**
+     * Get the cached {@link Environ} for the environment of the {@link UnixShellEnvironment}. It
+     * will be built with {@link UnixShellEnvironment#getEnvironment(Context, boolean)} if it is not
+     * cached, or was cached for an older generation or is older than its max age.
+     *
+     * @param currentPackageContext The {@link Context} for the current package.
+     * @param shellEnvironment The {@link UnixShellEnvironment} to get the environment of.
+     * @param isFailSafe If failsafe is enabled.
+     * @return Returns the {@link Environ}.
+     */
+    @NonNull
+    public static Environ getEnviron(@NonNull Context currentPackageContext,
+                                     @NonNull UnixShellEnvironment shellEnvironment, boolean isFailSafe) {
+        String key = shellEnvironment.getClass().getName() + ":" + currentPackageContext.getPackageName() + ":" + isFailSafe;
+        return getEnviron(currentPackageContext, shellEnvironment, isFailSafe, key, SystemClock.elapsedRealtime());
+    }
+
+    /**
+     * Get the cached {@link Environ} for a cache key at a time. Check
+     * {@link #getEnviron(Context, UnixShellEnvironment, boolean)}.
+     *
+     * @param key The key the environment is cached with.
+     * @param now The current {@link SystemClock#elapsedRealtime()}.
+     */
+    @NonNull
+    static Environ getEnviron(@NonNull Context currentPackageContext, @NonNull UnixShellEnvironment shellEnvironment,
+                              boolean isFailSafe, @NonNull String key, long now) {
+        long maxAge = shellEnvironment.getEnvironmentCacheMaxAge(currentPackageContext);
+        long generation = sGeneration.get();
+
+        Environ environ = sEnvironCache.get(key);
+        if (environ != null && environ.mGeneration == generation &&
+            (maxAge == MAX_AGE_UNTIL_INVALIDATED || now - environ.mCreationTime < maxAge))
+            return environ;
+
+        // If invalidate() is called while building, the environ is cached for the old generation
+        // and will be built again on next call
+        environ = new Environ(shellEnvironment.getEnvironment(currentPackageContext, isFailSafe), generation, now);
+        if (maxAge != 0)
+            sEnvironCache.put(key, environ);
+        return environ;
+    }
+
+    /**
+     * Invalidate all the cached environments.
+     *
+     * @param reason The reason for the invalidation that is logged.
+     */
+    public static void invalidate(@NonNull String reason) {
+        long generation = sGeneration.incrementAndGet();
+        sEnvironCache.clear();
+        Logger.logDebug(LOG_TAG, "Invalidated shell environment cache for generation " + generation + " since " + reason);
+    }
+
+
+
+    /**
+     * An immutable `environ` sorted by variable name, with the items in the format `name=value`.
+     * Only valid variables are kept, check
+     * {@link ShellEnvironmentUtils#isValidEnvironmentVariableNameValuePair(String, String, boolean)}.
+     */
+    public static class Environ {
+
+        private final String[] mNames;
+        private final String[] mEnviron;
+
+        private final long mGeneration;
+        private final long mCreationTime;
+
+        public Environ(@NonNull HashMap<String, String> environmentMap, long generation, long creationTime) {
+            TreeMap<String, String> environment = new TreeMap<>();
+            for (Map.Entry<String, String> variable : environmentMap.entrySet()) {
+                if (ShellEnvironmentUtils.isValidEnvironmentVariableNameValuePair(variable.getKey(), variable.getValue(), true))
+                    environment.put(variable.getKey(), variable.getValue());
+            }
+
+            mNames = new String[environment.size()];
+            mEnviron = new String[environment.size()];
+            int i = 0;
+            for (Map.Entry<String, String> variable : environment.entrySet()) {
+                mNames[i] = variable.getKey();
+                mEnviron[i] = variable.getKey() + "=" + variable.getValue();
+                i++;
+            }
+
+            mGeneration = generation;
+            mCreationTime = creationTime;
+        }
+
+        /** Get the value of a variable, or {@code null} if it is not set. */
+        @Nullable
+        public String getValue(@NonNull String name) {
+            int index = Arrays.binarySearch(mNames, name);
+            return index < 0 ? null : mEnviron[index].substring(name.length() + 1);
+        }
+
+        /**
+         * Get the `environ` with the variables of an overlay set on top of it. The overlay
+         * variables are sorted and merged into the already sorted `environ`, so that it does not
+         * need to be sorted again. Variables of the overlay override existing variables, and
+         * invalid overlay variables unset them.
+         *
+         * @param overlay The variables to set, or {@code null}.
+         * @return Returns a new `environ` array.
+         */
+        @NonNull
+        public String[] merge(@Nullable Map<String, String> overlay) {
+            if (overlay == null || overlay.isEmpty())
+                return mEnviron.clone();
+
+            TreeMap<String, String> sortedOverlay = new TreeMap<>();
+            for (Map.Entry<String, String> variable : overlay.entrySet()) {
+                if (variable.getKey() != null)
+                    sortedOverlay.put(variable.getKey(), variable.getValue());
+                else
+                    ShellEnvironmentUtils.isValidEnvironmentVariableNameValuePair(null, variable.getValue(), true);
+            }
+
+            List<String> environ = new ArrayList<>(mEnviron.length + sortedOverlay.size());
+            Iterator<Map.Entry<String, String>> iterator = sortedOverlay.entrySet().iterator();
+            Map.Entry<String, String> variable = iterator.hasNext() ? iterator.next() : null;
+            for (int i = 0; i < mNames.length; i++) {
+                boolean overridden = false;
+                while (variable != null && variable.getKey().compareTo(mNames[i]) <= 0) {
+                    if (variable.getKey().equals(mNames[i]))
+                        overridden = true;
+                    addVariable(environ, variable);
+                    variable = iterator.hasNext() ? iterator.next() : null;
+                }
+
+                if (!overridden)
+                    environ.add(mEnviron[i]);
+            }
+
+            while (variable != null) {
+                addVariable(environ, variable);
+                variable = iterator.hasNext() ? iterator.next() : null;
+            }
+
+            return environ.toArray(new String[0]);
+        }
+
+        private static void addVariable(@NonNull List<String> environ, @NonNull Map.Entry<String, String> variable) {
+            if (ShellEnvironmentUtils.isValidEnvironmentVariableNameValuePair(variable.getKey(), variable.getValue(), true))
+                environ.add(variable.getKey() + "=" + variable.getValue());
+        }
+
+    }
+
+}
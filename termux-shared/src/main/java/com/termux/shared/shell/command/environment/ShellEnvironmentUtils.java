@@ -168,7 +168,11 @@ public class ShellEnvironmentUtils {
 
     /** Create HOME directory in environment {@link Map} if set. */
     public static void createHomeDir(@NonNull HashMap<String, String> environment) {
-        String homeDirectory = environment.get(ENV_HOME);
+        createHomeDir(environment.get(ENV_HOME));
+    }
+
+    /** Create HOME directory if set. */
+    public static void createHomeDir(@Nullable String homeDirectory) {
         if (homeDirectory != null && !homeDirectory.isEmpty()) {
             Error error = FileUtils.createDirectoryFile("shell home", homeDirectory);
             if (error != null) {
@@ -8,7 +8,9 @@ import androidx.annotation.Nullable;
 import com.termux.shared.shell.ShellUtils;
 import com.termux.shared.shell.command.ExecutionCommand;
 
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 
 /**
  * Environment for Unix-like systems.
@@ -80,4 +82,29 @@ public abstract class UnixShellEnvironment implements IShellEnvironment {
     public abstract HashMap<String, String> setupShellCommandEnvironment(@NonNull Context currentPackageContext,
                                                                          @NonNull ExecutionCommand executionCommand);
 
+    @NonNull
+    @Override
+    public String[] setupShellCommandEnviron(@NonNull Context currentPackageContext,
+                                             @NonNull ExecutionCommand executionCommand,
+                                             @Nullable HashMap<String, String> additionalEnvironment) {
+        HashMap<String, String> environment = setupShellCommandEnvironment(currentPackageContext, executionCommand);
+        if (additionalEnvironment != null)
+            environment.putAll(additionalEnvironment);
+        List<String> environmentList = ShellEnvironmentUtils.convertEnvironmentToEnviron(environment);
+        Collections.sort(environmentList);
+        return environmentList.toArray(new String[0]);
+    }
+
+    /**
+     * Get the max time in milliseconds for which the environment returned by
+     * {@link #getEnvironment(Context, boolean)} may be cached by {@link ShellEnvironmentCache}.
+     *
+     * @param currentPackageContext The {@link Context} for the current package.
+     * @return Returns {@link ShellEnvironmentCache#MAX_AGE_UNTIL_INVALIDATED} if the environment
+     * can be cached until the cache is invalidated, or {@code 0} if it must not be cached.
+     */
+    public long getEnvironmentCacheMaxAge(@NonNull Context currentPackageContext) {
+        return ShellEnvironmentCache.MAX_AGE_UNTIL_INVALIDATED;
+    }
+
 }
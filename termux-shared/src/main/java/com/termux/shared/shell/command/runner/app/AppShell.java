@@ -12,22 +12,19 @@ import com.google.common.base.Joiner;
 import com.termux.shared.R;
 import com.termux.shared.data.DataUtils;
 import com.termux.shared.shell.command.ExecutionCommand;
-import com.termux.shared.shell.command.environment.ShellEnvironmentUtils;
 import com.termux.shared.shell.command.result.ResultData;
 import com.termux.shared.errors.Errno;
 import com.termux.shared.logger.Logger;
 import com.termux.shared.shell.command.ExecutionCommand.ExecutionState;
 import com.termux.shared.shell.command.environment.IShellEnvironment;
 import com.termux.shared.shell.ShellUtils;
-import com.termux.shared.shell.StreamGobbler;
+import com.termux.shared.shell.StreamCapture;
 
 import java.io.DataOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
-import java.util.Collections;
 import java.util.HashMap;
-import java.util.List;
 
 /**
  * A class that maintains info for background app shells run with {@link Runtime#exec(String[], String[], File)}.
@@ -40,6 +37,13 @@ public final class AppShell {
     private final ExecutionCommand mExecutionCommand;
     private final AppShellClient mAppShellClient;
 
+    /** The stdout and stderr captures of the {@link #mProcess}. */
+    private final StreamCapture mStdout;
+    private final StreamCapture mStderr;
+
+    /** Whether the captured output has been set in the {@link ResultData} of {@link #mExecutionCommand}. */
+    private boolean mResultOutputSet;
+
     private static final String LOG_TAG = "AppShell";
 
     private AppShell(@NonNull final Process process, @NonNull final ExecutionCommand executionCommand,
@@ -47,6 +51,10 @@ public final class AppShell {
         this.mProcess = process;
         this.mExecutionCommand = executionCommand;
         this.mAppShellClient = appShellClient;
+
+        int pid = ShellUtils.getPid(process);
+        this.mStdout = new StreamCapture(pid + "-stdout", process.getInputStream(), executionCommand.backgroundOutputLimit, executionCommand.backgroundCustomLogLevel);
+        this.mStderr = new StreamCapture(pid + "-stderr", process.getErrorStream(), executionCommand.backgroundOutputLimit, executionCommand.backgroundCustomLogLevel);
     }
 
     /**
@@ -105,13 +113,8 @@ public final class AppShell {
         final String[] commandArray = shellEnvironmentClient.setupShellCommandArguments(executionCommand.executable, executionCommand.arguments);
 
         // Setup command environment
-        HashMap<String, String> environment = shellEnvironmentClient.setupShellCommandEnvironment(currentPackageContext,
-            executionCommand);
-        if (additionalEnvironment != null)
-            environment.putAll(additionalEnvironment);
-        List<String> environmentList = ShellEnvironmentUtils.convertEnvironmentToEnviron(environment);
-        Collections.sort(environmentList);
-        String[] environmentArray = environmentList.toArray(new String[0]);
+        String[] environmentArray = shellEnvironmentClient.setupShellCommandEnviron(currentPackageContext,
+            executionCommand, additionalEnvironment);
 
         if (!executionCommand.setState(ExecutionState.EXECUTING)) {
             executionCommand.setStateFailed(Errno.ERRNO_FAILED.getCode(), currentPackageContext.getString(R.string.error_failed_to_execute_app_shell_command, executionCommand.getCommandIdAndLabelLogString()));
@@ -159,7 +162,7 @@ public final class AppShell {
     }
 
     /**
-     * Sets up stdout and stderr readers for the {@link #mProcess} and waits for the process to end.
+     * Starts the stdout and stderr captures for the {@link #mProcess} and waits for the process to end.
      *
      * If the processes finishes, then sets {@link ResultData#stdout}, {@link ResultData#stderr}
      * and {@link ResultData#exitCode} for the {@link #mExecutionCommand} of the {@code appShell}
@@ -174,14 +177,12 @@ public final class AppShell {
 
         mExecutionCommand.resultData.exitCode = null;
 
-        // setup stdin, and stdout and stderr gobblers
+        // setup stdin
         DataOutputStream STDIN = new DataOutputStream(mProcess.getOutputStream());
-        StreamGobbler STDOUT = new StreamGobbler(mExecutionCommand.mPid + "-stdout", mProcess.getInputStream(), mExecutionCommand.resultData.stdout, mExecutionCommand.backgroundCustomLogLevel);
-        StreamGobbler STDERR = new StreamGobbler(mExecutionCommand.mPid + "-stderr", mProcess.getErrorStream(), mExecutionCommand.resultData.stderr, mExecutionCommand.backgroundCustomLogLevel);
 
-        // start gobbling
-        STDOUT.start();
-        STDERR.start();
+        // start capturing stdout and stderr
+        mStdout.start();
+        mStderr.start();
 
         if (!DataUtils.isNullOrEmpty(mExecutionCommand.stdin)) {
             try {
@@ -201,6 +202,7 @@ public final class AppShell {
                     // returning null
                     mExecutionCommand.setStateFailed(Errno.ERRNO_FAILED.getCode(), context.getString(R.string.error_exception_received_while_executing_app_shell_command, mExecutionCommand.getCommandIdAndLabelLogString(), e.getMessage()), e);
                     mExecutionCommand.resultData.exitCode = 1;
+                    setResultOutput();
                     AppShell.processAppShellResult(this, null);
                     kill();
                     return;
@@ -208,7 +210,7 @@ public final class AppShell {
             }
         }
 
-        // wait for our process to finish, while we gobble away in the background
+        // wait for our process to finish, while we capture away in the background
         int exitCode = mProcess.waitFor();
 
         // make sure our threads are done gobbling
@@ -221,10 +223,13 @@ public final class AppShell {
         } catch (IOException e) {
             // might be closed already
         }
-        STDOUT.join();
-        STDERR.join();
+        mStdout.join();
+        mStderr.join();
         mProcess.destroy();
 
+        // Decode the output only once now instead of while the process is running
+        setResultOutput();
+
         // Process result
         if (exitCode == 0)
             Logger.logDebug(LOG_TAG, "The \"" + mExecutionCommand.getCommandIdAndLabelLogString() + "\" AppShell with pid " + mExecutionCommand.mPid + " exited normally");
@@ -265,6 +270,9 @@ public final class AppShell {
         if (mExecutionCommand.setStateFailed(Errno.ERRNO_FAILED.getCode(), context.getString(R.string.error_sending_sigkill_to_process))) {
             if (processResult) {
                 mExecutionCommand.resultData.exitCode = 137; // SIGKILL
+                // Set the output captured until now, since the result is processed before the
+                // process exits
+                setResultOutput();
                 AppShell.processAppShellResult(this, null);
             }
         }
@@ -274,6 +282,23 @@ public final class AppShell {
         }
     }
 
+    /**
+     * Decode the output captured so far by {@link #mStdout} and {@link #mStderr} and append it to
+     * the {@link ResultData#stdout} and {@link ResultData#stderr} of the {@link #mExecutionCommand}.
+     * This is only done on the first call, so that the output is not appended again if the result
+     * was already processed, like when the {@link AppShell} was killed.
+     */
+    private synchronized void setResultOutput() {
+        if (mResultOutputSet) return;
+        mResultOutputSet = true;
+
+        mStdout.appendTo(mExecutionCommand.resultData.stdout);
+        mStderr.appendTo(mExecutionCommand.resultData.stderr);
+        if (mStdout.isTruncated() || mStderr.isTruncated())
+            Logger.logWarn(LOG_TAG, "The \"" + mExecutionCommand.getCommandIdAndLabelLogString() + "\" AppShell with pid " + mExecutionCommand.mPid +
+                " output was truncated, stdout length: " + mStdout.getOutputLength() + ", stderr length: " + mStderr.getOutputLength());
+    }
+
     /**
      * Kill this {@link AppShell} by sending a {@link OsConstants#SIGILL} to its {@link #mProcess}.
      */
@@ -9,6 +9,7 @@ import com.termux.shared.settings.properties.SharedProperties;
 import com.termux.shared.termux.TermuxConstants;
 import com.termux.shared.logger.Logger;
 import com.termux.terminal.TerminalEmulator;
+import com.termux.terminal.TerminalSession;
 import com.termux.view.TerminalView;
 
 import java.io.File;
@@ -18,7 +19,7 @@ import java.util.List;
 import java.util.Set;
 
 /*
- * Version: v0.18.0
+ * Version: v0.23.0
  * SPDX-License-Identifier: MIT
  *
  * Changelog
@@ -80,6 +81,22 @@ import java.util.Set;
  *
  * - 0.18.0 (2022-06-13)
  *      - Add `KEY_DISABLE_FILE_SHARE_RECEIVER` and `KEY_DISABLE_FILE_VIEW_RECEIVER`.
+ *
+ * - 0.19.0 (2026-10-18)
+ *      - Add `KEY_TERMINAL_OUTPUT_BUFFER_SIZE`, `KEY_TERMINAL_OUTPUT_MAX_BUFFER_SIZE`,
+ *          `KEY_TERMINAL_OUTPUT_DRAIN_TIME` and `KEY_TERMINAL_OUTPUT_READER`.
+ *
+ * - 0.20.0 (2026-10-18)
+ *      - Add `VALUE_TERMINAL_OUTPUT_READER_SHARED_POLLER` for `KEY_TERMINAL_OUTPUT_READER`.
+ *
+ * - 0.21.0 (2026-10-18)
+ *      - Add `KEY_TERMINAL_EMULATOR_THREAD`.
+ *
+ * - 0.22.0 (2026-10-18)
+ *      - Add `KEY_TERMUX_AM_SOCKET_SERVER_EPOLL`.
+ *
+ * - 0.23.0 (2026-10-18)
+ *      - Add `KEY_TERMINAL_TRANSCRIPT_SPILL_ROWS`.
  */
 
 /**
@@ -137,11 +154,27 @@ public final class TermuxPropertyConstants {
 
 
 
+    /**
+     * Defines the key for whether terminal output will be processed on a separate thread for each
+     * session instead of on the main thread, so that heavy output does not make the app unresponsive
+     */
+    public static final String KEY_TERMINAL_EMULATOR_THREAD =  "terminal-emulator-thread"; // Default: "terminal-emulator-thread"
+
+
+
     /** Defines the key for whether url links in terminal transcript will automatically open on click or on tap */
     public static final String KEY_TERMINAL_ONCLICK_URL_OPEN =  "terminal-onclick-url-open"; // Default: "terminal-onclick-url-open"
 
 
 
+    /**
+     * Defines the key for whether the {@link TermuxAmSocketServer} should wait on connected clients
+     * with epoll until they send their command, instead of each taking a thread of its pool
+     */
+    public static final String KEY_TERMUX_AM_SOCKET_SERVER_EPOLL =  "termux-am-socket-server-epoll"; // Default: "termux-am-socket-server-epoll"
+
+
+
     /** Defines the key for whether to use black UI */
     @Deprecated
     public static final String KEY_USE_BLACK_UI =  "use-black-ui"; // Default: "use-black-ui"
@@ -247,6 +280,58 @@ public final class TermuxPropertyConstants {
 
 
 
+    /** Defines the key for the initial size in bytes of the buffer terminal output is queued in */
+    public static final String KEY_TERMINAL_OUTPUT_BUFFER_SIZE =  "terminal-output-buffer-size"; // Default: "terminal-output-buffer-size"
+    public static final int IVALUE_TERMINAL_OUTPUT_BUFFER_SIZE_MIN = 1024;
+    public static final int IVALUE_TERMINAL_OUTPUT_BUFFER_SIZE_MAX = 1024 * 1024;
+    public static final int DEFAULT_IVALUE_TERMINAL_OUTPUT_BUFFER_SIZE = TerminalSession.DEFAULT_PTY_READ_BUFFER_SIZE;
+
+    /**
+     * Defines the key for the size in bytes the buffer terminal output is queued in may grow to if
+     * output arrives faster than it can be shown. If less than `terminal-output-buffer-size`, then
+     * the buffer will not grow.
+     */
+    public static final String KEY_TERMINAL_OUTPUT_MAX_BUFFER_SIZE =  "terminal-output-max-buffer-size"; // Default: "terminal-output-max-buffer-size"
+    public static final int IVALUE_TERMINAL_OUTPUT_MAX_BUFFER_SIZE_MIN = 1024;
+    public static final int IVALUE_TERMINAL_OUTPUT_MAX_BUFFER_SIZE_MAX = 4 * 1024 * 1024;
+    public static final int DEFAULT_IVALUE_TERMINAL_OUTPUT_MAX_BUFFER_SIZE = TerminalSession.DEFAULT_PTY_READ_BUFFER_MAX_SIZE;
+
+    /**
+     * Defines the key for the max time in milliseconds to spend showing terminal output at a time
+     * before handling other events like key presses.
+     */
+    public static final String KEY_TERMINAL_OUTPUT_DRAIN_TIME =  "terminal-output-drain-time"; // Default: "terminal-output-drain-time"
+    public static final int IVALUE_TERMINAL_OUTPUT_DRAIN_TIME_MIN = 1;
+    public static final int IVALUE_TERMINAL_OUTPUT_DRAIN_TIME_MAX = 100;
+    public static final int DEFAULT_IVALUE_TERMINAL_OUTPUT_DRAIN_TIME = TerminalSession.DEFAULT_MAX_INPUT_DRAIN_TIME_MILLIS;
+
+
+
+    /** Defines the key for how terminal output is read from the terminal */
+    public static final String KEY_TERMINAL_OUTPUT_READER =  "terminal-output-reader"; // Default: "terminal-output-reader"
+
+    public static final String VALUE_TERMINAL_OUTPUT_READER_STREAM = "stream";
+    public static final String VALUE_TERMINAL_OUTPUT_READER_CHANNEL = "channel";
+    public static final String VALUE_TERMINAL_OUTPUT_READER_DIRECT_CHANNEL = "direct-channel";
+    public static final String VALUE_TERMINAL_OUTPUT_READER_SHARED_POLLER = "shared-poller";
+
+    public static final int IVALUE_TERMINAL_OUTPUT_READER_STREAM = TerminalSession.PTY_READER_MODE_STREAM;
+    public static final int IVALUE_TERMINAL_OUTPUT_READER_CHANNEL = TerminalSession.PTY_READER_MODE_CHANNEL;
+    public static final int IVALUE_TERMINAL_OUTPUT_READER_DIRECT_CHANNEL = TerminalSession.PTY_READER_MODE_DIRECT_CHANNEL;
+    public static final int IVALUE_TERMINAL_OUTPUT_READER_SHARED_POLLER = TerminalSession.PTY_READER_MODE_SHARED_POLLER;
+    public static final int DEFAULT_IVALUE_TERMINAL_OUTPUT_READER = IVALUE_TERMINAL_OUTPUT_READER_STREAM;
+
+    /** Defines the bidirectional map for terminal output readers and their internal values */
+    public static final ImmutableBiMap<String, Integer> MAP_TERMINAL_OUTPUT_READER =
+        new ImmutableBiMap.Builder<String, Integer>()
+            .put(VALUE_TERMINAL_OUTPUT_READER_STREAM, IVALUE_TERMINAL_OUTPUT_READER_STREAM)
+            .put(VALUE_TERMINAL_OUTPUT_READER_CHANNEL, IVALUE_TERMINAL_OUTPUT_READER_CHANNEL)
+            .put(VALUE_TERMINAL_OUTPUT_READER_DIRECT_CHANNEL, IVALUE_TERMINAL_OUTPUT_READER_DIRECT_CHANNEL)
+            .put(VALUE_TERMINAL_OUTPUT_READER_SHARED_POLLER, IVALUE_TERMINAL_OUTPUT_READER_SHARED_POLLER)
+            .build();
+
+
+
     /** Defines the key for the terminal transcript rows */
     public static final String KEY_TERMINAL_TRANSCRIPT_ROWS =  "terminal-transcript-rows"; // Default: "terminal-transcript-rows"
     public static final int IVALUE_TERMINAL_TRANSCRIPT_ROWS_MIN = TerminalEmulator.TERMINAL_TRANSCRIPT_ROWS_MIN;
@@ -255,6 +340,17 @@ public final class TermuxPropertyConstants {
 
 
 
+    /**
+     * Defines the key for the max number of terminal transcript rows to keep on disk in the app
+     * cache once the in-memory transcript is full, instead of dropping them. 0 disables it.
+     */
+    public static final String KEY_TERMINAL_TRANSCRIPT_SPILL_ROWS =  "terminal-transcript-spill-rows"; // Default: "terminal-transcript-spill-rows"
+    public static final int IVALUE_TERMINAL_TRANSCRIPT_SPILL_ROWS_MIN = 0;
+    public static final int IVALUE_TERMINAL_TRANSCRIPT_SPILL_ROWS_MAX = 1000000;
+    public static final int DEFAULT_IVALUE_TERMINAL_TRANSCRIPT_SPILL_ROWS = 0;
+
+
+
 
 
     /* float */
@@ -399,7 +495,9 @@ public final class TermuxPropertyConstants {
         KEY_EXTRA_KEYS_TEXT_ALL_CAPS,
         KEY_HIDE_SOFT_KEYBOARD_ON_STARTUP,
         KEY_RUN_TERMUX_AM_SOCKET_SERVER,
+        KEY_TERMINAL_EMULATOR_THREAD,
         KEY_TERMINAL_ONCLICK_URL_OPEN,
+        KEY_TERMUX_AM_SOCKET_SERVER_EPOLL,
         KEY_USE_CTRL_SPACE_WORKAROUND,
         KEY_USE_FULLSCREEN,
         KEY_USE_FULLSCREEN_WORKAROUND,
@@ -412,7 +510,12 @@ public final class TermuxPropertyConstants {
         KEY_TERMINAL_CURSOR_STYLE,
         KEY_TERMINAL_MARGIN_HORIZONTAL,
         KEY_TERMINAL_MARGIN_VERTICAL,
+        KEY_TERMINAL_OUTPUT_BUFFER_SIZE,
+        KEY_TERMINAL_OUTPUT_DRAIN_TIME,
+        KEY_TERMINAL_OUTPUT_MAX_BUFFER_SIZE,
+        KEY_TERMINAL_OUTPUT_READER,
         KEY_TERMINAL_TRANSCRIPT_ROWS,
+        KEY_TERMINAL_TRANSCRIPT_SPILL_ROWS,
 
         /* float */
         KEY_TERMINAL_TOOLBAR_HEIGHT_SCALE_FACTOR,
@@ -445,7 +548,9 @@ public final class TermuxPropertyConstants {
         KEY_DISABLE_TERMINAL_SESSION_CHANGE_TOAST,
         KEY_ENFORCE_CHAR_BASED_INPUT,
         KEY_HIDE_SOFT_KEYBOARD_ON_STARTUP,
+        KEY_TERMINAL_EMULATOR_THREAD,
         KEY_TERMINAL_ONCLICK_URL_OPEN,
+        KEY_TERMUX_AM_SOCKET_SERVER_EPOLL,
         KEY_USE_CTRL_SPACE_WORKAROUND,
         KEY_USE_FULLSCREEN,
         KEY_USE_FULLSCREEN_WORKAROUND,
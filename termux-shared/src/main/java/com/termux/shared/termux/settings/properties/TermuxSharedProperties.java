@@ -8,6 +8,7 @@ import com.termux.shared.logger.Logger;
 import com.termux.shared.data.DataUtils;
 import com.termux.shared.settings.properties.SharedProperties;
 import com.termux.shared.settings.properties.SharedPropertiesParser;
+import com.termux.shared.shell.command.environment.ShellEnvironmentCache;
 import com.termux.shared.termux.TermuxConstants;
 
 import java.io.File;
@@ -53,6 +54,9 @@ public abstract class TermuxSharedProperties {
         mSharedProperties.loadPropertiesFromDisk();
         dumpPropertiesToLog();
         dumpInternalPropertiesToLog();
+
+        // Shell environment may depend on properties, like the am socket server being enabled
+        ShellEnvironmentCache.invalidate("termux properties were reloaded");
     }
 
 
@@ -271,8 +275,18 @@ public abstract class TermuxSharedProperties {
                 return (int) getTerminalMarginHorizontalInternalPropertyValueFromValue(value);
             case TermuxPropertyConstants.KEY_TERMINAL_MARGIN_VERTICAL:
                 return (int) getTerminalMarginVerticalInternalPropertyValueFromValue(value);
+            case TermuxPropertyConstants.KEY_TERMINAL_OUTPUT_BUFFER_SIZE:
+                return (int) getTerminalOutputBufferSizeInternalPropertyValueFromValue(value);
+            case TermuxPropertyConstants.KEY_TERMINAL_OUTPUT_DRAIN_TIME:
+                return (int) getTerminalOutputDrainTimeInternalPropertyValueFromValue(value);
+            case TermuxPropertyConstants.KEY_TERMINAL_OUTPUT_MAX_BUFFER_SIZE:
+                return (int) getTerminalOutputMaxBufferSizeInternalPropertyValueFromValue(value);
+            case TermuxPropertyConstants.KEY_TERMINAL_OUTPUT_READER:
+                return (int) getTerminalOutputReaderInternalPropertyValueFromValue(value);
             case TermuxPropertyConstants.KEY_TERMINAL_TRANSCRIPT_ROWS:
                 return (int) getTerminalTranscriptRowsInternalPropertyValueFromValue(value);
+            case TermuxPropertyConstants.KEY_TERMINAL_TRANSCRIPT_SPILL_ROWS:
+                return (int) getTerminalTranscriptSpillRowsInternalPropertyValueFromValue(value);
 
             /* float */
             case TermuxPropertyConstants.KEY_TERMINAL_TOOLBAR_HEIGHT_SCALE_FACTOR:
@@ -420,6 +434,72 @@ public abstract class TermuxSharedProperties {
             true, true, LOG_TAG);
     }
 
+    /**
+     * Returns the int for the value if its not null and is between
+     * {@link TermuxPropertyConstants#IVALUE_TERMINAL_OUTPUT_BUFFER_SIZE_MIN} and
+     * {@link TermuxPropertyConstants#IVALUE_TERMINAL_OUTPUT_BUFFER_SIZE_MAX},
+     * otherwise returns {@link TermuxPropertyConstants#DEFAULT_IVALUE_TERMINAL_OUTPUT_BUFFER_SIZE}.
+     *
+     * @param value The {@link String} value to convert.
+     * @return Returns the internal value for value.
+     */
+    public static int getTerminalOutputBufferSizeInternalPropertyValueFromValue(String value) {
+        return SharedProperties.getDefaultIfNotInRange(TermuxPropertyConstants.KEY_TERMINAL_OUTPUT_BUFFER_SIZE,
+            DataUtils.getIntFromString(value, TermuxPropertyConstants.DEFAULT_IVALUE_TERMINAL_OUTPUT_BUFFER_SIZE),
+            TermuxPropertyConstants.DEFAULT_IVALUE_TERMINAL_OUTPUT_BUFFER_SIZE,
+            TermuxPropertyConstants.IVALUE_TERMINAL_OUTPUT_BUFFER_SIZE_MIN,
+            TermuxPropertyConstants.IVALUE_TERMINAL_OUTPUT_BUFFER_SIZE_MAX,
+            true, true, LOG_TAG);
+    }
+
+    /**
+     * Returns the int for the value if its not null and is between
+     * {@link TermuxPropertyConstants#IVALUE_TERMINAL_OUTPUT_DRAIN_TIME_MIN} and
+     * {@link TermuxPropertyConstants#IVALUE_TERMINAL_OUTPUT_DRAIN_TIME_MAX},
+     * otherwise returns {@link TermuxPropertyConstants#DEFAULT_IVALUE_TERMINAL_OUTPUT_DRAIN_TIME}.
+     *
+     * @param value The {@link String} value to convert.
+     * @return Returns the internal value for value.
+     */
+    public static int getTerminalOutputDrainTimeInternalPropertyValueFromValue(String value) {
+        return SharedProperties.getDefaultIfNotInRange(TermuxPropertyConstants.KEY_TERMINAL_OUTPUT_DRAIN_TIME,
+            DataUtils.getIntFromString(value, TermuxPropertyConstants.DEFAULT_IVALUE_TERMINAL_OUTPUT_DRAIN_TIME),
+            TermuxPropertyConstants.DEFAULT_IVALUE_TERMINAL_OUTPUT_DRAIN_TIME,
+            TermuxPropertyConstants.IVALUE_TERMINAL_OUTPUT_DRAIN_TIME_MIN,
+            TermuxPropertyConstants.IVALUE_TERMINAL_OUTPUT_DRAIN_TIME_MAX,
+            true, true, LOG_TAG);
+    }
+
+    /**
+     * Returns the int for the value if its not null and is between
+     * {@link TermuxPropertyConstants#IVALUE_TERMINAL_OUTPUT_MAX_BUFFER_SIZE_MIN} and
+     * {@link TermuxPropertyConstants#IVALUE_TERMINAL_OUTPUT_MAX_BUFFER_SIZE_MAX},
+     * otherwise returns {@link TermuxPropertyConstants#DEFAULT_IVALUE_TERMINAL_OUTPUT_MAX_BUFFER_SIZE}.
+     *
+     * @param value The {@link String} value to convert.
+     * @return Returns the internal value for value.
+     */
+    public static int getTerminalOutputMaxBufferSizeInternalPropertyValueFromValue(String value) {
+        return SharedProperties.getDefaultIfNotInRange(TermuxPropertyConstants.KEY_TERMINAL_OUTPUT_MAX_BUFFER_SIZE,
+            DataUtils.getIntFromString(value, TermuxPropertyConstants.DEFAULT_IVALUE_TERMINAL_OUTPUT_MAX_BUFFER_SIZE),
+            TermuxPropertyConstants.DEFAULT_IVALUE_TERMINAL_OUTPUT_MAX_BUFFER_SIZE,
+            TermuxPropertyConstants.IVALUE_TERMINAL_OUTPUT_MAX_BUFFER_SIZE_MIN,
+            TermuxPropertyConstants.IVALUE_TERMINAL_OUTPUT_MAX_BUFFER_SIZE_MAX,
+            true, true, LOG_TAG);
+    }
+
+    /**
+     * Returns the internal value after mapping it based on
+     * {@link TermuxPropertyConstants#MAP_TERMINAL_OUTPUT_READER} if the value is not {@code null}
+     * and is valid, otherwise returns {@link TermuxPropertyConstants#DEFAULT_IVALUE_TERMINAL_OUTPUT_READER}.
+     *
+     * @param value The {@link String} value to convert.
+     * @return Returns the internal value for value.
+     */
+    public static int getTerminalOutputReaderInternalPropertyValueFromValue(String value) {
+        return (int) SharedProperties.getDefaultIfNotInMap(TermuxPropertyConstants.KEY_TERMINAL_OUTPUT_READER, TermuxPropertyConstants.MAP_TERMINAL_OUTPUT_READER, SharedProperties.toLowerCase(value), TermuxPropertyConstants.DEFAULT_IVALUE_TERMINAL_OUTPUT_READER, true, LOG_TAG);
+    }
+
     /**
      * Returns the int for the value if its not null and is between
      * {@link TermuxPropertyConstants#IVALUE_TERMINAL_TRANSCRIPT_ROWS_MIN} and
@@ -438,6 +518,24 @@ public abstract class TermuxSharedProperties {
             true, true, LOG_TAG);
     }
 
+    /**
+     * Returns the int for the value if its not null and is between
+     * {@link TermuxPropertyConstants#IVALUE_TERMINAL_TRANSCRIPT_SPILL_ROWS_MIN} and
+     * {@link TermuxPropertyConstants#IVALUE_TERMINAL_TRANSCRIPT_SPILL_ROWS_MAX},
+     * otherwise returns {@link TermuxPropertyConstants#DEFAULT_IVALUE_TERMINAL_TRANSCRIPT_SPILL_ROWS}.
+     *
+     * @param value The {@link String} value to convert.
+     * @return Returns the internal value for value.
+     */
+    public static int getTerminalTranscriptSpillRowsInternalPropertyValueFromValue(String value) {
+        return SharedProperties.getDefaultIfNotInRange(TermuxPropertyConstants.KEY_TERMINAL_TRANSCRIPT_SPILL_ROWS,
+            DataUtils.getIntFromString(value, TermuxPropertyConstants.DEFAULT_IVALUE_TERMINAL_TRANSCRIPT_SPILL_ROWS),
+            TermuxPropertyConstants.DEFAULT_IVALUE_TERMINAL_TRANSCRIPT_SPILL_ROWS,
+            TermuxPropertyConstants.IVALUE_TERMINAL_TRANSCRIPT_SPILL_ROWS_MIN,
+            TermuxPropertyConstants.IVALUE_TERMINAL_TRANSCRIPT_SPILL_ROWS_MAX,
+            true, true, LOG_TAG);
+    }
+
     /**
      * Returns the int for the value if its not null and is between
      * {@link TermuxPropertyConstants#IVALUE_TERMINAL_TOOLBAR_HEIGHT_SCALE_FACTOR_MIN} and
@@ -610,10 +708,18 @@ public abstract class TermuxSharedProperties {
         return (boolean) getInternalPropertyValue(TermuxPropertyConstants.KEY_RUN_TERMUX_AM_SOCKET_SERVER, true);
     }
 
+    public boolean shouldUseTerminalEmulatorThread() {
+        return (boolean) getInternalPropertyValue(TermuxPropertyConstants.KEY_TERMINAL_EMULATOR_THREAD, true);
+    }
+
     public boolean shouldOpenTerminalTranscriptURLOnClick() {
         return (boolean) getInternalPropertyValue(TermuxPropertyConstants.KEY_TERMINAL_ONCLICK_URL_OPEN, true);
     }
 
+    public boolean shouldUseTermuxAmSocketServerEpoll() {
+        return (boolean) getInternalPropertyValue(TermuxPropertyConstants.KEY_TERMUX_AM_SOCKET_SERVER_EPOLL, true);
+    }
+
     public boolean isUsingCtrlSpaceWorkaround() {
         return (boolean) getInternalPropertyValue(TermuxPropertyConstants.KEY_USE_CTRL_SPACE_WORKAROUND, true);
     }
@@ -650,10 +756,30 @@ public abstract class TermuxSharedProperties {
         return (int) getInternalPropertyValue(TermuxPropertyConstants.KEY_TERMINAL_MARGIN_VERTICAL, true);
     }
 
+    public int getTerminalOutputBufferSize() {
+        return (int) getInternalPropertyValue(TermuxPropertyConstants.KEY_TERMINAL_OUTPUT_BUFFER_SIZE, true);
+    }
+
+    public int getTerminalOutputDrainTime() {
+        return (int) getInternalPropertyValue(TermuxPropertyConstants.KEY_TERMINAL_OUTPUT_DRAIN_TIME, true);
+    }
+
+    public int getTerminalOutputMaxBufferSize() {
+        return (int) getInternalPropertyValue(TermuxPropertyConstants.KEY_TERMINAL_OUTPUT_MAX_BUFFER_SIZE, true);
+    }
+
+    public int getTerminalOutputReader() {
+        return (int) getInternalPropertyValue(TermuxPropertyConstants.KEY_TERMINAL_OUTPUT_READER, true);
+    }
+
     public int getTerminalTranscriptRows() {
         return (int) getInternalPropertyValue(TermuxPropertyConstants.KEY_TERMINAL_TRANSCRIPT_ROWS, true);
     }
 
+    public int getTerminalTranscriptSpillRows() {
+        return (int) getInternalPropertyValue(TermuxPropertyConstants.KEY_TERMINAL_TRANSCRIPT_SPILL_ROWS, true);
+    }
+
     public float getTerminalToolbarHeightScaleFactor() {
         return (float) getInternalPropertyValue(TermuxPropertyConstants.KEY_TERMINAL_TOOLBAR_HEIGHT_SCALE_FACTOR, true);
     }
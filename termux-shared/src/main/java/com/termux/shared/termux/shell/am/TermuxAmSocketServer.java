@@ -49,6 +49,10 @@ import com.termux.shared.termux.shell.command.environment.TermuxAppShellEnvironm
  * adding the prop with value "false" to the "~/.termux/termux.properties" file. Changes
  * require termux-app to be force stopped and restarted.
  *
+ * If {@link TermuxPropertyConstants#KEY_TERMUX_AM_SOCKET_SERVER_EPOLL} is `true`, then connected
+ * clients are waited on with epoll until they send their command, check
+ * {@link LocalSocketRunConfig#isEpollClientListenerEnabled()}.
+ *
  * The current state of the server can be checked with the
  * {@link TermuxAppShellEnvironment#ENV_TERMUX_APP__AM_SOCKET_SERVER_ENABLED} env variable, which is exported
  * for all shell sessions and tasks.
@@ -104,6 +108,8 @@ public class TermuxAmSocketServer {
 
         AmSocketServerRunConfig amSocketServerRunConfig = new AmSocketServerRunConfig(TITLE,
             TermuxConstants.TERMUX_APP.TERMUX_AM_SOCKET_FILE_PATH, new TermuxAmSocketServerClient());
+        amSocketServerRunConfig.setEpollClientListenerEnabled(
+            TermuxAppSharedProperties.getProperties().shouldUseTermuxAmSocketServerEpoll());
 
         termuxAmSocketServer = AmSocketServer.start(context, amSocketServerRunConfig);
     }
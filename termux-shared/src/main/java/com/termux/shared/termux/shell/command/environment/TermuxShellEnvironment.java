@@ -9,6 +9,7 @@ import com.termux.shared.file.FileUtils;
 import com.termux.shared.logger.Logger;
 import com.termux.shared.shell.command.ExecutionCommand;
 import com.termux.shared.shell.command.environment.AndroidShellEnvironment;
+import com.termux.shared.shell.command.environment.ShellEnvironmentCache;
 import com.termux.shared.shell.command.environment.ShellEnvironmentUtils;
 import com.termux.shared.shell.command.environment.ShellCommandShellEnvironment;
 import com.termux.shared.termux.TermuxBootstrap;
@@ -28,6 +29,14 @@ public class TermuxShellEnvironment extends AndroidShellEnvironment {
     /** Environment variable for the termux {@link TermuxConstants#TERMUX_PREFIX_DIR_PATH}. */
     public static final String ENV_PREFIX = "PREFIX";
 
+    /**
+     * The max time in milliseconds for which the environment is cached in {@link ShellEnvironmentCache}
+     * for packages other than the Termux app. They do not receive the package update events on
+     * which the cache is invalidated in the Termux app, and the Termux app may be updated or
+     * restarted with a different pid in the background.
+     */
+    public static final long PLUGIN_ENVIRONMENT_CACHE_MAX_AGE = 10000;
+
     public TermuxShellEnvironment() {
         super();
         shellCommandShellEnvironment = new TermuxShellCommandShellEnvironment();
@@ -96,6 +105,15 @@ public class TermuxShellEnvironment extends AndroidShellEnvironment {
     }
 
 
+    @Override
+    public long getEnvironmentCacheMaxAge(@NonNull Context currentPackageContext) {
+        if (TermuxConstants.TERMUX_PACKAGE_NAME.equals(currentPackageContext.getPackageName()))
+            return ShellEnvironmentCache.MAX_AGE_UNTIL_INVALIDATED;
+        else
+            return PLUGIN_ENVIRONMENT_CACHE_MAX_AGE;
+    }
+
+
     @NonNull
     @Override
     public String getDefaultWorkingDirectoryPath() {
@@ -0,0 +1,147 @@
+package com.termux.shared.shell;
+
+import com.termux.shared.logger.Logger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.Queue;
+
+public class StreamCaptureTest {
+
+    /** An {@link InputStream} returning each chunk from a separate read. */
+    private static class ChunkedInputStream extends InputStream {
+
+        private final Queue<byte[]> mChunks;
+
+        ChunkedInputStream(byte[]... chunks) {
+            mChunks = new LinkedList<>(Arrays.asList(chunks));
+        }
+
+        @Override
+        public int read() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) {
+            byte[] chunk = mChunks.poll();
+            if (chunk == null) return -1;
+            Assert.assertTrue(chunk.length <= length);
+            System.arraycopy(chunk, 0, buffer, offset, chunk.length);
+            return chunk.length;
+        }
+
+    }
+
+    /** Capture the chunks encoded as UTF-8 on the current thread. */
+    private static StreamCapture capture(int limit, String... chunks) {
+        byte[][] chunkBytes = new byte[chunks.length][];
+        for (int i = 0; i < chunks.length; i++)
+            chunkBytes[i] = chunks[i].getBytes(StandardCharsets.UTF_8);
+        return captureBytes(limit, chunkBytes);
+    }
+
+    /** Capture the chunks on the current thread, each returned by a separate read. */
+    private static StreamCapture captureBytes(int limit, byte[]... chunks) {
+        StreamCapture capture = new StreamCapture("test", new ChunkedInputStream(chunks), limit, Logger.LOG_LEVEL_OFF);
+        capture.run();
+        return capture;
+    }
+
+    private static String truncated(long bytes) {
+        return "\n\n(truncated " + bytes + " bytes)\n\n";
+    }
+
+    @Test
+    public void testOutputWithinLimit() {
+        StreamCapture capture = capture(100, "hello ", "world");
+        Assert.assertEquals("hello world", capture.getOutput());
+        Assert.assertFalse(capture.isTruncated());
+        Assert.assertEquals(11, capture.getOutputLength());
+
+        StringBuilder output = new StringBuilder("out: ");
+        capture.appendTo(output);
+        Assert.assertEquals("out: hello world", output.toString());
+    }
+
+    @Test
+    public void testTailWrapsAround() {
+        // The head keeps 5 bytes and the tail the last 5 bytes, with the tail wrapping around its end
+        StreamCapture capture = capture(10, "abcdefg", "hij", "kl", "mno");
+        Assert.assertEquals("abcde" + truncated(5) + "klmno", capture.getOutput());
+        Assert.assertTrue(capture.isTruncated());
+        Assert.assertEquals(15, capture.getOutputLength());
+
+        capture = capture(10, "abcde", "fgh", "ij", "k");
+        Assert.assertEquals("abcde" + truncated(1) + "ghijk", capture.getOutput());
+    }
+
+    @Test
+    public void testChunkAtLeastTailLimit() {
+        // A chunk of exactly the tail limit after the head is full fills the tail without dropping anything
+        StreamCapture capture = capture(6, "abcdef");
+        Assert.assertEquals("abcdef", capture.getOutput());
+        Assert.assertFalse(capture.isTruncated());
+
+        // A longer chunk replaces the whole tail
+        capture = capture(6, "abcdef", "ghijklm");
+        Assert.assertEquals("abc" + truncated(7) + "klm", capture.getOutput());
+        Assert.assertEquals(13, capture.getOutputLength());
+
+        capture = capture(6, "abcd", "efghijk");
+        Assert.assertEquals("abc" + truncated(5) + "ijk", capture.getOutput());
+    }
+
+    @Test
+    public void testLimitZero() {
+        StreamCapture capture = capture(0, "abc", "de");
+        Assert.assertEquals(truncated(5), capture.getOutput());
+        Assert.assertTrue(capture.isTruncated());
+        Assert.assertEquals(5, capture.getOutputLength());
+
+        capture = capture(0);
+        Assert.assertEquals("", capture.getOutput());
+        Assert.assertFalse(capture.isTruncated());
+    }
+
+    @Test
+    public void testLimitOne() {
+        // There is no head, only a tail of 1 byte
+        StreamCapture capture = capture(1, "abc", "d");
+        Assert.assertEquals(truncated(3) + "d", capture.getOutput());
+        Assert.assertEquals(4, capture.getOutputLength());
+
+        capture = capture(1, "a");
+        Assert.assertEquals("a", capture.getOutput());
+        Assert.assertFalse(capture.isTruncated());
+    }
+
+    @Test
+    public void testTruncationAtUtf8Boundaries() {
+        // "a" + "é" (2 bytes) + "€" (3 bytes) with the head ending inside "é" and the tail starting inside "€"
+        StreamCapture capture = capture(4, "aé€");
+        Assert.assertEquals("a" + truncated(5), capture.getOutput());
+        Assert.assertEquals(6, capture.getOutputLength());
+
+        // "€" split between the head and the tail, with nothing dropped, is decoded as a whole
+        capture = capture(4, "a€");
+        Assert.assertEquals("a€", capture.getOutput());
+        Assert.assertFalse(capture.isTruncated());
+
+        // A 4 byte character at the end of the head is dropped as a whole
+        capture = capture(10, "abc😀", "defghijk");
+        Assert.assertEquals("abc" + truncated(7) + "ghijk", capture.getOutput());
+
+        // The tail starting inside a character only keeps the complete characters after it
+        byte[] euro = "€".getBytes(StandardCharsets.UTF_8);
+        capture = captureBytes(4, "ab".getBytes(StandardCharsets.UTF_8), "cd".getBytes(StandardCharsets.UTF_8),
+            new byte[]{euro[0]}, new byte[]{euro[1], euro[2], 'e'});
+        Assert.assertEquals("ab" + truncated(5) + "e", capture.getOutput());
+    }
+
+}
@@ -0,0 +1,317 @@
+package com.termux.shared.shell.am;
+
+import androidx.annotation.NonNull;
+
+import com.termux.shared.errors.Error;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.PushbackInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.termux.shared.shell.am.AmSocketServerFramedProtocol.*;
+
+public class AmSocketServerFramedProtocolTest {
+
+    /** A {@link RequestHandler} that runs the requests with a function and records errors. */
+    private static class TestRequestHandler implements RequestHandler {
+
+        interface Runner {
+            AmSocketServer.AmCommandResult run(int requestId, String amCommandString) throws Exception;
+        }
+
+        private final Runner mRunner;
+        final List<String> mAmCommands = new CopyOnWriteArrayList<>();
+        final List<Error> mErrors = new CopyOnWriteArrayList<>();
+
+        TestRequestHandler(Runner runner) {
+            mRunner = runner;
+        }
+
+        @NonNull
+        @Override
+        public AmSocketServer.AmCommandResult runRequest(int requestId, @NonNull String amCommandString) {
+            mAmCommands.add(amCommandString);
+            try {
+                return mRunner.run(requestId, amCommandString);
+            } catch (Exception e) {
+                return new AmSocketServer.AmCommandResult(2, null, e.toString());
+            }
+        }
+
+        @Override
+        public void onError(@NonNull Error error) {
+            mErrors.add(error);
+        }
+
+    }
+
+    /** Echo the am command back in the stdout of the result. */
+    private static final TestRequestHandler.Runner ECHO = (requestId, amCommandString) ->
+        new AmSocketServer.AmCommandResult(0, amCommandString, "stderr " + requestId);
+
+    private static byte[] requests(String... amCommands) throws IOException {
+        ByteArrayOutputStream requests = new ByteArrayOutputStream();
+        for (int i = 0; i < amCommands.length; i++)
+            writeRequest(requests, i, amCommands[i].getBytes(StandardCharsets.UTF_8));
+        return requests.toByteArray();
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        for (byte[] part : parts)
+            bytes.write(part, 0, part.length);
+        return bytes.toByteArray();
+    }
+
+    private static Error processRequests(byte[] requests, ByteArrayOutputStream responses, RequestHandler requestHandler) {
+        return AmSocketServerFramedProtocol.processRequests(new DataInputStream(new ByteArrayInputStream(requests)),
+            responses, requestHandler, Thread::new);
+    }
+
+    private static List<Response> readResponses(ByteArrayOutputStream responses) throws IOException {
+        DataInputStream inputStream = new DataInputStream(new ByteArrayInputStream(responses.toByteArray()));
+        List<Response> responseList = new ArrayList<>();
+        Response response;
+        while ((response = readResponse(inputStream)) != null)
+            responseList.add(response);
+        return responseList;
+    }
+
+    @Test
+    public void testFramedProtocolMagicIsSniffedFromFirstByte() throws IOException {
+        ByteArrayOutputStream handshake = new ByteArrayOutputStream();
+        writeClientHandshake(handshake);
+        PushbackInputStream inputStream = new PushbackInputStream(new ByteArrayInputStream(handshake.toByteArray()));
+        Assert.assertTrue(readFramedProtocolMagic(inputStream));
+        Assert.assertEquals(FRAMED_PROTOCOL_VERSION, readClientVersion(inputStream));
+        Assert.assertEquals(-1, readClientVersion(inputStream));
+
+        // The first byte of a one-shot am command is pushed back
+        byte[] amCommand = "broadcast -a com.termux.TEST".getBytes(StandardCharsets.UTF_8);
+        inputStream = new PushbackInputStream(new ByteArrayInputStream(amCommand));
+        Assert.assertFalse(readFramedProtocolMagic(inputStream));
+        byte[] read = new byte[amCommand.length];
+        new DataInputStream(inputStream).readFully(read);
+        Assert.assertArrayEquals(amCommand, read);
+        Assert.assertEquals(-1, inputStream.read());
+
+        inputStream = new PushbackInputStream(new ByteArrayInputStream(new byte[0]));
+        Assert.assertFalse(readFramedProtocolMagic(inputStream));
+        Assert.assertEquals(-1, inputStream.read());
+    }
+
+    @Test
+    public void testServerHandshake() throws IOException {
+        ByteArrayOutputStream handshake = new ByteArrayOutputStream();
+        writeServerHandshake(handshake);
+        Assert.assertArrayEquals(new byte[]{FRAMED_PROTOCOL_MAGIC, FRAMED_PROTOCOL_VERSION}, handshake.toByteArray());
+        Assert.assertEquals(FRAMED_PROTOCOL_VERSION, readServerVersion(new ByteArrayInputStream(handshake.toByteArray())));
+
+        // Servers that do not support the framed protocol reply with a one-shot result
+        byte[] oneShotResult = "1\0\0error".getBytes(StandardCharsets.UTF_8);
+        Assert.assertEquals(-1, readServerVersion(new ByteArrayInputStream(oneShotResult)));
+        Assert.assertEquals(-1, readServerVersion(new ByteArrayInputStream(new byte[0])));
+    }
+
+    @Test
+    public void testRequestFrames() throws IOException {
+        ByteArrayOutputStream requests = new ByteArrayOutputStream();
+        writeRequest(requests, 0, new byte[0]);
+        writeRequest(requests, -2, "start -n com.termux/.app.TermuxActivity".getBytes(StandardCharsets.UTF_8));
+        writeRequest(requests, Integer.MAX_VALUE, "broadcast --es extra 'é€😀'".getBytes(StandardCharsets.UTF_8));
+
+        byte[] bytes = requests.toByteArray();
+        Assert.assertArrayEquals(new byte[]{0, 0, 0, 0, 0, 0, 0, 0}, Arrays.copyOf(bytes, 8));
+        Assert.assertArrayEquals(new byte[]{-1, -1, -1, -2, 0, 0, 0, 39}, Arrays.copyOfRange(bytes, 8, 16));
+
+        DataInputStream inputStream = new DataInputStream(new ByteArrayInputStream(bytes));
+        Request request = readRequest(inputStream);
+        Assert.assertEquals(0, request.requestId);
+        Assert.assertEquals("", request.amCommandString);
+
+        request = readRequest(inputStream);
+        Assert.assertEquals(-2, request.requestId);
+        Assert.assertEquals(39, request.length);
+        Assert.assertEquals("start -n com.termux/.app.TermuxActivity", request.amCommandString);
+
+        request = readRequest(inputStream);
+        Assert.assertEquals(Integer.MAX_VALUE, request.requestId);
+        Assert.assertEquals("broadcast --es extra 'é€😀'", request.amCommandString);
+
+        Assert.assertNull(readRequest(inputStream));
+    }
+
+    @Test
+    public void testResponseFrames() throws IOException {
+        ByteArrayOutputStream responses = new ByteArrayOutputStream();
+        writeResponse(responses, 5, 0, "out", null);
+        writeResponse(responses, -1, 255, null, "€rr");
+
+        List<Response> responseList = readResponses(responses);
+        Assert.assertEquals(2, responseList.size());
+        Assert.assertEquals(5, responseList.get(0).requestId);
+        Assert.assertEquals(0, responseList.get(0).exitCode);
+        Assert.assertEquals("out", responseList.get(0).stdout);
+        Assert.assertEquals("", responseList.get(0).stderr);
+        Assert.assertEquals(-1, responseList.get(1).requestId);
+        Assert.assertEquals(255, responseList.get(1).exitCode);
+        Assert.assertEquals("", responseList.get(1).stdout);
+        Assert.assertEquals("€rr", responseList.get(1).stderr);
+    }
+
+    @Test
+    public void testTruncatedRequestFrames() throws IOException {
+        byte[] request = requests("broadcast -a com.termux.TEST");
+        // Truncated in the request id, in the length and in the am command
+        for (int length : new int[]{2, 6, request.length - 1}) {
+            DataInputStream inputStream = new DataInputStream(new ByteArrayInputStream(Arrays.copyOf(request, length)));
+            try {
+                readRequest(inputStream);
+                Assert.fail("No exception for request truncated to " + length + " bytes");
+            } catch (EOFException e) {
+                // Expected
+            }
+        }
+
+        // The requests before the truncated one are still run and answered
+        byte[] requests = requests("first", "second");
+        TestRequestHandler requestHandler = new TestRequestHandler(ECHO);
+        ByteArrayOutputStream responses = new ByteArrayOutputStream();
+        Error error = processRequests(Arrays.copyOf(requests, requests.length - 1), responses, requestHandler);
+        Assert.assertNotNull(error);
+        Assert.assertEquals(AmSocketServerErrno.ERRNO_READ_FRAMED_REQUEST_FAILED_WITH_EXCEPTION.getCode(), (int) error.getCode());
+
+        List<Response> responseList = readResponses(responses);
+        Assert.assertEquals(1, responseList.size());
+        Assert.assertEquals(0, responseList.get(0).requestId);
+        Assert.assertEquals("first", responseList.get(0).stdout);
+        Assert.assertEquals(Arrays.asList("first"), requestHandler.mAmCommands);
+    }
+
+    @Test
+    public void testInvalidRequestLengths() throws IOException {
+        for (int length : new int[]{-1, Integer.MIN_VALUE, MAX_FRAMED_REQUEST_LENGTH + 1}) {
+            ByteArrayOutputStream invalidRequest = new ByteArrayOutputStream();
+            DataOutputStream outputStream = new DataOutputStream(invalidRequest);
+            outputStream.writeInt(7);
+            outputStream.writeInt(length);
+
+            Request request = readRequest(new DataInputStream(new ByteArrayInputStream(invalidRequest.toByteArray())));
+            Assert.assertEquals(7, request.requestId);
+            Assert.assertEquals(length, request.length);
+            Assert.assertNull(request.amCommandString);
+
+            // The invalid request is answered with an error and nothing after it is read
+            TestRequestHandler requestHandler = new TestRequestHandler(ECHO);
+            ByteArrayOutputStream responses = new ByteArrayOutputStream();
+            Error error = processRequests(concat(requests("first"), invalidRequest.toByteArray(), requests("after")),
+                responses, requestHandler);
+            Assert.assertNotNull(error);
+            Assert.assertEquals(AmSocketServerErrno.ERRNO_INVALID_FRAMED_REQUEST_LENGTH.getCode(), (int) error.getCode());
+            Assert.assertEquals(Arrays.asList("first"), requestHandler.mAmCommands);
+
+            // The error response may be sent before the response of the first request
+            List<Response> responseList = readResponses(responses);
+            Assert.assertEquals(2, responseList.size());
+            Response errorResponse = responseList.get(0).requestId == 7 ? responseList.get(0) : responseList.get(1);
+            Response firstResponse = responseList.get(0) == errorResponse ? responseList.get(1) : responseList.get(0);
+            Assert.assertEquals(0, firstResponse.requestId);
+            Assert.assertEquals(7, errorResponse.requestId);
+            Assert.assertEquals(1, errorResponse.exitCode);
+            Assert.assertTrue(errorResponse.stderr, errorResponse.stderr.contains(String.valueOf(length)));
+        }
+
+        // The max length is valid
+        ByteArrayOutputStream requests = new ByteArrayOutputStream();
+        writeRequest(requests, 1, new byte[MAX_FRAMED_REQUEST_LENGTH]);
+        Request request = readRequest(new DataInputStream(new ByteArrayInputStream(requests.toByteArray())));
+        Assert.assertEquals(MAX_FRAMED_REQUEST_LENGTH, request.amCommandString.length());
+    }
+
+    @Test
+    public void testResponsesAreSentOutOfOrder() throws IOException {
+        // The first request is only done once the response of the second one has been written
+        final CountDownLatch secondResponseWritten = new CountDownLatch(1);
+        ByteArrayOutputStream responses = new ByteArrayOutputStream() {
+            @Override
+            public synchronized void write(byte[] bytes, int offset, int length) {
+                super.write(bytes, offset, length);
+                secondResponseWritten.countDown();
+            }
+        };
+
+        TestRequestHandler requestHandler = new TestRequestHandler((requestId, amCommandString) -> {
+            if (requestId == 0)
+                Assert.assertTrue(secondResponseWritten.await(10, TimeUnit.SECONDS));
+            return ECHO.run(requestId, amCommandString);
+        });
+
+        Assert.assertNull(processRequests(requests("slow", "fast"), responses, requestHandler));
+        Assert.assertTrue(requestHandler.mErrors.isEmpty());
+
+        List<Response> responseList = readResponses(responses);
+        Assert.assertEquals(2, responseList.size());
+        Assert.assertEquals(1, responseList.get(0).requestId);
+        Assert.assertEquals("fast", responseList.get(0).stdout);
+        Assert.assertEquals("stderr 1", responseList.get(0).stderr);
+        Assert.assertEquals(0, responseList.get(1).requestId);
+        Assert.assertEquals(0, responseList.get(1).exitCode);
+        Assert.assertEquals("slow", responseList.get(1).stdout);
+    }
+
+    @Test
+    public void testPipelinedRequestsAreCapped() throws IOException {
+        final int requestCount = MAX_PIPELINED_REQUESTS * 3;
+        final AtomicInteger runningRequests = new AtomicInteger();
+        final AtomicInteger maxRunningRequests = new AtomicInteger();
+        final CountDownLatch maxRequestsStarted = new CountDownLatch(MAX_PIPELINED_REQUESTS);
+
+        TestRequestHandler requestHandler = new TestRequestHandler((requestId, amCommandString) -> {
+            int running = runningRequests.incrementAndGet();
+            maxRunningRequests.accumulateAndGet(running, Math::max);
+
+            // Keep the first requests running for a while so that more would be started if allowed
+            maxRequestsStarted.countDown();
+            Assert.assertTrue(maxRequestsStarted.await(10, TimeUnit.SECONDS));
+            Thread.sleep(50);
+
+            runningRequests.decrementAndGet();
+            return ECHO.run(requestId, amCommandString);
+        });
+
+        String[] amCommands = new String[requestCount];
+        for (int i = 0; i < requestCount; i++)
+            amCommands[i] = "command " + i;
+
+        ByteArrayOutputStream responses = new ByteArrayOutputStream();
+        Assert.assertNull(processRequests(requests(amCommands), responses, requestHandler));
+        Assert.assertEquals(MAX_PIPELINED_REQUESTS, maxRunningRequests.get());
+
+        // All the results have been written once processRequests() returns
+        Set<Integer> requestIds = new HashSet<>();
+        for (Response response : readResponses(responses)) {
+            Assert.assertEquals(0, response.exitCode);
+            Assert.assertEquals("command " + response.requestId, response.stdout);
+            requestIds.add(response.requestId);
+        }
+        Assert.assertEquals(requestCount, requestIds.size());
+    }
+
+}
@@ -0,0 +1,166 @@
+package com.termux.shared.shell.command.environment;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+
+import com.termux.shared.shell.command.ExecutionCommand;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+
+public class ShellEnvironmentCacheTest {
+
+    /** A {@link UnixShellEnvironment} counting how many times its environment is built. */
+    private static class TestShellEnvironment extends UnixShellEnvironment {
+
+        private final long mMaxAge;
+        int mBuildCount;
+
+        TestShellEnvironment(long maxAge) {
+            mMaxAge = maxAge;
+        }
+
+        @NonNull
+        @Override
+        public HashMap<String, String> getEnvironment(@NonNull Context currentPackageContext, boolean isFailSafe) {
+            mBuildCount++;
+            HashMap<String, String> environment = new HashMap<>();
+            environment.put("BUILD", String.valueOf(mBuildCount));
+            return environment;
+        }
+
+        @NonNull
+        @Override
+        public String getDefaultWorkingDirectoryPath() {
+            return "/";
+        }
+
+        @NonNull
+        @Override
+        public String getDefaultBinPath() {
+            return "/system/bin";
+        }
+
+        @NonNull
+        @Override
+        public HashMap<String, String> setupShellCommandEnvironment(@NonNull Context currentPackageContext,
+                                                                    @NonNull ExecutionCommand executionCommand) {
+            return getEnvironment(currentPackageContext, executionCommand.isFailsafe);
+        }
+
+        @Override
+        public long getEnvironmentCacheMaxAge(@NonNull Context currentPackageContext) {
+            return mMaxAge;
+        }
+
+    }
+
+    @Before
+    public void setUp() {
+        ShellEnvironmentCache.invalidate("test started");
+    }
+
+    private static ShellEnvironmentCache.Environ environ(String... nameValuePairs) {
+        HashMap<String, String> environment = new HashMap<>();
+        for (int i = 0; i < nameValuePairs.length; i += 2)
+            environment.put(nameValuePairs[i], nameValuePairs[i + 1]);
+        return new ShellEnvironmentCache.Environ(environment, 0, 0);
+    }
+
+    private static HashMap<String, String> overlay(String... nameValuePairs) {
+        HashMap<String, String> overlay = new HashMap<>();
+        for (int i = 0; i < nameValuePairs.length; i += 2)
+            overlay.put(nameValuePairs[i], nameValuePairs[i + 1]);
+        return overlay;
+    }
+
+    @Test
+    public void testEnvironIsSortedAndOnlyKeepsValidVariables() {
+        ShellEnvironmentCache.Environ environ = environ("PATH", "/bin", "HOME", "/home", "1INVALID", "x", "NUL", "a\0b");
+        Assert.assertArrayEquals(new String[]{"HOME=/home", "PATH=/bin"}, environ.merge(null));
+        Assert.assertEquals("/bin", environ.getValue("PATH"));
+        Assert.assertNull(environ.getValue("NUL"));
+        Assert.assertNull(environ.getValue("TERM"));
+    }
+
+    @Test
+    public void testMergeOverridesExistingVariable() {
+        ShellEnvironmentCache.Environ environ = environ("A", "1", "C", "3", "E", "5");
+        Assert.assertArrayEquals(new String[]{"A=1", "C=x", "E=5"}, environ.merge(overlay("C", "x")));
+        Assert.assertArrayEquals(new String[]{"A=y", "C=3", "E=z"}, environ.merge(overlay("E", "z", "A", "y")));
+
+        // The cached environ is not changed by merges
+        Assert.assertArrayEquals(new String[]{"A=1", "C=3", "E=5"}, environ.merge(overlay()));
+    }
+
+    @Test
+    public void testMergeInsertsNewVariablesInOrder() {
+        ShellEnvironmentCache.Environ environ = environ("B", "2", "D", "4");
+        Assert.assertArrayEquals(new String[]{"A=1", "B=2", "C=3", "D=4", "E=5"},
+            environ.merge(overlay("E", "5", "C", "3", "A", "1")));
+
+        // Names that are prefixes of each other are ordered like the cached names
+        environ = environ("PATH", "/bin", "PATH_2", "/usr/bin");
+        Assert.assertArrayEquals(new String[]{"PAT=x", "PATH=/bin", "PATH_1=y", "PATH_2=/usr/bin"},
+            environ.merge(overlay("PATH_1", "y", "PAT", "x")));
+    }
+
+    @Test
+    public void testMergeUnsetsVariablesWithInvalidValues() {
+        ShellEnvironmentCache.Environ environ = environ("A", "1", "B", "2", "C", "3");
+        Assert.assertArrayEquals(new String[]{"A=1", "C=3"}, environ.merge(overlay("B", null)));
+        Assert.assertArrayEquals(new String[]{"B=2"}, environ.merge(overlay("A", "a\0", "C", null)));
+
+        // Invalid variables that are not set are ignored
+        Assert.assertArrayEquals(new String[]{"A=1", "B=2", "C=3"}, environ.merge(overlay("D", null, "1D", "4")));
+    }
+
+    @Test
+    public void testCachedUntilInvalidated() {
+        TestShellEnvironment shellEnvironment = new TestShellEnvironment(ShellEnvironmentCache.MAX_AGE_UNTIL_INVALIDATED);
+        ShellEnvironmentCache.Environ environ = ShellEnvironmentCache.getEnviron(null, shellEnvironment, false, "test", 0);
+        Assert.assertSame(environ, ShellEnvironmentCache.getEnviron(null, shellEnvironment, false, "test", Long.MAX_VALUE));
+        Assert.assertEquals(1, shellEnvironment.mBuildCount);
+
+        // Other keys are cached separately
+        ShellEnvironmentCache.getEnviron(null, shellEnvironment, true, "test-failsafe", 0);
+        Assert.assertEquals(2, shellEnvironment.mBuildCount);
+
+        ShellEnvironmentCache.invalidate("test");
+        ShellEnvironmentCache.Environ newEnviron = ShellEnvironmentCache.getEnviron(null, shellEnvironment, false, "test", 0);
+        Assert.assertNotSame(environ, newEnviron);
+        Assert.assertEquals("3", newEnviron.getValue("BUILD"));
+        Assert.assertSame(newEnviron, ShellEnvironmentCache.getEnviron(null, shellEnvironment, false, "test", 0));
+    }
+
+    @Test
+    public void testCachedUntilMaxAge() {
+        TestShellEnvironment shellEnvironment = new TestShellEnvironment(100);
+        ShellEnvironmentCache.Environ environ = ShellEnvironmentCache.getEnviron(null, shellEnvironment, false, "test", 1000);
+        Assert.assertSame(environ, ShellEnvironmentCache.getEnviron(null, shellEnvironment, false, "test", 1099));
+        Assert.assertEquals(1, shellEnvironment.mBuildCount);
+
+        ShellEnvironmentCache.Environ newEnviron = ShellEnvironmentCache.getEnviron(null, shellEnvironment, false, "test", 1100);
+        Assert.assertNotSame(environ, newEnviron);
+        Assert.assertEquals(2, shellEnvironment.mBuildCount);
+        Assert.assertSame(newEnviron, ShellEnvironmentCache.getEnviron(null, shellEnvironment, false, "test", 1199));
+
+        // Invalidation also applies to environments that have not reached their max age
+        ShellEnvironmentCache.invalidate("test");
+        ShellEnvironmentCache.getEnviron(null, shellEnvironment, false, "test", 1100);
+        Assert.assertEquals(3, shellEnvironment.mBuildCount);
+    }
+
+    @Test
+    public void testNotCachedForZeroMaxAge() {
+        TestShellEnvironment shellEnvironment = new TestShellEnvironment(0);
+        ShellEnvironmentCache.getEnviron(null, shellEnvironment, false, "test", 0);
+        ShellEnvironmentCache.getEnviron(null, shellEnvironment, false, "test", 0);
+        Assert.assertEquals(2, shellEnvironment.mBuildCount);
+    }
+
+}